@@ -14,6 +14,7 @@ import static org.lateralgm.main.Util.deRef;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 
@@ -88,32 +89,38 @@ public class GmTreeGraphics extends DefaultTreeCellRenderer
 		}
 
 	public static Icon getScaledIcon(Image i)
+		{
+		return new ImageIcon(getScaledImage(i,16));
+		}
+
+	/** Scales the given image down to fill a square of the given size, cropping and centring it. */
+	public static BufferedImage getScaledImage(Image i, int size)
 		{
 		int w = i.getWidth(null);
 		int h = i.getHeight(null);
 
 		int m = Math.min(w,h); //Needs clipping
-		if (m > 16) i = i.getScaledInstance(w * 16 / m,h * 16 / m,BufferedImage.SCALE_SMOOTH);
+		if (m > size) i = i.getScaledInstance(w * size / m,h * size / m,BufferedImage.SCALE_SMOOTH);
 		// Crop and/or center the image
-		Image i2 = new BufferedImage(16,16,BufferedImage.TYPE_INT_ARGB);
+		BufferedImage i2 = new BufferedImage(size,size,BufferedImage.TYPE_INT_ARGB);
 		int x = 0;
 		int y = 0;
-		if (w < 16) x = 8 - w / 2;
-		if (h < 16) y = 8 - h / 2;
-		i2.getGraphics().drawImage(i,x,y,null);
-		i = i2;
-
-		return new ImageIcon(i);
+		if (w < size) x = size / 2 - w / 2;
+		if (h < size) y = size / 2 - h / 2;
+		Graphics g = i2.getGraphics();
+		g.drawImage(i,x,y,null);
+		g.dispose();
+		return i2;
 		}
 
+	/**
+	 * Returns the tree icon of the given resource. Icons of images are rendered in the background
+	 * by {@link ThumbnailCache}, so this never has to wait on scaling an image.
+	 */
 	public static Icon getResourceIcon(ResourceReference<?> r)
 		{
 		Resource<?,?> res = deRef(r);
-		if (res != null && res instanceof Resource.Viewable)
-			{
-			BufferedImage bi = ((Resource.Viewable) res).getDisplayImage();
-			if (bi != null) return getScaledIcon(bi);
-			}
+		if (res != null && res instanceof Resource.Viewable) return ThumbnailCache.getIcon(r,16);
 		return getBlankIcon();
 		}
 
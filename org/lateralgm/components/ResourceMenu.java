@@ -13,6 +13,7 @@ package org.lateralgm.components;
 import static javax.swing.GroupLayout.PREFERRED_SIZE;
 import static org.lateralgm.main.Util.deRef;
 
+import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.ActionEvent;
@@ -21,21 +22,32 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.GroupLayout;
 import javax.swing.Icon;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.JToolTip;
+import javax.swing.ListSelectionModel;
+import javax.swing.MenuSelectionManager;
 import javax.swing.TransferHandler;
 import javax.swing.border.EtchedBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.GroupLayout.Alignment;
 import javax.swing.GroupLayout.ParallelGroup;
 import javax.swing.GroupLayout.SequentialGroup;
@@ -73,17 +85,35 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 	protected static final ImageIcon GROUP_ICO = LGM.getIconForKey("GmTreeGraphics.GROUP"); //$NON-NLS-1$;
 	private final Preview rPreview;
 	private final MenuBuilder builder = new MenuBuilder();
+	/** Whether the menu has to be made again before it is next shown. */
+	private boolean stale = true;
+
+	/** Groups with more resources than this list them in a {@link ResourceListPanel}. */
+	private static final int LIST_THRESHOLD = 40;
 
 	public class ResourceJMenu extends JMenu
 		{
 		private static final long serialVersionUID = 1L;
 		public ResNode node;
+		private boolean populated;
 
 		public ResourceJMenu(ResNode node)
 			{
 			super(node.getUserObject().toString());
 			this.node = node;
-			node.updateSource.addListener(ResourceMenu.this);
+			}
+
+		// The contents are only made when the menu is first opened
+		@Override
+		public JPopupMenu getPopupMenu()
+			{
+			JPopupMenu p = super.getPopupMenu();
+			if (!populated)
+				{
+				populated = true;
+				populate(p,node,kind);
+				}
+			return p;
 			}
 
 		public void update()
@@ -94,14 +124,7 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 
 		public boolean isVisible()
 			{
-			return !onlyOpen || hasVisibleChildren();
-			}
-
-		private boolean hasVisibleChildren()
-			{
-			for (int i = 0; i < getPopupMenu().getComponentCount(); i++)
-				if (getPopupMenu().getComponent(i).isVisible()) return true;
-			return false;
+			return !onlyOpen || hasOpenResource(node);
 			}
 		}
 
@@ -114,7 +137,6 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 			{
 			super(node.getUserObject().toString());
 			this.node = node;
-			node.updateSource.addListener(ResourceMenu.this);
 			setIcon(node.getIcon());
 			}
 
@@ -136,11 +158,109 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 			}
 		}
 
+	/**
+	 * The resources of a large group, as a list that can be filtered by name. Unlike menu items,
+	 * only the rows in view are ever rendered.
+	 */
+	private class ResourceListPanel extends JPanel implements DocumentListener
+		{
+		private static final long serialVersionUID = 1L;
+
+		private final List<ResNode> resources;
+		private final JTextField filter = new JTextField();
+		private final JList<ResNode> list = new JList<ResNode>();
+
+		public ResourceListPanel(List<ResNode> resources)
+			{
+			super(new BorderLayout());
+			this.resources = resources;
+			list.setCellRenderer(new DefaultListCellRenderer()
+				{
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public Component getListCellRendererComponent(JList<?> l, Object val, int ind,
+							boolean sel, boolean focus)
+						{
+						super.getListCellRendererComponent(l,val,ind,sel,focus);
+						ResNode node = (ResNode) val;
+						setText(node.getUserObject().toString());
+						setIcon(node.getIcon());
+						return this;
+						}
+				});
+			// Fixed cell sizes keep the list from measuring every row
+			list.setFixedCellHeight(20);
+			list.setFixedCellWidth(Math.max(label.getWidth(),200));
+			list.setVisibleRowCount(Math.min(resources.size(),16));
+			list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+			list.addMouseListener(new MouseAdapter()
+				{
+					@Override
+					public void mouseReleased(MouseEvent e)
+						{
+						int i = list.locationToIndex(e.getPoint());
+						if (i >= 0) choose(list.getModel().getElementAt(i));
+						}
+				});
+			filter.getDocument().addDocumentListener(this);
+			filter.addActionListener(new ActionListener()
+				{
+					public void actionPerformed(ActionEvent e)
+						{
+						ResNode node = list.getSelectedValue();
+						if (node == null && list.getModel().getSize() > 0)
+							node = list.getModel().getElementAt(0);
+						if (node != null) choose(node);
+						}
+				});
+			add(filter,BorderLayout.NORTH);
+			add(new JScrollPane(list),BorderLayout.CENTER);
+			refilter();
+			}
+
+		@Override
+		public void addNotify()
+			{
+			super.addNotify();
+			// Which resources are open may have changed since the list was last shown
+			if (onlyOpen) refilter();
+			}
+
+		private void refilter()
+			{
+			String f = filter.getText().toLowerCase();
+			DefaultListModel<ResNode> model = new DefaultListModel<ResNode>();
+			for (ResNode node : resources)
+				{
+				if (onlyOpen && node.frame == null) continue;
+				if (f.isEmpty() || node.getUserObject().toString().toLowerCase().contains(f))
+					model.addElement(node);
+				}
+			list.setModel(model);
+			}
+
+		public void insertUpdate(DocumentEvent e)
+			{
+			refilter();
+			}
+
+		public void removeUpdate(DocumentEvent e)
+			{
+			refilter();
+			}
+
+		public void changedUpdate(DocumentEvent e)
+			{
+			refilter();
+			}
+		}
+
 	public static class Preview extends JLabel
 		{
 		private static final long serialVersionUID = 1L;
 
-		private BufferedImage displayImage;
+		private ResourceReference<?> viewed;
 
 		public Preview()
 			{
@@ -153,11 +273,12 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 			Resource<R,?> res = Util.deRef(r);
 			if (res == null || !(res instanceof Resource.Viewable))
 				{
-				displayImage = null;
+				viewed = null;
 				setIcon(null);
 				return;
 				}
-			displayImage = ((Resource.Viewable) res).getDisplayImage();
+			// The full image is only needed once the tool tip is shown
+			viewed = r;
 			ResNode rn = res.getNode();
 			setIcon(rn == null ? null : rn.getIcon());
 			}
@@ -170,7 +291,9 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 
 					public BufferedImage getImage()
 						{
-						return displayImage;
+						Resource<?,?> r = Util.deRef(viewed);
+						if (!(r instanceof Resource.Viewable)) return null;
+						return ((Resource.Viewable) r).getDisplayImage();
 						}
 				});
 			}
@@ -282,7 +405,6 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 			noResource = pm.add(new JMenuItem(def));
 			noResource.addActionListener(this);
 			}
-		populate(kind);
 		LGM.root.updateSource.addListener(ResourceMenu.this);
 		}
 
@@ -325,6 +447,7 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 
 	protected void populate(Class<? extends Resource<?,?>> kind)
 		{
+		stale = false;
 		if (Prefs.groupKind)
 			{
 			for (int m = 0; m < LGM.root.getChildCount(); m++)
@@ -341,8 +464,13 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 		return;
 		}
 
+	/**
+	 * Adds the contents of the given group to the given menu. Subgroups are only filled in when
+	 * they are opened, and large numbers of resources are put in a {@link ResourceListPanel}.
+	 */
 	private void populate(JComponent parent, ResNode group, Class<? extends Resource<?,?>> kind)
 		{
+		List<ResNode> resources = new ArrayList<ResNode>();
 		for (int i = 0; i < group.getChildCount(); i++)
 			{
 			ResNode child = (ResNode) group.getChildAt(i);
@@ -355,16 +483,35 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 					newParent = new ResourceJMenu(child);
 				newParent.setIcon(GROUP_ICO);
 				parent.add(newParent);
-				populate(newParent,child,kind);
 				continue;
 				}
 			if (child.kind != kind) continue;
+			resources.add(child);
+			}
+		if (resources.size() > LIST_THRESHOLD)
+			{
+			parent.add(new ResourceListPanel(resources));
+			return;
+			}
+		for (ResNode child : resources)
+			{
 			ResourceMenuItem newParent = new ResourceMenuItem(child);
 			newParent.addActionListener(this);
 			parent.add(newParent);
 			}
 		}
 
+	private boolean hasOpenResource(ResNode group)
+		{
+		for (int i = 0; i < group.getChildCount(); i++)
+			{
+			ResNode child = (ResNode) group.getChildAt(i);
+			if (child.status == ResNode.STATUS_SECONDARY ? child.frame != null
+					: hasOpenResource(child)) return true;
+			}
+		return false;
+		}
+
 	public void addActionListener(ActionListener il)
 		{
 		listenerList.add(ActionListener.class,il);
@@ -394,10 +541,26 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 
 	public void showPopup(Component c, int x, int y)
 		{
+		if (stale) rebuild();
 		if (pm.getComponentCount() == 0) return;
 		pm.show(c,x,y);
 		}
 
+	private void rebuild()
+		{
+		pm.removeAll();
+		if (noResource != null) pm.add(noResource);
+		populate(kind);
+		}
+
+	@SuppressWarnings("unchecked")
+	private void choose(ResNode node)
+		{
+		MenuSelectionManager.defaultManager().clearSelectedPath();
+		setSelected((ResourceReference<R>) node.getRes());
+		fireActionPerformed();
+		}
+
 	public ResourceReference<R> getSelected()
 		{
 		return selected;
@@ -442,7 +605,6 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 		public void mouseClicked(MouseEvent e)
 			{
 			if (!isEnabled()) return;
-			if (pm.getComponentCount() == 0) return;
 			showPopup(e.getComponent(),e.getX(),e.getY());
 			}
 		}
@@ -456,9 +618,9 @@ public class ResourceMenu<R extends Resource<R,?>> extends JPanel implements Act
 		{
 		public void run()
 			{
-			pm.removeAll();
-			if (noResource != null) pm.add(noResource);
-			populate(kind);
+			// The menu is made again the next time it is shown, or now if it is showing
+			stale = true;
+			if (pm.isVisible()) rebuild();
 			if (selected == null || !Listener.getPrimaryParent(kind).contains(selected))
 				setSelected(null);
 			setSelected(selected);
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.components;
+
+import static org.lateralgm.main.Util.deRef;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.CellRendererPane;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+import org.lateralgm.main.UpdateSource.UpdateEvent;
+import org.lateralgm.main.UpdateSource.UpdateListener;
+import org.lateralgm.resources.Resource;
+import org.lateralgm.resources.ResourceReference;
+
+/**
+ * Small previews of viewable resources, such as the icons of sprites in the tree and in
+ * resource menus. Thumbnails are scaled on a background thread into a bounded cache, and are
+ * dropped when their resource is updated. An icon that isn't ready yet paints nothing, and the
+ * components it was painted in are repainted once it is.
+ */
+public final class ThumbnailCache
+	{
+	private static final int MAX_THUMBNAILS = 4096;
+
+	private static final ExecutorService renderer = Executors.newSingleThreadExecutor(
+			new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+						{
+						Thread t = new Thread(r,"Thumbnails"); //$NON-NLS-1$
+						t.setDaemon(true);
+						t.setPriority(Thread.MIN_PRIORITY);
+						return t;
+						}
+				});
+
+	/** Thumbnails, least recently used first. All state is guarded by this map. */
+	private static final Map<Key,BufferedImage> thumbnails = new LinkedHashMap<Key,BufferedImage>(16,
+			0.75f,true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,BufferedImage> eldest)
+				{
+				return size() > MAX_THUMBNAILS;
+				}
+		};
+	/** The components waiting on each thumbnail being rendered. */
+	private static final Map<Key,List<Component>> pending = new HashMap<Key,List<Component>>();
+	/** How many times each resource has been updated since its first thumbnail was asked for. */
+	private static final Map<ResourceReference<?>,Integer> versions = new WeakHashMap<
+			ResourceReference<?>,Integer>();
+
+	private static final UpdateListener invalidator = new UpdateListener()
+		{
+			public void updated(UpdateEvent e)
+				{
+				synchronized (thumbnails)
+					{
+					Object r = e.source.owner;
+					Integer v = versions.get(r);
+					if (v == null) return;
+					versions.put((ResourceReference<?>) r,v + 1);
+					Iterator<Key> it = thumbnails.keySet().iterator();
+					while (it.hasNext())
+						if (it.next().res == r) it.remove();
+					}
+				}
+		};
+
+	private ThumbnailCache()
+		{
+		}
+
+	/**
+	 * Returns an icon of the given size showing the given resource, which must be
+	 * {@link Resource.Viewable}. The icon stays up to date as the resource changes.
+	 */
+	public static Icon getIcon(ResourceReference<?> r, int size)
+		{
+		return new ThumbnailIcon(r,size);
+		}
+
+	/**
+	 * Returns the thumbnail of the given resource if it is ready. Otherwise it is queued to be
+	 * rendered, and the given component is repainted when it is, if not null.
+	 */
+	public static BufferedImage get(ResourceReference<?> r, int size, Component c)
+		{
+		Key k;
+		synchronized (thumbnails)
+			{
+			Integer v = versions.get(r);
+			if (v == null)
+				{
+				v = 0;
+				versions.put(r,v);
+				r.updateSource.addListener(invalidator);
+				}
+			k = new Key(r,size,v);
+			BufferedImage bi = thumbnails.get(k);
+			if (bi != null) return bi;
+			List<Component> waiting = pending.get(k);
+			if (waiting != null)
+				{
+				if (c != null && !waiting.contains(c)) waiting.add(c);
+				return null;
+				}
+			waiting = new ArrayList<Component>(1);
+			if (c != null) waiting.add(c);
+			pending.put(k,waiting);
+			}
+		// Getting the image is left to the caller's thread, since resources belong to the EDT
+		Resource<?,?> res = deRef(r);
+		BufferedImage image = null;
+		if (res instanceof Resource.Viewable) image = ((Resource.Viewable) res).getDisplayImage();
+		renderer.execute(new Render(k,image));
+		return null;
+		}
+
+	private static void finish(Key k, BufferedImage thumbnail)
+		{
+		final List<Component> waiting;
+		synchronized (thumbnails)
+			{
+			waiting = pending.remove(k);
+			Integer v = versions.get(k.res);
+			if (v != null && v == k.version) thumbnails.put(k,thumbnail);
+			}
+		if (waiting == null || waiting.isEmpty()) return;
+		SwingUtilities.invokeLater(new Runnable()
+			{
+				public void run()
+					{
+					for (Component c : waiting)
+						{
+						// Renderers are only painted through their list, tree or table
+						Component p = c.getParent();
+						if (p instanceof CellRendererPane && p.getParent() != null)
+							p.getParent().repaint();
+						else
+							c.repaint();
+						}
+					}
+			});
+		}
+
+	private static final class Key
+		{
+		final ResourceReference<?> res;
+		final int size;
+		final int version;
+
+		Key(ResourceReference<?> res, int size, int version)
+			{
+			this.res = res;
+			this.size = size;
+			this.version = version;
+			}
+
+		@Override
+		public int hashCode()
+			{
+			return (System.identityHashCode(res) * 31 + size) * 31 + version;
+			}
+
+		@Override
+		public boolean equals(Object o)
+			{
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return k.res == res && k.size == size && k.version == version;
+			}
+		}
+
+	private static final class Render implements Runnable
+		{
+		private final Key key;
+		private final BufferedImage image;
+
+		Render(Key key, BufferedImage image)
+			{
+			this.key = key;
+			this.image = image;
+			}
+
+		public void run()
+			{
+			BufferedImage thumbnail = null;
+			try
+				{
+				if (image != null) thumbnail = GmTreeGraphics.getScaledImage(image,key.size);
+				}
+			finally
+				{
+				if (thumbnail == null)
+					thumbnail = new BufferedImage(key.size,key.size,BufferedImage.TYPE_INT_ARGB);
+				finish(key,thumbnail);
+				}
+			}
+		}
+
+	private static final class ThumbnailIcon implements Icon
+		{
+		private final ResourceReference<?> res;
+		private final int size;
+
+		ThumbnailIcon(ResourceReference<?> res, int size)
+			{
+			this.res = res;
+			this.size = size;
+			}
+
+		public int getIconWidth()
+			{
+			return size;
+			}
+
+		public int getIconHeight()
+			{
+			return size;
+			}
+
+		public void paintIcon(Component c, Graphics g, int x, int y)
+			{
+			BufferedImage bi = get(res,size,c);
+			if (bi != null) g.drawImage(bi,x,y,null);
+			}
+		}
+	}
@@ -23,10 +23,12 @@
 
 package org.lateralgm.components.impl;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 
 import javax.swing.Icon;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 
 public class DefaultNode extends DefaultMutableTreeNode
@@ -38,6 +40,7 @@ public class DefaultNode extends DefaultMutableTreeNode
 
 	protected boolean isVisible = true;
 	protected Icon icon;
+	private transient TreeNode[] visibleChildren;
 
 	public Icon getIcon() {
 		return icon;
@@ -52,6 +55,9 @@ public class DefaultNode extends DefaultMutableTreeNode
 	}
 
 	public void setVisible(boolean visible) {
+		if (visible != isVisible && parent instanceof DefaultNode) {
+			((DefaultNode) parent).visibleChildren = null;
+		}
 		this.isVisible = visible;
 	}
 
@@ -59,53 +65,77 @@ public class DefaultNode extends DefaultMutableTreeNode
 		return this.isVisible;
 	}
 
-	public TreeNode getChildAt(int index, boolean filterIsActive) {
-		if (!filterIsActive) {
-			return super.getChildAt(index);
+	/**
+	 * The children that are visible, so that a filtered tree doesn't have to count through
+	 * them for every row. Dropped whenever a child is added, removed, shown or hidden.
+	 */
+	private TreeNode[] getVisibleChildren() {
+		if (visibleChildren != null) {
+			return visibleChildren;
 		}
 		if (children == null) {
-			throw new ArrayIndexOutOfBoundsException("node has no children");
+			return visibleChildren = new TreeNode[0];
 		}
-
-		int realIndex = -1;
-		int visibleIndex = -1;
 		//NOTE: If you really wanted to be safe you could check the cast of e.nextElement()
 		//and count every node that is not DefaultNode based as visible.
 		//For now we know we are safe though.
+		ArrayList<TreeNode> visible = new ArrayList<TreeNode>(children.size());
 		Enumeration<?> e = children.elements();
 		while (e.hasMoreElements()) {
 			DefaultNode node = (DefaultNode) e.nextElement();
 			if (node.isVisible()) {
-				visibleIndex++;
-			}
-			realIndex++;
-			if (visibleIndex == index) {
-				return (TreeNode) children.elementAt(realIndex);
+				visible.add(node);
 			}
 		}
+		return visibleChildren = visible.toArray(new TreeNode[visible.size()]);
+	}
 
-		throw new ArrayIndexOutOfBoundsException("index unmatched");
-		//return (TreeNode)children.elementAt(index);
+	public TreeNode getChildAt(int index, boolean filterIsActive) {
+		if (!filterIsActive) {
+			return super.getChildAt(index);
+		}
+		if (children == null) {
+			throw new ArrayIndexOutOfBoundsException("node has no children");
+		}
+
+		TreeNode[] visible = getVisibleChildren();
+		if (index < 0 || index >= visible.length) {
+			throw new ArrayIndexOutOfBoundsException("index unmatched");
+		}
+		return visible[index];
 	}
 
 	public int getChildCount(boolean filterIsActive) {
 		if (!filterIsActive) {
 			return super.getChildCount();
 		}
-		if (children == null) {
-			return 0;
-		}
+		return getVisibleChildren().length;
+	}
 
-		int count = 0;
-		Enumeration<?> e = children.elements();
-		while (e.hasMoreElements()) {
-			DefaultNode node = (DefaultNode) e.nextElement();
-			if (node.isVisible()) {
-				count++;
+	/** The index of the given child among the visible children, or -1 if it isn't one of them. */
+	public int getIndex(TreeNode child, boolean filterIsActive) {
+		if (!filterIsActive) {
+			return super.getIndex(child);
+		}
+		TreeNode[] visible = getVisibleChildren();
+		for (int i = 0; i < visible.length; i++) {
+			if (visible[i] == child) {
+				return i;
 			}
 		}
+		return -1;
+	}
+
+	@Override
+	public void insert(MutableTreeNode newChild, int childIndex) {
+		super.insert(newChild,childIndex);
+		visibleChildren = null;
+	}
 
-		return count;
+	@Override
+	public void remove(int childIndex) {
+		super.remove(childIndex);
+		visibleChildren = null;
 	}
 
 	public DefaultNode(String name)
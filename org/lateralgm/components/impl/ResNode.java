@@ -211,7 +211,8 @@ public class ResNode extends DefaultNode implements Transferable,UpdateListener
 		this.newRes = newRes;
 		Resource<?,?> r = deRef();
 		if (r != null) {
-			r.changed = newRes;
+			// Opening a frame mustn't forget edits that weren't saved yet
+			if (newRes) r.changed = true;
 		}
 		if (SubframeInformer.fireSubframeRequest(r,this)) return;
 		ResourceFrame<?,?> rf = frame;
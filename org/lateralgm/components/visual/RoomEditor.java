@@ -21,6 +21,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -54,12 +55,14 @@ import org.lateralgm.subframes.RoomFrame;
 import org.lateralgm.ui.swing.visuals.RoomVisual;
 import org.lateralgm.util.ActiveArrayList;
 import org.lateralgm.util.AddPieceInstance;
+import org.lateralgm.util.AddPieceInstances;
 import org.lateralgm.util.ModifyPieceInstance;
 import org.lateralgm.util.PropertyMap;
 import org.lateralgm.util.PropertyMap.PropertyUpdateEvent;
 import org.lateralgm.util.PropertyMap.PropertyUpdateListener;
 import org.lateralgm.util.PropertyMap.PropertyValidator;
 import org.lateralgm.util.RemovePieceInstance;
+import org.lateralgm.util.RemovePieceInstances;
 import org.lateralgm.util.ModifyPieceInstance.Type;
 
 public class RoomEditor extends VisualPanel
@@ -314,28 +317,31 @@ public class RoomEditor extends VisualPanel
 					new Rectangle(mousePosition.x,mousePosition.y,roomVisual.getSelectionImageWidth(),
 							roomVisual.getSelectionImageHeight()),compoundEdit);
 
-		for (Instance instance : selectedInstances)
+		int first = room.instances.size();
+		try (Room.Batch batch = room.batch())
 			{
-			Point position = instance.getPosition();
-			// Get the relative position of the instance inside the selected region
-			Point newPosition = new Point(position.x - selectedPiecesOrigin.x + mousePosition.x,
-					position.y - selectedPiecesOrigin.y + mousePosition.y);
-
-			Instance newInstance = room.addInstance();
-			newInstance.properties.put(PInstance.OBJECT,instance.properties.get(PInstance.OBJECT));
-			newInstance.setRotation(instance.getRotation());
-			newInstance.setScale(instance.getScale());
-			newInstance.setColor(instance.getColor());
-			newInstance.setAlpha(instance.getAlpha());
-			newInstance.setCode(instance.getCode());
-			newInstance.setCreationCode(instance.getCreationCode());
-			newInstance.setPosition(newPosition);
-
-			// Record the effect of adding a new instance for the undo
-			UndoableEdit edit = new AddPieceInstance(frame,newInstance,room.instances.size() - 1);
-			compoundEdit.addEdit(edit);
+			for (Instance instance : selectedInstances)
+				{
+				Point position = instance.getPosition();
+				// Get the relative position of the instance inside the selected region
+				Point newPosition = new Point(position.x - selectedPiecesOrigin.x + mousePosition.x,
+						position.y - selectedPiecesOrigin.y + mousePosition.y);
+
+				Instance newInstance = room.addInstance();
+				newInstance.properties.put(PInstance.OBJECT,instance.properties.get(PInstance.OBJECT));
+				newInstance.setRotation(instance.getRotation());
+				newInstance.setScale(instance.getScale());
+				newInstance.setColor(instance.getColor());
+				newInstance.setAlpha(instance.getAlpha());
+				newInstance.setCode(instance.getCode());
+				newInstance.setCreationCode(instance.getCreationCode());
+				newInstance.setPosition(newPosition);
+				}
 			}
 
+		// Record the effect of adding the new instances for the undo
+		compoundEdit.addEdit(new AddPieceInstances<Instance>(frame,room.instances,first));
+
 		// Save the action for the undo
 		compoundEdit.end();
 		frame.undoSupport.postEdit(compoundEdit);
@@ -356,26 +362,29 @@ public class RoomEditor extends VisualPanel
 					new Rectangle(mousePosition.x,mousePosition.y,roomVisual.getSelectionImageWidth(),
 							roomVisual.getSelectionImageHeight()),compoundEdit);
 
-		for (Tile tile : selectedTiles)
+		int first = room.tiles.size();
+		try (Room.Batch batch = room.batch())
 			{
-			Point position = tile.getPosition();
-			// Get the relative position of the tile inside the selected region
-			Point newPosition = new Point(position.x - selectedPiecesOrigin.x + mousePosition.x,
-					position.y - selectedPiecesOrigin.y + mousePosition.y);
-
-			Tile newTile = new Tile(room,LGM.currentFile);
-			newTile.properties.put(PTile.BACKGROUND,tile.properties.get(PTile.BACKGROUND));
-			newTile.setBackgroundPosition(tile.getBackgroundPosition());
-			newTile.setPosition(newPosition);
-			newTile.setSize(tile.getSize());
-			newTile.setDepth(tile.getDepth());
-			room.tiles.add(newTile);
-
-			// Record the effect of adding a new tile for the undo
-			UndoableEdit edit = new AddPieceInstance(frame,newTile,room.tiles.size() - 1);
-			compoundEdit.addEdit(edit);
+			for (Tile tile : selectedTiles)
+				{
+				Point position = tile.getPosition();
+				// Get the relative position of the tile inside the selected region
+				Point newPosition = new Point(position.x - selectedPiecesOrigin.x + mousePosition.x,
+						position.y - selectedPiecesOrigin.y + mousePosition.y);
+
+				Tile newTile = new Tile(room,LGM.currentFile);
+				newTile.properties.put(PTile.BACKGROUND,tile.properties.get(PTile.BACKGROUND));
+				newTile.setBackgroundPosition(tile.getBackgroundPosition());
+				newTile.setPosition(newPosition);
+				newTile.setSize(tile.getSize());
+				newTile.setDepth(tile.getDepth());
+				room.tiles.add(newTile);
+				}
 			}
 
+		// Record the effect of adding the new tiles for the undo
+		compoundEdit.addEdit(new AddPieceInstances<Tile>(frame,room.tiles,first));
+
 		// Save the action for the undo
 		compoundEdit.end();
 		frame.undoSupport.postEdit(compoundEdit);
@@ -439,29 +448,28 @@ public class RoomEditor extends VisualPanel
 		cursor = null;
 		}
 
-	private <T>void deleteUnderlying(Iterator<T> i, ActiveArrayList<T> l, CompoundEdit compoundEdit)
+	private <T extends Piece>void deleteUnderlying(Iterator<T> i, ActiveArrayList<T> l,
+			CompoundEdit compoundEdit)
 		{
 		HashSet<T> s = new HashSet<T>();
 		while (i.hasNext())
 			{
 			T t = i.next();
-			if (t != cursor)
-				{
-				UndoableEdit edit;
-
-				// Record the effect of removing an piece for the undo
-				if (cursor instanceof Instance)
-					edit = new RemovePieceInstance(frame,(Piece) t,room.instances.indexOf(t));
-				else
-					edit = new RemovePieceInstance(frame,(Piece) t,room.tiles.indexOf(t));
-
-				compoundEdit.addEdit(edit);
+			if (t != cursor) s.add(t);
+			}
+		if (s.isEmpty()) return;
 
-				s.add(t);
+		// Find the pieces in one pass over the list rather than looking each one up
+		int[] indices = new int[s.size()];
+		int count = 0;
+		for (int j = 0; j < l.size() && count < indices.length; j++)
+			if (s.contains(l.get(j))) indices[count++] = j;
 
-				}
-			}
-		l.removeAll(s);
+		// Record the effect of removing the pieces for the undo
+		RemovePieceInstances<T> edit = new RemovePieceInstances<T>(frame,l,
+				Arrays.copyOf(indices,count));
+		compoundEdit.addEdit(edit);
+		edit.apply();
 		}
 
 	/** Do not call with null */
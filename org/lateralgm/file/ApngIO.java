@@ -17,6 +17,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.zip.CRC32;
 
 import javax.imageio.ImageIO;
@@ -426,7 +427,7 @@ public final class ApngIO
 			}
 		}
 
-	public static void imagesToApng(ArrayList<BufferedImage> imgs, OutputStream fullFile)
+	public static void imagesToApng(List<BufferedImage> imgs, OutputStream fullFile)
 			throws IOException
 		{
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
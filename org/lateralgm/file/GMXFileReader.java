@@ -30,8 +30,11 @@ import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -40,14 +43,29 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.lateralgm.components.impl.ResNode;
 import org.lateralgm.file.ProjectFile.InterfaceProvider;
@@ -126,13 +144,42 @@ public final class GMXFileReader
 			"//######################_==_YOYO_SHADER_MARKER_==_######################@~"; //$NON-NLS-1$
 
 	private static DocumentBuilderFactory documentBuilderFactory;
-	private static DocumentBuilder documentBuilder;
+	/** DocumentBuilder is not thread safe, so every thread that parses gets its own. */
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+
+	/**
+	 * The XML file suffix of each kind of resource which lives in its own XML file,
+	 * keyed by the tag name used for it in the project file, in the order the groups are read.
+	 */
+	private static final Map<String,String> documentSuffixes = new LinkedHashMap<String,String>();
+	static
+		{
+		documentSuffixes.put("sprite",".sprite.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		documentSuffixes.put("sound",".sound.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		documentSuffixes.put("background",".background.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		documentSuffixes.put("path",".path.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		documentSuffixes.put("font",".font.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		documentSuffixes.put("timeline",".timeline.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+	/**
+	 * Like documentSuffixes, but for the resources whose XML files can get large enough that
+	 * they are streamed instead of being parsed into a document.
+	 */
+	private static final Map<String,String> streamedSuffixes = new LinkedHashMap<String,String>();
+	static
+		{
+		streamedSuffixes.put("object",".object.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		streamedSuffixes.put("room",".room.gmx"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+	private static XMLInputFactory xmlInputFactory;
 
 	private GMXFileReader()
 		{
 		}
 
-	private static Queue<PostponedRef> postpone = new LinkedList<PostponedRef>();
+	private static Queue<PostponedRef> postpone = new ConcurrentLinkedQueue<PostponedRef>();
 
 	static interface PostponedRef
 		{
@@ -162,12 +209,33 @@ public final class GMXFileReader
 			}
 		}
 
+	private static DocumentBuilder getDocumentBuilder(ProjectFile f) throws GmFormatException
+		{
+		DocumentBuilder builder = documentBuilder.get();
+		if (builder != null) return builder;
+		synchronized (documentBuilder)
+			{
+			if (documentBuilderFactory == null)
+				documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			try
+				{
+				builder = documentBuilderFactory.newDocumentBuilder();
+				}
+			catch (ParserConfigurationException e)
+				{
+				throw new GmFormatException(f,e);
+				}
+			}
+		documentBuilder.set(builder);
+		return builder;
+		}
+
 	private static Document parseDocumentUnchecked(ProjectFile f, String path) throws GmFormatException
 		{
 		Document doc = null;
 		try
 			{
-			doc = documentBuilder.parse(path);
+			doc = getDocumentBuilder(f).parse(path);
 			}
 		catch (SAXException e)
 			{
@@ -180,12 +248,13 @@ public final class GMXFileReader
 		return doc;
 		}
 
-	private static Document parseDocumentChecked(ProjectFile f, String path)
+	private static Document parseDocumentChecked(ProjectFileContext c, String path)
 		{
 			Document doc = null;
 			try
 				{
-				doc = parseDocumentUnchecked(f, path);
+				Future<Document> preloaded = c.documents == null ? null : c.documents.take(path);
+				doc = preloaded == null ? parseDocumentUnchecked(c.f, path) : join(c.f, preloaded);
 				}
 			catch (GmFormatException e)
 				{
@@ -202,6 +271,12 @@ public final class GMXFileReader
 		RefList<Timeline> timeids;
 		RefList<GmObject> objids;
 		RefList<Room> rmids;
+		/** Resource files being parsed ahead of time on a worker pool, keyed by path. */
+		Preloader<Document> documents;
+		/** Images decoded ahead of time along with the resource files, keyed by path. */
+		Map<String,BufferedImage> images;
+		/** Contents of the streamed resource files being read ahead of time, keyed by path. */
+		Preloader<byte[]> files;
 
 		public ProjectFileContext(ProjectFile f, Document d, RefList<Timeline> timeids,
 				RefList<GmObject> objids, RefList<Room> rmids)
@@ -215,7 +290,11 @@ public final class GMXFileReader
 
 		public ProjectFileContext copy()
 			{
-			return new ProjectFileContext(f,in,timeids,objids,rmids);
+			ProjectFileContext c = new ProjectFileContext(f,in,timeids,objids,rmids);
+			c.documents = documents;
+			c.images = images;
+			c.files = files;
+			return c;
 			}
 		}
 
@@ -242,19 +321,21 @@ public final class GMXFileReader
 	public static void readProjectFile(InputStream stream, ProjectFile file, URI uri, ResNode root,
 			Charset forceCharset) throws GmFormatException
 		{
+		readProjectFile(stream,file,uri,root,forceCharset,false);
+		}
+
+	/**
+	 * Reads a GMX project into the given project.
+	 * @param parallel Whether the XML file of every resource and the images it refers to should
+	 * be parsed and decoded ahead of time on a pool of worker threads. The resources are still
+	 * created and added to the tree in project order on the calling thread, so the result is the same.
+	 */
+	public static void readProjectFile(InputStream stream, ProjectFile file, URI uri, ResNode root,
+			Charset forceCharset, boolean parallel) throws GmFormatException
+		{
 		interfaceProvider.init(160,"ProgressDialog.GMX_LOADING"); //$NON-NLS-1$
 		file.format = ProjectFile.FormatFlavor.GMX;
-		if (documentBuilderFactory == null)
-			documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		if (documentBuilder == null)
-			try
-				{
-				documentBuilder = documentBuilderFactory.newDocumentBuilder();
-				}
-			catch (ParserConfigurationException e1)
-				{
-				throw new GmFormatException(file,e1);
-				}
+		ForkJoinPool pool = null;
 		RefList<Timeline> timeids = new RefList<Timeline>(Timeline.class); // timeline ids
 		RefList<GmObject> objids = new RefList<GmObject>(GmObject.class); // object ids
 		RefList<Room> rmids = new RefList<Room>(Room.class); // room id
@@ -264,6 +345,7 @@ public final class GMXFileReader
 			Document document = GMXFileReader.parseDocumentUnchecked(file, uri.toString());
 
 			ProjectFileContext c = new ProjectFileContext(file,document,timeids,objids,rmids);
+			if (parallel) preloadDocuments(c,pool = new ForkJoinPool());
 
 			interfaceProvider.setProgress(0,"ProgressDialog.SPRITES"); //$NON-NLS-1$
 			readGroup(c,root,Sprite.class);
@@ -304,6 +386,10 @@ public final class GMXFileReader
 				i.invoke();
 			postpone.clear();
 
+			// Everything on disk now matches what was read, so the first save can skip it
+			String directory = new File(uri.getPath().replace("\\","/")).getParent(); //$NON-NLS-1$ //$NON-NLS-2$
+			GMXFileWriter.trackSavedResources(file,directory,root);
+
 			interfaceProvider.setProgress(160,"ProgressDialog.FINISHED"); //$NON-NLS-1$
 			}
 		catch (Exception e)
@@ -313,6 +399,7 @@ public final class GMXFileReader
 			}
 		finally
 			{
+			if (pool != null) pool.shutdownNow();
 			try
 				{
 				if (stream != null)
@@ -329,6 +416,275 @@ public final class GMXFileReader
 			}
 		}
 
+	/**
+	 * Queues the XML file of every resource in the project, along with the images it refers to,
+	 * to be parsed and decoded on the pool. Streamed XML files are only read into memory.
+	 * Resources pick them up from the context when they are read and fall back to reading
+	 * the files themselves when something went wrong.
+	 */
+	private static void preloadDocuments(ProjectFileContext c, ForkJoinPool pool)
+		{
+		final ProjectFile f = c.f;
+		final Map<String,BufferedImage> images = c.images = new ConcurrentHashMap<String,BufferedImage>();
+		// The images decoded along with each document, to be dropped along with it
+		final Map<String,List<String>> imagesOf = new ConcurrentHashMap<String,List<String>>();
+		final Set<String> droppedPaths = Collections.newSetFromMap(
+				new ConcurrentHashMap<String,Boolean>());
+		c.documents = new Preloader<Document>(pool)
+			{
+				@Override
+				void dropped(String path)
+					{
+					droppedPaths.add(path);
+					List<String> paths = imagesOf.remove(path);
+					if (paths != null) images.keySet().removeAll(paths);
+					}
+			};
+
+		for (Map.Entry<String,String> suffix : documentSuffixes.entrySet())
+			{
+			NodeList list = c.in.getElementsByTagName(suffix.getKey());
+			for (int i = 0; i < list.getLength(); i++)
+				{
+				final String path = f.getDirectory() + '/'
+						+ Util.getPOSIXPath(list.item(i).getTextContent()) + suffix.getValue();
+				c.documents.add(path,new Callable<Document>()
+					{
+						public Document call() throws GmFormatException
+							{
+							Document doc = parseDocumentUnchecked(f,path);
+							List<String> paths = new ArrayList<String>();
+							if (path.endsWith(".sprite.gmx")) //$NON-NLS-1$
+								preloadImages(images,paths,doc,"frame", //$NON-NLS-1$
+										f.getDirectory() + "/sprites/"); //$NON-NLS-1$
+							else if (path.endsWith(".background.gmx")) //$NON-NLS-1$
+								preloadImages(images,paths,doc,"data", //$NON-NLS-1$
+										f.getDirectory() + "/background/"); //$NON-NLS-1$
+							imagesOf.put(path,paths);
+							// Dropped while decoding, after the images were looked for
+							if (droppedPaths.contains(path)) images.keySet().removeAll(paths);
+							return doc;
+							}
+					});
+				}
+			}
+		c.documents.fill();
+		c.files = new Preloader<byte[]>(pool);
+		for (Map.Entry<String,String> suffix : streamedSuffixes.entrySet())
+			{
+			NodeList list = c.in.getElementsByTagName(suffix.getKey());
+			for (int i = 0; i < list.getLength(); i++)
+				{
+				final String path = f.getDirectory() + '/'
+						+ Util.getPOSIXPath(list.item(i).getTextContent()) + suffix.getValue();
+				c.files.add(path,new Callable<byte[]>()
+					{
+						public byte[] call() throws IOException
+							{
+							return Files.readAllBytes(new File(path).toPath());
+							}
+					});
+				}
+			}
+		c.files.fill();
+		}
+
+	/**
+	 * Runs tasks on a pool in the order they were added, but only so many of them ahead of the
+	 * reader taking their results, so that results waiting to be taken cannot pile up.
+	 */
+	private static class Preloader<T>
+		{
+		private final ForkJoinPool pool;
+		private final int ahead;
+		private final Map<String,Callable<T>> queued = new LinkedHashMap<String,Callable<T>>();
+		private final Map<String,Future<T>> pending = new LinkedHashMap<String,Future<T>>();
+
+		Preloader(ForkJoinPool pool)
+			{
+			this.pool = pool;
+			ahead = 2 * pool.getParallelism();
+			}
+
+		/** Called for each task that is cancelled or skipped, so that what it left can go too. */
+		void dropped(String key)
+			{
+			// Nothing by default
+			}
+
+		synchronized void add(String key, Callable<T> task)
+			{
+			if (!queued.containsKey(key)) queued.put(key,task);
+			}
+
+		/** Submits queued tasks until as many are pending as may be ahead of the reader. */
+		synchronized void fill()
+			{
+			Iterator<Map.Entry<String,Callable<T>>> i = queued.entrySet().iterator();
+			while (pending.size() < ahead && i.hasNext())
+				{
+				Map.Entry<String,Callable<T>> e = i.next();
+				i.remove();
+				pending.put(e.getKey(),pool.submit(e.getValue()));
+				}
+			}
+
+		/**
+		 * Takes the result for the given key, or returns null if it was not preloaded. Anything
+		 * queued before the key was passed over by the reader, so it is dropped.
+		 */
+		synchronized Future<T> take(String key)
+			{
+			Future<T> taken = null;
+			if (pending.containsKey(key))
+				{
+				Iterator<Map.Entry<String,Future<T>>> i = pending.entrySet().iterator();
+				while (taken == null)
+					{
+					Map.Entry<String,Future<T>> e = i.next();
+					i.remove();
+					if (e.getKey().equals(key))
+						taken = e.getValue();
+					else
+						{
+						e.getValue().cancel(false);
+						dropped(e.getKey());
+						}
+					}
+				}
+			else if (queued.containsKey(key))
+				{
+				for (Map.Entry<String,Future<T>> e : pending.entrySet())
+					{
+					e.getValue().cancel(false);
+					dropped(e.getKey());
+					}
+				pending.clear();
+				Iterator<String> i = queued.keySet().iterator();
+				while (!i.next().equals(key))
+					i.remove();
+				i.remove();
+				}
+			fill();
+			return taken;
+			}
+		}
+
+	/** Decodes the images the given document refers to, adding their paths to the given list. */
+	private static void preloadImages(Map<String,BufferedImage> images, List<String> paths,
+			Document doc, String tag, String path)
+		{
+		NodeList list = doc.getElementsByTagName(tag);
+		for (int i = 0; i < list.getLength(); i++)
+			{
+			File imgfile = new File(path + Util.getPOSIXPath(list.item(i).getTextContent()));
+			try
+				{
+				BufferedImage img = imgfile.exists() ? ImageIO.read(imgfile) : null;
+				if (img != null)
+					{
+					images.put(imgfile.getPath(),img);
+					paths.add(imgfile.getPath());
+					}
+				}
+			catch (Exception e)
+				{
+				// Leave it to the resource reader, which reports the error in order
+				}
+			}
+		}
+
+	private static BufferedImage readImage(ProjectFileContext c, File imgfile) throws IOException
+		{
+		BufferedImage img = c.images == null ? null : c.images.remove(imgfile.getPath());
+		return img != null ? img : ImageIO.read(imgfile);
+		}
+
+	private static <T>T join(ProjectFile f, Future<T> future) throws GmFormatException
+		{
+		try
+			{
+			return future.get();
+			}
+		catch (InterruptedException e)
+			{
+			throw new GmFormatException(f,e);
+			}
+		catch (ExecutionException e)
+			{
+			Throwable t = e.getCause();
+			if (t instanceof GmFormatException) throw (GmFormatException) t;
+			if (t instanceof RuntimeException) throw (RuntimeException) t;
+			if (t instanceof Error) throw (Error) t;
+			throw new GmFormatException(f,(Exception) t);
+			}
+		}
+
+	/** Opens a streamed resource file, using its contents if they were read ahead of time. */
+	private static InputStream openResourceFile(ProjectFileContext c, String path)
+			throws IOException,GmFormatException
+		{
+		Future<byte[]> preloaded = c.files == null ? null : c.files.take(path);
+		if (preloaded != null) return new ByteArrayInputStream(join(c.f,preloaded));
+		return new BufferedInputStream(new FileInputStream(path));
+		}
+
+	/**
+	 * Creates a streaming reader over the given resource file, positioned on its root element.
+	 * The reader does not close the stream.
+	 */
+	private static XMLStreamReader createStreamReader(String path, InputStream is)
+			throws XMLStreamException
+		{
+		if (xmlInputFactory == null)
+			{
+			xmlInputFactory = XMLInputFactory.newInstance();
+			xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING,true);
+			}
+		XMLStreamReader in = xmlInputFactory.createXMLStreamReader(path,is);
+		in.nextTag();
+		return in;
+		}
+
+	/**
+	 * Returns all the text inside the element the reader is positioned on, like
+	 * Node.getTextContent(), and leaves the reader on the element's end tag.
+	 */
+	private static String elementText(XMLStreamReader in) throws XMLStreamException
+		{
+		StringBuilder text = new StringBuilder();
+		for (int depth = 1; depth > 0;)
+			{
+			switch (in.next())
+				{
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					text.append(in.getTextCharacters(),in.getTextStart(),in.getTextLength());
+					break;
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				}
+			}
+		return text.toString();
+		}
+
+	/** Moves the reader past the element it is positioned on, to the element's end tag. */
+	private static void skipElement(XMLStreamReader in) throws XMLStreamException
+		{
+		for (int depth = 1; depth > 0;)
+			{
+			int event = in.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+			}
+		}
+
 	private static void readGroup(ProjectFileContext c, ResNode root, Class<?> kind)
 		{
 		Document in = c.in;
@@ -420,7 +776,7 @@ public final class GMXFileReader
 
 				String path = c.f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-				Document setdoc = GMXFileReader.parseDocumentChecked(c.f, path + ".config.gmx"); //$NON-NLS-1$
+				Document setdoc = GMXFileReader.parseDocumentChecked(c, path + ".config.gmx"); //$NON-NLS-1$
 				if (setdoc == null) continue;
 
 				pSet.put(
@@ -610,7 +966,7 @@ public final class GMXFileReader
 		node.add(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document sprdoc = GMXFileReader.parseDocumentChecked(f, path + ".sprite.gmx"); //$NON-NLS-1$
+		Document sprdoc = GMXFileReader.parseDocumentChecked(c, path + ".sprite.gmx"); //$NON-NLS-1$
 		if (sprdoc == null) return;
 
 		spr.put(PSprite.TRANSPARENT,false);
@@ -665,7 +1021,7 @@ public final class GMXFileReader
 				{
 				try
 					{
-					img = ImageIO.read(imgfile);
+					img = readImage(c,imgfile);
 					spr.subImages.add(img);
 					}
 				catch (IOException e)
@@ -688,7 +1044,7 @@ public final class GMXFileReader
 		snd.setNode(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document snddoc = GMXFileReader.parseDocumentChecked(f, path + ".sound.gmx"); //$NON-NLS-1$
+		Document snddoc = GMXFileReader.parseDocumentChecked(c, path + ".sound.gmx"); //$NON-NLS-1$
 		if (snddoc == null) return;
 
 		snd.put(PSound.FILE_NAME,snddoc.getElementsByTagName("origname").item(0).getTextContent()); //$NON-NLS-1$
@@ -725,14 +1081,13 @@ public final class GMXFileReader
 			{
 			String fname = data.item(0).getTextContent();
 			fname = f.getDirectory() + "/sound/audio/" + fname;
-			try
-				{
-				snd.data = Util.readFully(fname);
-				}
-			catch (IOException e)
-				{
-				interfaceProvider.handleException(new GmFormatException(c.f, "failed to read: " + fname, e));
-				}
+			// Left on disk until the sound is played, edited or saved elsewhere
+			File audio = new File(fname);
+			if (audio.isFile())
+				snd.setData(new LazyData(audio));
+			else
+				interfaceProvider.handleException(new GmFormatException(c.f, "failed to read: " + fname,
+						new FileNotFoundException(fname)));
 			}
 		}
 
@@ -747,7 +1102,7 @@ public final class GMXFileReader
 		node.add(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document bkgdoc = GMXFileReader.parseDocumentChecked(f, path + ".background.gmx"); //$NON-NLS-1$
+		Document bkgdoc = GMXFileReader.parseDocumentChecked(c, path + ".background.gmx"); //$NON-NLS-1$
 		if (bkgdoc == null) return;
 
 		bkg.put(PBackground.USE_AS_TILESET,
@@ -786,7 +1141,7 @@ public final class GMXFileReader
 			{
 			try
 				{
-				img = ImageIO.read(imgfile);
+				img = readImage(c,imgfile);
 				bkg.setBackgroundImage(img);
 				}
 			catch (IOException e)
@@ -807,7 +1162,7 @@ public final class GMXFileReader
 		node.add(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document pthdoc = GMXFileReader.parseDocumentChecked(f, path + ".path.gmx"); //$NON-NLS-1$
+		Document pthdoc = GMXFileReader.parseDocumentChecked(c, path + ".path.gmx"); //$NON-NLS-1$
 		if (pthdoc == null) return;
 
 		pth.put(PPath.SMOOTH,
@@ -955,7 +1310,7 @@ public final class GMXFileReader
 		node.add(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document fntdoc = GMXFileReader.parseDocumentChecked(f, path + ".font.gmx"); //$NON-NLS-1$
+		Document fntdoc = GMXFileReader.parseDocumentChecked(c, path + ".font.gmx"); //$NON-NLS-1$
 		if (fntdoc == null) return;
 
 		fnt.put(PFont.FONT_NAME,fntdoc.getElementsByTagName("name").item(0).getTextContent()); //$NON-NLS-1$
@@ -1014,7 +1369,7 @@ public final class GMXFileReader
 		node.add(rnode);
 		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
 
-		Document tmldoc = GMXFileReader.parseDocumentChecked(f, path + ".timeline.gmx"); //$NON-NLS-1$
+		Document tmldoc = GMXFileReader.parseDocumentChecked(c, path + ".timeline.gmx"); //$NON-NLS-1$
 		if (tmldoc == null) return;
 
 		//Iterate the moments and load the actions
@@ -1057,12 +1412,55 @@ public final class GMXFileReader
 		String fileName = new File(Util.getPOSIXPath(cNode.getTextContent())).getName();
 		obj.setName(fileName);
 
-		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
+		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent()) + ".object.gmx"; //$NON-NLS-1$
 
-		Document objdoc = GMXFileReader.parseDocumentChecked(f, path + ".object.gmx"); //$NON-NLS-1$
-		if (objdoc == null) return;
+		// Simple properties are collected first, events and shape points are read as they come
+		Map<String,String> values = new HashMap<String,String>();
+		try (InputStream is = openResourceFile(c,path))
+			{
+			XMLStreamReader in = createStreamReader(path,is);
+			while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+				String name = in.getLocalName();
+				if (name.equals("events")) //$NON-NLS-1$
+					{
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+						readEvent(c,obj,in);
+					}
+				else if (name.equals("PhysicsShapePoints")) //$NON-NLS-1$
+					{
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+						{
+						String[] coords = elementText(in).split(","); //$NON-NLS-1$
+						obj.shapePoints.add(new ShapePoint(Integer.parseInt(coords[0]),
+								Integer.parseInt(coords[1])));
+						}
+					}
+				else
+					{
+					String text = elementText(in);
+					if (!values.containsKey(name)) values.put(name,text);
+					}
+				}
+			in.close();
+			}
+		catch (XMLStreamException e)
+			{
+			interfaceProvider.handleException(new GmFormatException(f, "failed to parse: " + path, e));
+			return;
+			}
+		catch (IOException e)
+			{
+			interfaceProvider.handleException(new GmFormatException(f, "failed to read: " + path, e));
+			return;
+			}
+		catch (GmFormatException e)
+			{
+			interfaceProvider.handleException(e);
+			return;
+			}
 
-		final String sprname = objdoc.getElementsByTagName("spriteName").item(0).getTextContent(); //$NON-NLS-1$
+		final String sprname = values.get("spriteName"); //$NON-NLS-1$
 		if (!sprname.equals("<undefined>"))
 			{
 			postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Sprite.class), obj.properties, PGmObject.SPRITE, sprname));
@@ -1072,7 +1470,7 @@ public final class GMXFileReader
 			obj.put(PGmObject.SPRITE,null);
 			}
 
-		final String mskname = objdoc.getElementsByTagName("maskName").item(0).getTextContent(); //$NON-NLS-1$
+		final String mskname = values.get("maskName"); //$NON-NLS-1$
 		if (!mskname.equals("<undefined>"))
 			{
 			postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Sprite.class), obj.properties, PGmObject.MASK, mskname));
@@ -1082,7 +1480,7 @@ public final class GMXFileReader
 			obj.put(PGmObject.MASK,null);
 			}
 
-		final String parname = objdoc.getElementsByTagName("parentName").item(0).getTextContent(); //$NON-NLS-1$
+		final String parname = values.get("parentName"); //$NON-NLS-1$
 		if (!parname.equals("<undefined>") && !parname.equals("self"))
 			{
 			postpone.add(new DefaultPostponedRef<>(f.resMap.getList(GmObject.class), obj.properties, PGmObject.PARENT, parname));
@@ -1092,102 +1490,107 @@ public final class GMXFileReader
 			obj.put(PGmObject.PARENT,null);
 			}
 
-		obj.put(PGmObject.SOLID,
-				Integer.parseInt(objdoc.getElementsByTagName("solid").item(0).getTextContent()) != 0); //$NON-NLS-1$
-		obj.put(PGmObject.VISIBLE,
-				Integer.parseInt(objdoc.getElementsByTagName("visible").item(0).getTextContent()) != 0); //$NON-NLS-1$
-		obj.put(PGmObject.DEPTH,
-				Integer.parseInt(objdoc.getElementsByTagName("depth").item(0).getTextContent())); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PERSISTENT,
-				Integer.parseInt(objdoc.getElementsByTagName("persistent").item(0).getTextContent()) != 0); //$NON-NLS-1$
+		obj.put(PGmObject.SOLID,Integer.parseInt(values.get("solid")) != 0); //$NON-NLS-1$
+		obj.put(PGmObject.VISIBLE,Integer.parseInt(values.get("visible")) != 0); //$NON-NLS-1$
+		obj.put(PGmObject.DEPTH,Integer.parseInt(values.get("depth"))); //$NON-NLS-1$
+		obj.put(PGmObject.PERSISTENT,Integer.parseInt(values.get("persistent")) != 0); //$NON-NLS-1$
 
-		// Now that properties are loaded iterate the events and load the actions
-		NodeList frList = objdoc.getElementsByTagName("event"); //$NON-NLS-1$
-		for (int ii = 0; ii < frList.getLength(); ii++)
+		obj.put(PGmObject.PHYSICS_OBJECT,Integer.parseInt(values.get("PhysicsObject")) != 0); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_SENSOR,
+				Integer.parseInt(values.get("PhysicsObjectSensor")) != 0); //$NON-NLS-1$
+		int shapekind = Integer.parseInt(values.get("PhysicsObjectShape")); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_SHAPE,ProjectFile.PHYSICS_SHAPE[shapekind]);
+		obj.put(PGmObject.PHYSICS_DENSITY,
+				Double.parseDouble(values.get("PhysicsObjectDensity"))); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_RESTITUTION,
+				Double.parseDouble(values.get("PhysicsObjectRestitution"))); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_GROUP,Integer.parseInt(values.get("PhysicsObjectGroup"))); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_DAMPING_LINEAR,
+				Double.parseDouble(values.get("PhysicsObjectLinearDamping"))); //$NON-NLS-1$
+		obj.put(PGmObject.PHYSICS_DAMPING_ANGULAR,
+				Double.parseDouble(values.get("PhysicsObjectAngularDamping"))); //$NON-NLS-1$
+		// NOTE: Some versions of the format did not have all of the physics properties.
+		// It is the same for GMK 820/821 as well.
+		String friction = values.get("PhysicsObjectFriction"); //$NON-NLS-1$
+		if (friction != null)
 			{
-			Node fnode = frList.item(ii);
-			final Event ev = new Event();
+			obj.put(PGmObject.PHYSICS_FRICTION,Double.parseDouble(friction));
+			obj.put(PGmObject.PHYSICS_AWAKE,
+					Integer.parseInt(values.get("PhysicsObjectAwake")) != 0); //$NON-NLS-1$
+			obj.put(PGmObject.PHYSICS_KINEMATIC,
+					Integer.parseInt(values.get("PhysicsObjectKinematic")) != 0); //$NON-NLS-1$
+			}
+
+		ResNode rnode = new ResNode(obj.getName(),ResNode.STATUS_SECONDARY,GmObject.class,obj.reference);
+		node.add(rnode);
+		}
+
+	/** Reads one <code>event</code> element of an object and the actions in it. */
+	private static void readEvent(ProjectFileContext c, GmObject obj, XMLStreamReader in)
+			throws XMLStreamException
+		{
+		final ProjectFile f = c.f;
+		final Event ev = new Event();
 
-			ev.mainId = Integer.parseInt(fnode.getAttributes().getNamedItem("eventtype").getTextContent()); //$NON-NLS-1$
-			MainEvent me = obj.mainEvents.get(ev.mainId);
-			me.events.add(0,ev);
-			if (ev.mainId == MainEvent.EV_COLLISION)
+		ev.mainId = Integer.parseInt(in.getAttributeValue(null,"eventtype")); //$NON-NLS-1$
+		MainEvent me = obj.mainEvents.get(ev.mainId);
+		me.events.add(0,ev);
+		if (ev.mainId == MainEvent.EV_COLLISION)
+			{
+			final String colname = in.getAttributeValue(null,"ename"); //$NON-NLS-1$
+			PostponedRef pr = new PostponedRef()
 				{
-				final String colname = fnode.getAttributes().getNamedItem("ename").getTextContent(); //$NON-NLS-1$
-				PostponedRef pr = new PostponedRef()
-					{
-						public boolean invoke()
+					public boolean invoke()
+						{
+						ResourceList<GmObject> list = f.resMap.getList(GmObject.class);
+						if (list == null)
 							{
-							ResourceList<GmObject> list = f.resMap.getList(GmObject.class);
-							if (list == null)
-								{
-								return false;
-								}
-							GmObject col = list.get(colname);
-							if (col == null)
-								{
-								return false;
-								}
-							ev.other = col.reference;
-							return true;
+							return false;
 							}
-					};
-				postpone.add(pr);
-				}
-			else
-				{
-				ev.id = Integer.parseInt(fnode.getAttributes().getNamedItem("enumb").getTextContent()); //$NON-NLS-1$
-				}
-			readActions(c,ev,"INOBJECTACTION",obj.getId(),ii * 1000 + ev.id,fnode.getChildNodes()); //$NON-NLS-1$
-			}
-		obj.put(
-				PGmObject.PHYSICS_OBJECT,
-				Integer.parseInt(objdoc.getElementsByTagName("PhysicsObject").item(0).getTextContent()) != 0); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PHYSICS_SENSOR,
-				Integer.parseInt(objdoc.getElementsByTagName("PhysicsObjectSensor").item(0).getTextContent()) != 0); //$NON-NLS-1$
-		int shapekind = Integer.parseInt(objdoc.getElementsByTagName("PhysicsObjectShape").item(0).getTextContent()); //$NON-NLS-1$
-		obj.put(PGmObject.PHYSICS_SHAPE,ProjectFile.PHYSICS_SHAPE[shapekind]);
-		obj.put(
-				PGmObject.PHYSICS_DENSITY,
-				Double.parseDouble(objdoc.getElementsByTagName("PhysicsObjectDensity").item(0).getTextContent())); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PHYSICS_RESTITUTION,
-				Double.parseDouble(objdoc.getElementsByTagName("PhysicsObjectRestitution").item(0).getTextContent())); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PHYSICS_GROUP,
-				Integer.parseInt(objdoc.getElementsByTagName("PhysicsObjectGroup").item(0).getTextContent())); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PHYSICS_DAMPING_LINEAR,
-				Double.parseDouble(objdoc.getElementsByTagName("PhysicsObjectLinearDamping").item(0).getTextContent())); //$NON-NLS-1$
-		obj.put(
-				PGmObject.PHYSICS_DAMPING_ANGULAR,
-				Double.parseDouble(objdoc.getElementsByTagName("PhysicsObjectAngularDamping").item(0).getTextContent())); //$NON-NLS-1$
-		// NOTE: Some versions of the format did not have all of the physics properties.
-		// It is the same for GMK 820/821 as well.
-		Node fNode = objdoc.getElementsByTagName("PhysicsObjectFriction").item(0); //$NON-NLS-1$
-		if (fNode != null)
+						GmObject col = list.get(colname);
+						if (col == null)
+							{
+							return false;
+							}
+						ev.other = col.reference;
+						return true;
+						}
+				};
+			postpone.add(pr);
+			}
+		else
 			{
-			obj.put(PGmObject.PHYSICS_FRICTION,Double.parseDouble(fNode.getTextContent()));
-			obj.put(
-					PGmObject.PHYSICS_AWAKE,
-					Integer.parseInt(objdoc.getElementsByTagName("PhysicsObjectAwake").item(0).getTextContent()) != 0); //$NON-NLS-1$
-			obj.put(
-					PGmObject.PHYSICS_KINEMATIC,
-					Integer.parseInt(objdoc.getElementsByTagName("PhysicsObjectKinematic").item(0).getTextContent()) != 0); //$NON-NLS-1$
+			ev.id = Integer.parseInt(in.getAttributeValue(null,"enumb")); //$NON-NLS-1$
 			}
 
-		NodeList pointNodes = objdoc.getElementsByTagName("point"); //$NON-NLS-1$
-		for (int p = 0; p < pointNodes.getLength(); p++)
+		while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 			{
-			String[] coords = pointNodes.item(p).getTextContent().split(","); //$NON-NLS-1$
-			obj.shapePoints.add(new ShapePoint(Integer.parseInt(coords[0]),
-					Integer.parseInt(coords[1])));
+			ActionEntry entry = new ActionEntry();
+			while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+				if (in.getLocalName().equals("arguments")) //$NON-NLS-1$
+					{
+					List<Argument> args = new ArrayList<Argument>();
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+						{
+						Argument argument = new Argument((byte) 0);
+						while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+							{
+							String name = in.getLocalName();
+							readArgumentProperty(f,argument,name,elementText(in));
+							}
+						args.add(argument);
+						}
+					entry.args = args.toArray(new Argument[args.size()]);
+					}
+				else
+					{
+					String name = in.getLocalName();
+					readActionProperty(entry,name,elementText(in));
+					}
+				}
+			addAction(f,ev,entry);
 			}
-
-		ResNode rnode = new ResNode(obj.getName(),ResNode.STATUS_SECONDARY,GmObject.class,obj.reference);
-		node.add(rnode);
 		}
 
 	private static void readRoom(ProjectFileContext c, ResNode node, Node cNode)
@@ -1203,385 +1606,360 @@ public final class GMXFileReader
 		rmn.setName(fileName);
 		ResNode rnode = new ResNode(rmn.getName(),ResNode.STATUS_SECONDARY,Room.class,rmn.reference);
 		node.add(rnode);
-		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent());
-
-		Document rmndoc = GMXFileReader.parseDocumentChecked(f, path + ".room.gmx"); //$NON-NLS-1$
-		if (rmndoc == null) return;
-
-		String caption = rmndoc.getElementsByTagName("caption").item(0).getTextContent(); //$NON-NLS-1$
-		rmn.put(PRoom.CAPTION,caption);
+		String path = f.getDirectory() + '/' + Util.getPOSIXPath(cNode.getTextContent()) + ".room.gmx"; //$NON-NLS-1$
 
-		NodeList cnodes = rmndoc.getElementsByTagName("room").item(0).getChildNodes(); //$NON-NLS-1$
-		for (int x = 0; x < cnodes.getLength(); x++)
+		try (Room.Batch batch = rmn.batch(); InputStream is = openResourceFile(c,path))
 			{
-			Node pnode = cnodes.item(x);
-			String pname = pnode.getNodeName();
-			if (pname.equals("#text")) //$NON-NLS-1$
-				{
-				continue;
-				}
-			else if (pname.equals("caption")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.CAPTION,pnode.getTextContent());
-				}
-			else if (pname.equals("width")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.WIDTH,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("height")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.HEIGHT,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("vsnap")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.SNAP_Y,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("hsnap")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.SNAP_X,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("isometric")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.ISOMETRIC,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("speed")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.SPEED,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("persistent")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PERSISTENT,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("colour")) //$NON-NLS-1$
-				{
-				int col = Integer.parseInt(pnode.getTextContent());
-				rmn.put(PRoom.BACKGROUND_COLOR,Util.convertGmColor(col));
-				}
-			else if (pname.equals("showcolour")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.DRAW_BACKGROUND_COLOR,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("code")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.CREATION_CODE,pnode.getTextContent());
-				}
-			else if (pname.equals("enableViews")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.VIEWS_ENABLED,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("clearViewBackground")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.VIEWS_CLEAR,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("makerSettings")) //$NON-NLS-1$
+			XMLStreamReader in = createStreamReader(path,is);
+			while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 				{
-				NodeList msnodes = pnode.getChildNodes();
-				for (int y = 0; y < msnodes.getLength(); y++)
+				String pname = in.getLocalName();
+				if (pname.equals("makerSettings")) //$NON-NLS-1$
 					{
-					Node mnode = msnodes.item(y);
-					String mname = mnode.getNodeName();
-					if (mname.equals("#text")) //$NON-NLS-1$
-						{
-						continue;
-						}
-					else if (mname.equals("isSet")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.REMEMBER_WINDOW_SIZE,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("w")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.EDITOR_WIDTH,Integer.parseInt(mnode.getTextContent()));
-						}
-					else if (mname.equals("h")) //$NON-NLS-1$
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
+						readRoomMakerSetting(rmn,in.getLocalName(),elementText(in));
+					}
+				else if (pname.equals("backgrounds")) //$NON-NLS-1$
+					{
+					int bkgnum = 0;
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 						{
-						rmn.put(PRoom.EDITOR_HEIGHT,Integer.parseInt(mnode.getTextContent()));
+						readBackgroundDef(f,rmn.backgroundDefs.get(bkgnum),in);
+						bkgnum += 1;
+						skipElement(in);
 						}
-					else if (mname.equals("showGrid")) //$NON-NLS-1$
+					}
+				else if (pname.equals("views")) //$NON-NLS-1$
+					{
+					int viewnum = 0;
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 						{
-						rmn.put(PRoom.SHOW_GRID,Integer.parseInt(mnode.getTextContent()) != 0);
+						readView(f,rmn.views.get(viewnum),in);
+						viewnum += 1;
+						skipElement(in);
 						}
-					else if (mname.equals("showObjects")) //$NON-NLS-1$
+					}
+				else if (pname.equals("instances")) //$NON-NLS-1$
+					{
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 						{
-						rmn.put(PRoom.SHOW_OBJECTS,Integer.parseInt(mnode.getTextContent()) != 0);
+						if (in.getLocalName().equals("instance") && in.getAttributeCount() > 0) //$NON-NLS-1$
+							readInstance(f,rmn,in);
+						skipElement(in);
 						}
-					else if (mname.equals("showTiles")) //$NON-NLS-1$
+					}
+				else if (pname.equals("tiles")) //$NON-NLS-1$
+					{
+					while (in.nextTag() == XMLStreamConstants.START_ELEMENT)
 						{
-						rmn.put(PRoom.SHOW_TILES,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("showBackgrounds")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.SHOW_BACKGROUNDS,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("showForegrounds")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.SHOW_FOREGROUNDS,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("showViews")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.SHOW_VIEWS,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("deleteUnderlyingObj")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.DELETE_UNDERLYING_OBJECTS,
-								Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("deleteUnderlyingTiles")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.DELETE_UNDERLYING_TILES,Integer.parseInt(mnode.getTextContent()) != 0);
-						}
-					else if (mname.equals("page")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.CURRENT_TAB,Integer.parseInt(mnode.getTextContent()));
-						}
-					else if (mname.equals("xoffset")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.SCROLL_BAR_X,Integer.parseInt(mnode.getTextContent()));
-						}
-					else if (mname.equals("yoffset")) //$NON-NLS-1$
-						{
-						rmn.put(PRoom.SCROLL_BAR_Y,Integer.parseInt(mnode.getTextContent()));
+						readTile(f,rmn,in);
+						skipElement(in);
 						}
 					}
-				}
-			else if (pname.equals("backgrounds")) //$NON-NLS-1$
-				{
-				NodeList bgnodes = pnode.getChildNodes();
-				int bkgnum = 0;
-				for (int y = 0; y < bgnodes.getLength(); y++)
-					{
-					Node bnode = bgnodes.item(y);
-					String bname = bnode.getNodeName();
-					if (bname.equals("#text")) //$NON-NLS-1$
-						{
-						continue;
-						}
-					final BackgroundDef bkg = rmn.backgroundDefs.get(bkgnum);
-					bkgnum += 1;
-
-					bkg.properties.put(
-							PBackgroundDef.VISIBLE,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("visible").getTextContent()) != 0); //$NON-NLS-1$
-					final String bkgname = bnode.getAttributes().getNamedItem("name").getTextContent(); //$NON-NLS-1$
-
-					postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Background.class), bkg.properties, PBackgroundDef.BACKGROUND, bkgname));
-
-					bkg.properties.put(
-							PBackgroundDef.FOREGROUND,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("foreground").getTextContent()) != 0); //$NON-NLS-1$
-					bkg.properties.put(
-							PBackgroundDef.TILE_HORIZ,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("htiled").getTextContent()) != 0); //$NON-NLS-1$
-					bkg.properties.put(
-							PBackgroundDef.TILE_VERT,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("vtiled").getTextContent()) != 0); //$NON-NLS-1$
-					bkg.properties.put(
-							PBackgroundDef.STRETCH,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("stretch").getTextContent()) != 0); //$NON-NLS-1$
-					bkg.properties.put(PBackgroundDef.H_SPEED,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("hspeed").getTextContent())); //$NON-NLS-1$
-					bkg.properties.put(PBackgroundDef.V_SPEED,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("vspeed").getTextContent())); //$NON-NLS-1$
-					bkg.properties.put(PBackgroundDef.X,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("x").getTextContent())); //$NON-NLS-1$
-					bkg.properties.put(PBackgroundDef.Y,
-							Integer.parseInt(bnode.getAttributes().getNamedItem("y").getTextContent())); //$NON-NLS-1$
-
-					}
-				}
-			else if (pname.equals("views")) //$NON-NLS-1$
-				{
-				NodeList vinodes = pnode.getChildNodes();
-				int viewnum = 0;
-				for (int y = 0; y < vinodes.getLength(); y++)
+				else
 					{
-					Node vnode = vinodes.item(y);
-					String vname = vnode.getNodeName();
-					if (vname.equals("#text")) //$NON-NLS-1$
-						{
-						continue;
-						}
-					final View vw = rmn.views.get(viewnum);
-					viewnum += 1;
-
-					vw.properties.put(
-							PView.VISIBLE,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("visible").getTextContent()) != 0); //$NON-NLS-1$
-					final String objname = vnode.getAttributes().getNamedItem("objName").getTextContent(); //$NON-NLS-1$
-
-					postpone.add(new DefaultPostponedRef<>(f.resMap.getList(GmObject.class), vw.properties, PView.OBJECT, objname));
-
-					vw.properties.put(PView.SPEED_H,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("hspeed").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.SPEED_V,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("vspeed").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.BORDER_H,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("hborder").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.BORDER_V,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("vborder").getTextContent())); //$NON-NLS-1$
-
-					vw.properties.put(PView.PORT_H,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("hport").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.PORT_W,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("wport").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.PORT_X,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("xport").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.PORT_Y,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("yport").getTextContent())); //$NON-NLS-1$
-
-					vw.properties.put(PView.VIEW_H,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("hview").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.VIEW_W,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("wview").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.VIEW_X,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("xview").getTextContent())); //$NON-NLS-1$
-					vw.properties.put(PView.VIEW_Y,
-							Integer.parseInt(vnode.getAttributes().getNamedItem("yview").getTextContent())); //$NON-NLS-1$
+					readRoomProperty(rmn,pname,elementText(in));
 					}
 				}
-			else if (pname.equals("instances")) //$NON-NLS-1$
-				{
-				NodeList insnodes = pnode.getChildNodes();
-				for (int y = 0; y < insnodes.getLength(); y++)
-					{
-					Node inode = insnodes.item(y);
-					String iname = inode.getNodeName();
-					if (iname.equals("#text")) //$NON-NLS-1$
-						{
-						continue;
-						}
-					else if (iname.equals("instance") && inode.getAttributes().getLength() > 0) //$NON-NLS-1$
-						{
-						Instance inst = rmn.addInstance();
-
-						// TODO: Replace this with DelayedRef
-						String objname = inode.getAttributes().getNamedItem("objName").getTextContent(); //$NON-NLS-1$
-
-						// because of the way this is set up, sprites must be loaded before objects
-						GmObject temp = f.resMap.getList(GmObject.class).get(objname);
-						if (temp != null) inst.properties.put(PInstance.OBJECT,temp.reference);
-						NamedNodeMap attribs = inode.getAttributes();
-						int xx = Integer.parseInt(attribs.getNamedItem("x").getNodeValue()); //$NON-NLS-1$
-						int yy = Integer.parseInt(attribs.getNamedItem("y").getNodeValue()); //$NON-NLS-1$
-						double sx = Double.parseDouble(attribs.getNamedItem("scaleX").getNodeValue()); //$NON-NLS-1$
-						double sy = Double.parseDouble(attribs.getNamedItem("scaleY").getNodeValue()); //$NON-NLS-1$
-
-						// Read the color blending
-						if (attribs.getNamedItem("colour") != null) //$NON-NLS-1$
-							{
-							long col = Long.parseLong(attribs.getNamedItem("colour").getNodeValue()); //$NON-NLS-1$
-							Color color = Util.convertInstanceColorWithAlpha((int) col);
-							inst.setColor(color);
-							inst.setAlpha(color.getAlpha());
-							}
+			in.close();
+			}
+		catch (XMLStreamException e)
+			{
+			interfaceProvider.handleException(new GmFormatException(f, "failed to parse: " + path, e));
+			}
+		catch (IOException e)
+			{
+			interfaceProvider.handleException(new GmFormatException(f, "failed to read: " + path, e));
+			}
+		catch (GmFormatException e)
+			{
+			interfaceProvider.handleException(e);
+			}
+		}
 
-						double rot = Double.parseDouble(attribs.getNamedItem("rotation").getNodeValue()); //$NON-NLS-1$
-						inst.properties.put(PInstance.NAME, inode.getAttributes().getNamedItem("name").getNodeValue()); //$NON-NLS-1$
-
-						// NOTE: Because LGM still supports GMK, we attempt to preserve the ID which Studio
-						// will remove if it saves over the GMX, so see if the "id" attribute we added is
-						// there otherwise make up a new ID.
-						Node idNode = inode.getAttributes().getNamedItem("id"); //$NON-NLS-1$
-						int instid;
-						if (idNode != null) {
-							instid = Integer.parseInt(idNode.getNodeValue());
-							if (instid > f.lastInstanceId) {
-								f.lastInstanceId = instid;
-							}
-						} else {
-							instid = ++f.lastInstanceId;
-						}
+	private static void readRoomProperty(Room rmn, String pname, String text)
+		{
+		if (pname.equals("caption")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.CAPTION,text);
+			}
+		else if (pname.equals("width")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.WIDTH,Integer.parseInt(text));
+			}
+		else if (pname.equals("height")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.HEIGHT,Integer.parseInt(text));
+			}
+		else if (pname.equals("vsnap")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SNAP_Y,Integer.parseInt(text));
+			}
+		else if (pname.equals("hsnap")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SNAP_X,Integer.parseInt(text));
+			}
+		else if (pname.equals("isometric")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.ISOMETRIC,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("speed")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SPEED,Integer.parseInt(text));
+			}
+		else if (pname.equals("persistent")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PERSISTENT,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("colour")) //$NON-NLS-1$
+			{
+			int col = Integer.parseInt(text);
+			rmn.put(PRoom.BACKGROUND_COLOR,Util.convertGmColor(col));
+			}
+		else if (pname.equals("showcolour")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.DRAW_BACKGROUND_COLOR,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("code")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.CREATION_CODE,text);
+			}
+		else if (pname.equals("enableViews")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.VIEWS_ENABLED,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("clearViewBackground")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.VIEWS_CLEAR,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("PhysicsWorld")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_WORLD,Integer.parseInt(text) != 0);
+			}
+		else if (pname.equals("PhysicsWorldTop")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_TOP,Integer.parseInt(text));
+			}
+		else if (pname.equals("PhysicsWorldLeft")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_LEFT,Integer.parseInt(text));
+			}
+		else if (pname.equals("PhysicsWorldRight")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_RIGHT,Integer.parseInt(text));
+			}
+		else if (pname.equals("PhysicsWorldBottom")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_BOTTOM,Integer.parseInt(text));
+			}
+		else if (pname.equals("PhysicsWorldGravityX")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_GRAVITY_X,Double.parseDouble(text));
+			}
+		else if (pname.equals("PhysicsWorldGravityY")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_GRAVITY_Y,Double.parseDouble(text));
+			}
+		else if (pname.equals("PhysicsWorldPixToMeters")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.PHYSICS_PIXTOMETERS,Double.parseDouble(text));
+			}
+		}
 
-						inst.properties.put(PInstance.ID, instid);
+	private static void readRoomMakerSetting(Room rmn, String mname, String text)
+		{
+		if (mname.equals("isSet")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.REMEMBER_WINDOW_SIZE,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("w")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.EDITOR_WIDTH,Integer.parseInt(text));
+			}
+		else if (mname.equals("h")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.EDITOR_HEIGHT,Integer.parseInt(text));
+			}
+		else if (mname.equals("showGrid")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_GRID,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("showObjects")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_OBJECTS,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("showTiles")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_TILES,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("showBackgrounds")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_BACKGROUNDS,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("showForegrounds")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_FOREGROUNDS,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("showViews")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SHOW_VIEWS,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("deleteUnderlyingObj")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.DELETE_UNDERLYING_OBJECTS,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("deleteUnderlyingTiles")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.DELETE_UNDERLYING_TILES,Integer.parseInt(text) != 0);
+			}
+		else if (mname.equals("page")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.CURRENT_TAB,Integer.parseInt(text));
+			}
+		else if (mname.equals("xoffset")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SCROLL_BAR_X,Integer.parseInt(text));
+			}
+		else if (mname.equals("yoffset")) //$NON-NLS-1$
+			{
+			rmn.put(PRoom.SCROLL_BAR_Y,Integer.parseInt(text));
+			}
+		}
 
-						inst.setPosition(new Point(xx,yy));
-						inst.setScale(new Point2D.Double(sx,sy));
-						inst.setRotation(rot);
-						inst.setCreationCode(inode.getAttributes().getNamedItem("code").getNodeValue()); //$NON-NLS-1$
-						inst.setLocked(Integer.parseInt(inode.getAttributes().getNamedItem("locked").getNodeValue()) != 0); //$NON-NLS-1$
-						}
-					}
-				}
-			else if (pname.equals("tiles")) //$NON-NLS-1$
-				{
-				NodeList tinodes = pnode.getChildNodes();
-				for (int p = 0; p < tinodes.getLength(); p++)
-					{
-					Node tnode = tinodes.item(p);
-					String tname = tnode.getNodeName();
-					if (tname.equals("#text")) //$NON-NLS-1$
-						{
-						continue;
-						}
-					final Tile tile = new Tile(rmn);
+	private static void readBackgroundDef(ProjectFile f, BackgroundDef bkg, XMLStreamReader in)
+		{
+		bkg.properties.put(PBackgroundDef.VISIBLE,
+				Integer.parseInt(in.getAttributeValue(null,"visible")) != 0); //$NON-NLS-1$
+		final String bkgname = in.getAttributeValue(null,"name"); //$NON-NLS-1$
+
+		postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Background.class), bkg.properties, PBackgroundDef.BACKGROUND, bkgname));
+
+		bkg.properties.put(PBackgroundDef.FOREGROUND,
+				Integer.parseInt(in.getAttributeValue(null,"foreground")) != 0); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.TILE_HORIZ,
+				Integer.parseInt(in.getAttributeValue(null,"htiled")) != 0); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.TILE_VERT,
+				Integer.parseInt(in.getAttributeValue(null,"vtiled")) != 0); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.STRETCH,
+				Integer.parseInt(in.getAttributeValue(null,"stretch")) != 0); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.H_SPEED,
+				Integer.parseInt(in.getAttributeValue(null,"hspeed"))); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.V_SPEED,
+				Integer.parseInt(in.getAttributeValue(null,"vspeed"))); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.X,Integer.parseInt(in.getAttributeValue(null,"x"))); //$NON-NLS-1$
+		bkg.properties.put(PBackgroundDef.Y,Integer.parseInt(in.getAttributeValue(null,"y"))); //$NON-NLS-1$
+		}
 
-					NamedNodeMap attribs = tnode.getAttributes();
+	private static void readView(ProjectFile f, View vw, XMLStreamReader in)
+		{
+		vw.properties.put(PView.VISIBLE,
+				Integer.parseInt(in.getAttributeValue(null,"visible")) != 0); //$NON-NLS-1$
+		final String objname = in.getAttributeValue(null,"objName"); //$NON-NLS-1$
+
+		postpone.add(new DefaultPostponedRef<>(f.resMap.getList(GmObject.class), vw.properties, PView.OBJECT, objname));
+
+		vw.properties.put(PView.SPEED_H,Integer.parseInt(in.getAttributeValue(null,"hspeed"))); //$NON-NLS-1$
+		vw.properties.put(PView.SPEED_V,Integer.parseInt(in.getAttributeValue(null,"vspeed"))); //$NON-NLS-1$
+		vw.properties.put(PView.BORDER_H,Integer.parseInt(in.getAttributeValue(null,"hborder"))); //$NON-NLS-1$
+		vw.properties.put(PView.BORDER_V,Integer.parseInt(in.getAttributeValue(null,"vborder"))); //$NON-NLS-1$
+
+		vw.properties.put(PView.PORT_H,Integer.parseInt(in.getAttributeValue(null,"hport"))); //$NON-NLS-1$
+		vw.properties.put(PView.PORT_W,Integer.parseInt(in.getAttributeValue(null,"wport"))); //$NON-NLS-1$
+		vw.properties.put(PView.PORT_X,Integer.parseInt(in.getAttributeValue(null,"xport"))); //$NON-NLS-1$
+		vw.properties.put(PView.PORT_Y,Integer.parseInt(in.getAttributeValue(null,"yport"))); //$NON-NLS-1$
+
+		vw.properties.put(PView.VIEW_H,Integer.parseInt(in.getAttributeValue(null,"hview"))); //$NON-NLS-1$
+		vw.properties.put(PView.VIEW_W,Integer.parseInt(in.getAttributeValue(null,"wview"))); //$NON-NLS-1$
+		vw.properties.put(PView.VIEW_X,Integer.parseInt(in.getAttributeValue(null,"xview"))); //$NON-NLS-1$
+		vw.properties.put(PView.VIEW_Y,Integer.parseInt(in.getAttributeValue(null,"yview"))); //$NON-NLS-1$
+		}
 
-					tile.setPosition(new Point(
-							Integer.parseInt(attribs.getNamedItem("x").getTextContent()), //$NON-NLS-1$
-							Integer.parseInt(attribs.getNamedItem("y").getTextContent()))); //$NON-NLS-1$
+	private static void readInstance(ProjectFile f, Room rmn, XMLStreamReader in)
+		{
+		Instance inst = rmn.addInstance();
+
+		// TODO: Replace this with DelayedRef
+		String objname = in.getAttributeValue(null,"objName"); //$NON-NLS-1$
+
+		// because of the way this is set up, sprites must be loaded before objects
+		GmObject temp = f.resMap.getList(GmObject.class).get(objname);
+		if (temp != null) inst.properties.put(PInstance.OBJECT,temp.reference);
+		int xx = Integer.parseInt(in.getAttributeValue(null,"x")); //$NON-NLS-1$
+		int yy = Integer.parseInt(in.getAttributeValue(null,"y")); //$NON-NLS-1$
+		double sx = Double.parseDouble(in.getAttributeValue(null,"scaleX")); //$NON-NLS-1$
+		double sy = Double.parseDouble(in.getAttributeValue(null,"scaleY")); //$NON-NLS-1$
+
+		// Read the color blending
+		String colour = in.getAttributeValue(null,"colour"); //$NON-NLS-1$
+		if (colour != null)
+			{
+			long col = Long.parseLong(colour);
+			Color color = Util.convertInstanceColorWithAlpha((int) col);
+			inst.setColor(color);
+			inst.setAlpha(color.getAlpha());
+			}
 
-					final String bkgname = tnode.getAttributes().getNamedItem("bgName").getTextContent(); //$NON-NLS-1$
-					postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Background.class), tile.properties, PTile.BACKGROUND, bkgname));
+		double rot = Double.parseDouble(in.getAttributeValue(null,"rotation")); //$NON-NLS-1$
+		inst.properties.put(PInstance.NAME,in.getAttributeValue(null,"name")); //$NON-NLS-1$
+
+		// NOTE: Because LGM still supports GMK, we attempt to preserve the ID which Studio
+		// will remove if it saves over the GMX, so see if the "id" attribute we added is
+		// there otherwise make up a new ID.
+		String id = in.getAttributeValue(null,"id"); //$NON-NLS-1$
+		int instid;
+		if (id != null) {
+			instid = Integer.parseInt(id);
+			if (instid > f.lastInstanceId) {
+				f.lastInstanceId = instid;
+			}
+		} else {
+			instid = ++f.lastInstanceId;
+		}
 
-					tile.properties.put(PTile.NAME, attribs.getNamedItem("name").getNodeValue()); //$NON-NLS-1$
+		inst.properties.put(PInstance.ID, instid);
 
-					int tileid = Integer.parseInt(attribs.getNamedItem("id").getTextContent()); //$NON-NLS-1$
-					if (tileid > f.lastTileId) {
-						f.lastTileId = tileid;
-					}
-					tile.properties.put(PTile.ID,tileid);
+		inst.setPosition(new Point(xx,yy));
+		inst.setScale(new Point2D.Double(sx,sy));
+		inst.setRotation(rot);
+		inst.setCreationCode(in.getAttributeValue(null,"code")); //$NON-NLS-1$
+		inst.setLocked(Integer.parseInt(in.getAttributeValue(null,"locked")) != 0); //$NON-NLS-1$
+		}
 
-					tile.setBackgroundPosition(new Point(
-							Integer.parseInt(attribs.getNamedItem("xo").getTextContent()), //$NON-NLS-1$
-							Integer.parseInt(attribs.getNamedItem("yo").getTextContent()))); //$NON-NLS-1$
-					tile.setSize(new Dimension(
-							Integer.parseInt(attribs.getNamedItem("w").getTextContent()), //$NON-NLS-1$
-							Integer.parseInt(attribs.getNamedItem("h").getTextContent()))); //$NON-NLS-1$
-					tile.setDepth(Integer.parseInt(attribs.getNamedItem("depth").getTextContent())); //$NON-NLS-1$
+	private static void readTile(ProjectFile f, Room rmn, XMLStreamReader in)
+		{
+		final Tile tile = new Tile(rmn);
 
-					tile.setLocked(Integer.parseInt(attribs.getNamedItem("locked").getTextContent()) != 0); //$NON-NLS-1$
+		tile.setPosition(new Point(
+				Integer.parseInt(in.getAttributeValue(null,"x")), //$NON-NLS-1$
+				Integer.parseInt(in.getAttributeValue(null,"y")))); //$NON-NLS-1$
 
-					double sx = Double.parseDouble(attribs.getNamedItem("scaleX").getNodeValue()); //$NON-NLS-1$
-					double sy = Double.parseDouble(attribs.getNamedItem("scaleY").getNodeValue()); //$NON-NLS-1$
-					tile.setScale(new Point2D.Double(sx,sy));
-					tile.setColor(Long.parseLong(attribs.getNamedItem("colour").getNodeValue())); //$NON-NLS-1$
+		final String bkgname = in.getAttributeValue(null,"bgName"); //$NON-NLS-1$
+		postpone.add(new DefaultPostponedRef<>(f.resMap.getList(Background.class), tile.properties, PTile.BACKGROUND, bkgname));
 
-					rmn.tiles.add(tile);
-					}
-				}
-			else if (pname.equals("PhysicsWorld")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_WORLD,Integer.parseInt(pnode.getTextContent()) != 0);
-				}
-			else if (pname.equals("PhysicsWorldTop")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_TOP,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldLeft")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_LEFT,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldRight")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_RIGHT,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldBottom")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_BOTTOM,Integer.parseInt(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldGravityX")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_GRAVITY_X,Double.parseDouble(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldGravityY")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_GRAVITY_Y,Double.parseDouble(pnode.getTextContent()));
-				}
-			else if (pname.equals("PhysicsWorldPixToMeters")) //$NON-NLS-1$
-				{
-				rmn.put(PRoom.PHYSICS_PIXTOMETERS,Double.parseDouble(pnode.getTextContent()));
-				}
-			}
+		tile.properties.put(PTile.NAME,in.getAttributeValue(null,"name")); //$NON-NLS-1$
+
+		int tileid = Integer.parseInt(in.getAttributeValue(null,"id")); //$NON-NLS-1$
+		if (tileid > f.lastTileId) {
+			f.lastTileId = tileid;
+		}
+		tile.properties.put(PTile.ID,tileid);
+
+		tile.setBackgroundPosition(new Point(
+				Integer.parseInt(in.getAttributeValue(null,"xo")), //$NON-NLS-1$
+				Integer.parseInt(in.getAttributeValue(null,"yo")))); //$NON-NLS-1$
+		tile.setSize(new Dimension(
+				Integer.parseInt(in.getAttributeValue(null,"w")), //$NON-NLS-1$
+				Integer.parseInt(in.getAttributeValue(null,"h")))); //$NON-NLS-1$
+		tile.setDepth(Integer.parseInt(in.getAttributeValue(null,"depth"))); //$NON-NLS-1$
+
+		tile.setLocked(Integer.parseInt(in.getAttributeValue(null,"locked")) != 0); //$NON-NLS-1$
+
+		double sx = Double.parseDouble(in.getAttributeValue(null,"scaleX")); //$NON-NLS-1$
+		double sy = Double.parseDouble(in.getAttributeValue(null,"scaleY")); //$NON-NLS-1$
+		tile.setScale(new Point2D.Double(sx,sy));
+		tile.setColor(Long.parseLong(in.getAttributeValue(null,"colour"))); //$NON-NLS-1$
+
+		rmn.tiles.add(tile);
 		}
 
 	private static void readInclude(ProjectFileContext c, ResNode node, Node cNode)
@@ -1735,8 +2113,6 @@ public final class GMXFileReader
 	private static void readActions(ProjectFileContext c, ActionContainer container, String errorKey,
 			int format1, int format2, NodeList actList)
 		{
-		final ProjectFile f = c.f;
-
 		for (int i = 0; i < actList.getLength(); i++)
 			{
 			Node actNode = actList.item(i);
@@ -1746,23 +2122,7 @@ public final class GMXFileReader
 				continue;
 				}
 
-			int libid = 0;
-			int actid = 0;
-			byte kind = 0;
-			boolean userelative = false;
-			boolean isquestion = false;
-			boolean isquestiontrue = false;
-			boolean isrelative = false;
-			boolean useapplyto = false;
-			byte exectype = 0;
-
-			String appliesto = ""; //$NON-NLS-1$
-			String functionname = ""; // execInfo for if the action just calls an action function //$NON-NLS-1$
-			String codestring = ""; // execInfo for if the action executes code //$NON-NLS-1$
-
-			Argument[] args = null;
-
-			LibAction la = null;
+			ActionEntry entry = new ActionEntry();
 
 			NodeList propList = actNode.getChildNodes();
 			for (int ii = 0; ii < propList.getLength(); ii++)
@@ -1774,55 +2134,7 @@ public final class GMXFileReader
 					continue;
 					}
 
-				if (prop.getNodeName().equals("libid")) //$NON-NLS-1$
-					{
-					libid = Integer.parseInt(prop.getTextContent());
-					}
-				else if (prop.getNodeName().equals("id")) //$NON-NLS-1$
-					{
-					actid = Integer.parseInt(prop.getTextContent());
-					}
-				else if (prop.getNodeName().equals("kind")) //$NON-NLS-1$
-					{
-					kind = Byte.parseByte(prop.getTextContent());
-					}
-				else if (prop.getNodeName().equals("userelative")) //$NON-NLS-1$
-					{
-					userelative = Integer.parseInt(prop.getTextContent()) != 0;
-					}
-				else if (prop.getNodeName().equals("relative")) //$NON-NLS-1$
-					{
-					isrelative = Integer.parseInt(prop.getTextContent()) != 0;
-					}
-				else if (prop.getNodeName().equals("isquestion")) //$NON-NLS-1$
-					{
-					isquestion = Integer.parseInt(prop.getTextContent()) != 0;
-					}
-				else if (prop.getNodeName().equals("isnot")) //$NON-NLS-1$
-					{
-					isquestiontrue = Integer.parseInt(prop.getTextContent()) != 0;
-					}
-				else if (prop.getNodeName().equals("useapplyto")) //$NON-NLS-1$
-					{
-					useapplyto = Integer.parseInt(prop.getTextContent()) != 0;
-					}
-				else if (prop.getNodeName().equals("exetype")) //$NON-NLS-1$
-					{
-					exectype = Byte.parseByte(prop.getTextContent());
-					}
-				else if (prop.getNodeName().equals("whoName")) //$NON-NLS-1$
-					{
-					appliesto = prop.getTextContent();
-					}
-				else if (prop.getNodeName().equals("functionname")) //$NON-NLS-1$
-					{
-					functionname = prop.getTextContent();
-					}
-				else if (prop.getNodeName().equals("codestring")) //$NON-NLS-1$
-					{
-					codestring = prop.getTextContent();
-					}
-				else if (prop.getNodeName().equals("arguments")) //$NON-NLS-1$
+				if (prop.getNodeName().equals("arguments")) //$NON-NLS-1$
 					{
 					NodeList targList = prop.getChildNodes();
 
@@ -1836,151 +2148,233 @@ public final class GMXFileReader
 							}
 						}
 
-					args = new Argument[argList.size()];
+					entry.args = new Argument[argList.size()];
 
 					for (int x = 0; x < argList.size(); x++)
 						{
 						Node arg = argList.get(x);
 
-						if (arg.getNodeName().equals("#text")) //$NON-NLS-1$
-							{
-							continue;
-							}
-
-						args[x] = new Argument((byte) 0);
+						entry.args[x] = new Argument((byte) 0);
 
 						NodeList argproplist = arg.getChildNodes();
 						for (int xx = 0; xx < argproplist.getLength(); xx++)
 							{
 							Node argprop = argproplist.item(xx);
 
-							if (prop.getNodeName().equals("#text")) //$NON-NLS-1$
+							if (argprop.getNodeName().equals("#text")) //$NON-NLS-1$
 								{
 								continue;
 								}
 
-							final String proptext = argprop.getTextContent();
-							final Argument argument = args[x];
-							if (argprop.getNodeName().equals("kind")) //$NON-NLS-1$
-								{
-								argument.kind = Byte.parseByte(argprop.getTextContent());
-								}
-							else if (argprop.getNodeName().equals("string")) //$NON-NLS-1$
-								{
-								argument.setVal(proptext);
-								}
-							else
-								{
-
-								Class<? extends Resource<?,?>> kindc = Argument.getResourceKind(argument.kind);
-								if (kindc != null && Resource.class.isAssignableFrom(kindc)) try
-									{
-									PostponedRef pr = new PostponedRef()
-										{
-											public boolean invoke()
-												{
-												ResourceHolder<?> rh = f.resMap.get(Argument.getResourceKind(argument.kind));
-												if (rh == null)
-													{
-													return false;
-													}
-												Resource<?,?> temp = null;
-												if (rh instanceof ResourceList<?>)
-													temp = ((ResourceList<?>) rh).get(proptext);
-												else
-													temp = rh.getResource();
-												if (temp != null) argument.setRes(temp.reference);
-												argument.setVal(proptext);
-												return temp != null;
-												}
-										};
-									postpone.add(pr);
-									}
-								catch (NumberFormatException e)
-									{
-									// Trying to ref a resource without a valid id number?
-									// Fallback to strval (already set)
-									}
-								}
+							readArgumentProperty(c.f,entry.args[x],argprop.getNodeName(),
+									argprop.getTextContent());
 							}
 						}
 					}
-				}
-
-			la = LibManager.getLibAction(libid,actid);
-			boolean unknownLib = la == null;
-			// The libAction will have a null parent, among other things
-			if (unknownLib)
-				{
-				la = new LibAction();
-				la.id = actid;
-				la.parentId = libid;
-				la.actionKind = kind;
-				// TODO: Maybe make this more agnostic?
-				if (la.actionKind == Action.ACT_CODE)
-					{
-					la = LibManager.codeAction;
-					}
 				else
 					{
-					la.allowRelative = userelative;
-					la.question = isquestion;
-					la.canApplyTo = useapplyto;
-					la.execType = exectype;
-					if (la.execType == Action.EXEC_FUNCTION) la.execInfo = functionname;
-					if (la.execType == Action.EXEC_CODE) la.execInfo = codestring;
-					}
-				if (args != null)
-					{
-					la.libArguments = new LibArgument[args.length];
-					for (int b = 0; b < args.length; b++)
-						{
-						LibArgument argument = new LibArgument();
-						argument.kind = args[b].kind;
-						la.libArguments[b] = argument;
-						}
+					readActionProperty(entry,prop.getNodeName(),prop.getTextContent());
 					}
 				}
 
-			final Action act = container.addAction(la);
-			if (appliesto.equals("self")) //$NON-NLS-1$
-				{
-				act.setAppliesTo(GmObject.OBJECT_SELF);
-				}
-			else if (appliesto.equals("other")) //$NON-NLS-1$
-				{
-				act.setAppliesTo(GmObject.OBJECT_OTHER);
-				}
-			else
+			addAction(c.f,container,entry);
+			}
+		}
+
+	/** The contents of an action element, collected before the action itself is created. */
+	private static class ActionEntry
+		{
+		int libid = 0;
+		int actid = 0;
+		byte kind = 0;
+		boolean userelative = false;
+		boolean isquestion = false;
+		boolean isquestiontrue = false;
+		boolean isrelative = false;
+		boolean useapplyto = false;
+		byte exectype = 0;
+
+		String appliesto = ""; //$NON-NLS-1$
+		String functionname = ""; // execInfo for if the action just calls an action function //$NON-NLS-1$
+		String codestring = ""; // execInfo for if the action executes code //$NON-NLS-1$
+
+		Argument[] args = null;
+		}
+
+	private static void readActionProperty(ActionEntry entry, String name, String text)
+		{
+		if (name.equals("libid")) //$NON-NLS-1$
+			{
+			entry.libid = Integer.parseInt(text);
+			}
+		else if (name.equals("id")) //$NON-NLS-1$
+			{
+			entry.actid = Integer.parseInt(text);
+			}
+		else if (name.equals("kind")) //$NON-NLS-1$
+			{
+			entry.kind = Byte.parseByte(text);
+			}
+		else if (name.equals("userelative")) //$NON-NLS-1$
+			{
+			entry.userelative = Integer.parseInt(text) != 0;
+			}
+		else if (name.equals("relative")) //$NON-NLS-1$
+			{
+			entry.isrelative = Integer.parseInt(text) != 0;
+			}
+		else if (name.equals("isquestion")) //$NON-NLS-1$
+			{
+			entry.isquestion = Integer.parseInt(text) != 0;
+			}
+		else if (name.equals("isnot")) //$NON-NLS-1$
+			{
+			entry.isquestiontrue = Integer.parseInt(text) != 0;
+			}
+		else if (name.equals("useapplyto")) //$NON-NLS-1$
+			{
+			entry.useapplyto = Integer.parseInt(text) != 0;
+			}
+		else if (name.equals("exetype")) //$NON-NLS-1$
+			{
+			entry.exectype = Byte.parseByte(text);
+			}
+		else if (name.equals("whoName")) //$NON-NLS-1$
+			{
+			entry.appliesto = text;
+			}
+		else if (name.equals("functionname")) //$NON-NLS-1$
+			{
+			entry.functionname = text;
+			}
+		else if (name.equals("codestring")) //$NON-NLS-1$
+			{
+			entry.codestring = text;
+			}
+		}
+
+	private static void readArgumentProperty(final ProjectFile f, final Argument argument,
+			String name, final String proptext)
+		{
+		if (name.equals("kind")) //$NON-NLS-1$
+			{
+			argument.kind = Byte.parseByte(proptext);
+			}
+		else if (name.equals("string")) //$NON-NLS-1$
+			{
+			argument.setVal(proptext);
+			}
+		else
+			{
+
+			Class<? extends Resource<?,?>> kindc = Argument.getResourceKind(argument.kind);
+			if (kindc != null && Resource.class.isAssignableFrom(kindc)) try
 				{
-				final String objname = appliesto;
 				PostponedRef pr = new PostponedRef()
 					{
 						public boolean invoke()
 							{
-							ResourceList<GmObject> list = f.resMap.getList(GmObject.class);
-							if (list == null)
+							ResourceHolder<?> rh = f.resMap.get(Argument.getResourceKind(argument.kind));
+							if (rh == null)
 								{
 								return false;
 								}
-							GmObject obj = list.get(objname);
-							if (obj == null)
-								{
-								return false;
-								}
-							act.setAppliesTo(obj.reference);
-							return true;
+							Resource<?,?> temp = null;
+							if (rh instanceof ResourceList<?>)
+								temp = ((ResourceList<?>) rh).get(proptext);
+							else
+								temp = rh.getResource();
+							if (temp != null) argument.setRes(temp.reference);
+							argument.setVal(proptext);
+							return temp != null;
 							}
 					};
 				postpone.add(pr);
 				}
+			catch (NumberFormatException e)
+				{
+				// Trying to ref a resource without a valid id number?
+				// Fallback to strval (already set)
+				}
+			}
+		}
 
-			act.setRelative(isrelative);
-			if (args != null && args.length > 0)
+	private static void addAction(final ProjectFile f, ActionContainer container, ActionEntry entry)
+		{
+		Argument[] args = entry.args;
+		LibAction la = LibManager.getLibAction(entry.libid,entry.actid);
+		boolean unknownLib = la == null;
+		// The libAction will have a null parent, among other things
+		if (unknownLib)
+			{
+			la = new LibAction();
+			la.id = entry.actid;
+			la.parentId = entry.libid;
+			la.actionKind = entry.kind;
+			// TODO: Maybe make this more agnostic?
+			if (la.actionKind == Action.ACT_CODE)
 				{
-				act.setArguments(args);
+				la = LibManager.codeAction;
 				}
-			act.setNot(isquestiontrue);
+			else
+				{
+				la.allowRelative = entry.userelative;
+				la.question = entry.isquestion;
+				la.canApplyTo = entry.useapplyto;
+				la.execType = entry.exectype;
+				if (la.execType == Action.EXEC_FUNCTION) la.execInfo = entry.functionname;
+				if (la.execType == Action.EXEC_CODE) la.execInfo = entry.codestring;
+				}
+			if (args != null)
+				{
+				la.libArguments = new LibArgument[args.length];
+				for (int b = 0; b < args.length; b++)
+					{
+					LibArgument argument = new LibArgument();
+					argument.kind = args[b].kind;
+					la.libArguments[b] = argument;
+					}
+				}
+			}
+
+		final Action act = container.addAction(la);
+		if (entry.appliesto.equals("self")) //$NON-NLS-1$
+			{
+			act.setAppliesTo(GmObject.OBJECT_SELF);
+			}
+		else if (entry.appliesto.equals("other")) //$NON-NLS-1$
+			{
+			act.setAppliesTo(GmObject.OBJECT_OTHER);
+			}
+		else
+			{
+			final String objname = entry.appliesto;
+			PostponedRef pr = new PostponedRef()
+				{
+					public boolean invoke()
+						{
+						ResourceList<GmObject> list = f.resMap.getList(GmObject.class);
+						if (list == null)
+							{
+							return false;
+							}
+						GmObject obj = list.get(objname);
+						if (obj == null)
+							{
+							return false;
+							}
+						act.setAppliesTo(obj.reference);
+						return true;
+						}
+				};
+			postpone.add(pr);
+			}
+
+		act.setRelative(entry.isrelative);
+		if (args != null && args.length > 0)
+			{
+			act.setArguments(args);
 			}
+		act.setNot(entry.isquestiontrue);
 		}
 	}
@@ -31,30 +31,28 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import javax.imageio.ImageIO;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.lateralgm.components.impl.ResNode;
 import org.lateralgm.file.iconio.ICOFile;
@@ -110,15 +108,11 @@ import org.lateralgm.resources.sub.Tile.PTile;
 import org.lateralgm.resources.sub.View;
 import org.lateralgm.resources.sub.View.PView;
 import org.lateralgm.util.PropertyMap;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import com.sun.org.apache.xerces.internal.impl.dv.util.HexBin;
 
 public final class GMXFileWriter
 	{
-	private static DocumentBuilder documentBuilder;
-	private static Transformer transformer;
 	public static HashMap<Class<?>,String> tagNames = new HashMap<>(), rootNames = new HashMap<>();
 
 	static
@@ -158,142 +152,460 @@ public final class GMXFileWriter
 	private static class ProjectFileContext
 		{
 		ProjectFile f;
-		Document dom;
-
-		public ProjectFileContext(ProjectFile f, Document d)
+		GMXStreamWriter out;
+		/** What the last save into the same directory wrote, or null to write every resource. */
+		SaveState previous;
+		/** What this save has written so far. */
+		SaveState saved;
+		/** Whether a resource was renamed, renumbered or removed since the last save. */
+		boolean referencesChanged;
+		ImageEncoder images;
+
+		public ProjectFileContext(ProjectFile f, GMXStreamWriter out)
 			{
 			this.f = f;
-			this.dom = d;
+			this.out = out;
+			saved = new SaveState(f.getDirectory());
 			}
 
 		public ProjectFileContext copy()
 			{
-			return new ProjectFileContext(f,dom);
+			ProjectFileContext c = new ProjectFileContext(f,out);
+			c.previous = previous;
+			c.saved = saved;
+			c.referencesChanged = referencesChanged;
+			c.images = images;
+			return c;
 			}
 		}
 
-	public static void writeProjectFile(OutputStream os, ProjectFile f, ResNode rootRes)
-			throws IOException,GmFormatException
+	/**
+	 * Remembers which resource instances a save wrote to which files, so the next save into the
+	 * same directory can skip the resources that haven't changed since.
+	 */
+	public static class SaveState
 		{
-		interfaceProvider.init(160,"ProgressDialog.GMX_SAVING"); //$NON-NLS-1$
-		f.format = ProjectFile.FormatFlavor.GMX;
-		long savetime = System.currentTimeMillis();
+		final String directory;
+		final Map<ResourceReference<?>,SavedResource> resources = new HashMap<ResourceReference<?>,SavedResource>();
+
+		SaveState(String directory)
+			{
+			this.directory = directory;
+			}
+		}
+
+	private static class SavedResource
+		{
+		/** The instance that was written, or null if writing it failed. */
+		InstantiableResource<?,?> resource;
+		final String name;
+		final int id;
+		/** The modification stamp the resource had when it was written. */
+		final long modified;
+		/** The files holding the resource, its document first. */
+		final List<File> files;
+
+		SavedResource(InstantiableResource<?,?> resource, List<File> files)
+			{
+			this.resource = resource;
+			name = resource.getName();
+			id = resource.getId();
+			modified = resource.getLastModified();
+			this.files = files;
+			}
+		}
 
-		if (documentBuilder == null)
+	/**
+	 * Encodes the sprite and background images to PNG files, on a pool of worker threads when one
+	 * is given. Only a few images per thread may be waiting at any time, beyond that the writer
+	 * blocks until one is done, so converted frames never pile up in memory.
+	 * Failures are collected and reported by the writer once all the images are done.
+	 */
+	private static class ImageEncoder
+		{
+		private final ExecutorService pool;
+		private final int capacity;
+		private final Semaphore slots;
+		private final List<ImageFailure> failures = Collections.synchronizedList(new ArrayList<ImageFailure>());
+
+		ImageEncoder(ExecutorService pool, int capacity)
+			{
+			this.pool = pool;
+			this.capacity = capacity;
+			slots = new Semaphore(capacity);
+			}
+
+		void write(final InstantiableResource<?,?> res, final BufferedImage image,
+				final boolean transparent, final File file) throws IOException
+			{
+			if (pool == null)
+				{
+				encode(res,image,transparent,file);
+				return;
+				}
+			acquire(1);
+			pool.execute(new Runnable()
+				{
+					public void run()
+						{
+						try
+							{
+							encode(res,image,transparent,file);
+							}
+						finally
+							{
+							slots.release();
+							}
+						}
+				});
+			}
+
+		private void encode(InstantiableResource<?,?> res, BufferedImage image, boolean transparent,
+				File file)
+			{
 			try
 				{
-				documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+				// GMX does have a backwards compatibility property for transparency pixel so we write
+				// the image with the transparency removed when that setting is checked
+				ImageIO.write(transparent ? Util.getTransparentImage(image) : image,"png",file); //$NON-NLS-1$
 				}
-			catch (ParserConfigurationException pce)
+			catch (IOException e)
 				{
-				throw new GmFormatException(f,pce);
+				failures.add(new ImageFailure(res,file,e));
 				}
-		if (transformer == null)
-			try
+			catch (RuntimeException e)
 				{
-				transformer = TransformerFactory.newInstance().newTransformer();
-				transformer.setOutputProperty(OutputKeys.INDENT,"yes"); //$NON-NLS-1$
-				transformer.setOutputProperty(OutputKeys.METHOD,"xml"); //$NON-NLS-1$
-				transformer.setOutputProperty(OutputKeys.ENCODING,"UTF-8"); //$NON-NLS-1$
-				transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount","2"); //$NON-NLS-1$ //$NON-NLS-2$
+				failures.add(new ImageFailure(res,file,new IOException(e)));
 				}
-			catch (TransformerConfigurationException e)
+			}
+
+		/** Waits for every image to be written and returns the ones that couldn't be. */
+		List<ImageFailure> finish() throws IOException
+			{
+			if (pool != null)
 				{
-				throw new GmFormatException(f,e);
+				acquire(capacity);
+				slots.release(capacity);
 				}
-			catch (TransformerFactoryConfigurationError e)
+			return failures;
+			}
+
+		private void acquire(int permits) throws IOException
+			{
+			try
 				{
-				throw e;
+				slots.acquire(permits);
 				}
-		Document dom = documentBuilder.newDocument();
-
-		ProjectFileContext c = new ProjectFileContext(f,dom);
-		Element root = dom.createElement("assets"); //$NON-NLS-1$
-		interfaceProvider.setProgress(0,"ProgressDialog.SETTINGS"); //$NON-NLS-1$
-		writeConfigurations(c,root,savetime);
-
-		interfaceProvider.setProgress(10,"ProgressDialog.SPRITES"); //$NON-NLS-1$
-		writeGroup(c,root,Sprite.class);
-		interfaceProvider.setProgress(20,"ProgressDialog.SOUNDS"); //$NON-NLS-1$
-		writeGroup(c,root,Sound.class);
-		interfaceProvider.setProgress(30,"ProgressDialog.BACKGROUNDS"); //$NON-NLS-1$
-		writeGroup(c,root,Background.class);
-		interfaceProvider.setProgress(40,"ProgressDialog.PATHS"); //$NON-NLS-1$
-		writeGroup(c,root,Path.class);
-		interfaceProvider.setProgress(50,"ProgressDialog.SCRIPTS"); //$NON-NLS-1$
-		writeGroup(c,root,Script.class);
-		interfaceProvider.setProgress(60,"ProgressDialog.SHADERS"); //$NON-NLS-1$
-		writeGroup(c,root,Shader.class);
-		interfaceProvider.setProgress(70,"ProgressDialog.FONTS"); //$NON-NLS-1$
-		writeGroup(c,root,Font.class);
-		interfaceProvider.setProgress(80,"ProgressDialog.TIMELINES"); //$NON-NLS-1$
-		writeGroup(c,root,Timeline.class);
-		interfaceProvider.setProgress(90,"ProgressDialog.OBJECTS"); //$NON-NLS-1$
-		writeGroup(c,root,GmObject.class);
-		interfaceProvider.setProgress(100,"ProgressDialog.ROOMS"); //$NON-NLS-1$
-		writeGroup(c,root,Room.class);
-		interfaceProvider.setProgress(110,"ProgressDialog.INCLUDEFILES"); //$NON-NLS-1$
-		writeGroup(c,root,Include.class);
-		interfaceProvider.setProgress(120,"ProgressDialog.PACKAGES"); //$NON-NLS-1$
-		//writePackages(c, root);
-		interfaceProvider.setProgress(130,"ProgressDialog.CONSTANTS"); //$NON-NLS-1$
-		writeDefaultConstants(c, root);
-		interfaceProvider.setProgress(140,"ProgressDialog.EXTENSIONS"); //$NON-NLS-1$
-		//writeExtensions(c, root);
-		interfaceProvider.setProgress(150,"ProgressDialog.GAMEINFORMATION"); //$NON-NLS-1$
-		writeGameInformation(c,root);
-
-		dom.appendChild(root);
-
-		// Now take the serialized XML data and format and write it to the actual file
-		interfaceProvider.setProgress(150,"ProgressDialog.DOCUMENT"); //$NON-NLS-1$
-		try
+			catch (InterruptedException e)
+				{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+				}
+			}
+		}
+
+	private static class ImageFailure
+		{
+		final InstantiableResource<?,?> resource;
+		final File file;
+		final IOException exception;
+
+		ImageFailure(InstantiableResource<?,?> resource, File file, IOException exception)
 			{
-			// send DOM to file
-			transformer.transform(new DOMSource(dom),new StreamResult(os));
+			this.resource = resource;
+			this.file = file;
+			this.exception = exception;
 			}
-		catch (TransformerException te)
+		}
+
+	public static void writeProjectFile(OutputStream os, ProjectFile f, ResNode rootRes)
+			throws IOException,GmFormatException
+		{
+		writeProjectFile(os,f,rootRes,false,false);
+		}
+
+	/**
+	 * Writes the project. When incremental is set and the project was last loaded from or saved
+	 * to the same directory, only the resources which changed since are written again; the
+	 * project file itself and the configurations are always written. When parallel is set the
+	 * images are encoded on all available cores while the documents are being written.
+	 */
+	public static void writeProjectFile(OutputStream os, ProjectFile f, ResNode rootRes,
+			boolean incremental, boolean parallel) throws IOException,GmFormatException
+		{
+		interfaceProvider.init(160,"ProgressDialog.GMX_SAVING"); //$NON-NLS-1$
+		f.format = ProjectFile.FormatFlavor.GMX;
+		long savetime = System.currentTimeMillis();
+
+		SaveState last = f.gmxSaveState;
+		if (last != null && !last.directory.equals(f.getDirectory())) last = null;
+		// Forget the last save until this one is through, a failed save may have left anything behind
+		f.gmxSaveState = null;
+
+		ProjectFileContext c;
+		ExecutorService pool = null;
+		try
 			{
-			throw new GmFormatException(f,te);
+			GMXStreamWriter out = new GMXStreamWriter(os);
+			c = new ProjectFileContext(f,out);
+			if (parallel)
+				{
+				int threads = Runtime.getRuntime().availableProcessors();
+				pool = Executors.newFixedThreadPool(threads);
+				c.images = new ImageEncoder(pool,threads * 2);
+				}
+			else
+				c.images = new ImageEncoder(null,0);
+			if (incremental && last != null)
+				{
+				c.previous = last;
+				c.referencesChanged = referencesChanged(last,rootRes);
+				}
+			out.startElement("assets"); //$NON-NLS-1$
+			interfaceProvider.setProgress(0,"ProgressDialog.SETTINGS"); //$NON-NLS-1$
+			writeConfigurations(c,savetime);
+
+			interfaceProvider.setProgress(10,"ProgressDialog.SPRITES"); //$NON-NLS-1$
+			writeGroup(c,Sprite.class);
+			interfaceProvider.setProgress(20,"ProgressDialog.SOUNDS"); //$NON-NLS-1$
+			writeGroup(c,Sound.class);
+			interfaceProvider.setProgress(30,"ProgressDialog.BACKGROUNDS"); //$NON-NLS-1$
+			writeGroup(c,Background.class);
+			interfaceProvider.setProgress(40,"ProgressDialog.PATHS"); //$NON-NLS-1$
+			writeGroup(c,Path.class);
+			interfaceProvider.setProgress(50,"ProgressDialog.SCRIPTS"); //$NON-NLS-1$
+			writeGroup(c,Script.class);
+			interfaceProvider.setProgress(60,"ProgressDialog.SHADERS"); //$NON-NLS-1$
+			writeGroup(c,Shader.class);
+			interfaceProvider.setProgress(70,"ProgressDialog.FONTS"); //$NON-NLS-1$
+			writeGroup(c,Font.class);
+			interfaceProvider.setProgress(80,"ProgressDialog.TIMELINES"); //$NON-NLS-1$
+			writeGroup(c,Timeline.class);
+			interfaceProvider.setProgress(90,"ProgressDialog.OBJECTS"); //$NON-NLS-1$
+			writeGroup(c,GmObject.class);
+			interfaceProvider.setProgress(100,"ProgressDialog.ROOMS"); //$NON-NLS-1$
+			writeGroup(c,Room.class);
+			interfaceProvider.setProgress(110,"ProgressDialog.INCLUDEFILES"); //$NON-NLS-1$
+			writeGroup(c,Include.class);
+			interfaceProvider.setProgress(120,"ProgressDialog.PACKAGES"); //$NON-NLS-1$
+			//writePackages(c);
+			interfaceProvider.setProgress(130,"ProgressDialog.CONSTANTS"); //$NON-NLS-1$
+			writeDefaultConstants(c);
+			interfaceProvider.setProgress(140,"ProgressDialog.EXTENSIONS"); //$NON-NLS-1$
+			//writeExtensions(c);
+			interfaceProvider.setProgress(150,"ProgressDialog.GAMEINFORMATION"); //$NON-NLS-1$
+			writeGameInformation(c);
+
+			// The project only refers to images which are actually there once they are all done
+			for (ImageFailure failure : c.images.finish())
+				handleDocumentException(c,failure.resource,failure.file,failure.exception);
+
+			// Everything but the end of the document has already been streamed to the file
+			interfaceProvider.setProgress(150,"ProgressDialog.DOCUMENT"); //$NON-NLS-1$
+			out.close();
 			}
 		finally
 			{
+			if (pool != null) pool.shutdownNow();
 			// close up the stream and release the lock on the file
 			os.close();
 			}
+		if (last != null) deleteStaleFiles(f,last,c.saved);
+		f.gmxSaveState = c.saved;
 		interfaceProvider.setProgress(160,"ProgressDialog.FINISHED"); //$NON-NLS-1$
 		}
 
-	private static Element createElement(Document dom, String name, String value)
+	/**
+	 * Records the resources of a project that was just read from the given directory as saved, so
+	 * that the first save back into it can be incremental.
+	 */
+	public static void trackSavedResources(ProjectFile f, String directory, ResNode root)
 		{
-		Element ret = dom.createElement(name);
-		ret.setTextContent(value);
-		return ret;
+		SaveState state = new SaveState(directory);
+		List<ResNode> nodes = new ArrayList<ResNode>();
+		collectResources(root,nodes);
+		for (ResNode node : nodes)
+			{
+			InstantiableResource<?,?> res = (InstantiableResource<?,?>) node.getRes().get();
+			state.resources.put(res.reference,new SavedResource(res,getResourceFiles(directory,node)));
+			}
+		f.gmxSaveState = state;
 		}
 
-	private static void transformDocumentWrapped(ProjectFile f, Document document, File file) throws GmFormatException
+	private static void collectResources(ResNode node, List<ResNode> nodes)
 		{
-		file.getParentFile().mkdirs();
-		try
+		Enumeration<?> children = node.children();
+		while (children.hasMoreElements())
 			{
-			transformer.transform(new DOMSource(document),new StreamResult(file));
+			ResNode child = (ResNode) children.nextElement();
+			if (child.status == ResNode.STATUS_SECONDARY)
+				{
+				if (child.getRes() != null && child.getRes().get() instanceof InstantiableResource<?,?>)
+					nodes.add(child);
+				}
+			else
+				collectResources(child,nodes);
 			}
-		catch (TransformerException e)
+		}
+
+	// Other resources refer to paths, timelines, objects and rooms by name or id, so any
+	// rename, renumbering or removal means those have to be written again
+	private static boolean referencesChanged(SaveState last, ResNode root)
+		{
+		List<ResNode> nodes = new ArrayList<ResNode>();
+		collectResources(root,nodes);
+		Set<ResourceReference<?>> present = new HashSet<ResourceReference<?>>();
+		for (ResNode node : nodes)
+			present.add(node.getRes());
+		for (Map.Entry<ResourceReference<?>,SavedResource> e : last.resources.entrySet())
 			{
-			throw new GmFormatException(f, "failed to transform: " + file.getAbsolutePath(), e);
+			Resource<?,?> res = e.getKey().get();
+			SavedResource s = e.getValue();
+			if (res == null || !present.contains(e.getKey())) return true;
+			InstantiableResource<?,?> ir = (InstantiableResource<?,?>) res;
+			if (!s.name.equals(ir.getName()) || s.id != ir.getId()) return true;
 			}
+		return false;
 		}
 
-	private static void transformDocumentUnchecked(ProjectFile f, Document document, File file)
+	/**
+	 * Returns whether the resource is already on disk as it is now, in which case its files don't
+	 * have to be written again. Either way the resource is recorded as saved to the given files.
+	 */
+	private static boolean isSaved(ProjectFileContext c, InstantiableResource<?,?> res,
+			List<File> files, boolean refersByName)
 		{
-		try
+		c.saved.resources.put(res.reference,new SavedResource(res,files));
+		if (c.previous == null || res.changed || (refersByName && c.referencesChanged)) return false;
+		SavedResource s = c.previous.resources.get(res.reference);
+		if (s == null || s.resource != res || !s.files.equals(files)) return false;
+		// Even when no frame reported it, such as an edit that was undone in an open frame
+		if (res.getLastModified() > s.modified) return false;
+		// A backup may have moved the last save out of the way
+		for (File file : files)
+			if (!file.exists()) return false;
+		return true;
+		}
+
+	// Removes what the last save wrote for resources that were since renamed, moved or deleted
+	// Paths are compared ignoring case, a file renamed only in case is the same file on some systems
+	private static void deleteStaleFiles(ProjectFile f, SaveState last, SaveState saved)
+		{
+		Set<String> keep = new HashSet<String>();
+		for (SavedResource s : saved.resources.values())
+			for (File file : s.files)
+				keep.add(file.getAbsolutePath());
+		for (SavedResource s : last.resources.values())
+			for (File file : s.files)
+				if (!keep.contains(file.getAbsolutePath()) && file.exists() && !isKept(file,saved))
+					{
+					try
+						{
+						// A copy of a sound may still be reading its audio from here
+						LazyData.detach(file,true);
+						}
+					catch (IOException e)
+						{
+						interfaceProvider.handleException(new GmFormatException(f,e));
+						continue;
+						}
+					if (file.exists() && !file.delete())
+						interfaceProvider.handleException(new GmFormatException(f,"failed to delete: " //$NON-NLS-1$
+								+ file.getAbsolutePath()));
+					}
+		}
+
+	/**
+	 * Whether the given file is one that was just written under a name differing only in case,
+	 * which it is where the file system ignores case, such as after renaming spr_A to spr_a.
+	 */
+	private static boolean isKept(File file, SaveState saved)
+		{
+		String path = file.getAbsolutePath();
+		for (SavedResource s : saved.resources.values())
+			for (File kept : s.files)
+				{
+				if (!kept.getAbsolutePath().equalsIgnoreCase(path)) continue;
+				try
+					{
+					if (kept.exists() && Files.isSameFile(kept.toPath(),file.toPath())) return true;
+					}
+				catch (IOException e)
+					{
+					// Kept, as it can't be told apart from the file just written
+					return true;
+					}
+				}
+		return false;
+		}
+
+	/**
+	 * Returns the files the given resource is written to, its document or main file first and
+	 * then any images or audio that go with it.
+	 */
+	private static List<File> getResourceFiles(String dir, ResNode resNode)
+		{
+		InstantiableResource<?,?> res = (InstantiableResource<?,?>) resNode.getRes().get();
+		Class<?> kind = resNode.kind;
+		List<String> paths = new ArrayList<String>();
+		if (kind == Sprite.class)
+			{
+			Sprite spr = (Sprite) res;
+			String fname = dir + "\\sprites\\"; //$NON-NLS-1$
+			paths.add(fname + spr.getName() + ".sprite.gmx"); //$NON-NLS-1$
+			for (int j = 0; j < spr.subImages.size(); j++)
+				paths.add(fname + getFrameFileName(spr,j));
+			}
+		else if (kind == Sound.class)
+			{
+			String fname = dir + "\\sound\\"; //$NON-NLS-1$
+			paths.add(fname + resNode.getUserObject().toString() + ".sound.gmx"); //$NON-NLS-1$
+			paths.add(fname + "audio/" + res.getName() + ((Sound) res).get(PSound.FILE_TYPE).toString()); //$NON-NLS-1$
+			}
+		else if (kind == Background.class)
+			{
+			Background bkg = (Background) res;
+			String fname = dir + "\\background\\"; //$NON-NLS-1$
+			paths.add(fname + resNode.getUserObject().toString() + ".background.gmx"); //$NON-NLS-1$
+			if (bkg.getWidth() > 0 && bkg.getHeight() > 0)
+				paths.add(fname + "images\\" + bkg.getName() + ".png"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		else if (kind == Script.class)
+			paths.add(dir + "/scripts\\" + res.getName() + ".gml"); //$NON-NLS-1$ //$NON-NLS-2$
+		else if (kind == Shader.class)
+			paths.add(dir + "/shaders\\" + res.getName() + ".shader"); //$NON-NLS-1$ //$NON-NLS-2$
+		else if (kind == Include.class)
 			{
-			transformDocumentWrapped(f, document, file);
+			String filePath = ((Include) res).get(PInclude.FILENAME).toString();
+			ResNode parent = (ResNode) resNode.getParent();
+			while (parent != null && parent.status == ResNode.STATUS_GROUP) {
+				filePath = parent.toString() + '/' + filePath;
+				parent = (ResNode) parent.getParent();
+			}
+			paths.add(dir + "/datafiles/" + filePath); //$NON-NLS-1$
 			}
-		catch (GmFormatException e)
+		else
 			{
-			interfaceProvider.handleException(e);
+			String root = rootNames.get(kind);
+			String ext = tagNames.get(kind);
+			ext = ext.substring(0,ext.length() - 1);
+			paths.add(dir + '\\' + root + '\\' + res.getName() + '.' + ext + ".gmx"); //$NON-NLS-1$
 			}
+		List<File> files = new ArrayList<File>(paths.size());
+		for (String path : paths)
+			files.add(new File(Util.getPOSIXPath(path)));
+		return files;
+		}
+
+	// A resource document that can't be written is reported and the save carries on, but the
+	// resource isn't counted as saved so the next save tries it again
+	private static void handleDocumentException(ProjectFileContext c, InstantiableResource<?,?> res,
+			File file, IOException e)
+		{
+		SavedResource s = res == null ? null : c.saved.resources.get(res.reference);
+		if (s != null) s.resource = null;
+		interfaceProvider.handleException(new GmFormatException(c.f,"failed to write: " //$NON-NLS-1$
+				+ file.getAbsolutePath(),e));
 		}
 
 	// This is used to obtain the primary node for a resource type.
@@ -339,31 +651,27 @@ public final class GMXFileWriter
 			return noneval;
 		}
 
-	public static <R extends InstantiableResource<R,?>> void writeGroup(ProjectFileContext c, Element root,
+	public static <R extends InstantiableResource<R,?>> void writeGroup(ProjectFileContext c,
 			Class<R> kind) throws IOException
 		{
 		ResourceList<R> list = c.f.resMap.getList(kind);
 		if (list.isEmpty()) return;
 
-		writeTree(c, getPrimaryNode(list.first().getNode()), root);
+		writeTree(c, getPrimaryNode(list.first().getNode()));
 		}
 
-	private static void writeTree(ProjectFileContext c, ResNode root, Element domRoot)
-			throws IOException
+	private static void writeTree(ProjectFileContext c, ResNode root) throws IOException
 		{
-		Document dom = c.dom;
+		GMXStreamWriter out = c.out;
 
 		String name = root.getUserObject().toString();
 		if (root.status == ResNode.STATUS_PRIMARY) name = rootNames.get(root.kind);
 
-		Element pnode = dom.createElement(tagNames.get(root.kind));
-		pnode.setAttribute("name",name); //$NON-NLS-1$
-		domRoot.appendChild(pnode);
-		domRoot = pnode;
+		out.startElement(tagNames.get(root.kind));
+		out.attribute("name",name); //$NON-NLS-1$
 
 		Vector<ResNode> children = root.getChildren();
-		if (children == null) return;
-		for (Object obj : children)
+		if (children != null) for (Object obj : children)
 			{
 			if (!(obj instanceof ResNode)) continue;
 
@@ -373,481 +681,488 @@ public final class GMXFileWriter
 				{
 				case ResNode.STATUS_PRIMARY:
 				case ResNode.STATUS_GROUP:
-					writeTree(c,resNode,domRoot);
+					writeTree(c,resNode);
 					break;
 				case ResNode.STATUS_SECONDARY:
 					if (kind == Sprite.class)
-						writeSprite(c,resNode,domRoot);
+						writeSprite(c,resNode);
 					else if (kind == Sound.class)
-						writeSound(c,resNode,domRoot);
+						writeSound(c,resNode);
 					else if (kind == Background.class)
-						writeBackground(c,resNode,domRoot);
+						writeBackground(c,resNode);
 					else if (kind == Path.class)
-						writePath(c,resNode,domRoot);
+						writePath(c,resNode);
 					else if (kind == Script.class)
-						writeScript(c,resNode,domRoot);
+						writeScript(c,resNode);
 					else if (kind == Shader.class)
-						writeShader(c,resNode,domRoot);
+						writeShader(c,resNode);
 					else if (kind == Font.class)
-						writeFont(c,resNode,domRoot);
+						writeFont(c,resNode);
 					else if (kind == Timeline.class)
-						writeTimeline(c,resNode,domRoot);
+						writeTimeline(c,resNode);
 					else if (kind == GmObject.class)
-						writeGmObject(c,resNode,domRoot);
+						writeGmObject(c,resNode);
 					else if (kind == Room.class)
-						writeRoom(c,resNode,domRoot);
+						writeRoom(c,resNode);
 					else if (kind == Include.class)
-						writeInclude(c,resNode,domRoot);
+						writeInclude(c,resNode);
 					break;
 				}
 			}
+
+		out.endElement();
 		}
 
-	public static void writeConfigurations(ProjectFileContext c, Element root, long savetime) throws IOException
+	public static void writeConfigurations(ProjectFileContext c, long savetime) throws IOException
 		{
-		Document dom = c.dom;
 		ProjectFile f = c.f;
 
-		Element conNode = dom.createElement("Configs"); //$NON-NLS-1$
-		conNode.setAttribute("name","configs");  //$NON-NLS-1$//$NON-NLS-2$
-		root.appendChild(conNode);
+		c.out.startElement("Configs"); //$NON-NLS-1$
+		c.out.attribute("name","configs");  //$NON-NLS-1$//$NON-NLS-2$
 
 		for (GameSettings gs : f.gameSettings) {
-			Element setNode = dom.createElement("Config"); //$NON-NLS-1$
 			String configDir = "Configs\\" + gs.getName();
-			setNode.setTextContent(configDir);
-			conNode.appendChild(setNode);
-
-			Document doc = documentBuilder.newDocument();
-			Element nconNode = doc.createElement("Config"); //$NON-NLS-1$
-			doc.appendChild(nconNode);
-			Element optNode = doc.createElement("Options"); //$NON-NLS-1$
-			nconNode.appendChild(optNode);
-
-			// For some odd reason these two settings are combined together.
-			// 2147483649 - Both
-			// 2147483648 - Software Vertex Processing only
-			// 1 - Synchronization Only
-			// 0 - None
-
-			long syncvertex = 0;
-			if (gs.get(PGameSettings.USE_SYNCHRONIZATION))
-				{
-				syncvertex += 1;
-				}
-			if (gs.get(PGameSettings.FORCE_SOFTWARE_VERTEX_PROCESSING))
-				{
-				syncvertex += 2147483648L;
-				}
-			optNode.appendChild(createElement(doc,"option_sync_vertex",Long.toString(syncvertex))); //$NON-NLS-1$
-
-			optNode.appendChild(createElement(doc,"option_fullscreen", //$NON-NLS-1$
-					gs.get(PGameSettings.START_FULLSCREEN).toString()));
-			optNode.appendChild(createElement(doc,"option_sizeable", //$NON-NLS-1$
-					gs.get(PGameSettings.ALLOW_WINDOW_RESIZE).toString()));
-			optNode.appendChild(createElement(doc,"option_stayontop", //$NON-NLS-1$
-					gs.get(PGameSettings.ALWAYS_ON_TOP).toString()));
-			optNode.appendChild(createElement(doc,"option_aborterrors", //$NON-NLS-1$
-					gs.get(PGameSettings.ABORT_ON_ERROR).toString()));
-
-			optNode.appendChild(createElement(doc,"option_noscreensaver", //$NON-NLS-1$
-					gs.get(PGameSettings.DISABLE_SCREENSAVERS).toString()));
-			optNode.appendChild(createElement(doc,"option_showcursor", //$NON-NLS-1$
-					gs.get(PGameSettings.DISPLAY_CURSOR).toString()));
-			optNode.appendChild(createElement(doc,"option_displayerrors", //$NON-NLS-1$
-					gs.get(PGameSettings.DISPLAY_ERRORS).toString()));
-			optNode.appendChild(createElement(doc,"option_noborder", //$NON-NLS-1$
-					gs.get(PGameSettings.DONT_DRAW_BORDER).toString()));
-			optNode.appendChild(createElement(doc,"option_nobuttons", //$NON-NLS-1$
-					gs.get(PGameSettings.DONT_SHOW_BUTTONS).toString()));
-			optNode.appendChild(createElement(doc,"option_argumenterrors", //$NON-NLS-1$
-					gs.get(PGameSettings.ERROR_ON_ARGS).toString()));
-			optNode.appendChild(createElement(doc,"option_freeze", //$NON-NLS-1$
-					gs.get(PGameSettings.FREEZE_ON_LOSE_FOCUS).toString()));
-
-			optNode.appendChild(createElement(doc,"option_colordepth", //$NON-NLS-1$
-					ProjectFile.GS_DEPTH_CODE.get(gs.get(PGameSettings.COLOR_DEPTH)).toString()));
-
-			optNode.appendChild(createElement(doc,"option_frequency", //$NON-NLS-1$
-					ProjectFile.GS_FREQ_CODE.get(gs.get(PGameSettings.FREQUENCY)).toString()));
-			optNode.appendChild(createElement(doc,"option_resolution", //$NON-NLS-1$
-					ProjectFile.GS_RESOL_CODE.get(gs.get(PGameSettings.RESOLUTION)).toString()));
-			optNode.appendChild(createElement(doc,"option_changeresolution", //$NON-NLS-1$
-					gs.get(PGameSettings.SET_RESOLUTION).toString()));
-			optNode.appendChild(createElement(
-					doc,
-					"option_priority", //$NON-NLS-1$
-					ProjectFile.GS_PRIORITY_CODE.get(gs.get(PGameSettings.GAME_PRIORITY)).toString()));
-
-			optNode.appendChild(createElement(doc,"option_closeesc", //$NON-NLS-1$
-					gs.get(PGameSettings.LET_ESC_END_GAME).toString()));
-			optNode.appendChild(createElement(doc,"option_interpolate", //$NON-NLS-1$
-					gs.get(PGameSettings.INTERPOLATE).toString()));
-			optNode.appendChild(createElement(doc,"option_scale", //$NON-NLS-1$
-					gs.get(PGameSettings.SCALING).toString()));
-			optNode.appendChild(createElement(doc,"option_closeesc", //$NON-NLS-1$
-					gs.get(PGameSettings.TREAT_CLOSE_AS_ESCAPE).toString()));
-			gs.put(PGameSettings.LAST_CHANGED,ProjectFile.longTimeToGmTime(savetime));
-			optNode.appendChild(createElement(doc,"option_lastchanged", //$NON-NLS-1$
-					gs.get(PGameSettings.LAST_CHANGED).toString()));
-
-			optNode.appendChild(createElement(doc,"option_gameid", //$NON-NLS-1$
-					gs.get(PGameSettings.GAME_ID).toString()));
-			String guid = HexBin.encode((byte[]) gs.get(PGameSettings.GAME_GUID));
-			optNode.appendChild(createElement(doc,"option_gameguid", //$NON-NLS-1$
-					'{' + guid.substring(0,8) + '-' + guid.substring(8,12) + '-' + guid.substring(12,16) + '-'
-							+ guid.substring(16,20) + '-' + guid.substring(20,32) + '}'));
-
-			optNode.appendChild(createElement(doc,"option_author", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.AUTHOR)));
-			optNode.appendChild(createElement(doc,"option_version_company", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.COMPANY)));
-			optNode.appendChild(createElement(doc,"option_version_copyright", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.COPYRIGHT)));
-			optNode.appendChild(createElement(doc,"option_version_description", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.DESCRIPTION)));
-			optNode.appendChild(createElement(doc,"option_version_product", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.PRODUCT)));
-			optNode.appendChild(createElement(doc,"option_information", //$NON-NLS-1$
-					(String) gs.get(PGameSettings.INFORMATION)));
-			optNode.appendChild(createElement(doc,"option_version", //$NON-NLS-1$
-					gs.get(PGameSettings.VERSION).toString()));
-			optNode.appendChild(createElement(doc,"option_version_build", //$NON-NLS-1$
-					gs.get(PGameSettings.VERSION_BUILD).toString()));
-			optNode.appendChild(createElement(doc,"option_version_major", //$NON-NLS-1$
-					gs.get(PGameSettings.VERSION_MAJOR).toString()));
-			optNode.appendChild(createElement(doc,"option_version_minor", //$NON-NLS-1$
-					gs.get(PGameSettings.VERSION_MINOR).toString()));
-			optNode.appendChild(createElement(doc,"option_version_release", //$NON-NLS-1$
-					gs.get(PGameSettings.VERSION_RELEASE).toString()));
-
-			Element cce = doc.createElement("ConfigConstants"); //$NON-NLS-1$
-			writeConstants(gs.constants, doc, cce);
-			nconNode.appendChild(cce);
+			c.out.element("Config",configDir); //$NON-NLS-1$
 
 			String icoPath = configDir + "\\windows\\runner_icon.ico"; //$NON-NLS-1$
-			optNode.appendChild(createElement(doc,"option_windows_game_icon",icoPath)); //$NON-NLS-1$
-
-			icoPath = f.getDirectory() + '\\' + icoPath;
-			File icoFile = new File(Util.getPOSIXPath(icoPath)).getParentFile();
+			String icoFilePath = f.getDirectory() + '\\' + icoPath;
+			File icoFile = new File(Util.getPOSIXPath(icoFilePath)).getParentFile();
 			icoFile.mkdirs();
 
-			FileOutputStream fos = new FileOutputStream(Util.getPOSIXPath(icoPath));
+			FileOutputStream fos = new FileOutputStream(Util.getPOSIXPath(icoFilePath));
 			((ICOFile) gs.get(PGameSettings.GAME_ICON)).write(fos);
 			fos.close();
 
 			File file = new File(Util.getPOSIXPath(f.getDirectory() + "/Configs/" + gs.getName() + ".config.gmx")); //$NON-NLS-1$ //$NON-NLS-2$
-			transformDocumentUnchecked(f, doc, file);
+			try (GMXStreamWriter out = new GMXStreamWriter(file))
+				{
+				out.startElement("Config"); //$NON-NLS-1$
+				out.startElement("Options"); //$NON-NLS-1$
+
+				// For some odd reason these two settings are combined together.
+				// 2147483649 - Both
+				// 2147483648 - Software Vertex Processing only
+				// 1 - Synchronization Only
+				// 0 - None
+
+				long syncvertex = 0;
+				if (gs.get(PGameSettings.USE_SYNCHRONIZATION))
+					{
+					syncvertex += 1;
+					}
+				if (gs.get(PGameSettings.FORCE_SOFTWARE_VERTEX_PROCESSING))
+					{
+					syncvertex += 2147483648L;
+					}
+				out.element("option_sync_vertex",Long.toString(syncvertex)); //$NON-NLS-1$
+
+				out.element("option_fullscreen", //$NON-NLS-1$
+						gs.get(PGameSettings.START_FULLSCREEN).toString());
+				out.element("option_sizeable", //$NON-NLS-1$
+						gs.get(PGameSettings.ALLOW_WINDOW_RESIZE).toString());
+				out.element("option_stayontop", //$NON-NLS-1$
+						gs.get(PGameSettings.ALWAYS_ON_TOP).toString());
+				out.element("option_aborterrors", //$NON-NLS-1$
+						gs.get(PGameSettings.ABORT_ON_ERROR).toString());
+
+				out.element("option_noscreensaver", //$NON-NLS-1$
+						gs.get(PGameSettings.DISABLE_SCREENSAVERS).toString());
+				out.element("option_showcursor", //$NON-NLS-1$
+						gs.get(PGameSettings.DISPLAY_CURSOR).toString());
+				out.element("option_displayerrors", //$NON-NLS-1$
+						gs.get(PGameSettings.DISPLAY_ERRORS).toString());
+				out.element("option_noborder", //$NON-NLS-1$
+						gs.get(PGameSettings.DONT_DRAW_BORDER).toString());
+				out.element("option_nobuttons", //$NON-NLS-1$
+						gs.get(PGameSettings.DONT_SHOW_BUTTONS).toString());
+				out.element("option_argumenterrors", //$NON-NLS-1$
+						gs.get(PGameSettings.ERROR_ON_ARGS).toString());
+				out.element("option_freeze", //$NON-NLS-1$
+						gs.get(PGameSettings.FREEZE_ON_LOSE_FOCUS).toString());
+
+				out.element("option_colordepth", //$NON-NLS-1$
+						ProjectFile.GS_DEPTH_CODE.get(gs.get(PGameSettings.COLOR_DEPTH)).toString());
+
+				out.element("option_frequency", //$NON-NLS-1$
+						ProjectFile.GS_FREQ_CODE.get(gs.get(PGameSettings.FREQUENCY)).toString());
+				out.element("option_resolution", //$NON-NLS-1$
+						ProjectFile.GS_RESOL_CODE.get(gs.get(PGameSettings.RESOLUTION)).toString());
+				out.element("option_changeresolution", //$NON-NLS-1$
+						gs.get(PGameSettings.SET_RESOLUTION).toString());
+				out.element("option_priority", //$NON-NLS-1$
+						ProjectFile.GS_PRIORITY_CODE.get(gs.get(PGameSettings.GAME_PRIORITY)).toString());
+
+				out.element("option_closeesc", //$NON-NLS-1$
+						gs.get(PGameSettings.LET_ESC_END_GAME).toString());
+				out.element("option_interpolate", //$NON-NLS-1$
+						gs.get(PGameSettings.INTERPOLATE).toString());
+				out.element("option_scale", //$NON-NLS-1$
+						gs.get(PGameSettings.SCALING).toString());
+				out.element("option_closeesc", //$NON-NLS-1$
+						gs.get(PGameSettings.TREAT_CLOSE_AS_ESCAPE).toString());
+				gs.put(PGameSettings.LAST_CHANGED,ProjectFile.longTimeToGmTime(savetime));
+				out.element("option_lastchanged", //$NON-NLS-1$
+						gs.get(PGameSettings.LAST_CHANGED).toString());
+
+				out.element("option_gameid", //$NON-NLS-1$
+						gs.get(PGameSettings.GAME_ID).toString());
+				String guid = HexBin.encode((byte[]) gs.get(PGameSettings.GAME_GUID));
+				out.element("option_gameguid", //$NON-NLS-1$
+						'{' + guid.substring(0,8) + '-' + guid.substring(8,12) + '-' + guid.substring(12,16) + '-'
+								+ guid.substring(16,20) + '-' + guid.substring(20,32) + '}');
+
+				out.element("option_author", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.AUTHOR));
+				out.element("option_version_company", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.COMPANY));
+				out.element("option_version_copyright", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.COPYRIGHT));
+				out.element("option_version_description", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.DESCRIPTION));
+				out.element("option_version_product", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.PRODUCT));
+				out.element("option_information", //$NON-NLS-1$
+						(String) gs.get(PGameSettings.INFORMATION));
+				out.element("option_version", //$NON-NLS-1$
+						gs.get(PGameSettings.VERSION).toString());
+				out.element("option_version_build", //$NON-NLS-1$
+						gs.get(PGameSettings.VERSION_BUILD).toString());
+				out.element("option_version_major", //$NON-NLS-1$
+						gs.get(PGameSettings.VERSION_MAJOR).toString());
+				out.element("option_version_minor", //$NON-NLS-1$
+						gs.get(PGameSettings.VERSION_MINOR).toString());
+				out.element("option_version_release", //$NON-NLS-1$
+						gs.get(PGameSettings.VERSION_RELEASE).toString());
+				out.element("option_windows_game_icon",icoPath); //$NON-NLS-1$
+				out.endElement();
+
+				out.startElement("ConfigConstants"); //$NON-NLS-1$
+				writeConstants(gs.constants,out);
+				out.endElement();
+				}
+			catch (IOException e)
+				{
+				handleDocumentException(c,null,file,e);
+				}
 		}
-		return;
+		c.out.endElement();
 		}
 
-	public static void writeConstants(Constants cnsts, Document dom, Element node) throws IOException
+	public static void writeConstants(Constants cnsts, GMXStreamWriter out) throws IOException
 		{
-			Element base = dom.createElement("constants"); //$NON-NLS-1$
-			base.setAttribute("number",Integer.toString(cnsts.constants.size())); //$NON-NLS-1$
+			out.startElement("constants"); //$NON-NLS-1$
+			out.attribute("number",Integer.toString(cnsts.constants.size())); //$NON-NLS-1$
 			for (Constant cnst : cnsts.constants) {
-				Element celement = dom.createElement("constant"); //$NON-NLS-1$
-				celement.setAttribute("name",cnst.name); //$NON-NLS-1$
-				celement.setTextContent(cnst.value);;
-				base.appendChild(celement);
+				out.startElement("constant"); //$NON-NLS-1$
+				out.attribute("name",cnst.name); //$NON-NLS-1$
+				out.text(cnst.value);
+				out.endElement();
 			}
-			node.appendChild(base);
+			out.endElement();
 		}
 
-	public static void writeDefaultConstants(ProjectFileContext c, Element root) throws IOException
+	public static void writeDefaultConstants(ProjectFileContext c) throws IOException
 		{
-			writeConstants(c.f.defaultConstants, c.dom, root);
+			writeConstants(c.f.defaultConstants, c.out);
 		}
 
-	private static void writeSprite(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeSprite(ProjectFileContext c, ResNode resNode) throws IOException
 		{
-		Document dom = c.dom;
 		ProjectFile f = c.f;
 
 		Sprite spr = (Sprite) resNode.getRes().get();
-		Element res = dom.createElement("sprite"); //$NON-NLS-1$
+		c.out.element("sprite","sprites\\" + spr.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,spr,files,false)) return;
+
 		String fname = f.getDirectory() + "\\sprites\\"; //$NON-NLS-1$
-		res.setTextContent("sprites\\" + spr.getName()); //$NON-NLS-1$
 		File imagesFile = new File(Util.getPOSIXPath(fname + "\\images")); //$NON-NLS-1$
 		imagesFile.mkdirs();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element sprroot = doc.createElement("sprite"); //$NON-NLS-1$
-		doc.appendChild(sprroot);
-
-		sprroot.appendChild(createElement(doc,"xorig",spr.get(PSprite.ORIGIN_X).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"yorigin",spr.get(PSprite.ORIGIN_Y).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"colkind", //$NON-NLS-1$
-				ProjectFile.SPRITE_MASK_CODE.get(spr.get(PSprite.SHAPE)).toString()));
-		sprroot.appendChild(createElement(doc,"sepmasks", //$NON-NLS-1$
-				boolToString((Boolean) spr.get(PSprite.SEPARATE_MASK))));
-		sprroot.appendChild(createElement(doc,"bbox_left",spr.get(PSprite.BB_LEFT).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"bbox_right",spr.get(PSprite.BB_RIGHT).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"bbox_top",spr.get(PSprite.BB_TOP).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"bbox_bottom",spr.get(PSprite.BB_BOTTOM).toString())); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"bboxmode", //$NON-NLS-1$
-				ProjectFile.SPRITE_BB_CODE.get(spr.get(PSprite.BB_MODE)).toString()));
-		sprroot.appendChild(createElement(doc,"coltolerance", //$NON-NLS-1$
-				spr.get(PSprite.ALPHA_TOLERANCE).toString()));
-
-		sprroot.appendChild(createElement(doc,"HTile", //$NON-NLS-1$
-				boolToString((Boolean) spr.get(PSprite.TILE_HORIZONTALLY))));
-		sprroot.appendChild(createElement(doc,"VTile", //$NON-NLS-1$
-				boolToString((Boolean) spr.get(PSprite.TILE_VERTICALLY))));
-
-		// TODO: Write texture groups
-
-		sprroot.appendChild(createElement(doc,"For3D", //$NON-NLS-1$
-				boolToString((Boolean) spr.get(PSprite.FOR3D))));
-
-		int width = spr.getWidth(),
-		height = spr.getHeight();
-
-		sprroot.appendChild(createElement(doc,"width",Integer.toString(width))); //$NON-NLS-1$
-		sprroot.appendChild(createElement(doc,"height",Integer.toString(height))); //$NON-NLS-1$
-
-		Element frameroot = doc.createElement("frames"); //$NON-NLS-1$
 		for (int j = 0; j < spr.subImages.size(); j++)
 			{
-			String framefname = "images\\" + spr.getName() + '_' + j + ".png";  //$NON-NLS-1$//$NON-NLS-2$
-			File outputfile = new File(Util.getPOSIXPath(fname + framefname));
-			Element frameNode = createElement(doc,"frame",framefname); //$NON-NLS-1$
-			frameNode.setAttribute("index",Integer.toString(j)); //$NON-NLS-1$
-			frameroot.appendChild(frameNode);
+			File outputfile = files.get(j + 1);
 			BufferedImage sub = spr.subImages.get(j);
-			// GMX does have a backwards compatibility property for transparency pixel so we write
-			// the image with the transparency removed when that setting is checked
-			ImageIO.write(
-					(Boolean) spr.get(PSprite.TRANSPARENT) ? Util.getTransparentImage(sub) : sub,
-					"png",outputfile); //$NON-NLS-1$
+			c.images.write(spr,sub,(Boolean) spr.get(PSprite.TRANSPARENT),outputfile);
 			}
-		sprroot.appendChild(frameroot);
 
-		File file = new File(Util.getPOSIXPath(fname + spr.getName() + ".sprite.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
+			{
+			out.startElement("sprite"); //$NON-NLS-1$
+
+			out.element("xorig",spr.get(PSprite.ORIGIN_X).toString()); //$NON-NLS-1$
+			out.element("yorigin",spr.get(PSprite.ORIGIN_Y).toString()); //$NON-NLS-1$
+			out.element("colkind", //$NON-NLS-1$
+					ProjectFile.SPRITE_MASK_CODE.get(spr.get(PSprite.SHAPE)).toString());
+			out.element("sepmasks", //$NON-NLS-1$
+					boolToString((Boolean) spr.get(PSprite.SEPARATE_MASK)));
+			out.element("bbox_left",spr.get(PSprite.BB_LEFT).toString()); //$NON-NLS-1$
+			out.element("bbox_right",spr.get(PSprite.BB_RIGHT).toString()); //$NON-NLS-1$
+			out.element("bbox_top",spr.get(PSprite.BB_TOP).toString()); //$NON-NLS-1$
+			out.element("bbox_bottom",spr.get(PSprite.BB_BOTTOM).toString()); //$NON-NLS-1$
+			out.element("bboxmode", //$NON-NLS-1$
+					ProjectFile.SPRITE_BB_CODE.get(spr.get(PSprite.BB_MODE)).toString());
+			out.element("coltolerance", //$NON-NLS-1$
+					spr.get(PSprite.ALPHA_TOLERANCE).toString());
+
+			out.element("HTile", //$NON-NLS-1$
+					boolToString((Boolean) spr.get(PSprite.TILE_HORIZONTALLY)));
+			out.element("VTile", //$NON-NLS-1$
+					boolToString((Boolean) spr.get(PSprite.TILE_VERTICALLY)));
+
+			// TODO: Write texture groups
+
+			out.element("For3D", //$NON-NLS-1$
+					boolToString((Boolean) spr.get(PSprite.FOR3D)));
+
+			int width = spr.getWidth(),
+			height = spr.getHeight();
+
+			out.element("width",Integer.toString(width)); //$NON-NLS-1$
+			out.element("height",Integer.toString(height)); //$NON-NLS-1$
+
+			out.startElement("frames"); //$NON-NLS-1$
+			for (int j = 0; j < spr.subImages.size(); j++)
+				{
+				out.startElement("frame"); //$NON-NLS-1$
+				out.attribute("index",Integer.toString(j)); //$NON-NLS-1$
+				out.text(getFrameFileName(spr,j));
+				out.endElement();
+				}
+			out.endElement();
+			}
+		catch (IOException e)
+			{
+			handleDocumentException(c,spr,file,e);
+			}
+		}
 
-		domRoot.appendChild(res);
+	private static String getFrameFileName(Sprite spr, int index)
+		{
+		return "images\\" + spr.getName() + '_' + index + ".png";  //$NON-NLS-1$//$NON-NLS-2$
 		}
 
-	private static void writeSound(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeSound(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Sound snd = (Sound) resNode.getRes().get();
-		Element res = dom.createElement("sound"); //$NON-NLS-1$
+		c.out.element("sound","sound\\" + snd.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,snd,files,false)) return;
+
 		String fname = f.getDirectory() + "\\sound\\"; //$NON-NLS-1$
-		res.setTextContent("sound\\" + snd.getName()); //$NON-NLS-1$
 		File audioFile = new File(Util.getPOSIXPath(fname + "\\audio")); //$NON-NLS-1$
 		audioFile.mkdirs();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element sndroot = doc.createElement("sound"); //$NON-NLS-1$
-		doc.appendChild(sndroot);
-
-		// GMX uses double nested tags for volume, bit rate, sample rate, type, and bit depth
-		// There is an exception to this however. In every one of those tags after volume the
-		// nested tag is singular, where its parent is plural.
 		String fileType = snd.get(PSound.FILE_TYPE).toString();
 		String fileName = snd.getName() + fileType;
-		sndroot.appendChild(createElement(doc,"extension",fileType)); //$NON-NLS-1$
-		sndroot.appendChild(createElement(doc,"origname","sound\\audio\\" + fileName)); //$NON-NLS-1$
-		sndroot.appendChild(createElement(doc,"kind", //$NON-NLS-1$
-				ProjectFile.SOUND_KIND_CODE.get(snd.get(PSound.KIND)).toString()));
-
-		Element volumeRoot = doc.createElement("volume"); //$NON-NLS-1$
-		volumeRoot.appendChild(createElement(doc,"volume", snd.get(PSound.VOLUME).toString())); //$NON-NLS-1$
-		sndroot.appendChild(volumeRoot);
-
-		Element bitRateRoot = doc.createElement("bitRates"); //$NON-NLS-1$
-		bitRateRoot.appendChild(createElement(doc,"bitRate", //$NON-NLS-1$
-			snd.get(PSound.BIT_RATE).toString()));
-		sndroot.appendChild(bitRateRoot);
-
-		Element sampleRateRoot = doc.createElement("sampleRates"); //$NON-NLS-1$
-		sampleRateRoot.appendChild(createElement(doc,"sampleRate", //$NON-NLS-1$
-				snd.get(PSound.SAMPLE_RATE).toString()));
-		sndroot.appendChild(sampleRateRoot);
-
-		Element typesRoot = doc.createElement("types"); //$NON-NLS-1$
-		typesRoot.appendChild(createElement(doc,"type", //$NON-NLS-1$
-			ProjectFile.SOUND_TYPE_CODE.get(snd.get(PSound.TYPE)).toString()));
-		sndroot.appendChild(typesRoot);
-
-		Element bitDepthRoot = doc.createElement("bitDepths"); //$NON-NLS-1$
-		bitDepthRoot.appendChild(createElement(doc,"bitDepth", //$NON-NLS-1$
-				snd.get(PSound.BIT_DEPTH).toString()));
-		sndroot.appendChild(bitDepthRoot);
-
-		sndroot.appendChild(createElement(doc,"pan",snd.get(PSound.PAN).toString())); //$NON-NLS-1$
-		sndroot.appendChild(createElement(doc,"preload", //$NON-NLS-1$
-				boolToString((Boolean) snd.get(PSound.PRELOAD))));
-		sndroot.appendChild(createElement(doc,"compressed", //$NON-NLS-1$
-				boolToString((Boolean) snd.get(PSound.COMPRESSED))));
-		sndroot.appendChild(createElement(doc,"streamed", //$NON-NLS-1$
-				boolToString((Boolean) snd.get(PSound.STREAMED))));
-		sndroot.appendChild(createElement(doc,"uncompressOnLoad", //$NON-NLS-1$
-				boolToString((Boolean) snd.get(PSound.DECOMPRESS_ON_LOAD))));
-		sndroot.appendChild(createElement(doc,"effects",Integer.toString(snd.getEffects()))); //$NON-NLS-1$
-
-		sndroot.appendChild(createElement(doc,"data",fileName)); //$NON-NLS-1$
-		Util.writeFully(Util.getPOSIXPath(fname + "audio/" + fileName),snd.data); //$NON-NLS-1$
-
-		File file = new File(Util.getPOSIXPath(fname + resNode.getUserObject().toString() + ".sound.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
+		byte[] data = snd.getData();
+		// Other sounds may still read their audio from this file, such as after swapping names
+		LazyData.overwriting(files.get(1),data);
+		Util.writeFully(files.get(1).getPath(),data);
+		snd.setData(LazyData.written(files.get(1),data));
+
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
+			{
+			out.startElement("sound"); //$NON-NLS-1$
+
+			// GMX uses double nested tags for volume, bit rate, sample rate, type, and bit depth
+			// There is an exception to this however. In every one of those tags after volume the
+			// nested tag is singular, where its parent is plural.
+			out.element("extension",fileType); //$NON-NLS-1$
+			out.element("origname","sound\\audio\\" + fileName); //$NON-NLS-1$ //$NON-NLS-2$
+			out.element("kind", //$NON-NLS-1$
+					ProjectFile.SOUND_KIND_CODE.get(snd.get(PSound.KIND)).toString());
+
+			out.startElement("volume"); //$NON-NLS-1$
+			out.element("volume", snd.get(PSound.VOLUME).toString()); //$NON-NLS-1$
+			out.endElement();
+
+			out.startElement("bitRates"); //$NON-NLS-1$
+			out.element("bitRate", //$NON-NLS-1$
+				snd.get(PSound.BIT_RATE).toString());
+			out.endElement();
+
+			out.startElement("sampleRates"); //$NON-NLS-1$
+			out.element("sampleRate", //$NON-NLS-1$
+					snd.get(PSound.SAMPLE_RATE).toString());
+			out.endElement();
+
+			out.startElement("types"); //$NON-NLS-1$
+			out.element("type", //$NON-NLS-1$
+				ProjectFile.SOUND_TYPE_CODE.get(snd.get(PSound.TYPE)).toString());
+			out.endElement();
+
+			out.startElement("bitDepths"); //$NON-NLS-1$
+			out.element("bitDepth", //$NON-NLS-1$
+					snd.get(PSound.BIT_DEPTH).toString());
+			out.endElement();
+
+			out.element("pan",snd.get(PSound.PAN).toString()); //$NON-NLS-1$
+			out.element("preload", //$NON-NLS-1$
+					boolToString((Boolean) snd.get(PSound.PRELOAD)));
+			out.element("compressed", //$NON-NLS-1$
+					boolToString((Boolean) snd.get(PSound.COMPRESSED)));
+			out.element("streamed", //$NON-NLS-1$
+					boolToString((Boolean) snd.get(PSound.STREAMED)));
+			out.element("uncompressOnLoad", //$NON-NLS-1$
+					boolToString((Boolean) snd.get(PSound.DECOMPRESS_ON_LOAD)));
+			out.element("effects",Integer.toString(snd.getEffects())); //$NON-NLS-1$
+
+			out.element("data",fileName); //$NON-NLS-1$
+			}
+		catch (IOException e)
+			{
+			handleDocumentException(c,snd,file,e);
+			}
 		}
 
-	private static void writeBackground(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeBackground(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Background bkg = (Background) resNode.getRes().get();
-		Element res = dom.createElement("background"); //$NON-NLS-1$
+		c.out.element("background","background\\" + bkg.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,bkg,files,false)) return;
+
 		String fname = f.getDirectory() + "\\background\\"; //$NON-NLS-1$
-		res.setTextContent("background\\" + bkg.getName()); //$NON-NLS-1$
 		File imagesFile = new File(Util.getPOSIXPath(fname + "\\images")); //$NON-NLS-1$
 		imagesFile.mkdirs();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element bkgroot = doc.createElement("background"); //$NON-NLS-1$
-		doc.appendChild(bkgroot);
-
-		bkgroot.appendChild(createElement(doc,"istileset", //$NON-NLS-1$
-				boolToString((Boolean) bkg.get(PBackground.USE_AS_TILESET))));
-		bkgroot.appendChild(createElement(doc,"tilewidth", //$NON-NLS-1$
-				bkg.get(PBackground.TILE_WIDTH).toString()));
-		bkgroot.appendChild(createElement(doc,"tileheight", //$NON-NLS-1$
-				bkg.get(PBackground.TILE_HEIGHT).toString()));
-		bkgroot.appendChild(createElement(doc,"tilexoff",bkg.get(PBackground.H_OFFSET).toString())); //$NON-NLS-1$
-		bkgroot.appendChild(createElement(doc,"tileyoff",bkg.get(PBackground.V_OFFSET).toString())); //$NON-NLS-1$
-		bkgroot.appendChild(createElement(doc,"tilehsep",bkg.get(PBackground.H_SEP).toString())); //$NON-NLS-1$
-		bkgroot.appendChild(createElement(doc,"tilevsep",bkg.get(PBackground.V_SEP).toString())); //$NON-NLS-1$
-		bkgroot.appendChild(createElement(doc,"HTile", //$NON-NLS-1$
-				boolToString((Boolean) bkg.get(PBackground.TILE_HORIZONTALLY))));
-		bkgroot.appendChild(createElement(doc,"VTile", //$NON-NLS-1$
-				boolToString((Boolean) bkg.get(PBackground.TILE_VERTICALLY))));
-
-		// TODO: Write texture groups
-
-		bkgroot.appendChild(createElement(doc,"For3D", //$NON-NLS-1$
-				boolToString((Boolean) bkg.get(PBackground.FOR3D))));
-
 		int width = bkg.getWidth(),
 		height = bkg.getHeight();
 
-		bkgroot.appendChild(createElement(doc,"width",Integer.toString(width))); //$NON-NLS-1$
-		bkgroot.appendChild(createElement(doc,"height",Integer.toString(height))); //$NON-NLS-1$
-
-		bkgroot.appendChild(createElement(doc,"data","images\\" + bkg.getName() + ".png")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		if (width > 0 && height > 0)
 			{
-			File outputfile = new File(Util.getPOSIXPath(fname + "images\\" + bkg.getName() + ".png")); //$NON-NLS-1$ //$NON-NLS-2$
-			ImageIO.write(bkg.getBackgroundImage(),"png",outputfile); //$NON-NLS-1$
+			c.images.write(bkg,bkg.getBackgroundImage(),false,files.get(1));
 			}
 
-		File file = new File(Util.getPOSIXPath(fname + resNode.getUserObject().toString() + ".background.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
+			{
+			out.startElement("background"); //$NON-NLS-1$
+
+			out.element("istileset", //$NON-NLS-1$
+					boolToString((Boolean) bkg.get(PBackground.USE_AS_TILESET)));
+			out.element("tilewidth", //$NON-NLS-1$
+					bkg.get(PBackground.TILE_WIDTH).toString());
+			out.element("tileheight", //$NON-NLS-1$
+					bkg.get(PBackground.TILE_HEIGHT).toString());
+			out.element("tilexoff",bkg.get(PBackground.H_OFFSET).toString()); //$NON-NLS-1$
+			out.element("tileyoff",bkg.get(PBackground.V_OFFSET).toString()); //$NON-NLS-1$
+			out.element("tilehsep",bkg.get(PBackground.H_SEP).toString()); //$NON-NLS-1$
+			out.element("tilevsep",bkg.get(PBackground.V_SEP).toString()); //$NON-NLS-1$
+			out.element("HTile", //$NON-NLS-1$
+					boolToString((Boolean) bkg.get(PBackground.TILE_HORIZONTALLY)));
+			out.element("VTile", //$NON-NLS-1$
+					boolToString((Boolean) bkg.get(PBackground.TILE_VERTICALLY)));
+
+			// TODO: Write texture groups
+
+			out.element("For3D", //$NON-NLS-1$
+					boolToString((Boolean) bkg.get(PBackground.FOR3D)));
+
+			out.element("width",Integer.toString(width)); //$NON-NLS-1$
+			out.element("height",Integer.toString(height)); //$NON-NLS-1$
+
+			out.element("data","images\\" + bkg.getName() + ".png"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		catch (IOException e)
+			{
+			handleDocumentException(c,bkg,file,e);
+			}
 		}
 
-	private static void writePath(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writePath(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Path path = (Path) resNode.getRes().get();
-		Element res = dom.createElement("path"); //$NON-NLS-1$
-		String fname = f.getDirectory() + "\\paths\\"; //$NON-NLS-1$
-		res.setTextContent("paths\\" + path.getName()); //$NON-NLS-1$
+		c.out.element("path","paths\\" + path.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,path,files,true)) return;
+
 		File pathsFile = new File(Util.getPOSIXPath(f.getDirectory() + "/paths")); //$NON-NLS-1$
 		pathsFile.mkdir();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element pathroot = doc.createElement("path"); //$NON-NLS-1$
-		doc.appendChild(pathroot);
-
-		int kind = path.get(PPath.SMOOTH) ? 1 : 0;
-		pathroot.appendChild(createElement(doc,"kind",Integer.toString(kind))); //$NON-NLS-1$
-		int closed = path.get(PPath.CLOSED) ? -1 : 0;
-		pathroot.appendChild(createElement(doc,"closed",Integer.toString(closed))); //$NON-NLS-1$
-		pathroot.appendChild(createElement(doc,"precision",path.get(PPath.PRECISION).toString())); //$NON-NLS-1$
-		pathroot.appendChild(createElement(doc,"backroom", //$NON-NLS-1$
-				Integer.toString(getId((ResourceReference<?>)path.get(PPath.BACKGROUND_ROOM)))));
-		pathroot.appendChild(createElement(doc,"hsnap",path.get(PPath.SNAP_X).toString())); //$NON-NLS-1$
-		pathroot.appendChild(createElement(doc,"vsnap",path.get(PPath.SNAP_Y).toString())); //$NON-NLS-1$
-
-		Element rootpoint = doc.createElement("points"); //$NON-NLS-1$
-		pathroot.appendChild(rootpoint);
-		for (PathPoint p : path.points)
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
+			{
+			out.startElement("path"); //$NON-NLS-1$
+
+			int kind = path.get(PPath.SMOOTH) ? 1 : 0;
+			out.element("kind",Integer.toString(kind)); //$NON-NLS-1$
+			int closed = path.get(PPath.CLOSED) ? -1 : 0;
+			out.element("closed",Integer.toString(closed)); //$NON-NLS-1$
+			out.element("precision",path.get(PPath.PRECISION).toString()); //$NON-NLS-1$
+			out.element("backroom", //$NON-NLS-1$
+					Integer.toString(getId((ResourceReference<?>)path.get(PPath.BACKGROUND_ROOM))));
+			out.element("hsnap",path.get(PPath.SNAP_X).toString()); //$NON-NLS-1$
+			out.element("vsnap",path.get(PPath.SNAP_Y).toString()); //$NON-NLS-1$
+
+			out.startElement("points"); //$NON-NLS-1$
+			for (PathPoint p : path.points)
+				{
+				out.element("point", //$NON-NLS-1$
+						p.getX() + "," + p.getY() + ',' + p.getSpeed()); //$NON-NLS-1$
+				}
+			out.endElement();
+			}
+		catch (IOException e)
 			{
-			rootpoint.appendChild(createElement(doc,"point", //$NON-NLS-1$
-					p.getX() + "," + p.getY() + ',' + p.getSpeed())); //$NON-NLS-1$
+			handleDocumentException(c,path,file,e);
 			}
-
-		File file = new File(Util.getPOSIXPath(fname + path.getName() + ".path.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeScript(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeScript(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Script scr = (Script) resNode.getRes().get();
-		Element res = dom.createElement("script"); //$NON-NLS-1$
 		String fname = "scripts\\" + scr.getName() + ".gml"; //$NON-NLS-1$ //$NON-NLS-2$
-		res.setTextContent(fname);
+		c.out.element("script",fname); //$NON-NLS-1$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,scr,files,false)) return;
+
 		File file = new File(Util.getPOSIXPath(f.getDirectory() + "/scripts")); //$NON-NLS-1$
 		file.mkdir();
 		Writer out = null;
 		try
 			{
 			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
-					Util.getPOSIXPath(f.getDirectory() + '/' + Util.getPOSIXPath(fname))),"UTF-8")); //$NON-NLS-1$
+					files.get(0)),"UTF-8")); //$NON-NLS-1$
 			out.write((String) scr.properties.get(PScript.CODE));
 			}
 		finally
 			{
 			out.close();
 			}
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeShader(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeShader(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Shader shr = (Shader) resNode.getRes().get();
-		Element res = dom.createElement("shader"); //$NON-NLS-1$
 		String fname = "shaders\\" + shr.getName() + ".shader"; //$NON-NLS-1$ //$NON-NLS-2$
-		res.setTextContent(fname);
-		res.setAttribute("type",shr.properties.get(PShader.TYPE).toString()); //$NON-NLS-1$
+		c.out.startElement("shader"); //$NON-NLS-1$
+		c.out.attribute("type",shr.properties.get(PShader.TYPE).toString()); //$NON-NLS-1$
+		c.out.text(fname);
+		c.out.endElement();
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,shr,files,false)) return;
+
 		File file = new File(Util.getPOSIXPath(f.getDirectory() + "/shaders")); //$NON-NLS-1$
 		file.mkdir();
 		Writer out = null;
 		try
 			{
 			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
-					Util.getPOSIXPath(f.getDirectory() + '/' + fname)),"UTF-8"));
+					files.get(0)),"UTF-8"));
 			String code = shr.properties.get(PShader.VERTEX)
 					+ ('\n' + GMXFileReader.STUPID_SHADER_MARKER)
 					+ shr.properties.get(PShader.FRAGMENT);
@@ -857,458 +1172,440 @@ public final class GMXFileWriter
 			{
 			out.close();
 			}
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeFont(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeFont(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Font fnt = (Font) resNode.getRes().get();
-		Element res = dom.createElement("font"); //$NON-NLS-1$
+		c.out.element("font","fonts\\" + fnt.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,fnt,files,false)) return;
+
 		String fname = f.getDirectory() + "\\fonts\\"; //$NON-NLS-1$
-		res.setTextContent("fonts\\" + fnt.getName()); //$NON-NLS-1$
 		File fontsFile = new File(Util.getPOSIXPath(fname));
 		fontsFile.mkdirs();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element fntroot = doc.createElement("font"); //$NON-NLS-1$
-		doc.appendChild(fntroot);
-
-		fntroot.appendChild(createElement(doc,"name",fnt.get(PFont.FONT_NAME).toString())); //$NON-NLS-1$
-		fntroot.appendChild(createElement(doc,"size",fnt.get(PFont.SIZE).toString())); //$NON-NLS-1$
-		fntroot.appendChild(createElement(doc,"bold",boolToString((Boolean) fnt.get(PFont.BOLD)))); //$NON-NLS-1$
-		fntroot.appendChild(createElement(doc,"italic", //$NON-NLS-1$
-				boolToString((Boolean) fnt.get(PFont.ITALIC))));
-		fntroot.appendChild(createElement(doc,"charset",fnt.get(PFont.CHARSET).toString())); //$NON-NLS-1$
-		fntroot.appendChild(createElement(doc,"aa",fnt.get(PFont.ANTIALIAS).toString())); //$NON-NLS-1$
-
-		Element rangeroot = doc.createElement("ranges"); //$NON-NLS-1$
-		fntroot.appendChild(rangeroot);
-		for (CharacterRange cr : fnt.characterRanges)
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
 			{
-			rangeroot.appendChild(createElement(
-					doc,
-					"range0", //$NON-NLS-1$
-					cr.properties.get(PCharacterRange.RANGE_MIN) + "," //$NON-NLS-1$
-							+ cr.properties.get(PCharacterRange.RANGE_MAX)));
-			}
+			out.startElement("font"); //$NON-NLS-1$
+
+			out.element("name",fnt.get(PFont.FONT_NAME).toString()); //$NON-NLS-1$
+			out.element("size",fnt.get(PFont.SIZE).toString()); //$NON-NLS-1$
+			out.element("bold",boolToString((Boolean) fnt.get(PFont.BOLD))); //$NON-NLS-1$
+			out.element("italic", //$NON-NLS-1$
+					boolToString((Boolean) fnt.get(PFont.ITALIC)));
+			out.element("charset",fnt.get(PFont.CHARSET).toString()); //$NON-NLS-1$
+			out.element("aa",fnt.get(PFont.ANTIALIAS).toString()); //$NON-NLS-1$
+
+			out.startElement("ranges"); //$NON-NLS-1$
+			for (CharacterRange cr : fnt.characterRanges)
+				{
+				out.element(
+						"range0", //$NON-NLS-1$
+						cr.properties.get(PCharacterRange.RANGE_MIN) + "," //$NON-NLS-1$
+								+ cr.properties.get(PCharacterRange.RANGE_MAX));
+				}
+			out.endElement();
 
-		Element glyphroot = doc.createElement("glyphs"); //$NON-NLS-1$
-		fntroot.appendChild(glyphroot);
-		for (GlyphMetric gm : fnt.glyphMetrics)
-			{
-			Element gelement = doc.createElement("glyph"); //$NON-NLS-1$
-			gelement.setAttribute("character",gm.properties.get(PGlyphMetric.CHARACTER).toString()); //$NON-NLS-1$
-			gelement.setAttribute("x",gm.properties.get(PGlyphMetric.X).toString()); //$NON-NLS-1$
-			gelement.setAttribute("y",gm.properties.get(PGlyphMetric.Y).toString()); //$NON-NLS-1$
-			gelement.setAttribute("w",gm.properties.get(PGlyphMetric.W).toString()); //$NON-NLS-1$
-			gelement.setAttribute("h",gm.properties.get(PGlyphMetric.H).toString()); //$NON-NLS-1$
-			gelement.setAttribute("shift",gm.properties.get(PGlyphMetric.SHIFT).toString()); //$NON-NLS-1$
-			gelement.setAttribute("offset",gm.properties.get(PGlyphMetric.OFFSET).toString()); //$NON-NLS-1$
-			glyphroot.appendChild(gelement);
-			}
+			out.startElement("glyphs"); //$NON-NLS-1$
+			for (GlyphMetric gm : fnt.glyphMetrics)
+				{
+				out.startElement("glyph"); //$NON-NLS-1$
+				out.attribute("character",gm.properties.get(PGlyphMetric.CHARACTER).toString()); //$NON-NLS-1$
+				out.attribute("x",gm.properties.get(PGlyphMetric.X).toString()); //$NON-NLS-1$
+				out.attribute("y",gm.properties.get(PGlyphMetric.Y).toString()); //$NON-NLS-1$
+				out.attribute("w",gm.properties.get(PGlyphMetric.W).toString()); //$NON-NLS-1$
+				out.attribute("h",gm.properties.get(PGlyphMetric.H).toString()); //$NON-NLS-1$
+				out.attribute("shift",gm.properties.get(PGlyphMetric.SHIFT).toString()); //$NON-NLS-1$
+				out.attribute("offset",gm.properties.get(PGlyphMetric.OFFSET).toString()); //$NON-NLS-1$
+				out.endElement();
+				}
+			out.endElement();
 
-		// TODO: Move glyph renderer from the plugin to LGM and write glyphs here
-		fntroot.appendChild(createElement(doc,"image",fnt.getName() + ".png")); //$NON-NLS-1$ //$NON-NLS-2$
-		//File outputfile = new File(getUnixPath(fname + fnt.getName() + ".png"));
-		/*
-		try
-			{
-			ImageIO.write(fnt.getBackgroundImage(), "png", outputfile);
+			// TODO: Move glyph renderer from the plugin to LGM and write glyphs here
+			out.element("image",fnt.getName() + ".png"); //$NON-NLS-1$ //$NON-NLS-2$
+			//File outputfile = new File(getUnixPath(fname + fnt.getName() + ".png"));
+			/*
+			try
+				{
+				ImageIO.write(fnt.getBackgroundImage(), "png", outputfile);
+				}
+			catch (IOException e)
+				{
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+				}
+			*/
 			}
 		catch (IOException e)
 			{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			handleDocumentException(c,fnt,file,e);
 			}
-		*/
-
-		File file = new File(Util.getPOSIXPath(fname + fnt.getName() + ".font.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeTimeline(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeTimeline(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Timeline timeline = (Timeline) resNode.getRes().get();
-		Element res = dom.createElement("timeline"); //$NON-NLS-1$
-		String fname = f.getDirectory() + "\\timelines\\"; //$NON-NLS-1$
-		res.setTextContent("timelines\\" + timeline.getName()); //$NON-NLS-1$
+		c.out.element("timeline","timelines\\" + timeline.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,timeline,files,true)) return;
+
 		File timelinesFile = new File(Util.getPOSIXPath(f.getDirectory() + "/timelines")); //$NON-NLS-1$
 		timelinesFile.mkdir();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element tmlroot = doc.createElement("timeline"); //$NON-NLS-1$
-		doc.appendChild(tmlroot);
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
+			{
+			out.startElement("timeline"); //$NON-NLS-1$
 
-		for (Moment mom : timeline.moments)
+			for (Moment mom : timeline.moments)
+				{
+				out.startElement("entry"); //$NON-NLS-1$
+				out.element("step",Integer.toString(mom.stepNo)); //$NON-NLS-1$
+				out.startElement("event"); //$NON-NLS-1$
+				writeActions(out,mom);
+				out.endElement();
+				out.endElement();
+				}
+			}
+		catch (IOException e)
 			{
-			Element entroot = doc.createElement("entry"); //$NON-NLS-1$
-			tmlroot.appendChild(entroot);
-			entroot.appendChild(createElement(doc,"step",Integer.toString(mom.stepNo))); //$NON-NLS-1$
-			Element evtroot = doc.createElement("event"); //$NON-NLS-1$
-			entroot.appendChild(evtroot);
-			writeActions(doc,evtroot,mom);
+			handleDocumentException(c,timeline,file,e);
 			}
-
-		File file = new File(Util.getPOSIXPath(fname + timeline.getName() + ".timeline.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeGmObject(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeGmObject(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		GmObject object = (GmObject) resNode.getRes().get();
-		Element res = dom.createElement("object"); //$NON-NLS-1$
-		String fname = f.getDirectory() + "\\objects\\"; //$NON-NLS-1$
-		res.setTextContent("objects\\" + object.getName()); //$NON-NLS-1$
+		c.out.element("object","objects\\" + object.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,object,files,true)) return;
+
 		File objectsFile = new File(Util.getPOSIXPath(f.getDirectory() + "/objects")); //$NON-NLS-1$
 		objectsFile.mkdir();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element objroot = doc.createElement("object"); //$NON-NLS-1$
-		doc.appendChild(objroot);
-		objroot.appendChild(createElement(doc,"spriteName", //$NON-NLS-1$
-				getName((ResourceReference<?>)object.get(PGmObject.SPRITE))));
-		objroot.appendChild(createElement(doc,"solid", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.SOLID))));
-		objroot.appendChild(createElement(doc,"visible", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.VISIBLE))));
-		objroot.appendChild(createElement(doc,"depth",object.get(PGmObject.DEPTH).toString())); //$NON-NLS-1$
-		objroot.appendChild(createElement(doc,"persistent", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.PERSISTENT))));
-		objroot.appendChild(createElement(doc,"maskName", //$NON-NLS-1$
-				getName((ResourceReference<?>)object.get(PGmObject.MASK))));
-		objroot.appendChild(createElement(doc,"parentName", //$NON-NLS-1$
-				getName((ResourceReference<?>)object.get(PGmObject.PARENT))));
-
-		Element evtroot = doc.createElement("events"); //$NON-NLS-1$
-		for (int i = 0; i < object.mainEvents.size(); i++)
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
 			{
-			MainEvent me = object.mainEvents.get(i);
-			for (int k = me.events.size(); k > 0; k--)
+			out.startElement("object"); //$NON-NLS-1$
+			out.element("spriteName", //$NON-NLS-1$
+					getName((ResourceReference<?>)object.get(PGmObject.SPRITE)));
+			out.element("solid", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.SOLID)));
+			out.element("visible", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.VISIBLE)));
+			out.element("depth",object.get(PGmObject.DEPTH).toString()); //$NON-NLS-1$
+			out.element("persistent", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.PERSISTENT)));
+			out.element("maskName", //$NON-NLS-1$
+					getName((ResourceReference<?>)object.get(PGmObject.MASK)));
+			out.element("parentName", //$NON-NLS-1$
+					getName((ResourceReference<?>)object.get(PGmObject.PARENT)));
+
+			out.startElement("events"); //$NON-NLS-1$
+			for (int i = 0; i < object.mainEvents.size(); i++)
 				{
-				Event ev = me.events.get(k - 1);
-				Element evtelement = doc.createElement("event"); //$NON-NLS-1$
-				evtelement.setAttribute("eventtype",Integer.toString(ev.mainId)); //$NON-NLS-1$
-				if (ev.mainId == MainEvent.EV_COLLISION)
+				MainEvent me = object.mainEvents.get(i);
+				for (int k = me.events.size(); k > 0; k--)
 					{
-					evtelement.setAttribute("ename", //$NON-NLS-1$
-							getName((ResourceReference<GmObject>)ev.other));
+					Event ev = me.events.get(k - 1);
+					out.startElement("event"); //$NON-NLS-1$
+					out.attribute("eventtype",Integer.toString(ev.mainId)); //$NON-NLS-1$
+					if (ev.mainId == MainEvent.EV_COLLISION)
+						{
+						out.attribute("ename", //$NON-NLS-1$
+								getName((ResourceReference<GmObject>)ev.other));
+						}
+					else
+						{
+						out.attribute("enumb",Integer.toString(ev.id)); //$NON-NLS-1$
+						}
+					writeActions(out,ev);
+					out.endElement();
 					}
-				else
-					{
-					evtelement.setAttribute("enumb",Integer.toString(ev.id)); //$NON-NLS-1$
-					}
-				evtroot.appendChild(evtelement);
-				writeActions(doc,evtelement,ev);
 				}
+			out.endElement();
+
+			// Physics Properties
+			out.element("PhysicsObject", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.PHYSICS_OBJECT)));
+			out.element("PhysicsObjectSensor", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.PHYSICS_SENSOR)));
+			out.element("PhysicsObjectShape", //$NON-NLS-1$
+					ProjectFile.SHAPE_CODE.get(object.get(PGmObject.PHYSICS_SHAPE)).toString());
+			out.element("PhysicsObjectDensity", //$NON-NLS-1$
+					Double.toString((Double) object.get(PGmObject.PHYSICS_DENSITY)));
+			out.element("PhysicsObjectRestitution", //$NON-NLS-1$
+					Double.toString((Double) object.get(PGmObject.PHYSICS_RESTITUTION)));
+			out.element("PhysicsObjectGroup", //$NON-NLS-1$
+					Integer.toString((Integer) object.get(PGmObject.PHYSICS_GROUP)));
+			out.element("PhysicsObjectLinearDamping", //$NON-NLS-1$
+					Double.toString((Double) object.get(PGmObject.PHYSICS_DAMPING_LINEAR)));
+			out.element("PhysicsObjectAngularDamping", //$NON-NLS-1$
+					Double.toString((Double) object.get(PGmObject.PHYSICS_DAMPING_ANGULAR)));
+			out.element("PhysicsObjectFriction", //$NON-NLS-1$
+					Double.toString((Double) object.get(PGmObject.PHYSICS_FRICTION)));
+			out.element("PhysicsObjectAwake", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.PHYSICS_AWAKE)));
+			out.element("PhysicsObjectKinematic", //$NON-NLS-1$
+					boolToString((Boolean) object.get(PGmObject.PHYSICS_KINEMATIC)));
+
+			out.startElement("PhysicsShapePoints"); //$NON-NLS-1$
+			for (ShapePoint point : object.shapePoints)
+				{
+				out.element("point",point.getX() + "," + point.getY()); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			out.endElement();
 			}
-		objroot.appendChild(evtroot);
-
-		// Physics Properties
-		objroot.appendChild(createElement(doc,"PhysicsObject", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.PHYSICS_OBJECT))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectSensor", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.PHYSICS_SENSOR))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectShape", //$NON-NLS-1$
-				ProjectFile.SHAPE_CODE.get(object.get(PGmObject.PHYSICS_SHAPE)).toString()));
-		objroot.appendChild(createElement(doc,"PhysicsObjectDensity", //$NON-NLS-1$
-				Double.toString((Double) object.get(PGmObject.PHYSICS_DENSITY))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectRestitution", //$NON-NLS-1$
-				Double.toString((Double) object.get(PGmObject.PHYSICS_RESTITUTION))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectGroup", //$NON-NLS-1$
-				Integer.toString((Integer) object.get(PGmObject.PHYSICS_GROUP))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectLinearDamping", //$NON-NLS-1$
-				Double.toString((Double) object.get(PGmObject.PHYSICS_DAMPING_LINEAR))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectAngularDamping", //$NON-NLS-1$
-				Double.toString((Double) object.get(PGmObject.PHYSICS_DAMPING_ANGULAR))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectFriction", //$NON-NLS-1$
-				Double.toString((Double) object.get(PGmObject.PHYSICS_FRICTION))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectAwake", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.PHYSICS_AWAKE))));
-		objroot.appendChild(createElement(doc,"PhysicsObjectKinematic", //$NON-NLS-1$
-				boolToString((Boolean) object.get(PGmObject.PHYSICS_KINEMATIC))));
-
-		Element pointsroot = doc.createElement("PhysicsShapePoints"); //$NON-NLS-1$
-		for (ShapePoint point : object.shapePoints)
+		catch (IOException e)
 			{
-			pointsroot.appendChild(createElement(doc,"point",point.getX() + "," + point.getY())); //$NON-NLS-1$ //$NON-NLS-2$
+			handleDocumentException(c,object,file,e);
 			}
-		objroot.appendChild(pointsroot);
-
-		File file = new File(Util.getPOSIXPath(fname + object.getName() + ".object.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeRoom(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeRoom(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
 
 		Room room = (Room) resNode.getRes().get();
-		Element res = dom.createElement("room"); //$NON-NLS-1$
-		String fname = f.getDirectory() + "\\rooms\\"; //$NON-NLS-1$
-		res.setTextContent("rooms\\" + room.getName()); //$NON-NLS-1$
+		c.out.element("room","rooms\\" + room.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,room,files,true)) return;
+
 		File roomsFile = new File(Util.getPOSIXPath(f.getDirectory() + "/rooms")); //$NON-NLS-1$
 		roomsFile.mkdir();
 
-		Document doc = documentBuilder.newDocument();
-
-		Element roomroot = doc.createElement("room"); //$NON-NLS-1$
-		doc.appendChild(roomroot);
-
-		roomroot.appendChild(createElement(doc,"caption",room.get(PRoom.CAPTION).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"width",room.get(PRoom.WIDTH).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"height",room.get(PRoom.HEIGHT).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"hsnap",room.get(PRoom.SNAP_X).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"vsnap",room.get(PRoom.SNAP_Y).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"isometric", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.ISOMETRIC))));
-		roomroot.appendChild(createElement(doc,"speed",room.get(PRoom.SPEED).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"persistent", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.PERSISTENT))));
-		roomroot.appendChild(createElement(doc,"colour", //$NON-NLS-1$
-				Integer.toString(Util.getGmColor((Color) room.get(PRoom.BACKGROUND_COLOR)))));
-		roomroot.appendChild(createElement(doc,"showcolour", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.DRAW_BACKGROUND_COLOR))));
-		roomroot.appendChild(createElement(doc,"code",room.get(PRoom.CREATION_CODE).toString())); //$NON-NLS-1$
-		roomroot.appendChild(createElement(doc,"enableViews", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.VIEWS_ENABLED))));
-		roomroot.appendChild(createElement(doc,"clearViewBackground", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.VIEWS_CLEAR))));
-
-		// Write the maker settings, or basically the settings of the editor.
-		Element mkeroot = doc.createElement("makerSettings"); //$NON-NLS-1$
-		mkeroot.appendChild(createElement(doc,"isSet", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.REMEMBER_WINDOW_SIZE))));
-		mkeroot.appendChild(createElement(doc,"w",room.get(PRoom.EDITOR_WIDTH).toString())); //$NON-NLS-1$
-		mkeroot.appendChild(createElement(doc,"h",room.get(PRoom.EDITOR_HEIGHT).toString())); //$NON-NLS-1$
-		mkeroot.appendChild(createElement(doc,"showGrid", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_GRID))));
-		mkeroot.appendChild(createElement(doc,"showObjects", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_OBJECTS))));
-		mkeroot.appendChild(createElement(doc,"showTiles", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_TILES))));
-		mkeroot.appendChild(createElement(doc,"showBackgrounds", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_BACKGROUNDS))));
-		mkeroot.appendChild(createElement(doc,"showForegrounds", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_FOREGROUNDS))));
-		mkeroot.appendChild(createElement(doc,"showViews", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.SHOW_VIEWS))));
-		mkeroot.appendChild(createElement(doc,"deleteUnderlyingObj", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.DELETE_UNDERLYING_OBJECTS))));
-		mkeroot.appendChild(createElement(doc,"deleteUnderlyingTiles", //$NON-NLS-1$
-				boolToString((Boolean) room.get(PRoom.DELETE_UNDERLYING_TILES))));
-		mkeroot.appendChild(createElement(doc,"page",room.get(PRoom.CURRENT_TAB).toString())); //$NON-NLS-1$
-		mkeroot.appendChild(createElement(doc,"xoffset",room.get(PRoom.SCROLL_BAR_X).toString())); //$NON-NLS-1$
-		mkeroot.appendChild(createElement(doc,"yoffset",room.get(PRoom.SCROLL_BAR_Y).toString())); //$NON-NLS-1$
-		roomroot.appendChild(mkeroot);
-
-		// Write Backgrounds
-		Element backroot = doc.createElement("backgrounds"); //$NON-NLS-1$
-		roomroot.appendChild(backroot);
-		for (BackgroundDef back : room.backgroundDefs)
+		File file = files.get(0);
+		try (GMXStreamWriter out = new GMXStreamWriter(file))
 			{
-			PropertyMap<PBackgroundDef> props = back.properties;
-			Element bckelement = doc.createElement("background"); //$NON-NLS-1$
-			backroot.appendChild(bckelement);
-
-			bckelement.setAttribute("visible", //$NON-NLS-1$
-					boolToString((Boolean) props.get(PBackgroundDef.VISIBLE)));
-			bckelement.setAttribute("foreground", //$NON-NLS-1$
-					boolToString((Boolean) props.get(PBackgroundDef.FOREGROUND)));
-			bckelement.setAttribute("name", //$NON-NLS-1$
-					getName((ResourceReference<?>)props.get(PBackgroundDef.BACKGROUND),""));
-			bckelement.setAttribute("x",Integer.toString((Integer) props.get(PBackgroundDef.X))); //$NON-NLS-1$
-			bckelement.setAttribute("y",Integer.toString((Integer) props.get(PBackgroundDef.Y))); //$NON-NLS-1$
-			bckelement.setAttribute("htiled", //$NON-NLS-1$
-					boolToString((Boolean) props.get(PBackgroundDef.TILE_HORIZ)));
-			bckelement.setAttribute("vtiled", //$NON-NLS-1$
-					boolToString((Boolean) props.get(PBackgroundDef.TILE_VERT)));
-			bckelement.setAttribute("hspeed", //$NON-NLS-1$
-					Integer.toString((Integer) props.get(PBackgroundDef.H_SPEED)));
-			bckelement.setAttribute("vspeed", //$NON-NLS-1$
-					Integer.toString((Integer) props.get(PBackgroundDef.V_SPEED)));
-			bckelement.setAttribute("stretch", //$NON-NLS-1$
-					boolToString((Boolean) props.get(PBackgroundDef.STRETCH)));
-			}
+			out.startElement("room"); //$NON-NLS-1$
+
+			out.element("caption",room.get(PRoom.CAPTION).toString()); //$NON-NLS-1$
+			out.element("width",room.get(PRoom.WIDTH).toString()); //$NON-NLS-1$
+			out.element("height",room.get(PRoom.HEIGHT).toString()); //$NON-NLS-1$
+			out.element("hsnap",room.get(PRoom.SNAP_X).toString()); //$NON-NLS-1$
+			out.element("vsnap",room.get(PRoom.SNAP_Y).toString()); //$NON-NLS-1$
+			out.element("isometric", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.ISOMETRIC)));
+			out.element("speed",room.get(PRoom.SPEED).toString()); //$NON-NLS-1$
+			out.element("persistent", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.PERSISTENT)));
+			out.element("colour", //$NON-NLS-1$
+					Integer.toString(Util.getGmColor((Color) room.get(PRoom.BACKGROUND_COLOR))));
+			out.element("showcolour", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.DRAW_BACKGROUND_COLOR)));
+			out.element("code",room.get(PRoom.CREATION_CODE).toString()); //$NON-NLS-1$
+			out.element("enableViews", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.VIEWS_ENABLED)));
+			out.element("clearViewBackground", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.VIEWS_CLEAR)));
+
+			// Write the maker settings, or basically the settings of the editor.
+			out.startElement("makerSettings"); //$NON-NLS-1$
+			out.element("isSet", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.REMEMBER_WINDOW_SIZE)));
+			out.element("w",room.get(PRoom.EDITOR_WIDTH).toString()); //$NON-NLS-1$
+			out.element("h",room.get(PRoom.EDITOR_HEIGHT).toString()); //$NON-NLS-1$
+			out.element("showGrid", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_GRID)));
+			out.element("showObjects", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_OBJECTS)));
+			out.element("showTiles", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_TILES)));
+			out.element("showBackgrounds", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_BACKGROUNDS)));
+			out.element("showForegrounds", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_FOREGROUNDS)));
+			out.element("showViews", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.SHOW_VIEWS)));
+			out.element("deleteUnderlyingObj", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.DELETE_UNDERLYING_OBJECTS)));
+			out.element("deleteUnderlyingTiles", //$NON-NLS-1$
+					boolToString((Boolean) room.get(PRoom.DELETE_UNDERLYING_TILES)));
+			out.element("page",room.get(PRoom.CURRENT_TAB).toString()); //$NON-NLS-1$
+			out.element("xoffset",room.get(PRoom.SCROLL_BAR_X).toString()); //$NON-NLS-1$
+			out.element("yoffset",room.get(PRoom.SCROLL_BAR_Y).toString()); //$NON-NLS-1$
+			out.endElement();
+
+			// Write Backgrounds
+			out.startElement("backgrounds"); //$NON-NLS-1$
+			for (BackgroundDef back : room.backgroundDefs)
+				{
+				PropertyMap<PBackgroundDef> props = back.properties;
+				out.startElement("background"); //$NON-NLS-1$
+
+				out.attribute("visible", //$NON-NLS-1$
+						boolToString((Boolean) props.get(PBackgroundDef.VISIBLE)));
+				out.attribute("foreground", //$NON-NLS-1$
+						boolToString((Boolean) props.get(PBackgroundDef.FOREGROUND)));
+				out.attribute("name", //$NON-NLS-1$
+						getName((ResourceReference<?>)props.get(PBackgroundDef.BACKGROUND),""));
+				out.attribute("x",Integer.toString((Integer) props.get(PBackgroundDef.X))); //$NON-NLS-1$
+				out.attribute("y",Integer.toString((Integer) props.get(PBackgroundDef.Y))); //$NON-NLS-1$
+				out.attribute("htiled", //$NON-NLS-1$
+						boolToString((Boolean) props.get(PBackgroundDef.TILE_HORIZ)));
+				out.attribute("vtiled", //$NON-NLS-1$
+						boolToString((Boolean) props.get(PBackgroundDef.TILE_VERT)));
+				out.attribute("hspeed", //$NON-NLS-1$
+						Integer.toString((Integer) props.get(PBackgroundDef.H_SPEED)));
+				out.attribute("vspeed", //$NON-NLS-1$
+						Integer.toString((Integer) props.get(PBackgroundDef.V_SPEED)));
+				out.attribute("stretch", //$NON-NLS-1$
+						boolToString((Boolean) props.get(PBackgroundDef.STRETCH)));
+				out.endElement();
+				}
+			out.endElement();
 
-		// Write Views
-		Element viewroot = doc.createElement("views"); //$NON-NLS-1$
-		roomroot.appendChild(viewroot);
-		for (View view : room.views)
-			{
-			PropertyMap<PView> props = view.properties;
-			Element vwelement = doc.createElement("view"); //$NON-NLS-1$
-			viewroot.appendChild(vwelement);
-
-			vwelement.setAttribute("visible",boolToString((Boolean) props.get(PView.VISIBLE))); //$NON-NLS-1$
-			vwelement.setAttribute("objName", //$NON-NLS-1$
-					getName((ResourceReference<?>) props.get(PView.OBJECT)));
-			vwelement.setAttribute("xview",Integer.toString((Integer) props.get(PView.VIEW_X))); //$NON-NLS-1$
-			vwelement.setAttribute("yview",Integer.toString((Integer) props.get(PView.VIEW_Y))); //$NON-NLS-1$
-			vwelement.setAttribute("wview",Integer.toString((Integer) props.get(PView.VIEW_W))); //$NON-NLS-1$
-			vwelement.setAttribute("hview",Integer.toString((Integer) props.get(PView.VIEW_H))); //$NON-NLS-1$
-			vwelement.setAttribute("xport",Integer.toString((Integer) props.get(PView.PORT_X))); //$NON-NLS-1$
-			vwelement.setAttribute("yport",Integer.toString((Integer) props.get(PView.PORT_Y))); //$NON-NLS-1$
-			vwelement.setAttribute("wport",Integer.toString((Integer) props.get(PView.PORT_W))); //$NON-NLS-1$
-			vwelement.setAttribute("hport",Integer.toString((Integer) props.get(PView.PORT_H))); //$NON-NLS-1$
-			vwelement.setAttribute("hborder",Integer.toString((Integer) props.get(PView.BORDER_H))); //$NON-NLS-1$
-			vwelement.setAttribute("vborder",Integer.toString((Integer) props.get(PView.BORDER_V))); //$NON-NLS-1$
-			vwelement.setAttribute("hspeed",Integer.toString((Integer) props.get(PView.SPEED_H))); //$NON-NLS-1$
-			vwelement.setAttribute("vspeed",Integer.toString((Integer) props.get(PView.SPEED_V))); //$NON-NLS-1$
-			}
+			// Write Views
+			out.startElement("views"); //$NON-NLS-1$
+			for (View view : room.views)
+				{
+				PropertyMap<PView> props = view.properties;
+				out.startElement("view"); //$NON-NLS-1$
+
+				out.attribute("visible",boolToString((Boolean) props.get(PView.VISIBLE))); //$NON-NLS-1$
+				out.attribute("objName", //$NON-NLS-1$
+						getName((ResourceReference<?>) props.get(PView.OBJECT)));
+				out.attribute("xview",Integer.toString((Integer) props.get(PView.VIEW_X))); //$NON-NLS-1$
+				out.attribute("yview",Integer.toString((Integer) props.get(PView.VIEW_Y))); //$NON-NLS-1$
+				out.attribute("wview",Integer.toString((Integer) props.get(PView.VIEW_W))); //$NON-NLS-1$
+				out.attribute("hview",Integer.toString((Integer) props.get(PView.VIEW_H))); //$NON-NLS-1$
+				out.attribute("xport",Integer.toString((Integer) props.get(PView.PORT_X))); //$NON-NLS-1$
+				out.attribute("yport",Integer.toString((Integer) props.get(PView.PORT_Y))); //$NON-NLS-1$
+				out.attribute("wport",Integer.toString((Integer) props.get(PView.PORT_W))); //$NON-NLS-1$
+				out.attribute("hport",Integer.toString((Integer) props.get(PView.PORT_H))); //$NON-NLS-1$
+				out.attribute("hborder",Integer.toString((Integer) props.get(PView.BORDER_H))); //$NON-NLS-1$
+				out.attribute("vborder",Integer.toString((Integer) props.get(PView.BORDER_V))); //$NON-NLS-1$
+				out.attribute("hspeed",Integer.toString((Integer) props.get(PView.SPEED_H))); //$NON-NLS-1$
+				out.attribute("vspeed",Integer.toString((Integer) props.get(PView.SPEED_V))); //$NON-NLS-1$
+				out.endElement();
+				}
+			out.endElement();
 
-		// Write instances
-		Element insroot = doc.createElement("instances"); //$NON-NLS-1$
-		roomroot.appendChild(insroot);
-		for (Instance in : room.instances)
-			{
-			Element inselement = doc.createElement("instance"); //$NON-NLS-1$
-			insroot.appendChild(inselement);
-			inselement.setAttribute("objName", //$NON-NLS-1$
-					getName((ResourceReference<?>) in.properties.get(PInstance.OBJECT)));
-			inselement.setAttribute("x",Integer.toString(in.getPosition().x)); //$NON-NLS-1$
-			inselement.setAttribute("y",Integer.toString(in.getPosition().y)); //$NON-NLS-1$
-			inselement.setAttribute("name",in.getName()); //$NON-NLS-1$
-			inselement.setAttribute("id",Integer.toString(in.getID())); //$NON-NLS-1$
-			inselement.setAttribute("locked",boolToString(in.isLocked())); //$NON-NLS-1$
-			inselement.setAttribute("code",in.getCreationCode()); //$NON-NLS-1$
-			inselement.setAttribute("scaleX",Double.toString(in.getScale().getX())); //$NON-NLS-1$
-			inselement.setAttribute("scaleY",Double.toString(in.getScale().getY())); //$NON-NLS-1$
-			String color = Long.toString(Util.getInstanceColorWithAlpha(in.getColor(),in.getAlpha()));
-			inselement.setAttribute("colour",color); // default white //$NON-NLS-1$
-			inselement.setAttribute("rotation",Double.toString(in.getRotation())); //$NON-NLS-1$
-			}
+			// Write instances
+			out.startElement("instances"); //$NON-NLS-1$
+			for (Instance in : room.instances)
+				{
+				out.startElement("instance"); //$NON-NLS-1$
+				out.attribute("objName", //$NON-NLS-1$
+						getName((ResourceReference<?>) in.properties.get(PInstance.OBJECT)));
+				out.attribute("x",Integer.toString(in.getPosition().x)); //$NON-NLS-1$
+				out.attribute("y",Integer.toString(in.getPosition().y)); //$NON-NLS-1$
+				out.attribute("name",in.getName()); //$NON-NLS-1$
+				out.attribute("id",Integer.toString(in.getID())); //$NON-NLS-1$
+				out.attribute("locked",boolToString(in.isLocked())); //$NON-NLS-1$
+				out.attribute("code",in.getCreationCode()); //$NON-NLS-1$
+				out.attribute("scaleX",Double.toString(in.getScale().getX())); //$NON-NLS-1$
+				out.attribute("scaleY",Double.toString(in.getScale().getY())); //$NON-NLS-1$
+				String color = Long.toString(Util.getInstanceColorWithAlpha(in.getColor(),in.getAlpha()));
+				out.attribute("colour",color); // default white //$NON-NLS-1$
+				out.attribute("rotation",Double.toString(in.getRotation())); //$NON-NLS-1$
+				out.endElement();
+				}
+			out.endElement();
 
-		// Write Tiles
-		Element tileroot = doc.createElement("tiles"); //$NON-NLS-1$
-		roomroot.appendChild(tileroot);
-		for (Tile tile : room.tiles)
+			// Write Tiles
+			out.startElement("tiles"); //$NON-NLS-1$
+			for (Tile tile : room.tiles)
+				{
+				PropertyMap<PTile> props = tile.properties;
+				out.startElement("tile"); //$NON-NLS-1$
+
+				out.attribute("bgName", //$NON-NLS-1$
+						getName((ResourceReference<?>) props.get(PTile.BACKGROUND),""));
+				out.attribute("x",Integer.toString((Integer) props.get(PTile.ROOM_X))); //$NON-NLS-1$
+				out.attribute("y",Integer.toString((Integer) props.get(PTile.ROOM_Y))); //$NON-NLS-1$
+				out.attribute("w",Integer.toString((Integer) props.get(PTile.WIDTH))); //$NON-NLS-1$
+				out.attribute("h",Integer.toString((Integer) props.get(PTile.HEIGHT))); //$NON-NLS-1$
+				out.attribute("xo",Integer.toString((Integer) props.get(PTile.BG_X))); //$NON-NLS-1$
+				out.attribute("yo",Integer.toString((Integer) props.get(PTile.BG_Y))); //$NON-NLS-1$
+				out.attribute("id",Integer.toString((Integer) props.get(PTile.ID))); //$NON-NLS-1$
+				out.attribute("name",(String) props.get(PTile.NAME)); //$NON-NLS-1$
+				out.attribute("depth",Integer.toString(tile.getDepth())); //$NON-NLS-1$
+				out.attribute("locked",boolToString(tile.isLocked())); //$NON-NLS-1$
+				Point2D scale = tile.getScale();
+				out.attribute("scaleX",Double.toString(scale.getX())); //$NON-NLS-1$
+				out.attribute("scaleY",Double.toString(scale.getY())); //$NON-NLS-1$
+				out.attribute("colour",Long.toString(tile.getColor())); //$NON-NLS-1$
+				out.endElement();
+				}
+			out.endElement();
+
+			// Physics properties
+			out.element("PhysicsWorld", //$NON-NLS-1$
+				boolToString((Boolean) room.get(PRoom.PHYSICS_WORLD)));
+			out.element("PhysicsWorldTop", //$NON-NLS-1$
+				Integer.toString((Integer) room.get(PRoom.PHYSICS_TOP)));
+			out.element("PhysicsWorldLeft", //$NON-NLS-1$
+				Integer.toString((Integer) room.get(PRoom.PHYSICS_LEFT)));
+			out.element("PhysicsWorldRight", //$NON-NLS-1$
+				Integer.toString((Integer) room.get(PRoom.PHYSICS_RIGHT)));
+			out.element("PhysicsWorldBottom", //$NON-NLS-1$
+				Integer.toString((Integer) room.get(PRoom.PHYSICS_BOTTOM)));
+			out.element("PhysicsWorldGravityX", //$NON-NLS-1$
+				Double.toString((Double) room.get(PRoom.PHYSICS_GRAVITY_X)));
+			out.element("PhysicsWorldGravityY", //$NON-NLS-1$
+				Double.toString((Double) room.get(PRoom.PHYSICS_GRAVITY_Y)));
+			out.element("PhysicsWorldPixToMeters", //$NON-NLS-1$
+				Double.toString((Double) room.get(PRoom.PHYSICS_PIXTOMETERS)));
+			}
+		catch (IOException e)
 			{
-			PropertyMap<PTile> props = tile.properties;
-			Element tileelement = doc.createElement("tile"); //$NON-NLS-1$
-			tileroot.appendChild(tileelement);
-
-			tileelement.setAttribute("bgName", //$NON-NLS-1$
-					getName((ResourceReference<?>) props.get(PTile.BACKGROUND),""));
-			tileelement.setAttribute("x",Integer.toString((Integer) props.get(PTile.ROOM_X))); //$NON-NLS-1$
-			tileelement.setAttribute("y",Integer.toString((Integer) props.get(PTile.ROOM_Y))); //$NON-NLS-1$
-			tileelement.setAttribute("w",Integer.toString((Integer) props.get(PTile.WIDTH))); //$NON-NLS-1$
-			tileelement.setAttribute("h",Integer.toString((Integer) props.get(PTile.HEIGHT))); //$NON-NLS-1$
-			tileelement.setAttribute("xo",Integer.toString((Integer) props.get(PTile.BG_X))); //$NON-NLS-1$
-			tileelement.setAttribute("yo",Integer.toString((Integer) props.get(PTile.BG_Y))); //$NON-NLS-1$
-			tileelement.setAttribute("id",Integer.toString((Integer) props.get(PTile.ID))); //$NON-NLS-1$
-			tileelement.setAttribute("name",(String) props.get(PTile.NAME)); //$NON-NLS-1$
-			tileelement.setAttribute("depth",Integer.toString(tile.getDepth())); //$NON-NLS-1$
-			tileelement.setAttribute("locked",boolToString(tile.isLocked())); //$NON-NLS-1$
-			Point2D scale = tile.getScale();
-			tileelement.setAttribute("scaleX",Double.toString(scale.getX())); //$NON-NLS-1$
-			tileelement.setAttribute("scaleY",Double.toString(scale.getY())); //$NON-NLS-1$
-			tileelement.setAttribute("colour",Long.toString(tile.getColor())); //$NON-NLS-1$
+			handleDocumentException(c,room,file,e);
 			}
-
-		// Physics properties
-		roomroot.appendChild(createElement(doc,"PhysicsWorld", //$NON-NLS-1$
-			boolToString((Boolean) room.get(PRoom.PHYSICS_WORLD))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldTop", //$NON-NLS-1$
-			Integer.toString((Integer) room.get(PRoom.PHYSICS_TOP))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldLeft", //$NON-NLS-1$
-			Integer.toString((Integer) room.get(PRoom.PHYSICS_LEFT))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldRight", //$NON-NLS-1$
-			Integer.toString((Integer) room.get(PRoom.PHYSICS_RIGHT))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldBottom", //$NON-NLS-1$
-			Integer.toString((Integer) room.get(PRoom.PHYSICS_BOTTOM))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldGravityX", //$NON-NLS-1$
-			Double.toString((Double) room.get(PRoom.PHYSICS_GRAVITY_X))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldGravityY", //$NON-NLS-1$
-			Double.toString((Double) room.get(PRoom.PHYSICS_GRAVITY_Y))));
-		roomroot.appendChild(createElement(doc,"PhysicsWorldPixToMeters", //$NON-NLS-1$
-			Double.toString((Double) room.get(PRoom.PHYSICS_PIXTOMETERS))));
-
-		File file = new File(Util.getPOSIXPath(fname + room.getName() + ".room.gmx")); //$NON-NLS-1$
-		transformDocumentUnchecked(f, doc, file);
-
-		domRoot.appendChild(res);
 		}
 
-	private static void writeInclude(ProjectFileContext c, ResNode resNode, Element domRoot)
-			throws IOException
+	private static void writeInclude(ProjectFileContext c, ResNode resNode) throws IOException
 		{
 		ProjectFile f = c.f;
-		Document dom = c.dom;
+		GMXStreamWriter out = c.out;
 
 		Include include = (Include) resNode.getRes().get();
-		Element incRoot = dom.createElement("datafile"); //$NON-NLS-1$
-		incRoot.appendChild(createElement(dom,"name", include.getName())); //$NON-NLS-1$
-		incRoot.appendChild(createElement(dom,"filename", //$NON-NLS-1$
-				include.get(PInclude.FILENAME).toString()));
-		incRoot.appendChild(createElement(dom,"size", //$NON-NLS-1$
-				include.get(PInclude.SIZE).toString()));
-		incRoot.appendChild(createElement(dom,"exportDir", //$NON-NLS-1$
-				include.get(PInclude.EXPORTFOLDER).toString()));
+		out.startElement("datafile"); //$NON-NLS-1$
+		out.element("name", include.getName()); //$NON-NLS-1$
+		out.element("filename", //$NON-NLS-1$
+				include.get(PInclude.FILENAME).toString());
+		out.element("size", //$NON-NLS-1$
+				include.get(PInclude.SIZE).toString());
+		out.element("exportDir", //$NON-NLS-1$
+				include.get(PInclude.EXPORTFOLDER).toString());
 		int exportCode = ProjectFile.INCLUDE_EXPORT_CODE.get(include.get(PInclude.EXPORTACTION));
-		incRoot.appendChild(createElement(dom,"exportAction", //$NON-NLS-1$
-				Integer.toString(exportCode)));
-		incRoot.appendChild(createElement(dom,"overwrite", //$NON-NLS-1$
-				boolToString((Boolean)include.get(PInclude.OVERWRITE))));
-		incRoot.appendChild(createElement(dom,"store", //$NON-NLS-1$
-				boolToString((Boolean)include.get(PInclude.STORE))));
-		incRoot.appendChild(createElement(dom,"freeData", //$NON-NLS-1$
-				boolToString((Boolean)include.get(PInclude.FREEMEMORY))));
-		incRoot.appendChild(createElement(dom,"removeEnd", //$NON-NLS-1$
-				boolToString((Boolean)include.get(PInclude.REMOVEATGAMEEND))));
-		domRoot.appendChild(incRoot);
-
-		String filePath = include.get(PInclude.FILENAME).toString();
-		ResNode parent = (ResNode) resNode.getParent();
-		while (parent != null && parent.status == ResNode.STATUS_GROUP) {
-			filePath = parent.toString() + '/' + filePath;
-			parent = (ResNode) parent.getParent();
-		}
-		filePath = f.getDirectory() + "/datafiles/" + filePath; //$NON-NLS-1$
-		File dataFile = new File(filePath);
+		out.element("exportAction", //$NON-NLS-1$
+				Integer.toString(exportCode));
+		out.element("overwrite", //$NON-NLS-1$
+				boolToString((Boolean)include.get(PInclude.OVERWRITE)));
+		out.element("store", //$NON-NLS-1$
+				boolToString((Boolean)include.get(PInclude.STORE)));
+		out.element("freeData", //$NON-NLS-1$
+				boolToString((Boolean)include.get(PInclude.FREEMEMORY)));
+		out.element("removeEnd", //$NON-NLS-1$
+				boolToString((Boolean)include.get(PInclude.REMOVEATGAMEEND)));
+		out.endElement();
+
+		List<File> files = getResourceFiles(f.getDirectory(),resNode);
+		if (isSaved(c,include,files,false)) return;
+
+		File dataFile = files.get(0);
 		dataFile.getParentFile().mkdirs();
 		Files.write(dataFile.toPath(),include.data);
 		}
 
-	public static void writePackages(ProjectFileContext c, Element root) throws IOException
+	public static void writePackages(ProjectFileContext c) throws IOException
 		{
 		// TODO: Implement
 		}
 
-	public static void writeGameInformation(ProjectFileContext c, Element root)
-			throws FileNotFoundException
+	public static void writeGameInformation(ProjectFileContext c) throws IOException
 		{
-		Document dom = c.dom;
 		ProjectFile f = c.f;
 
-		Element helpNode = dom.createElement("help"); //$NON-NLS-1$
-		Element rtfNode = dom.createElement("rtf"); //$NON-NLS-1$
-		rtfNode.setTextContent("help.rtf"); //$NON-NLS-1$
-		helpNode.appendChild(rtfNode);
-
 		PrintWriter out = null;
 		try
 			{
@@ -1320,76 +1617,79 @@ public final class GMXFileWriter
 			out.close();
 			}
 
-		root.appendChild(helpNode);
+		c.out.startElement("help"); //$NON-NLS-1$
+		c.out.element("rtf","help.rtf"); //$NON-NLS-1$ //$NON-NLS-2$
+		c.out.endElement();
 		}
 
-	public static void writeActions(Document doc, Element root, ActionContainer container)
+	public static void writeActions(GMXStreamWriter out, ActionContainer container)
+			throws IOException
 		{
 		for (Action act : container.actions)
 			{
-			Element actelement = doc.createElement("action"); //$NON-NLS-1$
-			root.appendChild(actelement);
+			out.startElement("action"); //$NON-NLS-1$
 			LibAction la = act.getLibAction();
 
-			actelement.appendChild(createElement(doc,"libid", //$NON-NLS-1$
-					Integer.toString(la.parent != null ? la.parent.id : la.parentId)));
-			actelement.appendChild(createElement(doc,"id",Integer.toString(la.id))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"kind",Integer.toString(la.actionKind))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"userelative",boolToString(la.allowRelative))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"useapplyto",boolToString(la.canApplyTo))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"isquestion",boolToString(la.question))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"exetype",Integer.toString(la.execType))); //$NON-NLS-1$
+			out.element("libid", //$NON-NLS-1$
+					Integer.toString(la.parent != null ? la.parent.id : la.parentId));
+			out.element("id",Integer.toString(la.id)); //$NON-NLS-1$
+			out.element("kind",Integer.toString(la.actionKind)); //$NON-NLS-1$
+			out.element("userelative",boolToString(la.allowRelative)); //$NON-NLS-1$
+			out.element("useapplyto",boolToString(la.canApplyTo)); //$NON-NLS-1$
+			out.element("isquestion",boolToString(la.question)); //$NON-NLS-1$
+			out.element("exetype",Integer.toString(la.execType)); //$NON-NLS-1$
 			String execinfo = "";
 			if (la.execType == Action.EXEC_FUNCTION)
 				{
 				execinfo = la.execInfo;
 				}
-			actelement.appendChild(createElement(doc,"functionname",execinfo)); //$NON-NLS-1$
+			out.element("functionname",execinfo); //$NON-NLS-1$
 			execinfo = ""; //$NON-NLS-1$
 			if (la.execType == Action.EXEC_CODE)
 				{
 				execinfo = la.execInfo;
 				}
-			actelement.appendChild(createElement(doc,"codestring",execinfo)); //$NON-NLS-1$
+			out.element("codestring",execinfo); //$NON-NLS-1$
 
 			ResourceReference<GmObject> at = act.getAppliesTo();
 			if (at != null)
 				{
 				if (at == GmObject.OBJECT_OTHER)
-					actelement.appendChild(createElement(doc,"whoName","other")); //$NON-NLS-1$ //$NON-NLS-2$
+					out.element("whoName","other"); //$NON-NLS-1$ //$NON-NLS-2$
 				else if (at == GmObject.OBJECT_SELF)
-					actelement.appendChild(createElement(doc,"whoName","self")); //$NON-NLS-1$ //$NON-NLS-2$
+					out.element("whoName","self"); //$NON-NLS-1$ //$NON-NLS-2$
 				else
-					actelement.appendChild(createElement(doc,"whoName",getName(at))); //$NON-NLS-1$
+					out.element("whoName",getName(at)); //$NON-NLS-1$
 				}
 			else
-				actelement.appendChild(createElement(doc,"whoName","self")); //$NON-NLS-1$ //$NON-NLS-2$
+				out.element("whoName","self"); //$NON-NLS-1$ //$NON-NLS-2$
 
-			actelement.appendChild(createElement(doc,"relative",boolToString(act.isRelative()))); //$NON-NLS-1$
-			actelement.appendChild(createElement(doc,"isnot",boolToString(act.isNot()))); //$NON-NLS-1$
+			out.element("relative",boolToString(act.isRelative())); //$NON-NLS-1$
+			out.element("isnot",boolToString(act.isNot())); //$NON-NLS-1$
 
 			// Now we write the arguments
-			Element argsroot = doc.createElement("arguments"); //$NON-NLS-1$
-			actelement.appendChild(argsroot);
+			out.startElement("arguments"); //$NON-NLS-1$
 
 			List<Argument> args = act.getArguments();
 			for (Argument arg : args)
 				{
-				Element argelement = doc.createElement("argument"); //$NON-NLS-1$
-				argsroot.appendChild(argelement);
+				out.startElement("argument"); //$NON-NLS-1$
 
-				argelement.appendChild(createElement(doc,"kind",Integer.toString(arg.kind))); //$NON-NLS-1$
+				out.element("kind",Integer.toString(arg.kind)); //$NON-NLS-1$
 				Class<? extends Resource<?,?>> kind = Argument.getResourceKind(arg.kind);
 				if (kind != null && InstantiableResource.class.isAssignableFrom(kind))
 					{
-					argelement.appendChild(createElement(doc,Resource.kindNames.get(kind).toLowerCase(),
-							getName((ResourceReference<?>)arg.getRes())));
+					out.element(Resource.kindNames.get(kind).toLowerCase(),
+							getName((ResourceReference<?>)arg.getRes()));
 					}
 				else
 					{
-					argelement.appendChild(createElement(doc,"string",arg.getVal())); //$NON-NLS-1$
+					out.element("string",arg.getVal()); //$NON-NLS-1$
 					}
+				out.endElement();
 				}
+			out.endElement();
+			out.endElement();
 			}
 		}
 
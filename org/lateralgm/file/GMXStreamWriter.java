@@ -0,0 +1,246 @@
+/**
+* @file  GMXStreamWriter.java
+* @brief Class implementing a streaming writer for GMX documents.
+*
+* @section License
+*
+* This file is a part of the LateralGM IDE.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+**/
+
+package org.lateralgm.file;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes an indented XML document straight to a stream, one element at a time, without building
+ * a DOM first. The output is byte for byte what the indenting identity Transformer used to make
+ * of the same document: the same declaration, two space indentation, self closing empty elements,
+ * attributes sorted by name and the same character references.
+ * Mixed content is not supported, an element holds either text or other elements.
+ */
+public class GMXStreamWriter implements Closeable
+	{
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
+	private static final String INDENT = "  "; //$NON-NLS-1$
+
+	private final Writer out;
+	/** The names of the open elements, the innermost one last. */
+	private final List<String> open = new ArrayList<String>();
+	/** Whether the innermost open element has child elements, which puts its end tag on its own line. */
+	private boolean hasChildren;
+	/** Whether the start tag of the innermost open element still has to be finished. */
+	private boolean pending;
+	private final Map<String,String> attributes = new TreeMap<String,String>();
+
+	public GMXStreamWriter(OutputStream os) throws IOException
+		{
+		out = new BufferedWriter(new OutputStreamWriter(os,Charset.forName("UTF-8"))); //$NON-NLS-1$
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"); //$NON-NLS-1$
+		out.write(LINE_SEPARATOR);
+		}
+
+	/** Creates the file, and the directories leading to it, and starts writing a document to it. */
+	public GMXStreamWriter(File file) throws IOException
+		{
+		this(openFile(file));
+		}
+
+	private static OutputStream openFile(File file) throws IOException
+		{
+		file.getParentFile().mkdirs();
+		return new FileOutputStream(file);
+		}
+
+	public void startElement(String name) throws IOException
+		{
+		finishStartTag();
+		if (!open.isEmpty())
+			{
+			out.write(LINE_SEPARATOR);
+			indent(open.size());
+			}
+		out.write('<');
+		out.write(name);
+		open.add(name);
+		hasChildren = false;
+		pending = true;
+		}
+
+	/** Sets an attribute of the element that was just started. */
+	public void attribute(String name, String value)
+		{
+		attributes.put(name,value);
+		}
+
+	/** Writes text into the innermost open element. */
+	public void text(String text) throws IOException
+		{
+		if (text == null || text.isEmpty()) return;
+		finishStartTag();
+		escape(text,false);
+		}
+
+	public void endElement() throws IOException
+		{
+		String name = open.remove(open.size() - 1);
+		if (pending)
+			{
+			writeAttributes();
+			out.write("/>"); //$NON-NLS-1$
+			pending = false;
+			}
+		else
+			{
+			if (hasChildren)
+				{
+				out.write(LINE_SEPARATOR);
+				indent(open.size());
+				}
+			out.write("</"); //$NON-NLS-1$
+			out.write(name);
+			out.write('>');
+			}
+		// Anything that ends inside an element is a child of it
+		hasChildren = true;
+		}
+
+	/** Writes an element which only holds the given text. */
+	public void element(String name, String text) throws IOException
+		{
+		startElement(name);
+		text(text);
+		endElement();
+		}
+
+	/** Ends the document and closes the stream. */
+	public void close() throws IOException
+		{
+		try
+			{
+			while (!open.isEmpty())
+				endElement();
+			out.write(LINE_SEPARATOR);
+			}
+		finally
+			{
+			out.close();
+			}
+		}
+
+	private void finishStartTag() throws IOException
+		{
+		if (!pending) return;
+		writeAttributes();
+		out.write('>');
+		pending = false;
+		}
+
+	private void writeAttributes() throws IOException
+		{
+		for (Map.Entry<String,String> a : attributes.entrySet())
+			{
+			out.write(' ');
+			out.write(a.getKey());
+			out.write("=\""); //$NON-NLS-1$
+			escape(a.getValue(),true);
+			out.write('"');
+			}
+		attributes.clear();
+		}
+
+	private void indent(int depth) throws IOException
+		{
+		for (int i = 0; i < depth; i++)
+			out.write(INDENT);
+		}
+
+	private void escape(String s, boolean attribute) throws IOException
+		{
+		int len = s.length();
+		for (int i = 0; i < len; i++)
+			{
+			char ch = s.charAt(i);
+			switch (ch)
+				{
+				case '&':
+					out.write("&amp;"); //$NON-NLS-1$
+					break;
+				case '<':
+					out.write("&lt;"); //$NON-NLS-1$
+					break;
+				case '>':
+					out.write("&gt;"); //$NON-NLS-1$
+					break;
+				case '"':
+					if (attribute)
+						out.write("&quot;"); //$NON-NLS-1$
+					else
+						out.write(ch);
+					break;
+				case '\n':
+					if (attribute)
+						out.write("&#10;"); //$NON-NLS-1$
+					else
+						out.write(LINE_SEPARATOR);
+					break;
+				case '\t':
+					if (attribute)
+						out.write("&#9;"); //$NON-NLS-1$
+					else
+						out.write(ch);
+					break;
+				default:
+					if (Character.isHighSurrogate(ch) && i + 1 < len
+							&& Character.isLowSurrogate(s.charAt(i + 1)))
+						{
+						writeReference(Character.toCodePoint(ch,s.charAt(++i)));
+						}
+					else if (Character.isSurrogate(ch))
+						{
+						throw new IOException("Invalid UTF-16 surrogate detected: " //$NON-NLS-1$
+								+ Integer.toHexString(ch));
+						}
+					else if (ch < 0x20 || (!attribute && ch >= 0x7F && ch <= 0x9F))
+						{
+						writeReference(ch);
+						}
+					else
+						{
+						out.write(ch);
+						}
+				}
+			}
+		}
+
+	private void writeReference(int codePoint) throws IOException
+		{
+		out.write("&#"); //$NON-NLS-1$
+		out.write(Integer.toString(codePoint));
+		out.write(';');
+		}
+	}
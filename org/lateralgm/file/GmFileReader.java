@@ -16,14 +16,24 @@ import static org.lateralgm.file.ProjectFile.interfaceProvider;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.DataFormatException;
 
 import org.lateralgm.components.impl.ResNode;
@@ -94,7 +104,7 @@ public final class GmFileReader
 		{
 		}
 
-	private static Queue<PostponedRef> postpone = new LinkedList<PostponedRef>();
+	private static Queue<PostponedRef> postpone = new ConcurrentLinkedQueue<PostponedRef>();
 
 	static interface PostponedRef
 		{
@@ -132,6 +142,10 @@ public final class GmFileReader
 		RefList<Timeline> timeids;
 		RefList<GmObject> objids;
 		RefList<Room> rmids;
+		/** Decodes resource blocks in parallel when set, otherwise everything is read in place. */
+		ForkJoinPool pool;
+		/** The file being read when it is a local file, so sound data can be left in it. */
+		File source;
 
 		public ProjectFileContext(ProjectFile f, GmStreamDecoder in, RefList<Timeline> timeids,
 				RefList<GmObject> objids, RefList<Room> rmids)
@@ -145,7 +159,10 @@ public final class GmFileReader
 
 		public ProjectFileContext copy()
 			{
-			return new ProjectFileContext(f,in,timeids,objids,rmids);
+			ProjectFileContext c = new ProjectFileContext(f,in,timeids,objids,rmids);
+			c.pool = pool;
+			c.source = source;
+			return c;
 			}
 		}
 
@@ -171,16 +188,47 @@ public final class GmFileReader
 
 	public static void readProjectFile(InputStream stream, ProjectFile file, URI uri, ResNode root,
 			Charset forceCharset) throws GmFormatException
+		{
+			readProjectFile(stream,file,uri,root,forceCharset,false);
+		}
+
+	/**
+	 * Reads a GM project file into the given project.
+	 * @param parallel Whether the separately compressed resources of GM8 and GM8.1 files
+	 * should be inflated and decoded on a pool of worker threads. The compressed data is still
+	 * read in file order and the resources are added in file order, so the result is the same.
+	 */
+	public static void readProjectFile(InputStream stream, ProjectFile file, URI uri, ResNode root,
+			Charset forceCharset, boolean parallel) throws GmFormatException
+		{
+		readProjectFile(new GmStreamDecoder(stream),file,uri,root,forceCharset,parallel);
+		}
+
+	/**
+	 * Reads a GM project file from the given buffer, typically the whole file mapped with
+	 * {@link StreamDecoder#map(File)}. Unlike a stream, the buffer is not copied up front,
+	 * so only the parts that are actually decoded are ever read from disk.
+	 * @see #readProjectFile(InputStream,ProjectFile,URI,ResNode,Charset,boolean)
+	 */
+	public static void readProjectFile(ByteBuffer buffer, ProjectFile file, URI uri, ResNode root,
+			Charset forceCharset, boolean parallel) throws GmFormatException
+		{
+		readProjectFile(new GmStreamDecoder(buffer),file,uri,root,forceCharset,parallel);
+		}
+
+	private static void readProjectFile(GmStreamDecoder in, ProjectFile file, URI uri,
+			ResNode root, Charset forceCharset, boolean parallel) throws GmFormatException
 		{
 		interfaceProvider.init(200,"ProgressDialog.GMK_LOADING"); //$NON-NLS-1$
-		GmStreamDecoder in = null;
+		ForkJoinPool pool = null;
 		RefList<Timeline> timeids = new RefList<Timeline>(Timeline.class); // timeline ids
 		RefList<GmObject> objids = new RefList<GmObject>(GmObject.class); // object ids
 		RefList<Room> rmids = new RefList<Room>(Room.class); // room id
 		try
 			{
-			in = new GmStreamDecoder(stream);
 			ProjectFileContext c = new ProjectFileContext(file,in,timeids,objids,rmids);
+			if (parallel) c.pool = pool = new ForkJoinPool();
+			if (uri != null && "file".equals(uri.getScheme())) c.source = new File(uri); //$NON-NLS-1$
 			int identifier = in.read4();
 			if (identifier != 1234321)
 				throw new GmFormatException(file,
@@ -286,11 +334,12 @@ public final class GmFileReader
 			interfaceProvider.setProgress(160,"ProgressDialog.POSTPONED"); //$NON-NLS-1$
 			//Resources read. Now we can invoke our postpones.
 			int percent = 0;
+			int postponed = postpone.size();
 			for (PostponedRef i : postpone)
 				{
 				i.invoke();
 				percent += 1;
-				interfaceProvider.setProgress(160 + percent / postpone.size(),
+				interfaceProvider.setProgress(160 + percent / postponed,
 						"ProgressDialog.POSTPONED"); //$NON-NLS-1$
 				}
 			postpone.clear();
@@ -327,6 +376,7 @@ public final class GmFileReader
 			}
 		finally
 			{
+			if (pool != null) stop(pool);
 			try
 				{
 				if (in != null)
@@ -343,6 +393,28 @@ public final class GmFileReader
 			}
 		}
 
+	/**
+	 * Stops the given pool and waits for the blocks still being decoded, since they may be read
+	 * from a mapped file that the caller is about to release.
+	 */
+	private static void stop(ForkJoinPool pool)
+		{
+		pool.shutdownNow();
+		boolean interrupted = false;
+		while (!pool.isTerminated())
+			{
+			try
+				{
+				pool.awaitTermination(1,TimeUnit.SECONDS);
+				}
+			catch (InterruptedException e)
+				{
+				interrupted = true;
+				}
+			}
+		if (interrupted) Thread.currentThread().interrupt();
+		}
+
 	private static void readSettings(ProjectFileContext c, GameSettings g) throws IOException,GmFormatException,
 			DataFormatException
 		{
@@ -561,16 +633,30 @@ public final class GmFileReader
 	private static void readSounds(ProjectFileContext c) throws IOException,GmFormatException,
 			DataFormatException
 		{
-		ProjectFile f = c.f;
+		final ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 400 && ver != 800) throw versionError(f,"BEFORE","SND",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noSounds = in.read4();
+		if (ver == 800 && c.pool != null)
+			{
+			readBlocks(c,f.resMap.getList(Sound.class),noSounds,new BlockReader<Sound>()
+				{
+					public Sound read(ProjectFileContext bc, int i) throws Exception
+						{
+						Sound snd = new Sound();
+						readSound(bc,snd,i,ver);
+						return snd;
+						}
+				});
+			return;
+			}
+		int sver = ver;
 		for (int i = 0; i < noSounds; i++)
 			{
-			if (ver == 800) in.beginInflate();
+			if (sver == 800) in.beginInflate();
 			if (!in.readBool())
 				{
 				f.resMap.getList(Sound.class).lastId++;
@@ -578,58 +664,161 @@ public final class GmFileReader
 				continue;
 				}
 			Sound snd = f.resMap.getList(Sound.class).add();
-			snd.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			ver = in.read4();
-			if (ver != 440 && ver != 600 && ver != 800) throw versionError(f,"IN","SND",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-			int kind53 = -1;
-			if (ver == 440)
-				kind53 = in.read4(); //kind (wav, mp3, etc)
-			else
-				snd.put(PSound.KIND,ProjectFile.SOUND_KIND[in.read4()]); //normal, background, etc
-			in.readStr(snd.properties,PSound.FILE_TYPE);
-			if (ver == 440)
-				{
-				//-1 = no sound
-				if (kind53 != -1) snd.data = in.decompress(in.read4());
-				in.skip(8);
-				snd.put(PSound.PRELOAD,!in.readBool());
-				}
-			else
+			sver = readSound(c,snd,i,sver);
+			in.endInflate();
+			}
+		}
+
+	/** @return The version of the sound itself, as the section loop has always used it after. */
+	private static int readSound(ProjectFileContext c, Sound snd, int i, int ver)
+			throws IOException,GmFormatException,DataFormatException
+		{
+		GmStreamDecoder in = c.in;
+		snd.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		ver = in.read4();
+		if (ver != 440 && ver != 600 && ver != 800) throw versionError(c.f,"IN","SND",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+		int kind53 = -1;
+		if (ver == 440)
+			kind53 = in.read4(); //kind (wav, mp3, etc)
+		else
+			snd.put(PSound.KIND,ProjectFile.SOUND_KIND[in.read4()]); //normal, background, etc
+		in.readStr(snd.properties,PSound.FILE_TYPE);
+		if (ver == 440)
+			{
+			//-1 = no sound
+			if (kind53 != -1) readCompressedSound(c,snd);
+			in.skip(8);
+			snd.put(PSound.PRELOAD,!in.readBool());
+			}
+		else
+			{
+			snd.put(PSound.FILE_NAME,in.readStr());
+			if (in.readBool())
 				{
-				snd.put(PSound.FILE_NAME,in.readStr());
-				if (in.readBool())
+				if (ver == 600)
+					readCompressedSound(c,snd);
+				else
 					{
-					if (ver == 600)
-						snd.data = in.decompress(in.read4());
+					int s = in.read4();
+					if (c.source != null && in.getBlockPos() != -1)
+						{
+						snd.setData(new BlockData(c.source,in.getBlockPos(),in.getBlockLength(),
+								(int) in.getPos(),s));
+						in.skip(s);
+						}
 					else
 						{
-						int s = in.read4();
-						snd.data = new byte[s];
-						in.read(snd.data);
+						byte[] data = new byte[s];
+						in.read(data);
+						snd.setData(data);
 						}
 					}
-				snd.setEffects(in.read4());
-				in.readD(snd.properties,PSound.VOLUME,PSound.PAN);
-				snd.put(PSound.PRELOAD,in.readBool());
 				}
-			in.endInflate();
+			snd.setEffects(in.read4());
+			in.readD(snd.properties,PSound.VOLUME,PSound.PAN);
+			snd.put(PSound.PRELOAD,in.readBool());
+			}
+		return ver;
+		}
+
+	private static void readCompressedSound(ProjectFileContext c, Sound snd) throws IOException,
+			DataFormatException
+		{
+		GmStreamDecoder in = c.in;
+		int length = in.read4();
+		// Only left in the file when it is read in place, not from an inflated block
+		if (c.source != null && in.getBlockPos() == -1)
+			{
+			snd.setData(new CompressedData(c.source,in.getPos(),length,in.getSeed()));
+			in.skip(length);
+			}
+		else
+			snd.setData(in.decompress(length));
+		}
+
+	/** Data stored zlib compressed in the file, and encrypted too if the file is. */
+	private static class CompressedData extends LazyData
+		{
+		private final int seed;
+
+		CompressedData(File file, long offset, int length, int seed)
+			{
+			super(file,offset,length);
+			this.seed = seed;
+			}
+
+		protected byte[] decode(byte[] stored) throws IOException
+			{
+			GmStreamDecoder in = new GmStreamDecoder(ByteBuffer.wrap(stored));
+			// Decryption depends on the position in the file
+			in.pos = (int) offset;
+			in.setSeed(seed);
+			try
+				{
+				return in.decompress(length);
+				}
+			catch (DataFormatException e)
+				{
+				throw new IOException(e);
+				}
+			}
+		}
+
+	/** Data stored as it is somewhere in a zlib block of the file, which is inflated to get it. */
+	private static class BlockData extends LazyData
+		{
+		private final int dataPos, dataLength;
+
+		BlockData(File file, int blockPos, int blockLength, int dataPos, int dataLength)
+			{
+			super(file,blockPos,blockLength);
+			this.dataPos = dataPos;
+			this.dataLength = dataLength;
+			}
+
+		protected byte[] decode(byte[] stored) throws IOException
+			{
+			try
+				{
+				byte[] block = GmStreamDecoder.inflate(stored,dataPos + dataLength);
+				if (block.length < dataPos + dataLength) throw new EOFException();
+				return Arrays.copyOfRange(block,dataPos,dataPos + dataLength);
+				}
+			catch (DataFormatException e)
+				{
+				throw new IOException(e);
+				}
 			}
 		}
 
 	private static void readSprites(ProjectFileContext c) throws IOException,GmFormatException,
 			DataFormatException
 		{
-		ProjectFile f = c.f;
+		final ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 400 && ver != 800 && ver != 810) throw versionError(f,"BEFORE","SPR",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noSprites = in.read4();
+		if (ver == 800 && c.pool != null)
+			{
+			readBlocks(c,f.resMap.getList(Sprite.class),noSprites,new BlockReader<Sprite>()
+				{
+					public Sprite read(ProjectFileContext bc, int i) throws Exception
+						{
+						Sprite spr = new Sprite();
+						readSprite(bc,spr,i,ver);
+						return spr;
+						}
+				});
+			return;
+			}
+		int sver = ver;
 		for (int i = 0; i < noSprites; i++)
 			{
-			if (ver == 800) in.beginInflate();
+			if (sver == 800) in.beginInflate();
 			if (!in.readBool())
 				{
 				f.resMap.getList(Sprite.class).lastId++;
@@ -637,77 +826,101 @@ public final class GmFileReader
 				continue;
 				}
 			Sprite spr = f.resMap.getList(Sprite.class).add();
-			//temporarily set bbmode to manual so bbox doesn't get recalculated until bbmode is ready
-			//TODO: This should be made a little less retarded, I added a null check to bbmode call - Robert
-			spr.put(PSprite.BB_MODE,BBMode.MANUAL);
-			BBMode actualBBMode = null;
-			spr.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			ver = in.read4();
-			if (ver != 400 && ver != 542 && ver != 800 && ver != 810)
-				throw versionError(f,"IN","SPR",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-			int w = 0, h = 0;
-			if (ver < 800)
+			sver = readSprite(c,spr,i,sver);
+			in.endInflate();
+			}
+		}
+
+	/** @return The version of the sprite itself, as the section loop has always used it after. */
+	private static int readSprite(ProjectFileContext c, Sprite spr, int i, int ver)
+			throws IOException,GmFormatException,DataFormatException
+		{
+		GmStreamDecoder in = c.in;
+		//temporarily set bbmode to manual so bbox doesn't get recalculated until bbmode is ready
+		//TODO: This should be made a little less retarded, I added a null check to bbmode call - Robert
+		spr.put(PSprite.BB_MODE,BBMode.MANUAL);
+		BBMode actualBBMode = null;
+		spr.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		ver = in.read4();
+		if (ver != 400 && ver != 542 && ver != 800 && ver != 810)
+			throw versionError(c.f,"IN","SPR",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+		int w = 0, h = 0;
+		if (ver < 800)
+			{
+			w = in.read4();
+			h = in.read4();
+			in.read4(spr.properties,PSprite.BB_LEFT,PSprite.BB_RIGHT,PSprite.BB_BOTTOM,PSprite.BB_TOP);
+			spr.put(PSprite.TRANSPARENT,in.readBool()); //XXX: tends to cause an update...
+			if (ver > 400)
 				{
-				w = in.read4();
-				h = in.read4();
-				in.read4(spr.properties,PSprite.BB_LEFT,PSprite.BB_RIGHT,PSprite.BB_BOTTOM,PSprite.BB_TOP);
-				spr.put(PSprite.TRANSPARENT,in.readBool()); //XXX: tends to cause an update...
-				if (ver > 400)
-					{
-					in.readBool(spr.properties,PSprite.SMOOTH_EDGES,PSprite.PRELOAD);
-					}
-				actualBBMode = ProjectFile.SPRITE_BB_MODE[in.read4()]; // delay setting BBMode to avoid expensive recalculations
-				boolean precise = in.readBool();
-				spr.put(PSprite.SHAPE,precise ? Sprite.MaskShape.PRECISE : Sprite.MaskShape.RECTANGLE);
-				if (ver == 400)
-					{
-					in.skip(4); //use video memory
-					spr.put(PSprite.PRELOAD,!in.readBool());
-					}
+				in.readBool(spr.properties,PSprite.SMOOTH_EDGES,PSprite.PRELOAD);
 				}
-			else
-				spr.put(PSprite.TRANSPARENT,false);
-			in.read4(spr.properties,PSprite.ORIGIN_X,PSprite.ORIGIN_Y);
-			int nosub = in.read4();
-			for (int j = 0; j < nosub; j++)
+			actualBBMode = ProjectFile.SPRITE_BB_MODE[in.read4()]; // delay setting BBMode to avoid expensive recalculations
+			boolean precise = in.readBool();
+			spr.put(PSprite.SHAPE,precise ? Sprite.MaskShape.PRECISE : Sprite.MaskShape.RECTANGLE);
+			if (ver == 400)
 				{
-				if (ver >= 800)
-					{
-					int subver = in.read4();
-					if (subver != 800 && subver != 810) throw versionError(f,"IN","SPR",i,subver); //$NON-NLS-1$ //$NON-NLS-2$
-					w = in.read4();
-					h = in.read4();
-					if (w != 0 && h != 0) spr.subImages.add(in.readBGRAImage(w,h));
-					}
-				else
-					{
-					if (in.read4() == -1) continue;
-					spr.subImages.add(in.readZlibImage(w,h));
-					}
+				in.skip(4); //use video memory
+				spr.put(PSprite.PRELOAD,!in.readBool());
 				}
+			}
+		else
+			spr.put(PSprite.TRANSPARENT,false);
+		in.read4(spr.properties,PSprite.ORIGIN_X,PSprite.ORIGIN_Y);
+		int nosub = in.read4();
+		for (int j = 0; j < nosub; j++)
+			{
 			if (ver >= 800)
 				{
-				spr.put(PSprite.SHAPE,ProjectFile.SPRITE_MASK_SHAPE[in.read4()]);
-				spr.put(PSprite.ALPHA_TOLERANCE,in.read4());
-				spr.put(PSprite.SEPARATE_MASK,in.readBool());
-				actualBBMode = ProjectFile.SPRITE_BB_MODE[in.read4()];
-				in.read4(spr.properties,PSprite.BB_LEFT,PSprite.BB_RIGHT,PSprite.BB_BOTTOM,PSprite.BB_TOP);
+				int subver = in.read4();
+				if (subver != 800 && subver != 810) throw versionError(c.f,"IN","SPR",i,subver); //$NON-NLS-1$ //$NON-NLS-2$
+				w = in.read4();
+				h = in.read4();
+				if (w != 0 && h != 0) spr.subImages.add(in.readBGRAImage(w,h));
+				}
+			else
+				{
+				if (in.read4() == -1) continue;
+				spr.subImages.add(in.readZlibImage(w,h));
 				}
-			spr.put(PSprite.BB_MODE,actualBBMode); //now bbmode is ready
-			in.endInflate();
 			}
+		if (ver >= 800)
+			{
+			spr.put(PSprite.SHAPE,ProjectFile.SPRITE_MASK_SHAPE[in.read4()]);
+			spr.put(PSprite.ALPHA_TOLERANCE,in.read4());
+			spr.put(PSprite.SEPARATE_MASK,in.readBool());
+			actualBBMode = ProjectFile.SPRITE_BB_MODE[in.read4()];
+			in.read4(spr.properties,PSprite.BB_LEFT,PSprite.BB_RIGHT,PSprite.BB_BOTTOM,PSprite.BB_TOP);
+			}
+		spr.put(PSprite.BB_MODE,actualBBMode); //now bbmode is ready
+		return ver;
 		}
 
 	private static int readBackgrounds(ProjectFileContext c) throws IOException,GmFormatException,
 			DataFormatException
 		{
-		ProjectFile f = c.f;
+		final ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
 		int ver = in.read4();
 		if (ver != 400 && ver != 800) throw versionError(f,"BEFORE","BKG",ver); //$NON-NLS-1$ //$NON-NLS-2$
 		int noBackgrounds = in.read4();
+		if (ver == 800 && c.pool != null)
+			{
+			// Backgrounds of this version end on their 800 image version, same as the loop below
+			readBlocks(c,f.resMap.getList(Background.class),noBackgrounds,
+					new BlockReader<Background>()
+						{
+							public Background read(ProjectFileContext bc, int i) throws Exception
+								{
+								Background back = new Background();
+								readBackground(bc,back,i,800);
+								return back;
+								}
+						});
+			return ver;
+			}
 		for (int i = 0; i < noBackgrounds; i++)
 			{
 			if (ver == 800) in.beginInflate();
@@ -718,49 +931,58 @@ public final class GmFileReader
 				continue;
 				}
 			Background back = f.resMap.getList(Background.class).add();
-			back.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			ver = in.read4();
-			if (ver != 400 && ver != 543 && ver != 710) throw versionError(f,"IN","BKG",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-			if (ver < 710)
+			ver = readBackground(c,back,i,ver);
+			in.endInflate();
+			}
+
+			return ver;
+		}
+
+	/** @return The version of the background itself, as the section loop has always used it after. */
+	private static int readBackground(ProjectFileContext c, Background back, int i, int ver)
+			throws IOException,GmFormatException,DataFormatException
+		{
+		GmStreamDecoder in = c.in;
+		back.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		ver = in.read4();
+		if (ver != 400 && ver != 543 && ver != 710) throw versionError(c.f,"IN","BKG",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+		if (ver < 710)
+			{
+			int w = in.read4();
+			int h = in.read4();
+			back.put(PBackground.TRANSPARENT,in.readBool());
+			if (ver > 400)
 				{
-				int w = in.read4();
-				int h = in.read4();
-				back.put(PBackground.TRANSPARENT,in.readBool());
-				if (ver > 400)
-					{
-					in.readBool(back.properties,PBackground.SMOOTH_EDGES,PBackground.PRELOAD,
-							PBackground.USE_AS_TILESET);
-					in.read4(back.properties,PBackground.TILE_WIDTH,PBackground.TILE_HEIGHT,
-							PBackground.H_OFFSET,PBackground.V_OFFSET,PBackground.H_SEP,PBackground.V_SEP);
-					}
-				else
-					{
-					in.skip(4); //use video memory
-					back.put(PBackground.PRELOAD,!in.readBool());
-					}
-				if (in.readBool())
-					{
-					if (in.read4() == -1) continue;
-					back.setBackgroundImage(in.readZlibImage(w,h));
-					}
+				in.readBool(back.properties,PBackground.SMOOTH_EDGES,PBackground.PRELOAD,
+						PBackground.USE_AS_TILESET);
+				in.read4(back.properties,PBackground.TILE_WIDTH,PBackground.TILE_HEIGHT,
+						PBackground.H_OFFSET,PBackground.V_OFFSET,PBackground.H_SEP,PBackground.V_SEP);
 				}
-			//ver >= 710
 			else
 				{
-				back.put(PBackground.USE_AS_TILESET,in.readBool());
-				in.read4(back.properties,PBackground.TILE_WIDTH,PBackground.TILE_HEIGHT,
-						PBackground.H_OFFSET,PBackground.V_OFFSET,PBackground.H_SEP,PBackground.V_SEP);
-				ver = in.read4();
-				if (ver != 800) throw versionError(f,"IN","BKG",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-				int w = in.read4();
-				int h = in.read4();
-				if (w != 0 && h != 0) back.setBackgroundImage(in.readBGRAImage(w,h));
+				in.skip(4); //use video memory
+				back.put(PBackground.PRELOAD,!in.readBool());
+				}
+			if (in.readBool())
+				{
+				if (in.read4() == -1) return ver;
+				back.setBackgroundImage(in.readZlibImage(w,h));
 				}
-			in.endInflate();
 			}
-
-			return ver;
+		//ver >= 710
+		else
+			{
+			back.put(PBackground.USE_AS_TILESET,in.readBool());
+			in.read4(back.properties,PBackground.TILE_WIDTH,PBackground.TILE_HEIGHT,
+					PBackground.H_OFFSET,PBackground.V_OFFSET,PBackground.H_SEP,PBackground.V_SEP);
+			ver = in.read4();
+			if (ver != 800) throw versionError(c.f,"IN","BKG",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+			int w = in.read4();
+			int h = in.read4();
+			if (w != 0 && h != 0) back.setBackgroundImage(in.readBGRAImage(w,h));
+			}
+		return ver;
 		}
 
 	private static void readPaths(ProjectFileContext c) throws IOException,GmFormatException
@@ -768,10 +990,23 @@ public final class GmFileReader
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 420 && ver != 800) throw versionError(f,"BEFORE","PTH",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noPaths = in.read4();
+		if (ver == 800 && c.pool != null)
+			{
+			readBlocks(c,f.resMap.getList(Path.class),noPaths,new BlockReader<Path>()
+				{
+					public Path read(ProjectFileContext bc, int i) throws Exception
+						{
+						Path path = new Path();
+						readPath(bc,path,i,ver);
+						return path;
+						}
+				});
+			return;
+			}
 		for (int i = 0; i < noPaths; i++)
 			{
 			if (ver == 800) in.beginInflate();
@@ -782,35 +1017,56 @@ public final class GmFileReader
 				continue;
 				}
 			Path path = f.resMap.getList(Path.class).add();
-			path.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			int ver2 = in.read4();
-			if (ver2 != 530) throw versionError(f,"IN","PTH",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
-			in.readBool(path.properties,PPath.SMOOTH,PPath.CLOSED);
-			path.put(PPath.PRECISION,in.read4());
-			path.put(PPath.BACKGROUND_ROOM,c.rmids.get(in.read4()));
-			in.read4(path.properties,PPath.SNAP_X,PPath.SNAP_Y);
-			int nopoints = in.read4();
-			for (int j = 0; j < nopoints; j++)
-				{
-				path.points.add(new PathPoint((int) in.readD(),(int) in.readD(),(int) in.readD()));
-				}
+			readPath(c,path,i,ver);
 			in.endInflate();
 			}
 		}
 
+	private static void readPath(ProjectFileContext c, Path path, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		GmStreamDecoder in = c.in;
+		path.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		int ver2 = in.read4();
+		if (ver2 != 530) throw versionError(c.f,"IN","PTH",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
+		in.readBool(path.properties,PPath.SMOOTH,PPath.CLOSED);
+		path.put(PPath.PRECISION,in.read4());
+		path.put(PPath.BACKGROUND_ROOM,c.rmids.get(in.read4()));
+		in.read4(path.properties,PPath.SNAP_X,PPath.SNAP_Y);
+		int nopoints = in.read4();
+		for (int j = 0; j < nopoints; j++)
+			{
+			path.points.add(new PathPoint((int) in.readD(),(int) in.readD(),(int) in.readD()));
+			}
+		}
+
 	private static void readScripts(ProjectFileContext c) throws IOException,GmFormatException
 		{
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 400 && ver != 800 && ver != 810) throw versionError(f,"BEFORE","SCR",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noScripts = in.read4();
+		if (ver >= 800 && c.pool != null)
+			{
+			readBlocks(c,f.resMap.getList(Script.class),noScripts,new BlockReader<Script>()
+				{
+					public Script read(ProjectFileContext bc, int i) throws Exception
+						{
+						Script scr = new Script();
+						readScript(bc,scr,i,ver);
+						return scr;
+						}
+				});
+			return;
+			}
+		int sver = ver;
 		for (int i = 0; i < noScripts; i++)
 			{
-			if (ver >= 800) in.beginInflate();
+			if (sver >= 800) in.beginInflate();
 			if (!in.readBool())
 				{
 				f.resMap.getList(Script.class).lastId++;
@@ -818,18 +1074,26 @@ public final class GmFileReader
 				continue;
 				}
 			Script scr = f.resMap.getList(Script.class).add();
-			scr.setName(in.readStr());
-			if (ver >= 800) in.skip(8); //last changed
-			ver = in.read4();
-			if (ver != 400 && ver != 800 && ver != 810) throw versionError(f,"IN","SCR",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-			String code = in.readStr();
-			scr.put(PScript.CODE,code);
-
+			sver = readScript(c,scr,i,sver);
 			in.endInflate();
 			}
 		}
 
-	private static void readFonts(ProjectFileContext c, int ver) throws IOException,GmFormatException,DataFormatException
+	/** @return The version of the script itself, as the section loop has always used it after. */
+	private static int readScript(ProjectFileContext c, Script scr, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		GmStreamDecoder in = c.in;
+		scr.setName(in.readStr());
+		if (ver >= 800) in.skip(8); //last changed
+		ver = in.read4();
+		if (ver != 400 && ver != 800 && ver != 810) throw versionError(c.f,"IN","SCR",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+		String code = in.readStr();
+		scr.put(PScript.CODE,code);
+		return ver;
+		}
+
+	private static void readFonts(ProjectFileContext c, final int ver) throws IOException,GmFormatException,DataFormatException
 		{
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
@@ -872,9 +1136,23 @@ public final class GmFileReader
 			}
 
 		int noFonts = in.read4();
+		if (ver == 800 && c.pool != null)
+			{
+			readBlocks(c,f.resMap.getList(Font.class),noFonts,new BlockReader<Font>()
+				{
+					public Font read(ProjectFileContext bc, int i) throws Exception
+						{
+						Font font = new Font();
+						readFont(bc,font,i,ver);
+						return font;
+						}
+				});
+			return;
+			}
+		int fver = ver;
 		for (int i = 0; i < noFonts; i++)
 			{
-			if (ver == 800) in.beginInflate();
+			if (fver == 800) in.beginInflate();
 			if (!in.readBool())
 				{
 				f.resMap.getList(Font.class).lastId++;
@@ -882,140 +1160,190 @@ public final class GmFileReader
 				continue;
 				}
 			Font font = f.resMap.getList(Font.class).add();
-			font.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			ver = in.read4();
-			if (ver != 540 && ver != 800) throw versionError(f,"IN","FNT",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
-			font.put(PFont.FONT_NAME,in.readStr());
-			font.put(PFont.SIZE,in.read4());
-			in.readBool(font.properties,PFont.BOLD,PFont.ITALIC);
-			int rangemin = in.read2();
-			font.put(PFont.CHARSET,in.read());
-			int aa = in.read();
-			// If GM8.0 or lower project doesn't have AA, use highest level
-			if (aa == 0 && f.format != ProjectFile.FormatFlavor.GM_810) aa = 3;
-			// AA is not 0-based in GM8.1, off==1 and 3==4
-			else --aa;
-			font.put(PFont.ANTIALIAS,aa);
-			font.addRange(rangemin,in.read4());
+			fver = readFont(c,font,i,fver);
 			in.endInflate();
 			}
 		}
 
+	/** @return The version of the font itself, as the section loop has always used it after. */
+	private static int readFont(ProjectFileContext c, Font font, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		GmStreamDecoder in = c.in;
+		font.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		ver = in.read4();
+		if (ver != 540 && ver != 800) throw versionError(c.f,"IN","FNT",i,ver); //$NON-NLS-1$ //$NON-NLS-2$
+		font.put(PFont.FONT_NAME,in.readStr());
+		font.put(PFont.SIZE,in.read4());
+		in.readBool(font.properties,PFont.BOLD,PFont.ITALIC);
+		int rangemin = in.read2();
+		font.put(PFont.CHARSET,in.read());
+		int aa = in.read();
+		// If GM8.0 or lower project doesn't have AA, use highest level
+		if (aa == 0 && c.f.format != ProjectFile.FormatFlavor.GM_810) aa = 3;
+		// AA is not 0-based in GM8.1, off==1 and 3==4
+		else --aa;
+		font.put(PFont.ANTIALIAS,aa);
+		font.addRange(rangemin,in.read4());
+		return ver;
+		}
+
 	private static void readTimelines(ProjectFileContext c) throws IOException,GmFormatException
 		{
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 500 && ver != 800) throw versionError(f,"BEFORE","TML",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noTimelines = in.read4();
-		for (int i = 0; i < noTimelines; i++)
+		if (ver == 800 && c.pool != null)
 			{
-			if (ver == 800) in.beginInflate();
-			if (!in.readBool())
+			readBlocks(c,f.resMap.getList(Timeline.class),noTimelines,new BlockReader<Timeline>()
+				{
+					public Timeline read(ProjectFileContext bc, int i) throws Exception
+						{
+						Timeline time = bc.timeids.get(i).get(); //includes ID
+						readTimeline(bc,time,i,ver);
+						return time;
+						}
+				});
+			}
+		else
+			for (int i = 0; i < noTimelines; i++)
 				{
+				if (ver == 800) in.beginInflate();
+				if (!in.readBool())
+					{
+					in.endInflate();
+					continue;
+					}
+				ResourceReference<Timeline> r = c.timeids.get(i); //includes ID
+				Timeline time = r.get();
+				f.resMap.getList(Timeline.class).add(time);
+				readTimeline(c,time,i,ver);
 				in.endInflate();
-				continue;
 				}
-			ResourceReference<Timeline> r = c.timeids.get(i); //includes ID
-			Timeline time = r.get();
-			f.resMap.getList(Timeline.class).add(time);
-			time.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			int ver2 = in.read4();
-			if (ver2 != 500) throw versionError(f,"IN","TML",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
-			int nomoms = in.read4();
-			for (int j = 0; j < nomoms; j++)
-				{
-				Moment mom = time.addMoment();
-				mom.stepNo = in.read4();
-				ProjectFileContext fc = c.copy();
-				fc.in = in;
-				readActions(fc,mom,"INTIMELINEACTION",i,mom.stepNo); //$NON-NLS-1$
-				}
-			in.endInflate();
-			}
 		f.resMap.getList(Timeline.class).lastId = noTimelines - 1;
 		}
 
+	private static void readTimeline(ProjectFileContext c, Timeline time, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		GmStreamDecoder in = c.in;
+		time.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		int ver2 = in.read4();
+		if (ver2 != 500) throw versionError(c.f,"IN","TML",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
+		int nomoms = in.read4();
+		for (int j = 0; j < nomoms; j++)
+			{
+			Moment mom = time.addMoment();
+			mom.stepNo = in.read4();
+			ProjectFileContext fc = c.copy();
+			fc.in = in;
+			readActions(fc,mom,"INTIMELINEACTION",i,mom.stepNo); //$NON-NLS-1$
+			}
+		}
+
 	private static void readGmObjects(ProjectFileContext c) throws IOException,GmFormatException
 		{
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 400 && ver != 800) throw versionError(f,"BEFORE","OBJ",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noGmObjects = in.read4();
-		for (int i = 0; i < noGmObjects; i++)
+		if (ver == 800 && c.pool != null)
 			{
-			if (ver == 800) in.beginInflate();
-			if (!in.readBool())
+			readBlocks(c,f.resMap.getList(GmObject.class),noGmObjects,new BlockReader<GmObject>()
 				{
-				in.endInflate();
-				continue;
-				}
-			ResourceReference<GmObject> r = c.objids.get(i); //includes ID
-			GmObject obj = r.get();
-			f.resMap.getList(GmObject.class).add(obj);
-			obj.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			int ver2 = in.read4();
-			if (ver2 != 430 && ver2 != 820) throw versionError(f,"IN","OBJ",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
-			Sprite temp = f.resMap.getList(Sprite.class).getUnsafe(in.read4());
-			if (temp != null) obj.put(PGmObject.SPRITE,temp.reference);
-			in.readBool(obj.properties,PGmObject.SOLID,PGmObject.VISIBLE);
-			obj.put(PGmObject.DEPTH,in.read4());
-			obj.put(PGmObject.PERSISTENT,in.readBool());
-			obj.put(PGmObject.PARENT,c.objids.get(in.read4()));
-			temp = f.resMap.getList(Sprite.class).getUnsafe(in.read4());
-			if (temp != null) obj.put(PGmObject.MASK,temp.reference);
-			int noEvents = in.read4() + 1;
-			for (int j = 0; j < noEvents; j++)
-				{
-				MainEvent me = obj.mainEvents.get(j);
-				boolean done = false;
-				while (!done)
-					{
-					int first = in.read4();
-					if (first != -1)
+					public GmObject read(ProjectFileContext bc, int i) throws Exception
 						{
-						Event ev = new Event();
-						me.events.add(0,ev);
-						if (j == MainEvent.EV_COLLISION)
-							ev.other = c.objids.get(first);
-						else
-							ev.id = first;
-						ev.mainId = j;
-						ProjectFileContext fc = c.copy();
-						fc.in = in;
-						readActions(fc,ev,"INOBJECTACTION",i,j * 1000 + ev.id); //$NON-NLS-1$
+						GmObject obj = bc.objids.get(i).get(); //includes ID
+						readGmObject(bc,obj,i,ver);
+						return obj;
 						}
-					else
-						done = true;
+				});
+			}
+		else
+			for (int i = 0; i < noGmObjects; i++)
+				{
+				if (ver == 800) in.beginInflate();
+				if (!in.readBool())
+					{
+					in.endInflate();
+					continue;
 					}
+				ResourceReference<GmObject> r = c.objids.get(i); //includes ID
+				GmObject obj = r.get();
+				f.resMap.getList(GmObject.class).add(obj);
+				readGmObject(c,obj,i,ver);
+				in.endInflate();
 				}
-			if (ver2 >= 820)
-				{
-				in.readBool(obj.properties,PGmObject.PHYSICS_OBJECT,PGmObject.PHYSICS_SENSOR);
-				in.read4(obj.properties,PGmObject.PHYSICS_SHAPE);
-				in.readD(obj.properties,PGmObject.PHYSICS_DENSITY,PGmObject.PHYSICS_RESTITUTION);
-				in.read4(obj.properties,PGmObject.PHYSICS_GROUP);
-				in.readD(obj.properties,PGmObject.PHYSICS_DAMPING_LINEAR,PGmObject.PHYSICS_DAMPING_ANGULAR);
-				int ptc = in.read4(); // << number of shape points
-				if (ver2 >= 821)
+		f.resMap.getList(GmObject.class).lastId = noGmObjects - 1;
+		}
+
+	private static void readGmObject(ProjectFileContext c, GmObject obj, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		ProjectFile f = c.f;
+		GmStreamDecoder in = c.in;
+		obj.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		int ver2 = in.read4();
+		if (ver2 != 430 && ver2 != 820) throw versionError(f,"IN","OBJ",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
+		Sprite temp = f.resMap.getList(Sprite.class).getUnsafe(in.read4());
+		if (temp != null) obj.put(PGmObject.SPRITE,temp.reference);
+		in.readBool(obj.properties,PGmObject.SOLID,PGmObject.VISIBLE);
+		obj.put(PGmObject.DEPTH,in.read4());
+		obj.put(PGmObject.PERSISTENT,in.readBool());
+		obj.put(PGmObject.PARENT,c.objids.get(in.read4()));
+		temp = f.resMap.getList(Sprite.class).getUnsafe(in.read4());
+		if (temp != null) obj.put(PGmObject.MASK,temp.reference);
+		int noEvents = in.read4() + 1;
+		for (int j = 0; j < noEvents; j++)
+			{
+			MainEvent me = obj.mainEvents.get(j);
+			boolean done = false;
+			while (!done)
+				{
+				int first = in.read4();
+				if (first != -1)
 					{
-					in.readD(obj.properties,PGmObject.PHYSICS_FRICTION);
-					in.readBool(obj.properties,PGmObject.PHYSICS_AWAKE,PGmObject.PHYSICS_KINEMATIC);
+					Event ev = new Event();
+					me.events.add(0,ev);
+					if (j == MainEvent.EV_COLLISION)
+						ev.other = c.objids.get(first);
+					else
+						ev.id = first;
+					ev.mainId = j;
+					ProjectFileContext fc = c.copy();
+					fc.in = in;
+					readActions(fc,ev,"INOBJECTACTION",i,j * 1000 + ev.id); //$NON-NLS-1$
 					}
-				for (int j = 0; j < ptc; ++j)
-					obj.shapePoints.add(new ShapePoint(in.readD(),in.readD()));
+				else
+					done = true;
 				}
-			in.endInflate();
 			}
-		f.resMap.getList(GmObject.class).lastId = noGmObjects - 1;
+		if (ver2 >= 820)
+			{
+			in.readBool(obj.properties,PGmObject.PHYSICS_OBJECT,PGmObject.PHYSICS_SENSOR);
+			in.read4(obj.properties,PGmObject.PHYSICS_SHAPE);
+			in.readD(obj.properties,PGmObject.PHYSICS_DENSITY,PGmObject.PHYSICS_RESTITUTION);
+			in.read4(obj.properties,PGmObject.PHYSICS_GROUP);
+			in.readD(obj.properties,PGmObject.PHYSICS_DAMPING_LINEAR,PGmObject.PHYSICS_DAMPING_ANGULAR);
+			int ptc = in.read4(); // << number of shape points
+			if (ver2 >= 821)
+				{
+				in.readD(obj.properties,PGmObject.PHYSICS_FRICTION);
+				in.readBool(obj.properties,PGmObject.PHYSICS_AWAKE,PGmObject.PHYSICS_KINEMATIC);
+				}
+			for (int j = 0; j < ptc; ++j)
+				obj.shapePoints.add(new ShapePoint(in.readD(),in.readD()));
+			}
 		}
 
 	private static void readRooms(ProjectFileContext c) throws IOException,GmFormatException
@@ -1023,76 +1351,105 @@ public final class GmFileReader
 		ProjectFile f = c.f;
 		GmStreamDecoder in = c.in;
 
-		int ver = in.read4();
+		final int ver = in.read4();
 		if (ver != 420 && ver != 800) throw versionError(f,"BEFORE","RMM",ver); //$NON-NLS-1$ //$NON-NLS-2$
 
 		int noRooms = in.read4();
-		for (int i = 0; i < noRooms; i++)
+		if (ver == 800 && c.pool != null)
 			{
-			if (ver == 800) in.beginInflate();
-			if (!in.readBool())
+			readBlocks(c,f.resMap.getList(Room.class),noRooms,new BlockReader<Room>()
 				{
-				in.endInflate();
-				continue;
-				}
-			ResourceReference<Room> r = c.rmids.get(i); //includes ID
-			Room rm = r.get();
-			f.resMap.getList(Room.class).add(rm);
-			rm.setName(in.readStr());
-			if (ver == 800) in.skip(8); //last changed
-			int ver2 = in.read4();
-			if (ver2 != 520 && ver2 != 541 && ver2 != 810 && ver2 != 811 && ver2 != 820)
-				throw versionError(f,"IN","RMM",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
-			rm.put(PRoom.CAPTION,in.readStr());
-			in.read4(rm.properties,PRoom.WIDTH,PRoom.HEIGHT,PRoom.SNAP_Y,PRoom.SNAP_X);
-			rm.put(PRoom.ISOMETRIC,in.readBool());
-			rm.put(PRoom.SPEED,in.read4());
-			rm.put(PRoom.PERSISTENT,in.readBool());
-			rm.put(PRoom.BACKGROUND_COLOR,Util.convertGmColor(in.read4()));
-			// NOTE: GM 8.1 is inconsistent with the views clear option being negated.
-			int backgroundViewClear = in.read4();
-			rm.put(PRoom.DRAW_BACKGROUND_COLOR,(backgroundViewClear & 1) != 0);
-			// GM 8.1 did not change version number of rooms for views clear
-			// because its meaning is the same as clearing the background color
-			// in prior Game Maker versions.
-			rm.put(PRoom.VIEWS_CLEAR,(backgroundViewClear & 0b10) == 0);
-			rm.put(PRoom.CREATION_CODE,in.readStr());
-			int nobackgrounds = in.read4();
-			for (int j = 0; j < nobackgrounds; j++)
-				{
-				BackgroundDef bk = rm.backgroundDefs.get(j);
-				in.readBool(bk.properties,PBackgroundDef.VISIBLE,PBackgroundDef.FOREGROUND);
-				Background temp = f.resMap.getList(Background.class).getUnsafe(in.read4());
-				if (temp != null) bk.properties.put(PBackgroundDef.BACKGROUND,temp.reference);
-				in.read4(bk.properties,PBackgroundDef.X,PBackgroundDef.Y);
-				in.readBool(bk.properties,PBackgroundDef.TILE_HORIZ,PBackgroundDef.TILE_VERT);
-				in.read4(bk.properties,PBackgroundDef.H_SPEED,PBackgroundDef.V_SPEED);
-				bk.properties.put(PBackgroundDef.STRETCH,in.readBool());
-				}
-			rm.put(PRoom.VIEWS_ENABLED,in.readBool());
-			int noviews = in.read4();
-			for (int j = 0; j < noviews; j++)
-				{
-				View vw = rm.views.get(j);
-				in.readBool(vw.properties,PView.VISIBLE);
-				in.read4(vw.properties,PView.VIEW_X,PView.VIEW_Y,PView.VIEW_W,PView.VIEW_H,PView.PORT_X,
-						PView.PORT_Y);
-				if (ver2 > 520)
-					in.read4(vw.properties,PView.PORT_W,PView.PORT_H);
-				else
+					public Room read(ProjectFileContext bc, int i) throws Exception
+						{
+						Room rm = bc.rmids.get(i).get(); //includes ID
+						readRoom(bc,rm,i,ver);
+						return rm;
+						}
+				});
+			}
+		else
+			for (int i = 0; i < noRooms; i++)
+				{
+				if (ver == 800) in.beginInflate();
+				if (!in.readBool())
 					{
-					//Older versions of GM assume port_size == view_size.
-					vw.properties.put(PView.PORT_W,vw.properties.get(PView.VIEW_W));
-					vw.properties.put(PView.PORT_H,vw.properties.get(PView.VIEW_H));
+					in.endInflate();
+					continue;
 					}
-				in.read4(vw.properties,PView.BORDER_H,PView.BORDER_V,PView.SPEED_H,PView.SPEED_V);
-				GmObject temp = f.resMap.getList(GmObject.class).getUnsafe(in.read4());
-				if (temp != null) vw.properties.put(PView.OBJECT,temp.reference);
+				ResourceReference<Room> r = c.rmids.get(i); //includes ID
+				Room rm = r.get();
+				f.resMap.getList(Room.class).add(rm);
+				readRoom(c,rm,i,ver);
+				in.endInflate();
 				}
+		f.resMap.getList(Room.class).lastId = noRooms - 1;
+		}
+
+	private static void readRoom(ProjectFileContext c, Room rm, int i, int ver)
+			throws IOException,GmFormatException
+		{
+		ProjectFile f = c.f;
+		GmStreamDecoder in = c.in;
+		rm.setName(in.readStr());
+		if (ver == 800) in.skip(8); //last changed
+		int ver2 = in.read4();
+		if (ver2 != 520 && ver2 != 541 && ver2 != 810 && ver2 != 811 && ver2 != 820)
+			throw versionError(f,"IN","RMM",i,ver2); //$NON-NLS-1$ //$NON-NLS-2$
+		rm.put(PRoom.CAPTION,in.readStr());
+		in.read4(rm.properties,PRoom.WIDTH,PRoom.HEIGHT,PRoom.SNAP_Y,PRoom.SNAP_X);
+		rm.put(PRoom.ISOMETRIC,in.readBool());
+		rm.put(PRoom.SPEED,in.read4());
+		rm.put(PRoom.PERSISTENT,in.readBool());
+		rm.put(PRoom.BACKGROUND_COLOR,Util.convertGmColor(in.read4()));
+		// NOTE: GM 8.1 is inconsistent with the views clear option being negated.
+		int backgroundViewClear = in.read4();
+		rm.put(PRoom.DRAW_BACKGROUND_COLOR,(backgroundViewClear & 1) != 0);
+		// GM 8.1 did not change version number of rooms for views clear
+		// because its meaning is the same as clearing the background color
+		// in prior Game Maker versions.
+		rm.put(PRoom.VIEWS_CLEAR,(backgroundViewClear & 0b10) == 0);
+		rm.put(PRoom.CREATION_CODE,in.readStr());
+		int nobackgrounds = in.read4();
+		for (int j = 0; j < nobackgrounds; j++)
+			{
+			BackgroundDef bk = rm.backgroundDefs.get(j);
+			in.readBool(bk.properties,PBackgroundDef.VISIBLE,PBackgroundDef.FOREGROUND);
+			Background temp = f.resMap.getList(Background.class).getUnsafe(in.read4());
+			if (temp != null) bk.properties.put(PBackgroundDef.BACKGROUND,temp.reference);
+			in.read4(bk.properties,PBackgroundDef.X,PBackgroundDef.Y);
+			in.readBool(bk.properties,PBackgroundDef.TILE_HORIZ,PBackgroundDef.TILE_VERT);
+			in.read4(bk.properties,PBackgroundDef.H_SPEED,PBackgroundDef.V_SPEED);
+			bk.properties.put(PBackgroundDef.STRETCH,in.readBool());
+			}
+		rm.put(PRoom.VIEWS_ENABLED,in.readBool());
+		int noviews = in.read4();
+		for (int j = 0; j < noviews; j++)
+			{
+			View vw = rm.views.get(j);
+			in.readBool(vw.properties,PView.VISIBLE);
+			in.read4(vw.properties,PView.VIEW_X,PView.VIEW_Y,PView.VIEW_W,PView.VIEW_H,PView.PORT_X,
+					PView.PORT_Y);
+			if (ver2 > 520)
+				in.read4(vw.properties,PView.PORT_W,PView.PORT_H);
+			else
+				{
+				//Older versions of GM assume port_size == view_size.
+				vw.properties.put(PView.PORT_W,vw.properties.get(PView.VIEW_W));
+				vw.properties.put(PView.PORT_H,vw.properties.get(PView.VIEW_H));
+				}
+			in.read4(vw.properties,PView.BORDER_H,PView.BORDER_V,PView.SPEED_H,PView.SPEED_V);
+			GmObject temp = f.resMap.getList(GmObject.class).getUnsafe(in.read4());
+			if (temp != null) vw.properties.put(PView.OBJECT,temp.reference);
+			}
+		// Nothing listens to a room that is still being read, so spare the per-piece events
+		try (Room.Batch batch = rm.batch())
+			{
 			int noinstances = in.read4();
 			for (int j = 0; j < noinstances; j++)
 				{
-				Instance inst = rm.addInstance();
+				// The id is read below, so don't let Room.addInstance bump the shared
+				// project counter; rooms may be decoded on several threads at once.
+				Instance inst = new Instance(rm);
 				inst.setPosition(new Point(in.read4(),in.read4()));
 				GmObject temp = f.resMap.getList(GmObject.class).getUnsafe(in.read4());
 				if (temp != null) inst.properties.put(PInstance.OBJECT,temp.reference);
@@ -1107,6 +1464,7 @@ public final class GmFileReader
 					}
 				if (ver2 >= 811) inst.properties.put(PInstance.ROTATION, in.readD());
 				inst.setLocked(in.readBool());
+				rm.instances.add(inst);
 				}
 			int notiles = in.read4();
 			for (int j = 0; j < notiles; j++)
@@ -1131,24 +1489,97 @@ public final class GmFileReader
 				t.setLocked(in.readBool());
 				rm.tiles.add(t);
 				}
-			if (ver2 >= 820)
+			}
+		if (ver2 >= 820)
+			{
+			rm.put(PRoom.PHYSICS_WORLD,in.readBool());
+			in.read4(rm.properties,PRoom.PHYSICS_TOP,PRoom.PHYSICS_LEFT,
+					PRoom.PHYSICS_RIGHT,PRoom.PHYSICS_BOTTOM);
+			in.readD(rm.properties,PRoom.PHYSICS_GRAVITY_X,PRoom.PHYSICS_GRAVITY_Y,
+					PRoom.PHYSICS_PIXTOMETERS);
+			}
+		rm.put(PRoom.REMEMBER_WINDOW_SIZE,in.readBool());
+		in.read4(rm.properties,PRoom.EDITOR_WIDTH,PRoom.EDITOR_HEIGHT);
+		in.readBool(rm.properties,PRoom.SHOW_GRID,PRoom.SHOW_OBJECTS,PRoom.SHOW_TILES,
+				PRoom.SHOW_BACKGROUNDS,PRoom.SHOW_FOREGROUNDS,PRoom.SHOW_VIEWS,
+				PRoom.DELETE_UNDERLYING_OBJECTS,PRoom.DELETE_UNDERLYING_TILES);
+		if (ver2 == 520) in.skip(6 * 4); //tile info
+		in.read4(rm.properties,PRoom.CURRENT_TAB,PRoom.SCROLL_BAR_X,PRoom.SCROLL_BAR_Y);
+		}
+
+	/**
+	 * Decodes one resource from its own inflated block during a parallel load.
+	 * Implementations run on a pool thread and must only touch the resource they create
+	 * and resources of kinds that were committed before their section started.
+	 */
+	private static interface BlockReader<R>
+		{
+		/** The block's "exists" flag has already been read from <code>c.in</code>. */
+		R read(ProjectFileContext c, int i) throws Exception;
+		}
+
+	/**
+	 * Reads <code>count</code> compressed resource blocks sequentially and hands each one to the
+	 * context's pool for inflating and decoding. When the file is mapped only the block offsets are
+	 * walked here, and the workers read the compressed data themselves. The decoded resources are then committed to the
+	 * list in file order, so ids are assigned exactly as the sequential reader would assign them.
+	 */
+	private static <R extends InstantiableResource<R,?>>void readBlocks(final ProjectFileContext c,
+			ResourceList<R> list, int count, final BlockReader<R> reader) throws IOException,
+			GmFormatException
+		{
+		List<Future<R>> blocks = new ArrayList<Future<R>>(count);
+		for (int i = 0; i < count; i++)
+			{
+			final int blockPos = (int) c.in.getPos() + 4;
+			final ByteBuffer data = c.in.sliceBlock();
+			final int index = i;
+			blocks.add(c.pool.submit(new Callable<R>()
 				{
-				rm.put(PRoom.PHYSICS_WORLD,in.readBool());
-				in.read4(rm.properties,PRoom.PHYSICS_TOP,PRoom.PHYSICS_LEFT,
-						PRoom.PHYSICS_RIGHT,PRoom.PHYSICS_BOTTOM);
-				in.readD(rm.properties,PRoom.PHYSICS_GRAVITY_X,PRoom.PHYSICS_GRAVITY_Y,
-						PRoom.PHYSICS_PIXTOMETERS);
-				}
-			rm.put(PRoom.REMEMBER_WINDOW_SIZE,in.readBool());
-			in.read4(rm.properties,PRoom.EDITOR_WIDTH,PRoom.EDITOR_HEIGHT);
-			in.readBool(rm.properties,PRoom.SHOW_GRID,PRoom.SHOW_OBJECTS,PRoom.SHOW_TILES,
-					PRoom.SHOW_BACKGROUNDS,PRoom.SHOW_FOREGROUNDS,PRoom.SHOW_VIEWS,
-					PRoom.DELETE_UNDERLYING_OBJECTS,PRoom.DELETE_UNDERLYING_TILES);
-			if (ver2 == 520) in.skip(6 * 4); //tile info
-			in.read4(rm.properties,PRoom.CURRENT_TAB,PRoom.SCROLL_BAR_X,PRoom.SCROLL_BAR_Y);
-			in.endInflate();
+					public R call() throws Exception
+						{
+						ProjectFileContext bc = c.copy();
+						bc.in = c.in.inflateBlock(data,blockPos);
+						try
+							{
+							return bc.in.readBool() ? reader.read(bc,index) : null;
+							}
+						finally
+							{
+							bc.in.close();
+							}
+						}
+				}));
+			}
+		for (Future<R> block : blocks)
+			{
+			R res = join(c.f,block);
+			if (res == null)
+				list.lastId++;
+			else
+				list.add(res);
+			}
+		}
+
+	private static <R>R join(ProjectFile f, Future<R> future) throws IOException,GmFormatException
+		{
+		try
+			{
+			return future.get();
+			}
+		catch (InterruptedException e)
+			{
+			throw new GmFormatException(f,e);
+			}
+		catch (ExecutionException e)
+			{
+			Throwable t = e.getCause();
+			if (t instanceof GmFormatException) throw (GmFormatException) t;
+			if (t instanceof IOException) throw (IOException) t;
+			if (t instanceof RuntimeException) throw (RuntimeException) t;
+			if (t instanceof Error) throw (Error) t;
+			throw new GmFormatException(f,(Exception) t);
 			}
-		f.resMap.getList(Room.class).lastId = noRooms - 1;
 		}
 
 	private static void readIncludedFiles(ProjectFileContext c) throws IOException,GmFormatException
@@ -1451,7 +1882,8 @@ public final class GmFileReader
 								return temp != null;
 								}
 						};
-					if (!pr.invoke()) postpone.add(pr);
+					// Other resources may still be decoding on the pool, so leave them alone until the end
+					if (c.pool != null || !pr.invoke()) postpone.add(pr);
 					}
 				catch (NumberFormatException e)
 					{
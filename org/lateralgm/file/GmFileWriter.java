@@ -355,16 +355,17 @@ public final class GmFileWriter
 				out.write4(ver);
 				out.write4(ProjectFile.SOUND_KIND_CODE.get(snd.get(PSound.KIND)));
 				out.writeStr(snd.properties,PSound.FILE_TYPE,PSound.FILE_NAME);
-				if (snd.data != null)
+				byte[] data = snd.getData();
+				if (data != null)
 					{
 					out.writeBool(true);
 					if (ver == 800)
 						{
-						out.write4(snd.data.length);
-						out.write(snd.data);
+						out.write4(data.length);
+						out.write(data);
 						}
 					else
-						out.compress(snd.data);
+						out.compress(data);
 					}
 				else
 					out.writeBool(false);
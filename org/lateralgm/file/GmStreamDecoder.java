@@ -24,9 +24,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 import javax.imageio.ImageIO;
 
@@ -36,7 +38,12 @@ import org.lateralgm.util.PropertyMap;
 public class GmStreamDecoder extends StreamDecoder
 	{
 	protected int originalPos = -1;
-	protected InputStream originalStream;
+	/** The window that was being read before the inflated one, if any. */
+	protected ByteBuffer originalBuffer;
+	protected int originalLimit;
+	/** Where the zlib block being read lies in the file, or -1 when not reading one. */
+	protected int blockPos = -1, blockLength;
+	private int seed = -1;
 	private int[] table = null;
 
 	public GmStreamDecoder(InputStream in)
@@ -54,13 +61,29 @@ public class GmStreamDecoder extends StreamDecoder
 		super(f);
 		}
 
+	public GmStreamDecoder(ByteBuffer buffer)
+		{
+		super(buffer);
+		}
+
 	public int read(byte b[]) throws IOException
 		{
 		return read(b,0,b.length);
 		}
 
+	/**
+	 * Reads the given number of bytes, decrypting them if a seed is set. Encrypted data is only
+	 * ever decrypted as it is read, so a mapped file is never copied whole.
+	 */
 	public int read(byte b[], int off, int len) throws IOException
 		{
+		if (buffer != null)
+			{
+			int p = pos;
+			super.read(b,off,len);
+			if (!isWindowPlain()) decrypt(b,off,len,p);
+			return len;
+			}
 		int total = 0;
 		while (true)
 			{
@@ -80,21 +103,33 @@ public class GmStreamDecoder extends StreamDecoder
 			throw new IOException(error);
 			}
 
-		if (table != null)
-			{
-			for (int i = 0; i < len; i++)
-				{
-				int t = b[off + i] & 0xFF;
-				int x = (table[t] - pos - i) & 0xFF;
-				b[off + i] = (byte) x;
-				}
-			}
+		if (table != null) decrypt(b,off,len,pos);
 		pos += len;
 		return total;
 		}
 
+	/** Decrypts the given bytes in place, which were read from the given position. */
+	private void decrypt(byte b[], int off, int len, int from)
+		{
+		for (int i = 0; i < len; i++)
+			b[off + i] = (byte) (table[b[off + i] & 0xFF] - from - i);
+		}
+
+	/** The window is encrypted unless it holds an inflated block, which never is. */
+	@Override
+	protected boolean isWindowPlain()
+		{
+		return table == null || originalPos != -1;
+		}
+
 	public int read() throws IOException
 		{
+		if (buffer != null)
+			{
+			int p = pos;
+			int t = super.read();
+			return isWindowPlain() ? t : (table[t] - p) & 0xFF;
+			}
 		int t = in.read();
 		if (t == -1)
 			{
@@ -186,27 +221,134 @@ public class GmStreamDecoder extends StreamDecoder
 
 	public byte[] decompress(int length, int initialCapacity) throws IOException,DataFormatException
 		{
-		Inflater decompresser = new Inflater();
 		byte[] compressedData = new byte[length];
 		read(compressedData,0,length);
-		decompresser.setInput(compressedData);
-		byte[] result = new byte[131072];
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(initialCapacity);
-		while (!decompresser.finished())
+		return inflate(compressedData,initialCapacity);
+		}
+
+	static byte[] inflate(byte[] compressedData, int initialCapacity)
+			throws DataFormatException
+		{
+		Inflater decompresser = new Inflater();
+		try
+			{
+			decompresser.setInput(compressedData);
+			byte[] result = new byte[131072];
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(initialCapacity);
+			while (!decompresser.finished())
+				{
+				int len = decompresser.inflate(result);
+				if (len == 0 && (decompresser.needsInput() || decompresser.needsDictionary()))
+					throw new DataFormatException("truncated zlib data"); //$NON-NLS-1$
+				baos.write(result,0,len);
+				}
+			return baos.toByteArray();
+			}
+		finally
+			{
+			decompresser.end();
+			}
+		}
+
+	// Blocks are inflated into a window whole, typically to about four times their compressed size
+	private static ByteBuffer inflateWindow(byte[] compressedData) throws IOException
+		{
+		try
+			{
+			return ByteBuffer.wrap(inflate(compressedData,compressedData.length * 4));
+			}
+		catch (DataFormatException e)
+			{
+			throw new ZipException(e.getMessage());
+			}
+		}
+
+	/**
+	 * Reads the next zlib block as raw compressed bytes, without inflating it.
+	 * This is the same block that {@link #beginInflate()} would read, so the stream
+	 * is left at the end of the compressed data.
+	 * @see #inflateBlock(byte[])
+	 */
+	public byte[] readBlock() throws IOException
+		{
+		byte[] data = new byte[read4()];
+		read(data);
+		return data;
+		}
+
+	/**
+	 * Creates a new decoder over the inflated contents of a block previously retrieved with
+	 * {@link #readBlock()}. The new decoder uses this decoder's charset and is independent of it,
+	 * so it may be used on another thread. Positions reported by it are relative to the block.
+	 */
+	public GmStreamDecoder inflateBlock(byte[] block) throws IOException
+		{
+		GmStreamDecoder dec = new GmStreamDecoder(inflateWindow(block));
+		dec.setCharset(charset);
+		return dec;
+		}
+
+	/**
+	 * Like {@link #readBlock()}, but the block is returned as a slice of this decoder's window when
+	 * reading one, so a mapped file is only read by whoever inflates the block.
+	 * @see #inflateBlock(ByteBuffer)
+	 */
+	public ByteBuffer sliceBlock() throws IOException
+		{
+		return slice(read4());
+		}
+
+	/**
+	 * Like {@link #inflateBlock(byte[])}, for a block retrieved with {@link #sliceBlock()}.
+	 * @param blockPos Where the compressed data of the block starts in the file, as reported by
+	 * {@link #getBlockPos()} of the new decoder.
+	 */
+	public GmStreamDecoder inflateBlock(ByteBuffer block, int blockPos) throws IOException
+		{
+		GmStreamDecoder dec;
+		if (block.hasArray() && block.arrayOffset() == 0 && block.position() == 0
+				&& block.remaining() == block.array().length)
+			dec = inflateBlock(block.array());
+		else
 			{
-			int len = decompresser.inflate(result);
-			baos.write(result,0,len);
+			byte[] data = new byte[block.remaining()];
+			block.duplicate().get(data);
+			dec = inflateBlock(data);
 			}
-		decompresser.end();
-		return baos.toByteArray();
+		dec.blockPos = blockPos;
+		dec.blockLength = block.remaining();
+		return dec;
 		}
 
+	/**
+	 * Returns where the compressed data of the zlib block being read starts in the file, or -1
+	 * when not reading one. Along with {@link #getBlockLength()} this allows the block to be read
+	 * again later, such as by a {@link LazyData}.
+	 */
+	public int getBlockPos()
+		{
+		return blockPos;
+		}
+
+	public int getBlockLength()
+		{
+		return blockLength;
+		}
+
+	/**
+	 * Reads the next zlib block and inflates it whole into a window, which is then read until
+	 * {@link #endInflate()}. Positions are relative to the inflated data meanwhile.
+	 */
 	public void beginInflate() throws IOException
 		{
 		int limit = read4();
-		originalStream = in;
-		in = new LimitedInflaterInputStream(originalStream,limit);
-		originalPos = pos;
+		int start = pos;
+		byte[] data = new byte[limit];
+		read(data);
+		originalBuffer = buffer;
+		buffer = window(inflateWindow(data));
+		originalPos = blockPos = start;
+		originalLimit = blockLength = limit;
 		pos = 0;
 		}
 
@@ -216,14 +358,12 @@ public class GmStreamDecoder extends StreamDecoder
 	 */
 	public void endInflate() throws IOException
 		{
-		if (originalStream != null)
+		if (originalPos != -1)
 			{
-			LimitedInflaterInputStream inf = (LimitedInflaterInputStream) in;
-			inf.finish();
-			pos = originalPos + (int) inf.getLimit();
-			originalPos = -1;
-			in = originalStream;
-			originalStream = null;
+			buffer = originalBuffer;
+			originalBuffer = null;
+			pos = originalPos + originalLimit;
+			originalPos = blockPos = -1;
 			}
 		}
 
@@ -276,19 +416,70 @@ public class GmStreamDecoder extends StreamDecoder
 		return (bits & bit) == bit;
 		}
 
-	/**
-	 * GM7 Notice: since the first useful byte after the seed isn't encrypted,
-	 * you may wish to delay setting the seed until that byte is retrieved,
-	 * as implementing such functionality into these lower-level routines would add overhead
-	 */
+	/** Returns the seed given to {@link #setSeed(int)}, or -1 when the data isn't encrypted. */
+	public int getSeed()
+		{
+		return seed;
+		}
+
 	public void setSeed(int s)
 		{
+		seed = s >= 0 ? s : -1;
 		if (s >= 0)
 			table = makeDecodeTable(s);
 		else
 			table = null;
 		}
 
+	/** Encrypted bytes are decrypted into a buffer of their own, rather than sliced. */
+	@Override
+	public ByteBuffer slice(int length) throws IOException
+		{
+		if (buffer == null || isWindowPlain()) return super.slice(length);
+		if (length < 0) throw unexpectedEOF();
+		byte[] data = new byte[length];
+		read(data);
+		return ByteBuffer.wrap(data);
+		}
+
+	@Override
+	public InputStream getInputStream()
+		{
+		if (buffer == null || isWindowPlain()) return super.getInputStream();
+		return new DecryptingInputStream(super.getInputStream());
+		}
+
+	/** Decrypts the encrypted window as another stream reads it. */
+	private class DecryptingInputStream extends InputStream
+		{
+		private final InputStream window;
+
+		DecryptingInputStream(InputStream window)
+			{
+			this.window = window;
+			}
+
+		public int read() throws IOException
+			{
+			int p = pos;
+			int t = window.read();
+			return t < 0 ? t : (table[t] - p) & 0xFF;
+			}
+
+		public int read(byte b[], int off, int len) throws IOException
+			{
+			int p = pos;
+			int n = window.read(b,off,len);
+			if (n > 0) decrypt(b,off,n,p);
+			return n;
+			}
+
+		public int available() throws IOException
+			{
+			return window.available();
+			}
+		}
+
 	protected static int[] makeDecodeTable(int seed)
 		{
 		int[] encTable = GmStreamEncoder.makeEncodeTable(seed);
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A blob that stays in the file it was loaded from until it is first asked for, such as the
+ * audio of a sound. Once read it is only held softly, so under memory pressure it is dropped
+ * and read again on the next access.
+ * <p>
+ * Instances are immutable as far as their users are concerned and may be shared between
+ * copies of a resource. Anything that is about to rename, overwrite or delete a file that such
+ * blobs may be read from must tell this class first, with {@link #renamed(File,File)} or
+ * {@link #detach(File,boolean)}.
+ */
+public class LazyData
+	{
+	/** Every blob that may still need its file, so that it can be pointed elsewhere. */
+	private static final Map<LazyData,Boolean> live = Collections.synchronizedMap(
+			new WeakHashMap<LazyData,Boolean>());
+
+	private volatile File file;
+	protected final long offset;
+	protected final int length;
+	private SoftReference<byte[]> cache;
+
+	/** The whole of the given file. */
+	public LazyData(File file)
+		{
+		this(file,0,-1);
+		}
+
+	/** The given range of the given file, stored as it is unless {@link #decode} says otherwise. */
+	public LazyData(File file, long offset, int length)
+		{
+		this.file = file.getAbsoluteFile();
+		this.offset = offset;
+		this.length = length;
+		live.put(this,Boolean.TRUE);
+		}
+
+	/**
+	 * Returns the data, reading it from its file if it isn't in memory. The returned array may be
+	 * shared and must not be modified.
+	 */
+	public synchronized byte[] get() throws IOException
+		{
+		byte[] data = cache == null ? null : cache.get();
+		if (data == null)
+			{
+			data = decode(read());
+			cache = new SoftReference<byte[]>(data);
+			}
+		return data;
+		}
+
+	/** Whether the data is currently in memory, so that {@link #get()} won't have to read it. */
+	public synchronized boolean isLoaded()
+		{
+		return cache != null && cache.get() != null;
+		}
+
+	/** Whether the given array is this data as it is currently held in memory. */
+	public synchronized boolean holds(byte[] data)
+		{
+		return data != null && cache != null && cache.get() == data;
+		}
+
+	/** Turns the bytes stored in the file into the data. The default is to keep them as they are. */
+	protected byte[] decode(byte[] stored) throws IOException
+		{
+		return stored;
+		}
+
+	private byte[] read() throws IOException
+		{
+		RandomAccessFile in = new RandomAccessFile(file,"r"); //$NON-NLS-1$
+		try
+			{
+			long len = length < 0 ? in.length() - offset : length;
+			if (len > Integer.MAX_VALUE) throw new IOException("too large: " + file); //$NON-NLS-1$
+			byte[] stored = new byte[(int) len];
+			in.seek(offset);
+			in.readFully(stored);
+			return stored;
+			}
+		finally
+			{
+			in.close();
+			}
+		}
+
+	private static boolean isWithin(File f, File dir)
+		{
+		String p = f.getPath();
+		String d = dir.getPath();
+		return p.equals(d) || p.startsWith(d.endsWith(File.separator) ? d : d + File.separator);
+		}
+
+	private static List<LazyData> within(File f)
+		{
+		List<LazyData> found = new ArrayList<LazyData>();
+		synchronized (live)
+			{
+			for (LazyData d : live.keySet())
+				if (isWithin(d.file,f)) found.add(d);
+			}
+		return found;
+		}
+
+	/**
+	 * Tells blobs read from the given file, or from anywhere in the given directory, that it
+	 * has been or is about to be renamed.
+	 */
+	public static void renamed(File from, File to)
+		{
+		from = from.getAbsoluteFile();
+		to = to.getAbsoluteFile();
+		String prefix = from.getPath();
+		for (LazyData d : within(from))
+			d.file = new File(to.getPath() + d.file.getPath().substring(prefix.length()));
+		}
+
+	/**
+	 * Moves the files that blobs are read from out of the way of the given file or directory,
+	 * which is about to be overwritten or deleted. Each such file is copied to a temporary file
+	 * that is removed on exit. Files that no blob is read from are left alone.
+	 * @param deleting Whether the file is about to be deleted anyway, in which case files are
+	 * moved rather than copied where possible. An overwritten file is always copied, so that it
+	 * is still there should writing fail.
+	 */
+	public static void detach(File f, boolean deleting) throws IOException
+		{
+		detach(f,deleting,null);
+		}
+
+	/**
+	 * Like {@link #detach(File,boolean)} for a file that is about to be overwritten with the given
+	 * data. Blobs of the whole file that already hold that data are left as they are, since the
+	 * file will hold the same once it is written.
+	 */
+	public static void overwriting(File f, byte[] data) throws IOException
+		{
+		detach(f,false,data);
+		}
+
+	/**
+	 * Returns a blob of the whole of the given file, which was just written with the given data,
+	 * so that the data may be dropped from memory and read again from there.
+	 */
+	public static LazyData written(File file, byte[] data)
+		{
+		LazyData d = new LazyData(file);
+		d.cache = new SoftReference<byte[]>(data);
+		return d;
+		}
+
+	private static void detach(File f, boolean deleting, byte[] keep) throws IOException
+		{
+		Map<File,File> moved = new HashMap<File,File>();
+		for (LazyData d : within(f.getAbsoluteFile()))
+			{
+			if (keep != null && d.offset == 0 && d.length < 0 && d.getClass() == LazyData.class
+					&& d.holds(keep)) continue;
+			File old = d.file;
+			File tmp = moved.get(old);
+			if (tmp == null)
+				{
+				if (!old.exists()) continue;
+				tmp = File.createTempFile("lgm",".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+				tmp.deleteOnExit();
+				boolean done = false;
+				if (deleting)
+					{
+					try
+						{
+						Files.move(old.toPath(),tmp.toPath(),StandardCopyOption.REPLACE_EXISTING);
+						done = true;
+						}
+					catch (IOException e)
+						{
+						// Copied below instead, such as when the file is on another volume
+						}
+					}
+				if (!done) Files.copy(old.toPath(),tmp.toPath(),StandardCopyOption.REPLACE_EXISTING);
+				moved.put(old,tmp);
+				}
+			d.file = tmp;
+			}
+		}
+	}
@@ -165,6 +165,8 @@ public class ProjectFile implements UpdateListener
 
 	public FormatFlavor format;
 	public URI uri;
+	/** What was last read from or written to the GMX project directory, used to save incrementally. */
+	public GMXFileWriter.SaveState gmxSaveState;
 
 	public static interface ResourceHolder<T extends Resource<T,?>>
 		{
@@ -24,7 +24,7 @@ public class RefList<R extends InstantiableResource<R,?>>
 		this.clazz = clazz;
 		}
 
-	public ResourceReference<R> get(int id)
+	public synchronized ResourceReference<R> get(int id)
 		{
 		if (id < 0) return null;
 		ResRef<R> rr = rrt.get(id);
@@ -14,6 +14,8 @@ import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Objects;
 import java.util.TreeSet;
 
 import org.lateralgm.file.ProjectFile.ResourceHolder;
@@ -34,6 +36,15 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 
 	private final Class<R> type; // used as a workaround for add()
 	private final HashMap<ResourceReference<R>,WeakReference<R>> refMap;
+	/**
+	 * Which resource each id and name currently leads to, the first in id order if several share
+	 * one, and what each resource was last indexed under so the index can be fixed when it changes.
+	 */
+	private final HashMap<Integer,R> idIndex = new HashMap<Integer,R>();
+	private final HashMap<String,R> nameIndex = new HashMap<String,R>();
+	private final IdentityHashMap<R,Object[]> indexed = new IdentityHashMap<R,Object[]>();
+	/** How many resources share each id and name, so that most removals needn't look for another. */
+	private final HashMap<Object,Integer> keyCount = new HashMap<Object,Integer>();
 
 	private final UpdateTrigger updateTrigger = new UpdateTrigger();
 	public final UpdateSource updateSource = new UpdateSource(this,updateTrigger);
@@ -55,10 +66,68 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 			{
 			if (r0 == res) return false;
 			super.remove(r0);
+			unindex(r0);
 			}
 		res.reference.updateSource.addListener(this);
 		refMap.put(res.reference,new WeakReference<R>(res));
-		return super.add(res);
+		if (!super.add(res)) return false;
+		index(res);
+		return true;
+		}
+
+	private void index(R res)
+		{
+		Integer id = res.getId();
+		String name = res.getName();
+		indexed.put(res,new Object[] { id,name });
+		count(id,1);
+		count(name,1);
+		R r = idIndex.get(id);
+		if (r == null || comparator().compare(res,r) < 0) idIndex.put(id,res);
+		r = nameIndex.get(name);
+		if (r == null || comparator().compare(res,r) < 0) nameIndex.put(name,res);
+		}
+
+	private void unindex(R res)
+		{
+		Object[] keys = indexed.remove(res);
+		if (keys == null) return;
+		if (idIndex.get(keys[0]) == res)
+			reindex(idIndex,(Integer) keys[0],0);
+		else
+			count(keys[0],-1);
+		if (nameIndex.get(keys[1]) == res)
+			reindex(nameIndex,(String) keys[1],1);
+		else
+			count(keys[1],-1);
+		}
+
+	/** @return How many resources share the key after the change. */
+	private int count(Object key, int change)
+		{
+		Integer n = keyCount.get(key);
+		int c = (n == null ? 0 : n) + change;
+		if (c <= 0)
+			keyCount.remove(key);
+		else
+			keyCount.put(key,c);
+		return c;
+		}
+
+	// The list is only walked when another resource shares the key
+	private <K>void reindex(HashMap<K,R> index, K key, int k)
+		{
+		index.remove(key);
+		if (count(key,-1) == 0) return;
+		for (R res : this)
+			{
+			Object[] keys = indexed.get(res);
+			if (keys != null && Objects.equals(key,keys[k]))
+				{
+				index.put(key,res);
+				return;
+				}
+			}
 		}
 
 	/**
@@ -133,22 +202,13 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 
 	public R getUnsafe(int id)
 		{
-		for (R res : this)
-			{
-			int ri = res.getId();
-			if (ri == id)
-				return res;
-			else if (ri > id) break;
-			}
-		return null;
+		return idIndex.get(id);
 		}
 
 	/** May return null */
 	public R get(String name)
 		{
-		for (R res : this)
-			if (res.getName().equals(name)) return res;
-		return null;
+		return nameIndex.get(name);
 		}
 
 	private boolean doRemove(Resource<?,?> res)
@@ -157,6 +217,7 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 			{
 			res.reference.updateSource.removeListener(this);
 			refMap.remove(res.reference);
+			unindex(type.cast(res));
 			return true;
 			}
 		return false;
@@ -196,6 +257,10 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 		for (R r : this)
 			r.reference.updateSource.removeListener(this);
 		refMap.clear();
+		idIndex.clear();
+		nameIndex.clear();
+		indexed.clear();
+		keyCount.clear();
 		super.clear();
 		updateTrigger.fire();
 		}
@@ -258,6 +323,14 @@ public class ResourceList<R extends InstantiableResource<R,?>> extends TreeSet<R
 						remove(r0);
 						add(r0);
 						}
+					// Renames and id changes are indexed here, even if re-adding didn't take
+					Object[] keys = indexed.get(r0);
+					if (keys == null || !keys[0].equals(r0.getId())
+							|| !Objects.equals(keys[1],r0.getName()))
+						{
+						unindex(r0);
+						if (refMap.containsKey(r0.reference)) index(r0);
+						}
 					}
 				}
 			}
@@ -10,19 +10,33 @@
 package org.lateralgm.file;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 import org.lateralgm.messages.Messages;
 
 public class StreamDecoder extends InputStream
 	{
 	protected InputStream in;
+	/**
+	 * When set, data is read straight from this window rather than from <code>in</code>.
+	 * Its byte order is little endian, so primitives can be read from it whole.
+	 */
+	protected ByteBuffer buffer;
 	protected int pos = 0;
 	protected int markPos = 0;
+	/** Holds the bytes of a primitive read from <code>in</code>, so reading one doesn't allocate. */
+	private final byte[] scratch = new byte[8];
 
 	/**
 	 * This allows extending classes to override the
@@ -50,6 +64,118 @@ public class StreamDecoder extends InputStream
 		in = new BufferedInputStream(new FileInputStream(f));
 		}
 
+	/**
+	 * Reads from the remaining contents of the given buffer, which may be a heap buffer or a
+	 * mapped file. The buffer itself is left untouched and positions are relative to its position.
+	 */
+	public StreamDecoder(ByteBuffer buffer)
+		{
+		this.buffer = window(buffer);
+		}
+
+	private static final Unmapper unmapper = Unmapper.find();
+
+	/**
+	 * Maps the whole of the given file into memory, read only. The channel is closed right away;
+	 * the mapping stays until it is released with {@link #unmap(ByteBuffer)}. Where mappings
+	 * can't be released, the file is read into memory instead, since a file that is still mapped
+	 * can't be written, renamed or deleted on some systems.
+	 */
+	public static ByteBuffer map(File f) throws IOException
+		{
+		RandomAccessFile raf = new RandomAccessFile(f,"r"); //$NON-NLS-1$
+		try
+			{
+			FileChannel ch = raf.getChannel();
+			long size = ch.size();
+			if (unmapper != null) return ch.map(FileChannel.MapMode.READ_ONLY,0,size);
+			if (size > Integer.MAX_VALUE) throw new IOException("too large: " + f); //$NON-NLS-1$
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining())
+				if (ch.read(buffer) < 0) throw new EOFException();
+			buffer.flip();
+			return buffer;
+			}
+		finally
+			{
+			raf.close();
+			}
+		}
+
+	/**
+	 * Releases a buffer returned by {@link #map(File)} right away, rather than whenever it happens
+	 * to be garbage collected. Neither the buffer nor any slice of it may be used afterwards.
+	 */
+	public static void unmap(ByteBuffer buffer)
+		{
+		if (unmapper == null || !buffer.isDirect()) return;
+		try
+			{
+			unmapper.unmap(buffer);
+			}
+		catch (ReflectiveOperationException e)
+			{
+			// Left to the garbage collector, as before
+			}
+		}
+
+	/** Releases mapped buffers, which the runtime only offers through its internals. */
+	private abstract static class Unmapper
+		{
+		abstract void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+
+		static Unmapper find()
+			{
+			try
+				{
+				// Java 9 and later
+				Class<?> c = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+				final Method invokeCleaner = c.getMethod("invokeCleaner",ByteBuffer.class); //$NON-NLS-1$
+				Field f = c.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+				f.setAccessible(true);
+				final Object unsafe = f.get(null);
+				return new Unmapper()
+					{
+						@Override
+						void unmap(ByteBuffer buffer) throws ReflectiveOperationException
+							{
+							invokeCleaner.invoke(unsafe,buffer);
+							}
+					};
+				}
+			catch (ReflectiveOperationException | RuntimeException e)
+				{
+				// Tried the older way below
+				}
+			try
+				{
+				// Java 8 and earlier
+				Class<?> db = Class.forName("sun.nio.ch.DirectBuffer"); //$NON-NLS-1$
+				final Method cleaner = db.getMethod("cleaner"); //$NON-NLS-1$
+				Class<?> cl = Class.forName("sun.misc.Cleaner"); //$NON-NLS-1$
+				final Method clean = cl.getMethod("clean"); //$NON-NLS-1$
+				return new Unmapper()
+					{
+						@Override
+						void unmap(ByteBuffer buffer) throws ReflectiveOperationException
+							{
+							clean.invoke(cleaner.invoke(buffer));
+							}
+					};
+				}
+			catch (ReflectiveOperationException | RuntimeException e)
+				{
+				return null;
+				}
+			}
+		}
+
+	/** Returns a little endian view of the remaining contents of the given buffer. */
+	protected static ByteBuffer window(ByteBuffer buffer)
+		{
+		return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
 	public int read(byte b[]) throws IOException
 		{
 		return read(b,0,b.length);
@@ -57,56 +183,96 @@ public class StreamDecoder extends InputStream
 
 	public int read(byte b[], int off, int len) throws IOException
 		{
-		int read = in.read(b,off,len);
-		if (read != len)
+		if (buffer != null)
+			{
+			if (buffer.remaining() < len) throw unexpectedEOF();
+			buffer.get(b,off,len);
+			pos += len;
+			return len;
+			}
+		int total = 0;
+		while (total < len)
 			{
-			String error = Messages.format("StreamDecoder.UNEXPECTED_EOF",getPosString()); //$NON-NLS-1$
-			throw new IOException(error);
+			int n = in.read(b,off + total,len - total);
+			if (n <= 0) throw unexpectedEOF();
+			total += n;
 			}
 		pos += len;
-		return read;
+		return len;
 		}
 
 	public int read() throws IOException
 		{
-		int t = in.read();
-		if (t == -1)
+		if (buffer != null)
 			{
-			String error = Messages.format("StreamDecoder.UNEXPECTED_EOF",getPosString()); //$NON-NLS-1$
-			throw new IOException(error);
+			if (!buffer.hasRemaining()) throw unexpectedEOF();
+			pos++;
+			return buffer.get() & 0xFF;
 			}
+		int t = in.read();
+		if (t == -1) throw unexpectedEOF();
 		pos++;
 		return t;
 		}
 
+	protected IOException unexpectedEOF()
+		{
+		String error = Messages.format("StreamDecoder.UNEXPECTED_EOF",getPosString()); //$NON-NLS-1$
+		return new IOException(error);
+		}
+
+	/**
+	 * Whether the window holds the data just as it is to be read, so that primitives may be taken
+	 * from it whole. Otherwise they are read through {@link #read(byte[],int,int)}.
+	 */
+	@SuppressWarnings("static-method")
+	protected boolean isWindowPlain()
+		{
+		return true;
+		}
+
+	// The primitives below read a window whole, or otherwise all their bytes with a single read
+
 	public int read2() throws IOException
 		{
-		int a = read();
-		int b = read();
-		return (a | (b << 8));
+		if (buffer != null && buffer.remaining() >= 2 && isWindowPlain())
+			{
+			pos += 2;
+			return buffer.getShort() & 0xFFFF;
+			}
+		byte[] b = scratch;
+		read(b,0,2);
+		return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8);
 		}
 
 	public int read3() throws IOException
 		{
-		int a = read();
-		int b = read();
-		int c = read();
-		return (a | (b << 8) | (c << 16));
+		byte[] b = scratch;
+		read(b,0,3);
+		return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8) | ((b[2] & 0xFF) << 16);
 		}
 
 	public int read4() throws IOException
 		{
-		int a = read();
-		int b = read();
-		int c = read();
-		int d = read();
-		return (a | (b << 8) | (c << 16) | (d << 24));
+		if (buffer != null && buffer.remaining() >= 4 && isWindowPlain())
+			{
+			pos += 4;
+			return buffer.getInt();
+			}
+		byte[] b = scratch;
+		read(b,0,4);
+		return (b[0] & 0xFF) | ((b[1] & 0xFF) << 8) | ((b[2] & 0xFF) << 16) | (b[3] << 24);
 		}
 
 	public double readD() throws IOException
 		{
-		byte[] b = new byte[8];
-		read(b);
+		if (buffer != null && buffer.remaining() >= 8 && isWindowPlain())
+			{
+			pos += 8;
+			return buffer.getDouble();
+			}
+		byte[] b = scratch;
+		read(b,0,8);
 		long r = b[0] & 0xFF;
 		for (int i = 1; i < 8; i++)
 			r |= (b[i] & 0xFFL) << (8 * i);
@@ -115,11 +281,18 @@ public class StreamDecoder extends InputStream
 
 	public void close() throws IOException
 		{
-		in.close();
+		if (in != null) in.close();
 		}
 
 	public long skip(long length) throws IOException
 		{
+		if (buffer != null)
+			{
+			if (buffer.remaining() < length) throw unexpectedEOF();
+			buffer.position(buffer.position() + (int) length);
+			pos += (int) length;
+			return length;
+			}
 		long total = in.skip(length);
 		while (total < length)
 			{
@@ -129,25 +302,79 @@ public class StreamDecoder extends InputStream
 		return total;
 		}
 
+	/**
+	 * Returns the next <code>length</code> bytes as a buffer of their own and moves past them.
+	 * When reading a window the bytes are not copied, so a mapped file is not read until the
+	 * returned buffer is.
+	 */
+	public ByteBuffer slice(int length) throws IOException
+		{
+		if (buffer == null)
+			{
+			byte[] data = new byte[length];
+			read(data);
+			return ByteBuffer.wrap(data);
+			}
+		if (length < 0 || buffer.remaining() < length) throw unexpectedEOF();
+		ByteBuffer b = buffer.slice();
+		b.limit(length);
+		buffer.position(buffer.position() + length);
+		pos += length;
+		return b;
+		}
+
+	/** Returns the stream being read, or a stream over the rest of the window when reading one. */
 	public InputStream getInputStream()
 		{
-		return in;
+		return buffer != null ? new WindowInputStream() : in;
+		}
+
+	/** Reads the window the way any other stream would, and keeps the position up to date. */
+	private class WindowInputStream extends InputStream
+		{
+		public int read()
+			{
+			if (!buffer.hasRemaining()) return -1;
+			pos++;
+			return buffer.get() & 0xFF;
+			}
+
+		public int read(byte b[], int off, int len)
+			{
+			if (len == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+			len = Math.min(len,buffer.remaining());
+			buffer.get(b,off,len);
+			pos += len;
+			return len;
+			}
+
+		public int available()
+			{
+			return buffer.remaining();
+			}
 		}
 
 	public boolean markSupported()
 		{
-		return in.markSupported();
+		return buffer != null || in.markSupported();
 		}
 
 	public synchronized void mark(int readlimit)
 		{
-		in.mark(readlimit);
+		if (buffer != null)
+			buffer.mark();
+		else
+			in.mark(readlimit);
 		markPos = pos;
 		}
 
 	public synchronized void reset() throws IOException
 		{
-		in.reset();
+		if (buffer != null)
+			buffer.reset();
+		else
+			in.reset();
 		pos = markPos;
 		}
 
@@ -156,10 +383,22 @@ public class StreamDecoder extends InputStream
 		return this.pos;
 		}
 
+	/** Whether {@link #seek(long)} may also move backwards, which is the case when reading a window. */
+	public boolean canSeekBack()
+		{
+		return buffer != null;
+		}
+
 	public void seek(final long pBytes) throws IOException
 		{
 		final long toSkip = pBytes - getPos();
-		if (toSkip >= 0)
+		// The window may start past position 0, so only move back within it
+		if (toSkip < 0 && buffer != null && buffer.position() + toSkip >= 0)
+			{
+			buffer.position((int) (buffer.position() + toSkip));
+			pos = (int) pBytes;
+			}
+		else if (toSkip >= 0)
 			{
 			final long lBytesSkipped = skip(toSkip);
 			if (lBytesSkipped != toSkip)
@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
@@ -65,10 +66,12 @@ import org.lateralgm.file.GMXFileWriter;
 import org.lateralgm.file.GmFileReader;
 import org.lateralgm.file.GmFileWriter;
 import org.lateralgm.file.GmFormatException;
+import org.lateralgm.file.LazyData;
 import org.lateralgm.file.ProjectFile;
 import org.lateralgm.file.ProjectFile.FormatFlavor;
 import org.lateralgm.file.ProjectFormatException;
 import org.lateralgm.file.ResourceList;
+import org.lateralgm.file.StreamDecoder;
 import org.lateralgm.messages.Messages;
 import org.lateralgm.resources.Resource;
 
@@ -455,9 +458,36 @@ public class FileChooser
 			return groupFilter.accept(file) || backupsFilter.accept(file);
 			}
 
+		/**
+		 * Local files are mapped into memory rather than read from the given stream, which is then
+		 * closed unread. Any other location is read from the stream.
+		 */
 		public void read(InputStream is, ProjectFile file, URI uri, ResNode root) throws ProjectFormatException
 			{
-			GmFileReader.readProjectFile(is,file,uri,root);
+			if ("file".equals(uri.getScheme())) //$NON-NLS-1$
+				{
+				ByteBuffer buffer;
+				try
+					{
+					is.close();
+					buffer = StreamDecoder.map(new File(uri));
+					}
+				catch (IOException e)
+					{
+					throw new GmFormatException(file,e);
+					}
+				// Released right away, or saving over the file may fail until it is collected
+				try
+					{
+					GmFileReader.readProjectFile(buffer,file,uri,root,null,Prefs.parallelProjectLoading);
+					}
+				finally
+					{
+					StreamDecoder.unmap(buffer);
+					}
+				}
+			else
+				GmFileReader.readProjectFile(is,file,uri,root,null,Prefs.parallelProjectLoading);
 			}
 		}
 
@@ -562,7 +592,7 @@ public class FileChooser
 
 	public void read(InputStream in, ProjectFile file, URI uri, ResNode root) throws GmFormatException
 		{
-		GMXFileReader.readProjectFile(in,file,uri,root);
+		GMXFileReader.readProjectFile(in,file,uri,root,null,Prefs.parallelProjectLoading);
 		}
 
 	@Override
@@ -582,7 +612,8 @@ public class FileChooser
 		{
 		try
 			{
-			GMXFileWriter.writeProjectFile(out,f,root);
+			GMXFileWriter.writeProjectFile(out,f,root,Prefs.incrementalGmxSave,
+					Prefs.parallelProjectSaving);
 			}
 		catch (Exception e)
 			{
@@ -867,7 +898,6 @@ public class FileChooser
 			}
 
 		LGM.commitAll();
-		LGM.resetChanges();
 
 		String ext = selectedWriter.getExtension();
 		if (!uri.getPath().endsWith(ext))
@@ -908,6 +938,8 @@ public class FileChooser
 		try
 			{
 			sw.get();
+			// Only now, the writer needs to know what changed to save incrementally
+			LGM.resetChanges();
 			OutputManager.append("\n" + Messages.getString("FileChooser.PROJECTSAVED") + ": " +
 					new Date().toString() + " " + uri.getPath());
 			}
@@ -945,6 +977,8 @@ public class FileChooser
 		// used by formats like GMX
 		File pf = new File(uri).getParentFile();
 		if (!pf.exists()) pf.mkdir();
+		// sounds that were never read still need the file we're about to overwrite
+		LazyData.detach(new File(uri),false);
 		// open the main file and write
 		try (OutputStream os = Util.openURIOutputStream(uri))
 			{
@@ -1018,12 +1052,23 @@ public class FileChooser
 			if (i > nb)
 				{
 				i = nb;
-				if (!Util.directoryDelete(new File(String.format(ff,bn,i)))) break block;
+				File oldest = new File(String.format(ff,bn,i));
+				try
+					{
+					LazyData.detach(oldest,true);
+					}
+				catch (IOException e)
+					{
+					break block;
+					}
+				if (!Util.directoryDelete(oldest)) break block;
 				}
 			for (i--; i >= 0; i--)
 				{
 				File bf = new File(i > 0 ? String.format(ff,bn,i) : fn);
-				if (!bf.renameTo(new File(String.format(ff,bn,i + 1)))) break block;
+				File to = new File(String.format(ff,bn,i + 1));
+				if (!bf.renameTo(to)) break block;
+				LazyData.renamed(bf,to);
 				}
 			return true;
 			}
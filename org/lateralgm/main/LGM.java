@@ -853,7 +853,8 @@ public final class LGM
 		while (nodes.hasMoreElements())
 			{
 			ResNode node = (ResNode) nodes.nextElement();
-			if (node.frame != null) node.frame.commitChanges(); // update open frames
+			// update open frames, and mark the ones with edits so they are written
+			if (node.frame != null && node.frame.commitForWrite()) node.frame.res.changed = true;
 			}
 		LGM.getExtensionPackages().commitChanges();
 		LGM.getConstantsFrame().commitChanges();
@@ -873,6 +874,7 @@ public final class LGM
 		LGM.tree.setSelectionRow(0);
 
 		// Reload the search tree so that orphaned references can be dumped.
+		Search.cancelSearch();
 		DefaultMutableTreeNode searchRoot = (DefaultMutableTreeNode) searchTree.getModel().getRoot();
 		searchRoot.removeAllChildren();
 		// Reload because root is invisible.
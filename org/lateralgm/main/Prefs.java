@@ -137,6 +137,12 @@ public final class Prefs
 		backupAuto = getBoolean("backupAuto",false);
 		backupCopies = getInt("backupCopies",5);
 		backupMinutes = getInt("backupMinutes",5);
+		parallelProjectLoading = getBoolean("parallelProjectLoading",true);
+		subimageCacheSize = getInt("subimageCacheSize",256);
+		incrementalGmxSave = getBoolean("incrementalGmxSave",true);
+		parallelProjectSaving = getBoolean("parallelProjectSaving",true);
+		searchIndex = getBoolean("searchIndex",true);
+		searchTimeLimit = getInt("searchTimeLimit",60);
 
 		externalSpriteExtension = getString("externalSpriteExtension","png");
 		externalBackgroundExtension = getString("externalBackgroundExtension","png");
@@ -225,6 +231,13 @@ public final class Prefs
 	public static boolean backupAuto;
 	public static boolean backupExit;
 
+	public static boolean parallelProjectLoading;
+	public static int subimageCacheSize;
+	public static boolean incrementalGmxSave;
+	public static boolean parallelProjectSaving;
+	public static boolean searchIndex;
+	public static int searchTimeLimit;
+
 	public static boolean useExternalBackgroundEditor;
 	public static String externalBackgroundEditorCommand;
 	public static String externalBackgroundExtension;
@@ -16,9 +16,17 @@ import java.awt.event.ItemListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,6 +47,8 @@ import javax.swing.JToolBar;
 import javax.swing.JTree;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.GroupLayout.Alignment;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -61,10 +71,10 @@ import org.lateralgm.resources.Room;
 import org.lateralgm.resources.Script;
 import org.lateralgm.resources.Shader;
 import org.lateralgm.resources.Timeline;
+import org.lateralgm.resources.library.LibAction;
 import org.lateralgm.resources.sub.Argument;
 import org.lateralgm.resources.sub.Event;
 import org.lateralgm.resources.sub.Instance;
-import org.lateralgm.resources.sub.MainEvent;
 import org.lateralgm.resources.sub.Moment;
 import org.lateralgm.resources.sub.Instance.PInstance;
 import org.lateralgm.subframes.ActionFrame;
@@ -82,6 +92,15 @@ public class Search
 	private static JCheckBox matchCaseCB, regexCB;
 	static JCheckBox wholeWordCB, pruneResultsCB;
 	private static JButton closeButton;
+	private static JButton cancelButton;
+	private static SearchTask searchTask;
+	/** The search the current thread is looking through a resource for, if any. */
+	private static final ThreadLocal<SearchTask> runningTask = new ThreadLocal<SearchTask>();
+	private static ForkJoinPool searchPool;
+	private static final SearchIndex index = new SearchIndex();
+	private static final TreeFilter treeFilter = new TreeFilter();
+	/** How long to wait after the filter text last changed before filtering the tree, in ms. */
+	private static final int FILTER_DELAY = 150;
 
 	private Search()
 		{
@@ -145,6 +164,36 @@ public class Search
 				}
 			return ((TreeNode) parent).getChildCount();
 			}
+
+		public int getIndexOfChild(Object parent, Object child)
+			{
+			if (filterIsActive)
+				{
+				if (parent instanceof ResNode && child instanceof TreeNode)
+					{
+					return ((ResNode) parent).getIndex((TreeNode) child,filterIsActive);
+					}
+				}
+			return super.getIndexOfChild(parent,child);
+			}
+
+		/**
+		 * Tells listeners that the given children, at the given indices among the visible
+		 * children of their parent, have been hidden.
+		 */
+		public void visibleNodesRemoved(TreeNode parent, int[] indices, Object[] children)
+			{
+			fireTreeNodesRemoved(this,getPathToRoot(parent),indices,children);
+			}
+
+		/**
+		 * Tells listeners that the given children, now at the given indices among the visible
+		 * children of their parent, have been shown.
+		 */
+		public void visibleNodesInserted(TreeNode parent, int[] indices, Object[] children)
+			{
+			fireTreeNodesInserted(this,getPathToRoot(parent),indices,children);
+			}
 		}
 
 	private static boolean expressionMatch(String token, String expression, boolean matchCase,
@@ -208,16 +257,17 @@ public class Search
 			{
 			return false;
 			}
-		DefaultMutableTreeNode firstResult = applyFilterRecursion(children,filter,expression,matchCase,
-				wholeWord);
+		ResNode root = children.isEmpty() ? LGM.root : (ResNode) children.get(0).getParent();
+		DefaultMutableTreeNode firstResult = treeFilter.apply((InvisibleTreeModel) LGM.tree.getModel(),
+				root,expression,matchCase,wholeWord);
 
 		if (firstResult != null && selectFirst)
 			{
-			LGM.tree.setSelectionPath(new TreePath(firstResult.getPath()));
-			LGM.tree.updateUI();
+			TreePath path = new TreePath(firstResult.getPath());
+			LGM.tree.setSelectionPath(path);
+			LGM.tree.scrollPathToVisible(path);
 			return true;
 			}
-		LGM.tree.updateUI();
 		return false;
 		}
 
@@ -245,8 +295,9 @@ public class Search
 			}
 		if (firstResult != null)
 			{
-			LGM.tree.setSelectionPath(new TreePath(firstResult.getPath()));
-			LGM.tree.updateUI();
+			TreePath path = new TreePath(firstResult.getPath());
+			LGM.tree.setSelectionPath(path);
+			LGM.tree.scrollPathToVisible(path);
 			//tree.expandPath(new TreePath(firstResult.getPath()));
 			return true;
 			}
@@ -327,7 +378,9 @@ public class Search
 	static List<LineMatch> getMatchingLines(String code, Pattern content)
 		{
 		List<LineMatch> res = new ArrayList<LineMatch>();
-		Matcher m = content.matcher(code), nl = NEWLINE.matcher(code);
+		SearchTask task = runningTask.get();
+		Matcher m = content.matcher(task == null ? code : task.new Text(code));
+		Matcher nl = NEWLINE.matcher(code);
 		// code editor starts at line 0 so we need to here as well
 		int lineNum = 0, lineAt = 0, lastEnd = -1;
 		LineMatch lastMatch = null;
@@ -449,17 +502,19 @@ public class Search
 			}
 		}
 
-	public static ArrayList<SearchResultNode> searchInAction(org.lateralgm.resources.sub.Action act,Pattern pattern)
+	public static ArrayList<SearchResultNode> searchInAction(org.lateralgm.resources.sub.Action act,
+			Pattern pattern)
+		{
+		return searchInAction(new ActionText(act),pattern,LGM.getIconForKey("TreeFilter.RESULT"));
+		}
+
+	private static ArrayList<SearchResultNode> searchInAction(ActionText act, Pattern pattern,
+			Icon resultIcon)
 		{
 		ArrayList<SearchResultNode> resultNodes = new ArrayList<>();
-		List<Argument> args = act.getArguments();
-		for (int i = 0; i < args.size(); i++)
+		for (int i = 0; i < act.args.length; i++)
 			{
-			Argument arg = args.get(i);
-			Resource<?,?> ares = Util.deRef((ResourceReference<?>) arg.getRes());
-			String code = (ares == null) ? arg.getVal() : ares.getName();
-
-			List<LineMatch> matches = getMatchingLines(code,pattern);
+			List<LineMatch> matches = getMatchingLines(act.args[i],pattern);
 			for (LineMatch match : matches)
 				{
 				if (match.matchedText.size() > 0)
@@ -467,7 +522,7 @@ public class Search
 					String text = match.toHighlightableString();
 
 					SearchResultNode resultNode = null;
-					if (act.getLibAction().actionKind != org.lateralgm.resources.sub.Action.ACT_CODE)
+					if (act.lib.actionKind != org.lateralgm.resources.sub.Action.ACT_CODE)
 						{
 						boolean enablehtml = Prefs.highlightResultMatchBackground
 								|| Prefs.highlightResultMatchForeground;
@@ -482,7 +537,7 @@ public class Search
 						resultNode.data = new Object[] { match.lineNum };
 						}
 
-					resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
+					resultNode.setIcon(resultIcon);
 					resultNode.status = SearchResultNode.STATUS_RESULT;
 					resultNodes.add(resultNode);
 					}
@@ -491,394 +546,703 @@ public class Search
 		return resultNodes;
 		}
 
-	public static void searchInResourcesRecursion(DefaultMutableTreeNode node, Pattern pattern)
+	/**
+	 * Adds a node for each of the given actions with results under the given parent, and
+	 * returns how many results there were.
+	 */
+	private static int addActionResults(DefaultMutableTreeNode parent, ActionText[] actions,
+			Pattern pattern, Icon resultIcon)
 		{
-		int numChildren = node.getChildCount();
-		for (int i = 0; i < numChildren; ++i)
+		int matchCount = 0;
+		for (int i = 0; i < actions.length; i++)
 			{
-			DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
-			if (child instanceof ResNode)
+			ActionText act = actions[i];
+			ArrayList<SearchResultNode> resultNodes = searchInAction(act,pattern,resultIcon);
+			matchCount += resultNodes.size();
+			if (resultNodes.size() > 0)
 				{
-				ResNode resNode = (ResNode) child;
-				if (resNode.status != ResNode.STATUS_SECONDARY)
-					{
-					searchInResourcesRecursion(child,pattern);
-					}
-				else
-					{
-					SearchResultNode resultRoot = null;
-					ResourceReference<?> ref = resNode.getRes();
+				// Uses the same method of getting the Action name as ActionFrame
+				SearchResultNode actRoot = new SearchResultNode(
+						formatMatchCountText(act.lib.name.replace("_"," "),resultNodes.size()));
+				actRoot.status = SearchResultNode.STATUS_ACTION;
+				actRoot.data = new Object[] { i };
+				actRoot.setIcon(new ImageIcon(act.lib.actImage.getScaledInstance(16,16,0)));
+				for (SearchResultNode actn : resultNodes)
+					actRoot.add(actn);
+				parent.add(actRoot);
+				}
+			}
+		return matchCount;
+		}
 
-					if (ref != null)
-						{
-						Resource<?,?> resderef = ref.get();
-						if (resNode.frame != null)
-							{
-							resNode.frame.commitChanges();
-							resderef = resNode.frame.res;
-							}
+	/**
+	 * Adds a node for each line of the given code with results under the given parent, and
+	 * returns how many there were.
+	 */
+	private static int addLineResults(DefaultMutableTreeNode parent, String code, Pattern pattern,
+			Icon resultIcon)
+		{
+		List<LineMatch> matches = getMatchingLines(code,pattern);
+		for (LineMatch match : matches)
+			{
+			if (match.matchedText.size() > 0)
+				{
+				SearchResultNode resultNode = new SearchResultNode(match.toHighlightableString());
+				resultNode.setIcon(resultIcon);
+				resultNode.status = SearchResultNode.STATUS_RESULT;
+				resultNode.data = new Object[] { match.lineNum };
+				parent.add(resultNode);
+				}
+			}
+		return matches.size();
+		}
 
-						if (resNode.kind == Script.class)
-							{
-							Script res = (Script) resderef;
-							String code = res.getCode();
-							List<LineMatch> matches = getMatchingLines(code,pattern);
-							if (matches.size() > 0)
-								{
-								resultRoot = new SearchResultNode(
-										formatMatchCountText(res.getName(),matches.size()));
-								resultRoot.ref = res.reference;
-								resultRoot.status = ResNode.STATUS_SECONDARY;
-								resultRoot.setIcon(res.getNode().getIcon());
-								for (LineMatch match : matches)
-									{
-									if (match.matchedText.size() > 0)
-										{
-										String text = match.toHighlightableString();
+	/** The arguments of an action as a search reads them. */
+	private static final class ActionText
+		{
+		final LibAction lib;
+		final String[] args;
 
-										SearchResultNode resultNode = new SearchResultNode(text);
-										resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
-										resultNode.status = SearchResultNode.STATUS_RESULT;
-										resultNode.data = new Object[] { match.lineNum };
-										resultRoot.add(resultNode);
-										}
-									}
-								}
-							}
-						else if (resNode.kind == Shader.class)
-							{
-							Shader res = (Shader) resderef;
-							String vcode = res.getVertexCode();
-							String fcode = res.getFragmentCode();
-							List<LineMatch> vertexmatches = getMatchingLines(vcode,pattern);
-							List<LineMatch> fragmentmatches = getMatchingLines(fcode,pattern);
-							if (vertexmatches.size() + fragmentmatches.size() > 0)
-								{
-								resultRoot = new SearchResultNode(formatMatchCountText(res.getName(),
-										vertexmatches.size() + fragmentmatches.size()));
-								resultRoot.ref = res.reference;
-								resultRoot.status = ResNode.STATUS_SECONDARY;
-								resultRoot.setIcon(res.getNode().getIcon());
-
-								SearchResultNode resultGroupNode = new SearchResultNode(formatMatchCountText(
-										Messages.getString("TreeFilter.VERTEX_CODE") + ":",vertexmatches.size()));
-								resultGroupNode.status = SearchResultNode.STATUS_VERTEX_CODE;
-								resultRoot.add(resultGroupNode);
-								for (LineMatch match : vertexmatches)
-									{
-									if (match.matchedText.size() > 0)
-										{
-										String text = match.toHighlightableString();
+		ActionText(org.lateralgm.resources.sub.Action act)
+			{
+			lib = act.getLibAction();
+			List<Argument> arguments = act.getArguments();
+			args = new String[arguments.size()];
+			for (int i = 0; i < args.length; i++)
+				{
+				Argument arg = arguments.get(i);
+				Resource<?,?> ares = Util.deRef((ResourceReference<?>) arg.getRes());
+				args[i] = (ares == null) ? arg.getVal() : ares.getName();
+				}
+			}
+		}
 
-										SearchResultNode resultNode = new SearchResultNode(text);
-										resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
-										resultNode.status = SearchResultNode.STATUS_RESULT;
-										resultNode.data = new Object[] { match.lineNum };
-										resultGroupNode.add(resultNode);
-										}
-									}
+	/**
+	 * Everything a search looks through in one resource, copied from it on the EDT so that it
+	 * can be searched on another thread.
+	 */
+	private static abstract class Target
+		{
+		final ResNode node;
+		/** The reference the resource is indexed by, which stays the same while it's edited. */
+		final ResourceReference<?> key;
+		final ResourceReference<?> ref;
+		final String name;
+		final Icon icon;
+		/** Every string that is searched, for the index. */
+		final List<String> texts = new ArrayList<String>();
+
+		Target(ResNode node, Resource<?,?> res)
+			{
+			this.node = node;
+			key = node.getRes();
+			ref = res.reference;
+			name = res.getName();
+			icon = node.getIcon();
+			}
 
-								resultGroupNode = new SearchResultNode(formatMatchCountText(
-										Messages.getString("TreeFilter.FRAGMENT_CODE") + ":",fragmentmatches.size()));
-								resultGroupNode.status = SearchResultNode.STATUS_FRAGMENT_CODE;
-								resultRoot.add(resultGroupNode);
-								for (LineMatch match : fragmentmatches)
-									{
-									if (match.matchedText.size() > 0)
-										{
-										String text = match.toHighlightableString();
+		/** Returns the node holding the results in the resource, or null if there are none. */
+		abstract SearchResultNode search(Pattern pattern, Icon resultIcon);
 
-										SearchResultNode resultNode = new SearchResultNode(text);
-										resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
-										resultNode.status = SearchResultNode.STATUS_RESULT;
-										resultNode.data = new Object[] { match.lineNum };
-										resultGroupNode.add(resultNode);
-										}
-									}
-								}
-							}
-						else if (resNode.kind == GmObject.class)
-							{
-							GmObject res = (GmObject) resderef;
+		SearchResultNode createRoot(int matchCount)
+			{
+			SearchResultNode resultRoot = new SearchResultNode(formatMatchCountText(name,matchCount));
+			resultRoot.ref = ref;
+			resultRoot.status = ResNode.STATUS_SECONDARY;
+			resultRoot.setIcon(icon);
+			return resultRoot;
+			}
 
-							ArrayList<SearchResultNode> meNodes = new ArrayList<>();
-							int matchCount = 0;
-							for (MainEvent me : res.mainEvents)
-								{
-								ArrayList<SearchResultNode> evNodes = new ArrayList<>();
-								int meMatches = 0;
-								int mainid = 0;
-								for (Event ev : me.events)
-									{
-									mainid = ev.mainId;
-									ArrayList<SearchResultNode> actionNodes = new ArrayList<>();
-									int evMatches = 0;
-									List<org.lateralgm.resources.sub.Action> actions = ev.actions;
-									for (int ii = 0; ii < actions.size(); ii++)
-										{
-										org.lateralgm.resources.sub.Action act = actions.get(ii);
-										ArrayList<SearchResultNode> resultNodes =
-												Search.searchInAction(act,pattern);
+		void addActions(ActionText[] actions)
+			{
+			for (ActionText act : actions)
+				texts.addAll(Arrays.asList(act.args));
+			}
+		}
 
-										evMatches += resultNodes.size();
-										if (resultNodes.size() > 0)
-											{
-											// Uses the same method of getting the Action name as ActionFrame
-											SearchResultNode actRoot = new SearchResultNode(formatMatchCountText(
-													act.getLibAction().name.replace("_"," "),resultNodes.size()));
-											actRoot.status = SearchResultNode.STATUS_ACTION;
-											actRoot.data = new Object[] { ii };
-											actRoot.setIcon(
-													new ImageIcon(act.getLibAction().actImage.getScaledInstance(16,16,0)));
-											for (SearchResultNode actn : resultNodes)
-												actRoot.add(actn);
-											actionNodes.add(actRoot);
-											}
-										}
-									meMatches += evMatches;
-									if (actionNodes.size() > 0)
-										{
-										SearchResultNode evRoot = new SearchResultNode(formatMatchCountText(
-												ev.toString().replaceAll("<","&lt;").replaceAll(">","&gt;"),evMatches));
-										evRoot.status = SearchResultNode.STATUS_EVENT;
-										evRoot.setIcon(LGM.getIconForKey("EventNode.EVENT" + ev.mainId));
-										evRoot.data = new Object[] { ev.mainId,ev.id };
-										for (SearchResultNode resn : actionNodes)
-											evRoot.add(resn);
-										evNodes.add(evRoot);
-										}
-									}
-								matchCount += meMatches;
-								if (evNodes.size() > 0)
-									{
-									if (evNodes.size() > 1)
-										{
-										SearchResultNode meRoot = new SearchResultNode(formatMatchCountText(
-												Messages.getString("MainEvent.EVENT" + mainid),meMatches));
-										meRoot.status = SearchResultNode.STATUS_MAIN_EVENT;
-										meRoot.setIcon(LGM.getIconForKey("EventNode.GROUP" + mainid));
-										for (SearchResultNode resn : evNodes)
-											{
-											meRoot.add(resn);
-											}
-										meNodes.add(meRoot);
-										}
-									else
-										{
-										for (SearchResultNode resn : evNodes)
-											{
-											meNodes.add(resn);
-											}
-										}
-									}
-								}
+	private static ActionText[] getActionTexts(List<org.lateralgm.resources.sub.Action> actions)
+		{
+		ActionText[] texts = new ActionText[actions.size()];
+		for (int i = 0; i < texts.length; i++)
+			texts[i] = new ActionText(actions.get(i));
+		return texts;
+		}
 
-							if (meNodes.size() > 0)
-								{
-								resultRoot = new SearchResultNode(formatMatchCountText(res.getName(),matchCount));
-								resultRoot.ref = res.reference;
-								resultRoot.status = ResNode.STATUS_SECONDARY;
-								resultRoot.setIcon(res.getNode().getIcon());
-								}
+	private static final class ScriptTarget extends Target
+		{
+		final String code;
 
-							for (SearchResultNode resn : meNodes)
-								resultRoot.add(resn);
-							}
-						else if (resNode.kind == Timeline.class)
-							{
-							Timeline res = (Timeline) resderef;
+		ScriptTarget(ResNode node, Script res)
+			{
+			super(node,res);
+			code = res.getCode();
+			texts.add(code);
+			}
 
-							ArrayList<SearchResultNode> momentNodes = new ArrayList<>();
-							int matchCount = 0;
-							for (Moment mom : res.moments)
-								{
-								ArrayList<SearchResultNode> actionNodes = new ArrayList<>();
-								int momentMatches = 0;
-								List<org.lateralgm.resources.sub.Action> actions = mom.actions;
-								for (int ii = 0; ii < actions.size(); ii++)
-									{
-									org.lateralgm.resources.sub.Action act = actions.get(ii);
-									ArrayList<SearchResultNode> resultNodes =
-											Search.searchInAction(act,pattern);
+		SearchResultNode search(Pattern pattern, Icon resultIcon)
+			{
+			SearchResultNode resultRoot = createRoot(0);
+			int matchCount = addLineResults(resultRoot,code,pattern,resultIcon);
+			if (matchCount == 0) return null;
+			resultRoot.setUserObject(formatMatchCountText(name,matchCount));
+			return resultRoot;
+			}
+		}
 
-									momentMatches += resultNodes.size();
-									if (resultNodes.size() > 0)
-										{
-										// Uses the same method of getting the Action name as ActionFrame
-										SearchResultNode actRoot = new SearchResultNode(
-												formatMatchCountText(act.getLibAction().name.replace("_"," "),resultNodes.size()));
-										actRoot.status = SearchResultNode.STATUS_ACTION;
-										actRoot.data = new Object[] { ii };
-										actRoot.setIcon(
-												new ImageIcon(act.getLibAction().actImage.getScaledInstance(16,16,0)));
-										for (SearchResultNode actn : resultNodes)
-											actRoot.add(actn);
-										actionNodes.add(actRoot);
-										}
+	private static final class ShaderTarget extends Target
+		{
+		final String vcode, fcode;
 
-									}
-								matchCount += momentMatches;
-								if (actionNodes.size() > 0)
-									{
-									SearchResultNode momentRoot = new SearchResultNode(
-											formatMatchCountText(mom.toString(),momentMatches));
-									momentRoot.status = SearchResultNode.STATUS_MOMENT;
-									momentRoot.data = new Object[] { mom.stepNo };
-									momentRoot.setIcon(null);
-									for (SearchResultNode resn : actionNodes)
-										momentRoot.add(resn);
-									momentNodes.add(momentRoot);
-									}
-								}
+		ShaderTarget(ResNode node, Shader res)
+			{
+			super(node,res);
+			vcode = res.getVertexCode();
+			fcode = res.getFragmentCode();
+			texts.add(vcode);
+			texts.add(fcode);
+			}
 
-							if (momentNodes.size() > 0)
-								{
-								resultRoot = new SearchResultNode(formatMatchCountText(res.getName(),matchCount));
-								resultRoot.ref = res.reference;
-								resultRoot.status = ResNode.STATUS_SECONDARY;
-								resultRoot.setIcon(res.getNode().getIcon());
-								}
+		SearchResultNode search(Pattern pattern, Icon resultIcon)
+			{
+			SearchResultNode vertexNode = new SearchResultNode();
+			vertexNode.status = SearchResultNode.STATUS_VERTEX_CODE;
+			int vertexCount = addLineResults(vertexNode,vcode,pattern,resultIcon);
+			vertexNode.setUserObject(formatMatchCountText(
+					Messages.getString("TreeFilter.VERTEX_CODE") + ":",vertexCount));
+
+			SearchResultNode fragmentNode = new SearchResultNode();
+			fragmentNode.status = SearchResultNode.STATUS_FRAGMENT_CODE;
+			int fragmentCount = addLineResults(fragmentNode,fcode,pattern,resultIcon);
+			fragmentNode.setUserObject(formatMatchCountText(
+					Messages.getString("TreeFilter.FRAGMENT_CODE") + ":",fragmentCount));
+
+			if (vertexCount + fragmentCount == 0) return null;
+			SearchResultNode resultRoot = createRoot(vertexCount + fragmentCount);
+			resultRoot.add(vertexNode);
+			resultRoot.add(fragmentNode);
+			return resultRoot;
+			}
+		}
 
-							for (SearchResultNode momn : momentNodes)
-								resultRoot.add(momn);
-							}
-						else if (resNode.kind == Room.class)
-							{
-							Room res = (Room) resderef;
+	private static final class EventText
+		{
+		final int mainId, id;
+		final String label;
+		final Icon icon;
+		final ActionText[] actions;
 
-							ArrayList<SearchResultNode> resultNodes = new ArrayList<>();
-							int matchCount = 0;
+		EventText(Event ev)
+			{
+			mainId = ev.mainId;
+			id = ev.id;
+			label = ev.toString().replaceAll("<","&lt;").replaceAll(">","&gt;");
+			icon = LGM.getIconForKey("EventNode.EVENT" + ev.mainId);
+			actions = getActionTexts(ev.actions);
+			}
+		}
 
-							String code = res.getCode();
-							List<LineMatch> matches = getMatchingLines(code,pattern);
-							matchCount += matches.size();
-							ArrayList<SearchResultNode> codeNodes = new ArrayList<>();
-							for (LineMatch match : matches)
-								{
-								if (match.matchedText.size() > 0)
-									{
-									String text = match.toHighlightableString();
+	private static final class ObjectTarget extends Target
+		{
+		/** The events of each main event, and the id of the last one of each. */
+		final EventText[][] events;
+		final int[] mainIds;
 
-									SearchResultNode resultNode = new SearchResultNode(text);
-									resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
-									resultNode.status = SearchResultNode.STATUS_RESULT;
-									resultNode.data = new Object[] { match.lineNum };
-									codeNodes.add(resultNode);
-									}
-								}
+		ObjectTarget(ResNode node, GmObject res)
+			{
+			super(node,res);
+			events = new EventText[res.mainEvents.size()][];
+			mainIds = new int[events.length];
+			for (int i = 0; i < events.length; i++)
+				{
+				List<Event> evs = res.mainEvents.get(i).events;
+				events[i] = new EventText[evs.size()];
+				for (int j = 0; j < events[i].length; j++)
+					{
+					events[i][j] = new EventText(evs.get(j));
+					mainIds[i] = events[i][j].mainId;
+					addActions(events[i][j].actions);
+					}
+				}
+			}
 
-							if (codeNodes.size() > 0)
-								{
-								SearchResultNode resultNode = new SearchResultNode(formatMatchCountText(
-										Messages.getString("TreeFilter.CREATION_CODE"),matches.size()));
-								resultNode.setIcon(null);
-								resultNode.status = SearchResultNode.STATUS_ROOM_CREATION;
-								resultNodes.add(resultNode);
-
-								for (SearchResultNode codeNode : codeNodes)
-									resultNode.add(codeNode);
-								}
+		SearchResultNode search(Pattern pattern, Icon resultIcon)
+			{
+			ArrayList<SearchResultNode> meNodes = new ArrayList<>();
+			int matchCount = 0;
+			for (int i = 0; i < events.length; i++)
+				{
+				ArrayList<SearchResultNode> evNodes = new ArrayList<>();
+				int meMatches = 0;
+				for (EventText ev : events[i])
+					{
+					SearchResultNode evRoot = new SearchResultNode();
+					int evMatches = addActionResults(evRoot,ev.actions,pattern,resultIcon);
+					meMatches += evMatches;
+					if (evRoot.getChildCount() > 0)
+						{
+						evRoot.setUserObject(formatMatchCountText(ev.label,evMatches));
+						evRoot.status = SearchResultNode.STATUS_EVENT;
+						evRoot.setIcon(ev.icon);
+						evRoot.data = new Object[] { ev.mainId,ev.id };
+						evNodes.add(evRoot);
+						}
+					}
+				matchCount += meMatches;
+				if (evNodes.size() > 1)
+					{
+					int mainid = mainIds[i];
+					SearchResultNode meRoot = new SearchResultNode(formatMatchCountText(
+							Messages.getString("MainEvent.EVENT" + mainid),meMatches));
+					meRoot.status = SearchResultNode.STATUS_MAIN_EVENT;
+					meRoot.setIcon(LGM.getIconForKey("EventNode.GROUP" + mainid));
+					for (SearchResultNode resn : evNodes)
+						meRoot.add(resn);
+					meNodes.add(meRoot);
+					}
+				else
+					meNodes.addAll(evNodes);
+				}
 
-							for (Instance inst : res.instances)
-								{
-								code = inst.getCode();
-								matches = getMatchingLines(code,pattern);
-								matchCount += matches.size();
-								codeNodes = new ArrayList<>();
-								for (LineMatch match : matches)
-									{
-									if (match.matchedText.size() > 0)
-										{
-										String text = match.toHighlightableString();
+			if (meNodes.isEmpty()) return null;
+			SearchResultNode resultRoot = createRoot(matchCount);
+			for (SearchResultNode resn : meNodes)
+				resultRoot.add(resn);
+			return resultRoot;
+			}
+		}
 
-										SearchResultNode resultNode = new SearchResultNode(text);
-										resultNode.setIcon(LGM.getIconForKey("TreeFilter.RESULT"));
-										resultNode.data = new Object[] { match.lineNum };
-										resultNode.status = SearchResultNode.STATUS_RESULT;
-										codeNodes.add(resultNode);
-										}
-									}
+	private static final class TimelineTarget extends Target
+		{
+		final int[] steps;
+		final String[] labels;
+		final ActionText[][] actions;
 
-								if (codeNodes.size() > 0)
-									{
-									SearchResultNode resultNode = new SearchResultNode(formatMatchCountText(
-											Messages.getString("TreeFilter.INSTANCE") + " " + inst.getID(),
-											matches.size()));
-
-									Resource<?,?> obj = ((ResourceReference<?>) inst.properties.get(
-											PInstance.OBJECT)).get();
-									resultNode.setIcon(obj == null ? null : obj.getNode().getIcon());
-									resultNode.status = SearchResultNode.STATUS_INSTANCE_CREATION;
-									resultNode.data = new Object[] { inst.getID() };
-									resultNodes.add(resultNode);
-
-									for (SearchResultNode codeNode : codeNodes)
-										resultNode.add(codeNode);
-									}
-								}
+		TimelineTarget(ResNode node, Timeline res)
+			{
+			super(node,res);
+			steps = new int[res.moments.size()];
+			labels = new String[steps.length];
+			actions = new ActionText[steps.length][];
+			for (int i = 0; i < steps.length; i++)
+				{
+				Moment mom = res.moments.get(i);
+				steps[i] = mom.stepNo;
+				labels[i] = mom.toString();
+				actions[i] = getActionTexts(mom.actions);
+				addActions(actions[i]);
+				}
+			}
 
-							if (resultNodes.size() > 0)
-								{
-								resultRoot = new SearchResultNode(formatMatchCountText(res.getName(),matchCount));
-								resultRoot.ref = res.reference;
-								resultRoot.status = ResNode.STATUS_SECONDARY;
-								resultRoot.setIcon(res.getNode().getIcon());
-								}
+		SearchResultNode search(Pattern pattern, Icon resultIcon)
+			{
+			ArrayList<SearchResultNode> momentNodes = new ArrayList<>();
+			int matchCount = 0;
+			for (int i = 0; i < steps.length; i++)
+				{
+				SearchResultNode momentRoot = new SearchResultNode();
+				int momentMatches = addActionResults(momentRoot,actions[i],pattern,resultIcon);
+				matchCount += momentMatches;
+				if (momentRoot.getChildCount() > 0)
+					{
+					momentRoot.setUserObject(formatMatchCountText(labels[i],momentMatches));
+					momentRoot.status = SearchResultNode.STATUS_MOMENT;
+					momentRoot.data = new Object[] { steps[i] };
+					momentRoot.setIcon(null);
+					momentNodes.add(momentRoot);
+					}
+				}
 
-							for (SearchResultNode resultNode : resultNodes)
-								resultRoot.add(resultNode);
-							}
+			if (momentNodes.isEmpty()) return null;
+			SearchResultNode resultRoot = createRoot(matchCount);
+			for (SearchResultNode momn : momentNodes)
+				resultRoot.add(momn);
+			return resultRoot;
+			}
+		}
+
+	private static final class RoomTarget extends Target
+		{
+		final String code;
+		final int[] ids;
+		final String[] codes;
+		final Icon[] icons;
+
+		RoomTarget(ResNode node, Room res)
+			{
+			super(node,res);
+			code = res.getCode();
+			texts.add(code);
+			int n = res.instances.size();
+			ids = new int[n];
+			codes = new String[n];
+			icons = new Icon[n];
+			for (int i = 0; i < n; i++)
+				{
+				Instance inst = res.instances.get(i);
+				ids[i] = inst.getID();
+				codes[i] = inst.getCode();
+				texts.add(codes[i]);
+				Resource<?,?> obj = Util.deRef((ResourceReference<?>) inst.properties.get(
+						PInstance.OBJECT));
+				icons[i] = obj == null ? null : obj.getNode().getIcon();
+				}
+			}
+
+		SearchResultNode search(Pattern pattern, Icon resultIcon)
+			{
+			ArrayList<SearchResultNode> resultNodes = new ArrayList<>();
+			int matchCount = 0;
+
+			SearchResultNode resultNode = new SearchResultNode();
+			int matches = addLineResults(resultNode,code,pattern,resultIcon);
+			matchCount += matches;
+			if (resultNode.getChildCount() > 0)
+				{
+				resultNode.setUserObject(formatMatchCountText(
+						Messages.getString("TreeFilter.CREATION_CODE"),matches));
+				resultNode.setIcon(null);
+				resultNode.status = SearchResultNode.STATUS_ROOM_CREATION;
+				resultNodes.add(resultNode);
+				}
+
+			for (int i = 0; i < ids.length; i++)
+				{
+				resultNode = new SearchResultNode();
+				matches = addLineResults(resultNode,codes[i],pattern,resultIcon);
+				matchCount += matches;
+				if (resultNode.getChildCount() > 0)
+					{
+					resultNode.setUserObject(formatMatchCountText(
+							Messages.getString("TreeFilter.INSTANCE") + " " + ids[i],matches));
+					resultNode.setIcon(icons[i]);
+					resultNode.status = SearchResultNode.STATUS_INSTANCE_CREATION;
+					resultNode.data = new Object[] { ids[i] };
+					resultNodes.add(resultNode);
+					}
+				}
+
+			if (resultNodes.isEmpty()) return null;
+			SearchResultNode resultRoot = createRoot(matchCount);
+			for (SearchResultNode n : resultNodes)
+				resultRoot.add(n);
+			return resultRoot;
+			}
+		}
+
+	/**
+	 * Copies what a search looks through out of every resource under the given node, committing
+	 * the changes of any that are open first.
+	 */
+	private static void collectTargets(DefaultMutableTreeNode node, List<Target> targets)
+		{
+		int numChildren = node.getChildCount();
+		for (int i = 0; i < numChildren; ++i)
+			{
+			DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
+			if (!(child instanceof ResNode)) continue;
+			ResNode resNode = (ResNode) child;
+			if (resNode.status != ResNode.STATUS_SECONDARY)
+				{
+				collectTargets(child,targets);
+				continue;
+				}
+			ResourceReference<?> ref = resNode.getRes();
+			if (ref == null) continue;
+			Resource<?,?> resderef = ref.get();
+			if (resNode.frame != null)
+				{
+				resNode.frame.commitChanges();
+				resderef = resNode.frame.res;
+				}
+
+			if (resNode.kind == Script.class)
+				targets.add(new ScriptTarget(resNode,(Script) resderef));
+			else if (resNode.kind == Shader.class)
+				targets.add(new ShaderTarget(resNode,(Shader) resderef));
+			else if (resNode.kind == GmObject.class)
+				targets.add(new ObjectTarget(resNode,(GmObject) resderef));
+			else if (resNode.kind == Timeline.class)
+				targets.add(new TimelineTarget(resNode,(Timeline) resderef));
+			else if (resNode.kind == Room.class)
+				targets.add(new RoomTarget(resNode,(Room) resderef));
+			}
+		}
 
-						if (resultRoot != null)
+	/** Adds the results found in a resource to the search tree, under copies of its groups. */
+	private static void addResult(ResNode resNode, SearchResultNode resultRoot)
+		{
+		TreeNode[] paths = resNode.getPath();
+		DefaultMutableTreeNode searchNode = (DefaultMutableTreeNode) LGM.searchTree.getModel()
+				.getRoot();
+		// start at 1 because we don't want to copy the root
+		// subtract 1 so we don't consider the node itself
+		for (int n = 1; n < paths.length - 1; n++)
+			{
+			ResNode pathNode = (ResNode) paths[n];
+			boolean found = false;
+			for (int y = 0; y < searchNode.getChildCount(); y++)
+				{
+				DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) searchNode.getChildAt(y);
+				if (childNode.getUserObject() == pathNode.getUserObject())
+					{
+					searchNode = childNode;
+					found = true;
+					break;
+					}
+				}
+			if (!found)
+				{
+				SearchResultNode newSearchNode = new SearchResultNode(pathNode.getUserObject());
+				newSearchNode.status = pathNode.status;
+				searchNode.add(newSearchNode);
+				searchNode = newSearchNode;
+				}
+			if (pathNode == resNode.getParent()) searchNode.add(resultRoot);
+			}
+		}
+
+	/**
+	 * Searches a list of resources on a worker thread, adding their results to the search tree
+	 * as they are found. The resources are searched in parallel, but their results are added in
+	 * the order of the list. The search gives up once it has taken longer than
+	 * {@link Prefs#searchTimeLimit} seconds.
+	 */
+	private static final class SearchTask extends SwingWorker<Void,Object[]>
+		{
+		private final List<Target> targets;
+		private final Pattern pattern;
+		/** The word to look up in the index, or null to search every resource. */
+		private final String word;
+		private final boolean wholeWord;
+		private final Icon resultIcon = LGM.getIconForKey("TreeFilter.RESULT");
+		/** Tells the resources not searched yet to be skipped. */
+		private volatile boolean stopped;
+		/** When the time limit runs out, in terms of {@link System#nanoTime()}, if there is one. */
+		private long deadline;
+		private boolean limited;
+
+		SearchTask(List<Target> targets, Pattern pattern, String word, boolean wholeWord)
+			{
+			this.targets = targets;
+			this.pattern = pattern;
+			this.word = word;
+			this.wholeWord = wholeWord;
+			}
+
+		@Override
+		protected Void doInBackground() throws InterruptedException,ExecutionException
+			{
+			Set<ResourceReference<?>> candidates = null;
+			if (word != null)
+				{
+				List<ResourceReference<?>> refs = new ArrayList<ResourceReference<?>>(targets.size());
+				for (Target t : targets)
+					{
+					if (isCancelled()) return null;
+					index.update(t.key,t.texts.toArray(new String[t.texts.size()]));
+					refs.add(t.key);
+					}
+				index.retain(refs);
+				candidates = index.find(word,wholeWord);
+				}
+
+			limited = Prefs.searchTimeLimit > 0;
+			deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Prefs.searchTimeLimit);
+			List<Target> searched = new ArrayList<Target>();
+			List<Future<SearchResultNode>> results = new ArrayList<Future<SearchResultNode>>();
+			for (final Target t : targets)
+				{
+				if (candidates != null && !candidates.contains(t.key)) continue;
+				searched.add(t);
+				results.add(getSearchPool().submit(new Callable<SearchResultNode>()
+					{
+						public SearchResultNode call()
 							{
-							TreeNode[] paths = resNode.getPath();
-							DefaultMutableTreeNode searchNode = (DefaultMutableTreeNode) LGM.searchTree.getModel().getRoot();
-							// start at 1 because we don't want to copy the root
-							// subtract 1 so we don't consider the node itself
-							for (int n = 1; n < paths.length - 1; n++)
+							if (stopped) return null;
+							runningTask.set(SearchTask.this);
+							try
 								{
-								ResNode pathNode = (ResNode) paths[n];
-								boolean found = false;
-								for (int y = 0; y < searchNode.getChildCount(); y++)
-									{
-									DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) searchNode.getChildAt(
-											y);
-									if (childNode.getUserObject() == pathNode.getUserObject())
-										{
-										searchNode = childNode;
-										found = true;
-										break;
-										}
-									}
-								if (!found)
-									{
-									SearchResultNode newSearchNode = new SearchResultNode(pathNode.getUserObject());
-									newSearchNode.status = pathNode.status;
-									searchNode.add(newSearchNode);
-									searchNode = newSearchNode;
-									}
-								if (pathNode == resNode.getParent()) searchNode.add(resultRoot);
+								return t.search(pattern,resultIcon);
+								}
+							catch (SearchStoppedException e)
+								{
+								return null;
+								}
+							finally
+								{
+								runningTask.remove();
 								}
-
 							}
+					}));
+				}
+			try
+				{
+				for (int i = 0; i < results.size() && !isCancelled(); i++)
+					{
+					SearchResultNode resultRoot;
+					try
+						{
+						if (!limited)
+							resultRoot = results.get(i).get();
+						else
+							resultRoot = results.get(i).get(deadline - System.nanoTime(),
+									TimeUnit.NANOSECONDS);
 						}
+					catch (TimeoutException e)
+						{
+						resultRoot = null;
+						}
+					if (isExpired())
+						{
+						publish(new Object[] { null,new DefaultMutableTreeNode(
+								Messages.format("TreeFilter.TIME_LIMIT",Prefs.searchTimeLimit)) });
+						break;
+						}
+					if (resultRoot != null) publish(new Object[] { searched.get(i).node,resultRoot });
 					}
 				}
+			finally
+				{
+				stopped = true;
+				for (Future<SearchResultNode> f : results)
+					f.cancel(false);
+				}
+			return null;
+			}
+
+		private boolean isExpired()
+			{
+			return limited && System.nanoTime() - deadline >= 0;
+			}
+
+		/** Whether matching should give up on whatever it is still looking through. */
+		boolean isStopped()
+			{
+			return stopped || isCancelled() || isExpired();
+			}
+
+		/**
+		 * Text that a search matches against, which gives up as soon as the search is stopped
+		 * rather than once a regular expression that may take very long is done with it.
+		 */
+		final class Text implements CharSequence
+			{
+			private final String text;
+			private int reads;
+
+			Text(String text)
+				{
+				this.text = text;
+				}
+
+			public char charAt(int index)
+				{
+				// Only every so often, as matching reads a lot of characters
+				if ((++reads & 0xFFF) == 0 && isStopped()) throw new SearchStoppedException();
+				return text.charAt(index);
+				}
+
+			public int length()
+				{
+				return text.length();
+				}
+
+			public CharSequence subSequence(int start, int end)
+				{
+				return text.subSequence(start,end);
+				}
+
+			@Override
+			public String toString()
+				{
+				return text;
+				}
+			}
+
+		@Override
+		protected void process(List<Object[]> results)
+			{
+			if (isCancelled()) return;
+			DefaultMutableTreeNode searchRoot = (DefaultMutableTreeNode) LGM.searchTree.getModel()
+					.getRoot();
+			for (Object[] r : results)
+				{
+				if (r[0] == null)
+					searchRoot.add((DefaultMutableTreeNode) r[1]);
+				else
+					addResult((ResNode) r[0],(SearchResultNode) r[1]);
+				}
+			// Reload because root is invisible.
+			((DefaultTreeModel) LGM.searchTree.getModel()).reload();
+			}
+
+		@Override
+		protected void done()
+			{
+			if (searchTask != this) return;
+			searchTask = null;
+			cancelButton.setEnabled(false);
+			try
+				{
+				get();
+				}
+			catch (InterruptedException e)
+				{
+				// Can't happen, the search is done
+				}
+			catch (ExecutionException e)
+				{
+				LGM.showDefaultExceptionHandler(e.getCause());
+				}
 			}
 		}
 
+	/** Thrown out of matching in a resource when its search has been stopped. */
+	private static final class SearchStoppedException extends RuntimeException
+		{
+		private static final long serialVersionUID = 1L;
+		}
+
+	/** The pool resources are searched on, which is created when it is first needed. */
+	private static synchronized ForkJoinPool getSearchPool()
+		{
+		if (searchPool == null) searchPool = new ForkJoinPool();
+		return searchPool;
+		}
+
+	/** Stops the search in resources that is running, if any, keeping the results found so far. */
+	public static void cancelSearch()
+		{
+		if (searchTask == null) return;
+		searchTask.cancel(false);
+		searchTask = null;
+		if (cancelButton != null) cancelButton.setEnabled(false);
+		}
+
+	/**
+	 * Searches the code of every resource under the given node, filling the search tree with
+	 * the results as they are found in the background. Any search still running is cancelled.
+	 */
 	public static void searchInResources(DefaultMutableTreeNode node, String expression,
 			boolean regex, boolean matchCase, boolean wholeWord)
 		{
+		cancelSearch();
 		DefaultMutableTreeNode searchRoot = (DefaultMutableTreeNode) LGM.searchTree.getModel().getRoot();
 		searchRoot.removeAllChildren();
 		Pattern pattern = Pattern.compile(
 				wholeWord ? "\\b" + Pattern.quote(expression) + "\\b"
 						: regex ? expression : Pattern.quote(expression),
 				matchCase ? 0 : Pattern.CASE_INSENSITIVE);
-		searchInResourcesRecursion(node,pattern);
+		List<Target> targets = new ArrayList<Target>();
+		collectTargets(node,targets);
 		// Reload because root is invisible.
 		((DefaultTreeModel) LGM.searchTree.getModel()).reload();
+
+		// A word means the same as a regular expression, so the index can look it up either way
+		String word = Prefs.searchIndex && SearchIndex.isWord(expression) ? expression : null;
+		searchTask = new SearchTask(targets,pattern,word,wholeWord);
+		if (cancelButton != null) cancelButton.setEnabled(true);
+		searchTask.execute();
 		}
 
 	static class SearchResultNode extends DefaultMutableTreeNode
@@ -1343,6 +1707,17 @@ public class Search
 				}
 			});
 
+		cancelButton = new JButton(LGM.getIconForKey("TreeFilter.CANCEL"));
+		cancelButton.setToolTipText(Messages.getString("TreeFilter.CANCEL"));
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener()
+			{
+			public void actionPerformed(ActionEvent arg0)
+				{
+				Search.cancelSearch();
+				}
+			});
+
 		JButton setButton = new JButton(LGM.getIconForKey("TreeFilter.SET"));
 		setButton.setToolTipText(Messages.getString("TreeFilter.SET"));
 		setButton.addActionListener(new ActionListener()
@@ -1353,14 +1728,10 @@ public class Search
 				}
 			});
 
-		filterText.getDocument().addDocumentListener(new DocumentListener()
+		// Wait for the user to stop typing before filtering the tree
+		final Timer filterTimer = new Timer(FILTER_DELAY,new ActionListener()
 			{
-			public void changedUpdate(DocumentEvent e)
-				{
-
-				}
-
-			public void removeUpdate(DocumentEvent e)
+			public void actionPerformed(ActionEvent e)
 				{
 				InvisibleTreeModel ml = (InvisibleTreeModel) LGM.tree.getModel();
 				if (ml.isActivatedFilter())
@@ -1370,16 +1741,24 @@ public class Search
 					Search.searchFilter(LGM.root,filterText.getText(),matchCaseCB.isSelected(),
 							wholeWordCB.isSelected(),false);
 				}
+			});
+		filterTimer.setRepeats(false);
+
+		filterText.getDocument().addDocumentListener(new DocumentListener()
+			{
+			public void changedUpdate(DocumentEvent e)
+				{
+
+				}
+
+			public void removeUpdate(DocumentEvent e)
+				{
+				filterTimer.restart();
+				}
 
 			public void insertUpdate(DocumentEvent e)
 				{
-				InvisibleTreeModel ml = (InvisibleTreeModel) LGM.tree.getModel();
-				if (ml.isActivatedFilter())
-					Search.applyFilter(LGM.root.getChildren(),ml.isActivatedFilter(),filterText.getText(),false,
-							wholeWordCB.isSelected(),true);
-				else
-					Search.searchFilter(LGM.root,filterText.getText(),matchCaseCB.isSelected(),
-							wholeWordCB.isSelected(),false);
+				filterTimer.restart();
 				}
 			});
 
@@ -1404,6 +1783,7 @@ public class Search
 		/**/.addComponent(prevButton)
 		/**/.addComponent(nextButton)
 		/**/.addComponent(searchInButton)
+		/**/.addComponent(cancelButton)
 		/**/.addComponent(setButton));
 
 		filterLayout.setVerticalGroup(filterLayout.createParallelGroup(Alignment.CENTER)
@@ -1411,6 +1791,7 @@ public class Search
 		/**/.addComponent(prevButton)
 		/**/.addComponent(nextButton)
 		/**/.addComponent(searchInButton)
+		/**/.addComponent(cancelButton)
 		/**/.addComponent(setButton));
 
 		toolbar.setLayout(filterLayout);
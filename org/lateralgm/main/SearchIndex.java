@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.main;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.lateralgm.main.UpdateSource.UpdateEvent;
+import org.lateralgm.main.UpdateSource.UpdateListener;
+import org.lateralgm.resources.ResourceReference;
+
+/**
+ * The words used in the code of each resource, so that searching for a plain word only has to
+ * look through the resources that contain it. A word is a run of ASCII letters, digits and
+ * underscores, compared ignoring case. A resource is indexed again when its code is no longer
+ * the same strings it was indexed from, or when it has been updated since.
+ * <p>
+ * The index only narrows a search down; the resources it returns must still be searched.
+ */
+final class SearchIndex
+	{
+	private static final class Entry
+		{
+		final String[] texts;
+		final Set<String> words;
+
+		Entry(String[] texts, Set<String> words)
+			{
+			this.texts = texts;
+			this.words = words;
+			}
+		}
+
+	private final Map<ResourceReference<?>,Entry> entries = new HashMap<ResourceReference<?>,Entry>();
+	/** The resources each word is used in. */
+	private final Map<String,Set<ResourceReference<?>>> postings = new HashMap<String,
+			Set<ResourceReference<?>>>();
+
+	private final UpdateListener invalidator = new UpdateListener()
+		{
+			public void updated(UpdateEvent e)
+				{
+				synchronized (SearchIndex.this)
+					{
+					// Left listened to, but with nothing to match until it is indexed again
+					if (entries.containsKey(e.source.owner))
+						update((ResourceReference<?>) e.source.owner,new String[0]);
+					}
+				}
+		};
+
+	/**
+	 * The characters of \w, which \b takes words to be made of in whole word searches. Older
+	 * runtimes take other letters for word characters too, which only makes them match less.
+	 */
+	private static boolean isWordChar(char c)
+		{
+		return c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+		}
+
+	/** Whether the index can narrow down a search for the given text, i.e. it is a single word. */
+	static boolean isWord(String text)
+		{
+		if (text.isEmpty()) return false;
+		for (int i = 0; i < text.length(); i++)
+			if (!isWordChar(text.charAt(i))) return false;
+		return true;
+		}
+
+	/**
+	 * Lower cases each character on its own, unlike {@link String#toLowerCase()}, so that a
+	 * folded word is always found in the folded text it was matched in.
+	 */
+	private static String fold(CharSequence s)
+		{
+		char[] c = new char[s.length()];
+		for (int i = 0; i < c.length; i++)
+			c[i] = Character.toLowerCase(s.charAt(i));
+		return new String(c);
+		}
+
+	private static Set<String> words(String[] texts)
+		{
+		Set<String> words = new HashSet<String>();
+		for (String s : texts)
+			{
+			if (s == null) continue;
+			int start = -1;
+			for (int i = 0; i <= s.length(); i++)
+				{
+				boolean w = i < s.length() && isWordChar(s.charAt(i));
+				if (w && start < 0)
+					start = i;
+				else if (!w && start >= 0)
+					{
+					words.add(fold(s.subSequence(start,i)));
+					start = -1;
+					}
+				}
+			}
+		return words;
+		}
+
+	private static boolean same(String[] a, String[] b)
+		{
+		if (a.length != b.length) return false;
+		for (int i = 0; i < a.length; i++)
+			if (a[i] != b[i]) return false;
+		return true;
+		}
+
+	/**
+	 * Makes sure the given resource is indexed by the given code, which is every string a search
+	 * of it would look through. Does nothing if it was indexed by these same strings and hasn't
+	 * been updated since.
+	 */
+	synchronized void update(ResourceReference<?> ref, String[] texts)
+		{
+		Entry en = entries.get(ref);
+		if (en != null)
+			{
+			if (same(en.texts,texts)) return;
+			for (String w : en.words)
+				{
+				Set<ResourceReference<?>> refs = postings.get(w);
+				refs.remove(ref);
+				if (refs.isEmpty()) postings.remove(w);
+				}
+			}
+		else
+			ref.updateSource.addListener(invalidator);
+		en = new Entry(texts,words(texts));
+		entries.put(ref,en);
+		for (String w : en.words)
+			{
+			Set<ResourceReference<?>> refs = postings.get(w);
+			if (refs == null)
+				{
+				refs = new HashSet<ResourceReference<?>>();
+				postings.put(w,refs);
+				}
+			refs.add(ref);
+			}
+		}
+
+	/** Forgets every resource but the given ones, such as those that have been deleted. */
+	synchronized void retain(Collection<ResourceReference<?>> refs)
+		{
+		Set<ResourceReference<?>> keep = new HashSet<ResourceReference<?>>(refs);
+		Iterator<Map.Entry<ResourceReference<?>,Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext())
+			{
+			Map.Entry<ResourceReference<?>,Entry> e = it.next();
+			if (keep.contains(e.getKey())) continue;
+			it.remove();
+			e.getKey().updateSource.removeListener(invalidator);
+			for (String w : e.getValue().words)
+				{
+				Set<ResourceReference<?>> r = postings.get(w);
+				r.remove(e.getKey());
+				if (r.isEmpty()) postings.remove(w);
+				}
+			}
+		}
+
+	/**
+	 * Returns the indexed resources that may contain the given word.
+	 * @param whole Whether the word must be whole, rather than part of a longer word.
+	 */
+	synchronized Set<ResourceReference<?>> find(String word, boolean whole)
+		{
+		word = fold(word);
+		Set<ResourceReference<?>> found = new HashSet<ResourceReference<?>>();
+		if (whole)
+			{
+			Set<ResourceReference<?>> refs = postings.get(word);
+			if (refs != null) found.addAll(refs);
+			return found;
+			}
+		for (Map.Entry<String,Set<ResourceReference<?>>> e : postings.entrySet())
+			if (e.getKey().contains(word)) found.addAll(e.getValue());
+		return found;
+		}
+	}
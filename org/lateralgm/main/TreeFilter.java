@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.main;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeNode;
+
+import org.lateralgm.components.impl.ResNode;
+import org.lateralgm.main.Search.InvisibleTreeModel;
+import org.lateralgm.main.UpdateSource.UpdateEvent;
+import org.lateralgm.main.UpdateSource.UpdateListener;
+
+/**
+ * Shows only the nodes of the resource tree whose names match the filter text, along with the
+ * groups holding them. The lower cased name of each node is kept between runs, and when the
+ * filter text is only made longer, just the nodes that matched before are looked at again.
+ * Nodes are shown and hidden with events for just the rows that changed, so that the tree
+ * keeps its expanded groups and doesn't have to lay itself out again.
+ */
+final class TreeFilter
+	{
+	/** The name each node had when it was last lower cased, and the lower cased name. */
+	private final Map<ResNode,String[]> names = new WeakHashMap<ResNode,String[]>();
+
+	private InvisibleTreeModel lastModel;
+	private ResNode lastRoot;
+	private boolean lastActive;
+	private String lastExpression;
+	private boolean lastMatchCase, lastWholeWord;
+	/** The nodes that matched last time, in tree order. */
+	private List<ResNode> lastMatches = new ArrayList<ResNode>();
+	/** Whether the tree has changed since the last run, so that it must all be looked at. */
+	private boolean changed = true;
+	/** Whether the events being fired are this filter's own. */
+	private boolean firing;
+
+	private final UpdateListener nodeListener = new UpdateListener()
+		{
+			public void updated(UpdateEvent e)
+				{
+				changed = true;
+				}
+		};
+
+	private final TreeModelListener modelListener = new TreeModelListener()
+		{
+			public void treeNodesChanged(TreeModelEvent e)
+				{
+				if (!firing) changed = true;
+				}
+
+			public void treeNodesInserted(TreeModelEvent e)
+				{
+				if (!firing) changed = true;
+				}
+
+			public void treeNodesRemoved(TreeModelEvent e)
+				{
+				if (!firing) changed = true;
+				}
+
+			public void treeStructureChanged(TreeModelEvent e)
+				{
+				if (!firing) changed = true;
+				}
+		};
+
+	private String getLowerName(ResNode node)
+		{
+		String name = node.toString();
+		String[] n = names.get(node);
+		if (n == null || n[0] != name)
+			{
+			n = new String[] { name,name.toLowerCase() };
+			names.put(node,n);
+			}
+		return n[1];
+		}
+
+	private boolean matches(ResNode node, String expression, boolean matchCase, boolean wholeWord)
+		{
+		String name = matchCase ? node.toString() : getLowerName(node);
+		return wholeWord ? name.equals(expression) : name.contains(expression);
+		}
+
+	private void collectMatches(ResNode node, String expression, boolean matchCase,
+			boolean wholeWord, List<ResNode> matches)
+		{
+		Vector<ResNode> children = node.getChildren();
+		if (children == null) return;
+		for (ResNode child : children)
+			{
+			if (matches(child,expression,matchCase,wholeWord)) matches.add(child);
+			collectMatches(child,expression,matchCase,wholeWord,matches);
+			}
+		}
+
+	/**
+	 * Shows the nodes under the given root that match the given expression, and the groups
+	 * holding them, and hides the rest.
+	 * @return The first matching node, or null if there are none.
+	 */
+	ResNode apply(InvisibleTreeModel model, ResNode root, String expression, boolean matchCase,
+			boolean wholeWord)
+		{
+		if (root != lastRoot)
+			{
+			if (lastRoot != null) lastRoot.updateSource.removeListener(nodeListener);
+			root.updateSource.addListener(nodeListener);
+			changed = true;
+			}
+		if (model != lastModel)
+			{
+			if (lastModel != null) lastModel.removeTreeModelListener(modelListener);
+			model.addTreeModelListener(modelListener);
+			}
+		if (!matchCase) expression = expression.toLowerCase();
+
+		List<ResNode> matches = new ArrayList<ResNode>();
+		// A longer expression can only match nodes that the shorter one did
+		if (!changed && root == lastRoot && !wholeWord && !lastWholeWord
+				&& matchCase == lastMatchCase && expression.contains(lastExpression))
+			{
+			for (ResNode node : lastMatches)
+				if (matches(node,expression,matchCase,wholeWord)) matches.add(node);
+			}
+		else
+			collectMatches(root,expression,matchCase,wholeWord,matches);
+
+		Set<TreeNode> shown = new HashSet<TreeNode>();
+		for (ResNode node : matches)
+			{
+			TreeNode n = node;
+			while (n != null && n != root && shown.add(n))
+				n = n.getParent();
+			}
+
+		// Only tell the tree about each row if it is showing what the model did before
+		boolean active = model.isActivatedFilter();
+		boolean notify = active && lastActive && model == lastModel && root == lastRoot;
+		firing = true;
+		try
+			{
+			update(root,shown,notify ? model : null);
+			}
+		finally
+			{
+			firing = false;
+			}
+		if (!notify && (active || lastActive)) LGM.tree.updateUI();
+
+		lastModel = model;
+		lastRoot = root;
+		lastActive = active;
+		lastExpression = expression;
+		lastMatchCase = matchCase;
+		lastWholeWord = wholeWord;
+		lastMatches = matches;
+		changed = false;
+		return matches.isEmpty() ? null : matches.get(0);
+		}
+
+	/**
+	 * Shows the children of the given node that are in the given set and hides the others,
+	 * telling the given model about the rows that changed, if it isn't null.
+	 */
+	private static void update(ResNode parent, Set<TreeNode> shown, InvisibleTreeModel model)
+		{
+		Vector<ResNode> children = parent.getChildren();
+		if (children == null) return;
+
+		List<ResNode> hidden = new ArrayList<ResNode>();
+		List<Integer> hiddenIndices = new ArrayList<Integer>();
+		int index = 0;
+		for (ResNode child : children)
+			{
+			if (!child.isVisible()) continue;
+			if (!shown.contains(child))
+				{
+				hidden.add(child);
+				hiddenIndices.add(index);
+				}
+			index++;
+			}
+		for (ResNode child : hidden)
+			{
+			child.setVisible(false);
+			update(child,shown,null);
+			}
+		if (model != null && !hidden.isEmpty())
+			model.visibleNodesRemoved(parent,toArray(hiddenIndices),hidden.toArray());
+
+		List<ResNode> revealed = new ArrayList<ResNode>();
+		List<Integer> revealedIndices = new ArrayList<Integer>();
+		List<ResNode> kept = new ArrayList<ResNode>();
+		index = 0;
+		for (ResNode child : children)
+			{
+			if (!shown.contains(child)) continue;
+			if (child.isVisible())
+				kept.add(child);
+			else
+				{
+				child.setVisible(true);
+				update(child,shown,null);
+				revealed.add(child);
+				revealedIndices.add(index);
+				}
+			index++;
+			}
+		if (model != null && !revealed.isEmpty())
+			model.visibleNodesInserted(parent,toArray(revealedIndices),revealed.toArray());
+
+		for (ResNode child : kept)
+			update(child,shown,model);
+		}
+
+	private static int[] toArray(List<Integer> list)
+		{
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = list.get(i);
+		return a;
+		}
+	}
@@ -28,7 +28,7 @@ public class UpdateSource
 		weakTraverser = new WeakListenerTraverser();
 		}
 
-	public void addListener(UpdateListener l, boolean weak)
+	public synchronized void addListener(UpdateListener l, boolean weak)
 		{
 		if (weak)
 			{
@@ -48,7 +48,7 @@ public class UpdateSource
 		addListener(l,true);
 		}
 
-	public void removeListener(UpdateListener l)
+	public synchronized void removeListener(UpdateListener l)
 		{
 		if (weakReferences != null)
 			{
@@ -117,6 +117,11 @@ public class UpdateSource
 
 	private class HardListenerTraverser extends SetTraverser<UpdateListener,UpdateEvent>
 		{
+		HardListenerTraverser()
+			{
+			super(UpdateSource.this);
+			}
+
 		@Override
 		protected void visit(UpdateListener l, UpdateEvent e)
 			{
@@ -127,6 +132,11 @@ public class UpdateSource
 	private class WeakListenerTraverser extends
 			SetTraverser<WeakReference<UpdateListener>,UpdateEvent>
 		{
+		WeakListenerTraverser()
+			{
+			super(UpdateSource.this);
+			}
+
 		@Override
 		protected void visit(WeakReference<UpdateListener> r, UpdateEvent e)
 			{
@@ -590,7 +590,7 @@ public final class Util
 		return convertImage(img,BufferedImage.TYPE_BYTE_INDEXED,col);
 		}
 
-	public static void saveImages(ArrayList<BufferedImage> imgs)
+	public static void saveImages(List<BufferedImage> imgs)
 		{
 		if (imgs == null || imgs.size() <= 0)
 			{
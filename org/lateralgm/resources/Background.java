@@ -70,10 +70,11 @@ public class Background extends InstantiableResource<Background,Background.PBack
 		return bi;
 		}
 
+	// The image is only ever replaced, never drawn on, so copies share it until either one is set
 	protected void postCopy(Background dest)
 		{
 		super.postCopy(dest);
-		dest.backgroundImage = Util.cloneImage(backgroundImage);
+		dest.backgroundImage = backgroundImage;
 		}
 
 	@Override
@@ -90,6 +91,7 @@ public class Background extends InstantiableResource<Background,Background.PBack
 
 	public void setBackgroundImage(BufferedImage backgroundImage)
 		{
+		if (backgroundImage != this.backgroundImage) modified();
 		this.backgroundImage = backgroundImage;
 		fireUpdate();
 		}
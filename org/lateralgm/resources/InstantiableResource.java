@@ -39,6 +39,7 @@ public abstract class InstantiableResource<R extends InstantiableResource<R,P>,
 
 	public void setId(int id)
 		{
+		if (id != this.id) modified();
 		this.id = id;
 		fireUpdate();
 		}
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.lateralgm.components.impl.ResNode;
 import org.lateralgm.messages.Messages;
@@ -86,6 +87,8 @@ public abstract class Resource<R extends Resource<R,P>, P extends Enum<P>> imple
 	protected String name = "";
 	public final ResourceReference<R> reference;
 	public final PropertyMap<P> properties = makePropertyMap();
+	/** The stamp of the last change to anything but the properties, or 0 if there was none. */
+	private long lastModified;
 
 	public static interface Viewable
 		{
@@ -111,6 +114,24 @@ public abstract class Resource<R extends Resource<R,P>, P extends Enum<P>> imple
 		reference.updateTrigger.fire();
 		}
 
+	/** Notes that something about this resource which isn't in its properties has changed. */
+	protected void modified()
+		{
+		lastModified = PropertyMap.nextModification();
+		}
+
+	/**
+	 * Returns the stamp of the last change to this resource, as given by
+	 * {@link PropertyMap#nextModification()}. If it is no later than a stamp taken before, the
+	 * resource hasn't changed since, so it needn't be compared with a copy taken back then.
+	 * This covers the name, the properties and whatever else subclasses note with
+	 * {@link #modified()} or add themselves.
+	 */
+	public long getLastModified()
+		{
+		return Math.max(lastModified,properties.getLastModified());
+		}
+
 	public String getName()
 		{
 		return name;
@@ -118,6 +139,7 @@ public abstract class Resource<R extends Resource<R,P>, P extends Enum<P>> imple
 
 	public void setName(String name)
 		{
+		if (!Objects.equals(this.name,name)) modified();
 		this.name = name;
 		fireUpdate();
 		}
@@ -14,20 +14,25 @@ package org.lateralgm.resources;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 
+import org.lateralgm.components.impl.ResNode;
 import org.lateralgm.main.LGM;
 import org.lateralgm.main.UpdateSource;
 import org.lateralgm.main.UpdateSource.UpdateEvent;
 import org.lateralgm.main.UpdateSource.UpdateTrigger;
 import org.lateralgm.resources.sub.BackgroundDef;
+import org.lateralgm.resources.sub.BackgroundDef.PBackgroundDef;
 import org.lateralgm.resources.sub.Instance;
 import org.lateralgm.resources.sub.Instance.PInstance;
 import org.lateralgm.resources.sub.Tile;
+import org.lateralgm.resources.sub.Tile.PTile;
 import org.lateralgm.resources.sub.View;
+import org.lateralgm.resources.sub.View.PView;
 import org.lateralgm.subframes.CodeFrame.CodeHolder;
 import org.lateralgm.util.ActiveArrayList;
 import org.lateralgm.util.PropertyMap;
@@ -49,6 +54,9 @@ public class Room extends InstantiableResource<Room,Room.PRoom> implements CodeH
 	private final UpdateTrigger tileUpdateTrigger = new UpdateTrigger();
 	public final UpdateSource tileUpdateSource = new UpdateSource(this,tileUpdateTrigger);
 
+	private int batchDepth;
+	private boolean instancesUpdated, tilesUpdated;
+
 	public enum PRoom
 		{
 		CAPTION,WIDTH,HEIGHT,SNAP_X,SNAP_Y,ISOMETRIC,SPEED,PERSISTENT,BACKGROUND_COLOR,
@@ -126,30 +134,121 @@ public class Room extends InstantiableResource<Room,Room.PRoom> implements CodeH
 	protected void postCopy(Room dest)
 		{
 		super.postCopy(dest);
+		new Snapshot(this).copyParts(dest);
+		}
+
+	/** Also covers the instances and tiles, the views and the backgrounds. */
+	@Override
+	public long getLastModified()
+		{
+		long m = Math.max(super.getLastModified(),
+				Math.max(instances.getLastModified(),tiles.getLastModified()));
 		for (Instance inst : instances)
+			m = Math.max(m,inst.properties.getLastModified());
+		for (Tile tile : tiles)
+			m = Math.max(m,tile.properties.getLastModified());
+		for (View view : views)
+			m = Math.max(m,view.properties.getLastModified());
+		for (BackgroundDef back : backgroundDefs)
+			m = Math.max(m,back.properties.getLastModified());
+		return m;
+		}
+
+	/**
+	 * Takes a snapshot of this room as it is now. It only holds the property values of the room
+	 * and of its parts, which is far cheaper than a clone with its every instance and tile.
+	 */
+	public Snapshot snapshot()
+		{
+		return new Snapshot(this);
+		}
+
+	/**
+	 * The property values of a room and its parts at some point, to tell whether the room has
+	 * changed since and to build a clone of it as it was only when one is actually needed.
+	 */
+	public static final class Snapshot
+		{
+		private final Room room;
+		private final ResNode node;
+		private final String name;
+		private final int id;
+		private final EnumMap<PRoom,Object> properties;
+		private final List<EnumMap<PInstance,Object>> instances;
+		private final List<EnumMap<PTile,Object>> tiles;
+		private final List<EnumMap<PView,Object>> views;
+		private final List<EnumMap<PBackgroundDef,Object>> backgroundDefs;
+
+		private Snapshot(Room r)
 			{
-			Instance inst2 = dest.addInstance();
-			inst2.properties.putAll(inst.properties);
+			room = r;
+			node = r.node;
+			name = r.getName();
+			id = r.id;
+			properties = new EnumMap<PRoom,Object>(r.properties);
+			instances = new ArrayList<EnumMap<PInstance,Object>>(r.instances.size());
+			for (Instance inst : r.instances)
+				instances.add(new EnumMap<PInstance,Object>(inst.properties));
+			tiles = new ArrayList<EnumMap<PTile,Object>>(r.tiles.size());
+			for (Tile tile : r.tiles)
+				tiles.add(new EnumMap<PTile,Object>(tile.properties));
+			views = new ArrayList<EnumMap<PView,Object>>(r.views.size());
+			for (View view : r.views)
+				views.add(new EnumMap<PView,Object>(view.properties));
+			backgroundDefs = new ArrayList<EnumMap<PBackgroundDef,Object>>(r.backgroundDefs.size());
+			for (BackgroundDef back : r.backgroundDefs)
+				backgroundDefs.add(new EnumMap<PBackgroundDef,Object>(back.properties));
 			}
-		for (Tile tile : tiles)
+
+		/** Whether the given room equals a clone built from this snapshot, parts included. */
+		public boolean matches(Room r)
 			{
-			Tile tile2 = new Tile(this);
-			tile2.properties.putAll(tile.properties);
-			dest.tiles.add(tile2);
+			if (r.reference != room.reference || r.id != id || !r.getName().equals(name)
+					|| !r.properties.equals(properties) || r.instances.size() != instances.size()
+					|| r.tiles.size() != tiles.size()) return false;
+			for (int i = 0; i < instances.size(); i++)
+				if (!r.instances.get(i).properties.equals(instances.get(i))) return false;
+			for (int i = 0; i < tiles.size(); i++)
+				if (!r.tiles.get(i).properties.equals(tiles.get(i))) return false;
+			for (int i = 0; i < views.size(); i++)
+				if (!r.views.get(i).properties.equals(views.get(i))) return false;
+			for (int i = 0; i < backgroundDefs.size(); i++)
+				if (!r.backgroundDefs.get(i).properties.equals(backgroundDefs.get(i))) return false;
+			return true;
 			}
-		int s = views.size();
-		for (int i = 0; i < s; i++)
+
+		/** Builds a clone of the room as it was when this snapshot was taken. */
+		public Room restore()
 			{
-			View view = views.get(i);
-			View view2 = dest.views.get(i);
-			view2.properties.putAll(view.properties);
+			Room dest = room.makeInstance(room.reference);
+			dest.properties.putAll(properties);
+			dest.node = node;
+			dest.setName(name);
+			if (dest.id == -1) dest.id = id;
+			copyParts(dest);
+			return dest;
 			}
-		s = backgroundDefs.size();
-		for (int i = 0; i < s; i++)
+
+		void copyParts(Room dest)
 			{
-			BackgroundDef back = backgroundDefs.get(i);
-			BackgroundDef back2 = dest.backgroundDefs.get(i);
-			back2.properties.putAll(back.properties);
+			try (Batch b = dest.batch())
+				{
+				for (EnumMap<PInstance,Object> inst : instances)
+					{
+					Instance inst2 = dest.addInstance();
+					inst2.properties.putAll(inst);
+					}
+				for (EnumMap<PTile,Object> tile : tiles)
+					{
+					Tile tile2 = new Tile(room);
+					tile2.properties.putAll(tile);
+					dest.tiles.add(tile2);
+					}
+				}
+			for (int i = 0; i < views.size(); i++)
+				dest.views.get(i).properties.putAll(views.get(i));
+			for (int i = 0; i < backgroundDefs.size(); i++)
+				dest.backgroundDefs.get(i).properties.putAll(backgroundDefs.get(i));
 			}
 		}
 
@@ -161,12 +260,67 @@ public class Room extends InstantiableResource<Room,Room.PRoom> implements CodeH
 
 	public void instanceUpdated(UpdateEvent e)
 		{
-		instanceUpdateTrigger.fire(new UpdateEvent(instanceUpdateSource,e));
+		if (batchDepth > 0)
+			instancesUpdated = true;
+		else
+			instanceUpdateTrigger.fire(new UpdateEvent(instanceUpdateSource,e));
 		}
 
 	public void tileUpdated(UpdateEvent e)
 		{
-		tileUpdateTrigger.fire(new UpdateEvent(tileUpdateSource,e));
+		if (batchDepth > 0)
+			tilesUpdated = true;
+		else
+			tileUpdateTrigger.fire(new UpdateEvent(tileUpdateSource,e));
+		}
+
+	/**
+	 * Starts a bulk change to the instances and tiles of this room, such as loading or filling
+	 * it. Until the returned batch is closed, changes to either list and to the pieces in it are
+	 * held back, and closing it fires one update for each instead of one per piece.
+	 * Batches may be nested; only the outermost one fires.
+	 * <pre>
+	 * try (Room.Batch b = room.batch())
+	 * 	{
+	 * 	...
+	 * 	}
+	 * </pre>
+	 */
+	public Batch batch()
+		{
+		return new Batch();
+		}
+
+	public final class Batch implements AutoCloseable
+		{
+		private boolean closed;
+
+		private Batch()
+			{
+			batchDepth++;
+			instances.beginBatch();
+			tiles.beginBatch();
+			}
+
+		@Override
+		public void close()
+			{
+			if (closed) return;
+			closed = true;
+			tiles.endBatch();
+			instances.endBatch();
+			if (--batchDepth > 0) return;
+			if (instancesUpdated)
+				{
+				instancesUpdated = false;
+				instanceUpdateTrigger.fire();
+				}
+			if (tilesUpdated)
+				{
+				tilesUpdated = false;
+				tileUpdateTrigger.fire();
+				}
+			}
 		}
 
 	public interface Piece
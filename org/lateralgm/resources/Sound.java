@@ -10,14 +10,18 @@
 
 package org.lateralgm.resources;
 
+import java.io.IOException;
 import java.util.EnumMap;
 
+import org.lateralgm.file.LazyData;
 import org.lateralgm.file.ProjectFile;
 import org.lateralgm.util.PropertyMap;
 
 public class Sound extends InstantiableResource<Sound,Sound.PSound>
 	{
-	public byte[] data = new byte[0];
+	private byte[] data = new byte[0];
+	/** Where the data is read from until it is replaced, or null when it is held in memory. */
+	private LazyData lazyData;
 
 	public enum SoundKind
 		{
@@ -76,12 +80,37 @@ public class Sound extends InstantiableResource<Sound,Sound.PSound>
 			}
 		}
 
+	/**
+	 * Returns the sound's data, reading it first if it was left in the file it was loaded from.
+	 * The returned array may be shared with copies of this sound and must not be modified.
+	 */
+	public byte[] getData() throws IOException
+		{
+		return lazyData != null ? lazyData.get() : data;
+		}
+
+	public void setData(byte[] data)
+		{
+		// Committing the data that was read back unchanged leaves it where it is
+		if (lazyData != null && lazyData.holds(data)) return;
+		this.data = data;
+		lazyData = null;
+		}
+
+	/** Leaves the data where it is until it is asked for. */
+	public void setData(LazyData data)
+		{
+		this.data = null;
+		lazyData = data;
+		}
+
+	// The data is never modified in place, so copies share it until either one is set again
 	@Override
 	protected void postCopy(Sound dest)
 		{
 		super.postCopy(dest);
-		dest.data = new byte[data.length];
-		System.arraycopy(data,0,dest.data,0,data.length);
+		dest.data = data;
+		dest.lazyData = lazyData;
 		}
 
 	@Override
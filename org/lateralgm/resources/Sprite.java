@@ -12,20 +12,40 @@
 package org.lateralgm.resources;
 
 import java.awt.Color;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import javax.imageio.ImageIO;
 
 import org.lateralgm.file.ProjectFile;
 import org.lateralgm.main.LGM;
+import org.lateralgm.main.Prefs;
 import org.lateralgm.main.Util;
 import org.lateralgm.messages.Messages;
 import org.lateralgm.util.PropertyMap;
@@ -62,6 +82,12 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 			false,MaskShape.RECTANGLE,0,false,false,true,0,0,BBMode.AUTO,0,31,0,31,false,false,false);
 
 	private SoftReference<BufferedImage> imageCache = null;
+	/**
+	 * The union of the crop bounds of all subimages, kept up to date as subimages are added so
+	 * that automatic bounding boxes needn't scan every subimage again, or null if it has to be
+	 * worked out from scratch.
+	 */
+	private Rectangle cropBounds;
 
 	private final SpritePropertyListener spl = new SpritePropertyListener();
 
@@ -125,8 +151,17 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 		switch (mode)
 			{
 			case AUTO:
-				Rectangle r = getOverallBounds(subImages,(Boolean) get(PSprite.TRANSPARENT),
-						(int) get(PSprite.ALPHA_TOLERANCE));
+				if (cropBounds == null)
+					{
+					cropBounds = new Rectangle();
+					addCropBounds(subImages);
+					}
+				Rectangle r = new Rectangle(cropBounds);
+				if (r.width > 0 && r.height > 0)
+					{
+					r.width--;
+					r.height--;
+					}
 				put(PSprite.BB_LEFT,r.x);
 				put(PSprite.BB_RIGHT,r.x + r.width);
 				put(PSprite.BB_TOP,r.y);
@@ -143,6 +178,14 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 			}
 		}
 
+	private void addCropBounds(Collection<? extends BufferedImage> images)
+		{
+		boolean transPixel = get(PSprite.TRANSPARENT);
+		int tolerance = get(PSprite.ALPHA_TOLERANCE);
+		for (BufferedImage bi : images)
+			getCropBounds(bi,cropBounds,transPixel,tolerance);
+		}
+
 	public int getWidth()
 		{
 		return subImages.getWidth();
@@ -175,35 +218,49 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 			getCropBoundsAlpha(img,u,tolerance);
 		}
 
+	/**
+	 * Returns the pixels of an image as ARGB, row by row. Images that already store them that way
+	 * are copied straight from their raster rather than converting every pixel.
+	 */
+	private static int[] getARGB(BufferedImage img)
+		{
+		int width = img.getWidth();
+		int height = img.getHeight();
+		if (img.getType() == BufferedImage.TYPE_INT_ARGB)
+			return (int[]) img.getRaster().getDataElements(0,0,width,height,null);
+		return img.getRGB(0,0,width,height,null,0,width);
+		}
+
 	public static void getCropBoundsAlpha(BufferedImage img, Rectangle u, int tolerance)
 		{
 		int width = img.getWidth();
 		int height = img.getHeight();
+		int[] px = getARGB(img);
 		boolean unz = u.width > 0 && u.height > 0;
 
 		int uy2 = unz ? u.y + u.height - 1 : -1;
 		int y2 = height - 1;
 		y2loop: for (; y2 > uy2; y2--)
 			for (int i = 0; i < width; i++)
-				if (((img.getRGB(i,y2) >> 24) & 0xff) > tolerance) break y2loop;
+				if ((px[y2 * width + i] >>> 24) > tolerance) break y2loop;
 
 		int ux2 = unz ? u.x + u.width - 1 : -1;
 		int x2 = width - 1;
 		x2loop: for (; x2 > ux2; x2--)
 			for (int j = 0; j <= y2; j++)
-				if (((img.getRGB(x2,j) >> 24) & 0xff) > tolerance) break x2loop;
+				if ((px[j * width + x2] >>> 24) > tolerance) break x2loop;
 
 		int uy1 = unz ? u.y : y2;
 		int y1 = 0;
 		y1loop: for (; y1 < uy1; y1++)
 			for (int i = 0; i <= x2; i++)
-				if (((img.getRGB(i,y1) >> 24) & 0xff) > tolerance) break y1loop;
+				if ((px[y1 * width + i] >>> 24) > tolerance) break y1loop;
 
 		int ux1 = unz ? u.x : x2;
 		int x1 = 0;
 		x1loop: for (; x1 < ux1; x1++)
 			for (int j = y1; j <= y2; j++)
-				if (((img.getRGB(x1,j) >> 24) & 0xff) > tolerance) break x1loop;
+				if ((px[j * width + x1] >>> 24) > tolerance) break x1loop;
 
 		u.x = x1;
 		u.y = y1;
@@ -213,34 +270,35 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 
 	public static void getCropBoundsPixel(BufferedImage img, Rectangle u)
 		{
-		int transparent = img.getRGB(0,img.getHeight() - 1);
 		int width = img.getWidth();
 		int height = img.getHeight();
+		int[] px = getARGB(img);
+		int transparent = px[(height - 1) * width];
 		boolean unz = u.width > 0 && u.height > 0;
 
 		int uy2 = unz ? u.y + u.height - 1 : -1;
 		int y2 = height - 1;
 		y2loop: for (; y2 > uy2; y2--)
 			for (int i = 0; i < width; i++)
-				if (img.getRGB(i,y2) != transparent) break y2loop;
+				if (px[y2 * width + i] != transparent) break y2loop;
 
 		int ux2 = unz ? u.x + u.width - 1 : -1;
 		int x2 = width - 1;
 		x2loop: for (; x2 > ux2; x2--)
 			for (int j = 0; j <= y2; j++)
-				if (img.getRGB(x2,j) != transparent) break x2loop;
+				if (px[j * width + x2] != transparent) break x2loop;
 
 		int uy1 = unz ? u.y : y2;
 		int y1 = 0;
 		y1loop: for (; y1 < uy1; y1++)
 			for (int i = 0; i <= x2; i++)
-				if (img.getRGB(i,y1) != transparent) break y1loop;
+				if (px[y1 * width + i] != transparent) break y1loop;
 
 		int ux1 = unz ? u.x : x2;
 		int x1 = 0;
 		x1loop: for (; x1 < ux1; x1++)
 			for (int j = y1; j <= y2; j++)
-				if (img.getRGB(x1,j) != transparent) break x1loop;
+				if (px[j * width + x1] != transparent) break x1loop;
 
 		u.x = x1;
 		u.y = y1;
@@ -263,25 +321,58 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 		return bi;
 		}
 
+	// The editor replaces subimages rather than drawing on them, so copies share them instead
 	@Override
 	protected void postCopy(Sprite dest)
 		{
 		super.postCopy(dest);
-		for (int j = 0; j < subImages.size(); j++)
-			dest.subImages.add(Util.cloneImage(subImages.get(j)));
+		if (subImages.isEmpty()) return;
+		dest.cropBounds = dest.subImages.isEmpty() && cropBounds != null ? new Rectangle(cropBounds)
+				: null;
+		dest.subImages.addShared(subImages);
+		dest.modified();
+		dest.framesUpdated();
 		}
 
+	/** Renames and such keep the crop bounds, which only depend on the frames and transparency. */
 	@Override
 	protected void fireUpdate()
+		{
+		framesUpdated();
+		}
+
+	/** Fires an update for the subimages having changed, which may have removed some. */
+	private void fireFramesChanged()
+		{
+		cropBounds = null;
+		modified();
+		fireUpdate();
+		}
+
+	/** Fires an update for the given subimages having been added, and nothing else changing. */
+	private void fireFramesAdded(Collection<? extends BufferedImage> added)
+		{
+		if (cropBounds != null) addCropBounds(added);
+		modified();
+		framesUpdated();
+		}
+
+	private void framesUpdated()
 		{
 		if (imageCache != null) imageCache.clear();
 		updateBoundingBox();
 		super.fireUpdate();
 		}
 
-	public final class ImageList extends ArrayList<BufferedImage>
+	/**
+	 * The subimages of a sprite. Frames are kept decoded only while they are among the most
+	 * recently used of all sprites, up to {@link Prefs#subimageCacheSize} megabytes; the rest are
+	 * kept deflated and decoded again when asked for. As long as anything still holds a frame
+	 * returned by this list, the same instance is returned for it.
+	 */
+	public final class ImageList extends AbstractList<BufferedImage> implements RandomAccess
 		{
-		private static final long serialVersionUID = 1L;
+		private final ArrayList<Frame> frames = new ArrayList<Frame>();
 
 		private ImageList()
 			{
@@ -296,53 +387,102 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 			return count;
 			}
 
-		/** Returns the size of the subimage in bytes */
+		/** Returns the size of the subimage in bytes, as it is currently held in memory */
 		public long getSize(int index)
 			{
-			return this.get(index).getWidth() * this.get(index).getHeight() * 4;
+			return frames.get(index).getSize();
 			}
 
 		public int getWidth()
 			{
-			if (size() > 0) return get(0).getWidth();
+			if (size() > 0) return frames.get(0).width;
 			return 0;
 			}
 
 		public int getHeight()
 			{
-			if (size() > 0) return get(0).getHeight();
+			if (size() > 0) return frames.get(0).height;
 			return 0;
 			}
 
+		@Override
+		public BufferedImage get(int index)
+			{
+			return frames.get(index).get();
+			}
+
+		@Override
+		public int size()
+			{
+			return frames.size();
+			}
+
+		// Frames that aren't decoded can't be any object still held, so they needn't be decoded
+		@Override
+		public int indexOf(Object o)
+			{
+			for (int i = 0; i < frames.size(); i++)
+				if (frames.get(i).holds(o)) return i;
+			return -1;
+			}
+
+		@Override
+		public int lastIndexOf(Object o)
+			{
+			for (int i = frames.size() - 1; i >= 0; i--)
+				if (frames.get(i).holds(o)) return i;
+			return -1;
+			}
+
+		@Override
+		public boolean contains(Object o)
+			{
+			return indexOf(o) >= 0;
+			}
+
 		@Override
 		public boolean add(BufferedImage e)
 			{
-			super.add(e);
-			fireUpdate();
+			frames.add(new Frame(e));
+			modCount++;
+			fireFramesAdded(Collections.singletonList(e));
 			return true;
 			}
 
 		@Override
 		public void add(int index, BufferedImage element)
 			{
-			super.add(index,element);
-			fireUpdate();
+			frames.add(index,new Frame(element));
+			modCount++;
+			fireFramesAdded(Collections.singletonList(element));
 			}
 
 		@Override
 		public boolean addAll(Collection<? extends BufferedImage> c)
 			{
-			boolean u = super.addAll(c);
-			if (u) fireUpdate();
-			return u;
+			return addAll(size(),c);
 			}
 
 		@Override
 		public boolean addAll(int index, Collection<? extends BufferedImage> c)
 			{
-			boolean u = super.addAll(index,c);
-			if (u) fireUpdate();
-			return u;
+			ArrayList<Frame> added = new ArrayList<Frame>(c.size());
+			for (BufferedImage e : c)
+				added.add(new Frame(e));
+			boolean u = frames.addAll(index,added);
+			if (!u) return false;
+			modCount++;
+			fireFramesAdded(c);
+			return true;
+			}
+
+		/** Appends the frames of the given list, shared with it rather than copied. */
+		private void addShared(ImageList list)
+			{
+			frames.ensureCapacity(frames.size() + list.frames.size());
+			for (Frame f : list.frames)
+				frames.add(f.share());
+			modCount++;
 			}
 
 		public boolean replace(BufferedImage obi, BufferedImage nbi)
@@ -356,54 +496,379 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 		@Override
 		public void clear()
 			{
-			super.clear();
-			fireUpdate();
+			for (Frame f : frames)
+				f.release();
+			frames.clear();
+			modCount++;
+			fireFramesChanged();
 			}
 
 		@Override
 		public BufferedImage remove(int index)
 			{
-			BufferedImage i = super.remove(index);
-			fireUpdate();
+			Frame f = frames.remove(index);
+			BufferedImage i = f.get();
+			f.release();
+			modCount++;
+			fireFramesChanged();
 			return i;
 			}
 
 		@Override
 		public boolean remove(Object o)
 			{
-			boolean u = super.remove(o);
-			if (u) fireUpdate();
-			return u;
+			int i = indexOf(o);
+			if (i < 0) return false;
+			frames.remove(i).release();
+			modCount++;
+			fireFramesChanged();
+			return true;
 			}
 
 		@Override
 		public boolean removeAll(Collection<?> c)
 			{
-			boolean u = super.removeAll(c);
-			if (u) fireUpdate();
-			return u;
+			return batchRemove(c,true);
 			}
 
 		@Override
-		protected void removeRange(int fromIndex, int toIndex)
+		public boolean retainAll(Collection<?> c)
+			{
+			return batchRemove(c,false);
+			}
+
+		private boolean batchRemove(Collection<?> c, boolean remove)
 			{
-			super.removeRange(fromIndex,toIndex);
-			fireUpdate();
+			boolean u = false;
+			for (Iterator<Frame> it = frames.iterator(); it.hasNext();)
+				{
+				Frame f = it.next();
+				boolean found = false;
+				for (Object o : c)
+					if (f.holds(o))
+						{
+						found = true;
+						break;
+						}
+				if (found == remove)
+					{
+					it.remove();
+					f.release();
+					u = true;
+					}
+				}
+			if (!u) return false;
+			modCount++;
+			fireFramesChanged();
+			return true;
 			}
 
 		@Override
-		public boolean retainAll(Collection<?> c)
+		protected void removeRange(int fromIndex, int toIndex)
 			{
-			boolean u = super.retainAll(c);
-			if (u) fireUpdate();
-			return u;
+			List<Frame> range = frames.subList(fromIndex,toIndex);
+			for (Frame f : range)
+				f.release();
+			range.clear();
+			modCount++;
+			fireFramesChanged();
 			}
 
 		@Override
 		public BufferedImage set(int index, BufferedImage element)
 			{
-			BufferedImage i = super.set(index,element);
-			fireUpdate();
+			Frame f = frames.set(index,new Frame(element));
+			BufferedImage i = f.get();
+			f.release();
+			fireFramesChanged();
+			return i;
+			}
+		}
+
+	/**
+	 * A subimage, which is deflated when it falls out of the cache of decoded frames shared by
+	 * all sprites. A frame is deflated again each time it is evicted rather than keeping the
+	 * bytes it was last decoded from, in case it was edited in place. Copies of a sprite share
+	 * its frames, so a frame is only dropped from the cache once no sprite holds it. The cache
+	 * only holds frames weakly, so frames of sprites that are gone, such as those of a closed
+	 * project, leave it along with their images. All state is guarded by the cache.
+	 */
+	private static final class Frame
+		{
+		/** Decoded frames, least recently used first. */
+		private static final LinkedHashMap<Entry,Boolean> decoded = new LinkedHashMap<Entry,Boolean>(
+				16,0.75f,true);
+		/** Entries of frames that were collected while still in the cache. */
+		private static final ReferenceQueue<Frame> collected = new ReferenceQueue<Frame>();
+		private static long decodedSize;
+		/** Deflates the frames evicted on the event dispatch thread, so that it needn't wait. */
+		private static final ExecutorService packer = Executors.newSingleThreadExecutor(
+				new ThreadFactory()
+					{
+						public Thread newThread(Runnable r)
+							{
+							Thread t = new Thread(r,"Subimages"); //$NON-NLS-1$
+							t.setDaemon(true);
+							t.setPriority(Thread.MIN_PRIORITY);
+							return t;
+							}
+					});
+
+		/** A frame's place in the cache, with what it counts toward the size of the cache. */
+		private static final class Entry extends WeakReference<Frame>
+			{
+			final long size;
+
+			Entry(Frame f, long size)
+				{
+				super(f,collected);
+				this.size = size;
+				}
+			}
+
+		final int width, height;
+		private BufferedImage image;
+		/** The frame's place in the cache, or null if it isn't in it. */
+		private Entry entry;
+		/** Whether the frame was evicted and is waiting to be deflated. */
+		private boolean packing;
+		/** What the frame was decoded to before it was evicted, as long as anyone holds it. */
+		private WeakReference<BufferedImage> evicted;
+		private byte[] packed;
+		private boolean alpha;
+		private int type;
+		/** How many image lists hold this frame. */
+		private int owners = 1;
+
+		Frame(BufferedImage image)
+			{
+			// A subimage that failed to load is kept as null, as it always has been
+			width = image == null ? 0 : image.getWidth();
+			height = image == null ? 0 : image.getHeight();
+			if (image == null) return;
+			List<Frame> victims;
+			synchronized (decoded)
+				{
+				victims = admit(image);
+				}
+			pack(victims);
+			}
+
+		BufferedImage get()
+			{
+			BufferedImage i;
+			List<Frame> victims;
+			synchronized (decoded)
+				{
+				if (entry != null)
+					{
+					decoded.get(entry);
+					return image;
+					}
+				// Evicted but not deflated yet
+				i = image;
+				if (i == null)
+					{
+					if (packed == null) return null;
+					i = evicted == null ? null : evicted.get();
+					if (i == null) i = unpack();
+					evicted = null;
+					packed = null;
+					}
+				victims = admit(i);
+				}
+			pack(victims);
+			return i;
+			}
+
+		boolean holds(Object o)
+			{
+			if (o == null) return false;
+			synchronized (decoded)
+				{
+				return image == o || (evicted != null && evicted.get() == o);
+				}
+			}
+
+		long getSize()
+			{
+			synchronized (decoded)
+				{
+				if (image != null) return sizeOf(image);
+				return packed == null ? 0 : packed.length;
+				}
+			}
+
+		/** Notes that one more image list holds this frame, and returns it. */
+		Frame share()
+			{
+			synchronized (decoded)
+				{
+				owners++;
+				return this;
+				}
+			}
+
+		/** Drops the frame from the cache once it is no longer part of any sprite. */
+		void release()
+			{
+			synchronized (decoded)
+				{
+				if (--owners > 0) return;
+				if (entry != null && decoded.remove(entry) != null) decodedSize -= entry.size;
+				entry = null;
+				packing = false;
+				}
+			}
+
+		private static long sizeOf(BufferedImage image)
+			{
+			DataBuffer db = image.getRaster().getDataBuffer();
+			return (long) db.getSize() * db.getNumBanks()
+					* (DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+			}
+
+		/**
+		 * Puts the frame in the cache as decoded to the given image, and takes the least recently
+		 * used frames out of it while it is over its size.
+		 * @return The frames taken out, which have to be passed to {@link #pack(List)} once the
+		 * cache is no longer locked, or null if there are none.
+		 */
+		private List<Frame> admit(BufferedImage i)
+			{
+			Reference<? extends Frame> r;
+			while ((r = collected.poll()) != null)
+				if (decoded.remove(r) != null) decodedSize -= ((Entry) r).size;
+
+			image = i;
+			packing = false;
+			entry = new Entry(this,sizeOf(i));
+			decoded.put(entry,Boolean.TRUE);
+			decodedSize += entry.size;
+			long limit = Prefs.subimageCacheSize * 1024L * 1024L;
+			if (limit <= 0) return null;
+			List<Frame> victims = null;
+			Iterator<Entry> it = decoded.keySet().iterator();
+			while (decodedSize > limit && it.hasNext())
+				{
+				Entry e = it.next();
+				Frame f = e.get();
+				if (f == this) continue;
+				it.remove();
+				decodedSize -= e.size;
+				if (f == null) continue;
+				f.entry = null;
+				f.packing = true;
+				if (victims == null) victims = new ArrayList<Frame>();
+				victims.add(f);
+				}
+			return victims;
+			}
+
+		/**
+		 * Deflates the given evicted frames, on a background thread if this is the event dispatch
+		 * thread. Otherwise, such as while loading, they are deflated right away, so that evicted
+		 * frames can't pile up in memory.
+		 */
+		private static void pack(final List<Frame> frames)
+			{
+			if (frames == null) return;
+			if (!EventQueue.isDispatchThread())
+				{
+				for (Frame f : frames)
+					f.pack();
+				return;
+				}
+			packer.execute(new Runnable()
+				{
+					public void run()
+						{
+						for (Frame f : frames)
+							f.pack();
+						}
+				});
+			}
+
+		private void pack()
+			{
+			BufferedImage i;
+			synchronized (decoded)
+				{
+				if (!packing) return;
+				i = image;
+				}
+			int[] pixels = i.getRGB(0,0,width,height,null,0,width);
+			ByteBuffer buf = ByteBuffer.allocate(pixels.length * 4);
+			buf.asIntBuffer().put(pixels);
+			byte[] p;
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try
+				{
+				deflater.setInput(buf.array());
+				deflater.finish();
+				ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.length / 4 + 64);
+				byte[] chunk = new byte[8192];
+				while (!deflater.finished())
+					out.write(chunk,0,deflater.deflate(chunk));
+				p = out.toByteArray();
+				}
+			finally
+				{
+				deflater.end();
+				}
+			synchronized (decoded)
+				{
+				// Asked for again or released in the meantime
+				if (!packing || image != i) return;
+				packing = false;
+				packed = p;
+				alpha = i.getColorModel().hasAlpha();
+				type = i.getType();
+				evicted = new WeakReference<BufferedImage>(i);
+				image = null;
+				}
+			}
+
+		private BufferedImage unpack()
+			{
+			int[] pixels = new int[width * height];
+			Inflater inflater = new Inflater();
+			try
+				{
+				byte[] raw = new byte[pixels.length * 4];
+				inflater.setInput(packed);
+				int n = 0;
+				while (n < raw.length && !inflater.finished())
+					n += inflater.inflate(raw,n,raw.length - n);
+				ByteBuffer.wrap(raw).asIntBuffer().get(pixels);
+				}
+			catch (DataFormatException e)
+				{
+				// Only ever inflating what was deflated above
+				throw new IllegalStateException(e);
+				}
+			finally
+				{
+				inflater.end();
+				}
+			// Types that need a palette or a custom model come back as plain RGB or ARGB
+			int t;
+			switch (type)
+				{
+				case BufferedImage.TYPE_INT_RGB:
+				case BufferedImage.TYPE_INT_ARGB:
+				case BufferedImage.TYPE_INT_ARGB_PRE:
+				case BufferedImage.TYPE_INT_BGR:
+				case BufferedImage.TYPE_3BYTE_BGR:
+				case BufferedImage.TYPE_4BYTE_ABGR:
+				case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+					t = type;
+					break;
+				default:
+					t = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+				}
+			BufferedImage i = new BufferedImage(width,height,t);
+			i.setRGB(0,0,width,height,pixels,0,width);
 			return i;
 			}
 		}
@@ -431,10 +896,14 @@ public class Sprite extends InstantiableResource<Sprite,Sprite.PSprite> implemen
 			switch (e.key)
 				{
 				case TRANSPARENT:
+					cropBounds = null;
 					fireUpdate();
 					break;
-				case BB_MODE:
 				case ALPHA_TOLERANCE:
+					cropBounds = null;
+					updateBoundingBox();
+					break;
+				case BB_MODE:
 					updateBoundingBox();
 					break;
 				default:
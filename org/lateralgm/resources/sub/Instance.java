@@ -14,7 +14,7 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.EnumMap;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.lateralgm.main.UpdateSource;
 import org.lateralgm.main.UpdateSource.UpdateEvent;
@@ -54,15 +54,28 @@ public class Instance implements Room.Piece,UpdateListener,CodeHolder,
 		{
 		room = r.reference;
 		properties = new PropertyMap<PInstance>(PInstance.class,this,DEFS);
-		properties.put(PInstance.NAME, "inst_" + String.format("%08X", new Random().nextInt()));
-		properties.getUpdateSource(PInstance.OBJECT).addListener(ipl);
-		properties.getUpdateSource(PInstance.NAME).addListener(ipl);
-		properties.getUpdateSource(PInstance.SELECTED).addListener(ipl);
-		properties.getUpdateSource(PInstance.SCALE_X).addListener(ipl);
-		properties.getUpdateSource(PInstance.SCALE_Y).addListener(ipl);
-		properties.getUpdateSource(PInstance.ROTATION).addListener(ipl);
-		properties.getUpdateSource(PInstance.COLOR).addListener(ipl);
-		properties.getUpdateSource(PInstance.ALPHA).addListener(ipl);
+		properties.put(PInstance.NAME,randomName("inst_"));
+		// Listening to each key would give every instance a source per key, which adds up in
+		// large rooms. Those are left to whatever is editing the instance.
+		properties.updateSource.addListener(ipl);
+		}
+
+	/** Returns the given prefix followed by 8 random hex digits. */
+	static String randomName(String prefix)
+		{
+		String hex = Integer.toHexString(ThreadLocalRandom.current().nextInt()).toUpperCase();
+		return prefix + "00000000".substring(hex.length()) + hex;
+		}
+
+	/**
+	 * Returns the default value of the given key instead of the given value if they are equal,
+	 * so that pieces share their many default colors, scales and such rather than each holding
+	 * a copy.
+	 */
+	static <K extends Enum<K>>Object shareDefault(EnumMap<K,Object> defaults, K k, Object v)
+		{
+		Object d = defaults.get(k);
+		return d != null && d != v && d.equals(v) ? d : v;
 		}
 
 	protected void fireUpdate(UpdateEvent e)
@@ -210,7 +223,7 @@ public class Instance implements Room.Piece,UpdateListener,CodeHolder,
 			object = r;
 			if (object != null) object.updateSource.addListener(this);
 			}
-		return v;
+		return shareDefault(DEFS,k,v);
 		}
 
 	private class InstancePropertyListener extends PropertyUpdateListener<PInstance>
@@ -15,7 +15,6 @@ import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.EnumMap;
-import java.util.Random;
 
 import org.lateralgm.file.ProjectFile;
 import org.lateralgm.main.UpdateSource;
@@ -59,9 +58,9 @@ public class Tile implements Room.Piece,UpdateListener,PropertyValidator<Tile.PT
 		{
 		room = r.reference;
 		properties = new PropertyMap<PTile>(PTile.class,this,DEFS);
-		properties.put(PTile.NAME, "tile_" + String.format("%08X", new Random().nextInt()));
-		properties.getUpdateSource(PTile.BACKGROUND).addListener(tpl);
-		properties.getUpdateSource(PTile.SELECTED).addListener(tpl);
+		properties.put(PTile.NAME,Instance.randomName("tile_"));
+		// See Instance for why this doesn't listen to each key
+		properties.updateSource.addListener(tpl);
 		}
 
 	public Tile(Room r, int id)
@@ -243,7 +242,7 @@ public class Tile implements Room.Piece,UpdateListener,PropertyValidator<Tile.PT
 			background = r;
 			if (background != null) background.updateSource.addListener(this);
 			}
-		return v;
+		return Instance.shareDefault(DEFS,k,v);
 		}
 
 	private class TilePropertyListener extends PropertyUpdateListener<PTile>
@@ -65,6 +65,10 @@ public abstract class ResourceFrame<R extends Resource<R,P>, P extends Enum<P>>
 	public R res;
 	/** Backup of res as it was before changes were made */
 	public R resOriginal;
+	/** The stamp of the last change to res when resOriginal was taken */
+	protected long originalModified;
+	/** Whether res differed from resOriginal the last time it was committed to be written */
+	private boolean changedWhenWritten;
 	/** Whether changes were made and reported by the PropertyUpdateListener **/
 	public boolean resChanged;
 	/** The ResNode this frame is linked to */
@@ -166,7 +170,7 @@ public abstract class ResourceFrame<R extends Resource<R,P>, P extends Enum<P>>
 		plf = new PropertyLinkFactory<P>(res.properties,this);
 		this.res = res;
 		this.node = node;
-		resOriginal = res.clone();
+		takeOriginal();
 		setFrameIcon(ResNode.ICON.get(res.getClass()));
 
 		save.setToolTipText(Messages.getString("ResourceFrame.SAVE_TOOLTIP")); //$NON-NLS-1$
@@ -185,7 +189,50 @@ public abstract class ResourceFrame<R extends Resource<R,P>, P extends Enum<P>>
 		//NOTE: Any children that override this should call this.
 		if (frameListener != null && frameListener.resourceChanged()) return true;
 		if (!areResourceFieldsEqual()) return true;
-		return !res.equals(resOriginal);
+		return !isUnmodified() && !isOriginal();
+		}
+
+	/**
+	 * Commits the changes in this frame ahead of the project being written out, and returns
+	 * whether res has to be written. That is when it differs from resOriginal, or when it did
+	 * the last time, since what was written then may hold changes that have been undone since.
+	 */
+	public boolean commitForWrite()
+		{
+		boolean changed = resourceChanged();
+		boolean write = changed || changedWhenWritten;
+		changedWhenWritten = changed;
+		return write;
+		}
+
+	/**
+	 * Whether res is known not to have changed since resOriginal was taken, which is much
+	 * cheaper to tell than comparing the two. If not, they may still turn out to be equal.
+	 */
+	protected boolean isUnmodified()
+		{
+		return res.getLastModified() <= originalModified;
+		}
+
+	/**
+	 * Takes resOriginal from res as it is now. Subclasses whose resources are costly to clone may
+	 * keep something cheaper instead, and only build resOriginal from it in {@link #getOriginal()}.
+	 */
+	protected void takeOriginal()
+		{
+		originalModified = res.getLastModified();
+		resOriginal = res.clone();
+		}
+
+	protected R getOriginal()
+		{
+		return resOriginal;
+		}
+
+	/** Whether res equals resOriginal, which subclasses may tell without building it. */
+	protected boolean isOriginal()
+		{
+		return res.equals(getOriginal());
 		}
 
 	/** Override to check additional fields other than the Resource<> defaults. */
@@ -208,7 +255,7 @@ public abstract class ResourceFrame<R extends Resource<R,P>, P extends Enum<P>>
 		if (commit) {
 			commitChanges();
 		}
-		resOriginal = res.clone();
+		takeOriginal();
 		}
 
 	@Override
@@ -220,7 +267,7 @@ public abstract class ResourceFrame<R extends Resource<R,P>, P extends Enum<P>>
 	public void revertResource()
 		{
 		if (frameListener != null) frameListener.revertResource();
-		resOriginal.updateReference();
+		getOriginal().updateReference();
 		}
 
 	public abstract void commitChanges();
@@ -43,6 +43,7 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyVetoException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -133,11 +134,13 @@ import org.lateralgm.ui.swing.propertylink.PropertyLinkFactory;
 import org.lateralgm.ui.swing.util.ArrayListModel;
 import org.lateralgm.util.ActiveArrayList;
 import org.lateralgm.util.AddPieceInstance;
+import org.lateralgm.util.AddPieceInstances;
 import org.lateralgm.util.ModifyPieceInstance;
 import org.lateralgm.util.PropertyLink;
 import org.lateralgm.util.PropertyMap.PropertyUpdateEvent;
 import org.lateralgm.util.PropertyMap.PropertyUpdateListener;
 import org.lateralgm.util.RemovePieceInstance;
+import org.lateralgm.util.RemovePieceInstances;
 import org.lateralgm.util.ShiftPieceInstances;
 import org.lateralgm.util.ModifyPieceInstance.Type;
 
@@ -147,6 +150,11 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 	private static final long serialVersionUID = 1L;
 	private static final ImageIcon CODE_ICON = LGM.getIconForKey("RoomFrame.CODE"); //$NON-NLS-1$
 
+	/**
+	 * Taken in place of resOriginal, which is only built from it when needed. Set while the
+	 * superclass constructs, so it must not have an initializer.
+	 */
+	private Room.Snapshot original;
 	private final RoomEditor editor;
 	private final EditorScrollPane editorPane;
 	public final JTabbedPane tabs;
@@ -2036,10 +2044,24 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 		}
 
 	@Override
-	protected boolean areResourceFieldsEqual()
+	protected void takeOriginal()
+		{
+		originalModified = res.getLastModified();
+		original = res.snapshot();
+		resOriginal = null;
+		}
+
+	@Override
+	protected Room getOriginal()
+		{
+		if (resOriginal == null) resOriginal = original.restore();
+		return resOriginal;
+		}
+
+	@Override
+	protected boolean isOriginal()
 		{
-		return (res.backgroundDefs.equals(resOriginal.backgroundDefs)
-				&& res.views.equals(resOriginal.views) && res.instances.equals(resOriginal.instances) && res.tiles.equals(resOriginal.tiles));
+		return original.matches(res);
 		}
 
 	@Override
@@ -2115,30 +2137,12 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 			else
 				{
 
+				// Remove all pieces, recording it for the undo
 				if (tilesTabIsSelected)
-					{
-					// Record the effect of removing all tiles for the undo
-					for (int i = currentRoom.tiles.size() - 1; i >= 0; i--)
-						{
-						UndoableEdit edit = new RemovePieceInstance(this,(Piece) currentRoom.tiles.get(i),i);
-						compoundEdit.addEdit(edit);
-						}
-
-					// Remove all tiles
-					currentRoom.tiles.clear();
-					}
+					removePieces(currentRoom.tiles,allIndices(currentRoom.tiles.size()),compoundEdit);
 				else
-					{
-					// Record the effect of removing all instances for the undo
-					for (int i = currentRoom.instances.size() - 1; i >= 0; i--)
-						{
-						UndoableEdit edit = new RemovePieceInstance(this,(Piece) currentRoom.instances.get(i),i);
-						compoundEdit.addEdit(edit);
-						}
-
-					// Remove all instances
-					currentRoom.instances.clear();
-					}
+					removePieces(currentRoom.instances,allIndices(currentRoom.instances.size()),
+							compoundEdit);
 
 				}
 
@@ -2150,30 +2154,47 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 
 		}
 
+	private static int[] allIndices(int size)
+		{
+		int[] indices = new int[size];
+		for (int i = 0; i < size; i++)
+			indices[i] = i;
+		return indices;
+		}
+
+	/**
+	 * Removes the pieces at the given indices of the given list, which must be ascending, in one
+	 * pass, and records it in the given edit for the undo.
+	 */
+	private <P extends Piece>void removePieces(ActiveArrayList<P> list, int[] indices,
+			CompoundEdit compoundEdit)
+		{
+		if (indices.length == 0) return;
+		RemovePieceInstances<P> edit = new RemovePieceInstances<P>(this,list,indices);
+		compoundEdit.addEdit(edit);
+		edit.apply();
+		}
+
 	// Delete all instances for a given selection
 	public void deleteInstancesInSelection(Rectangle selection, CompoundEdit compoundEdit)
 		{
 		Room currentRoom = editor.getRoom();
 		Point instancePosition;
+		int[] indices = new int[currentRoom.instances.size()];
+		int count = 0;
 
-		// Remove each instance in the selection
-		for (int i = currentRoom.instances.size() - 1; i >= 0; i--)
+		// Find each instance in the selection
+		for (int i = 0; i < currentRoom.instances.size(); i++)
 			{
 			instancePosition = currentRoom.instances.get(i).getPosition();
 
 			// If the instance is in the selected region
 			if (instancePosition.x >= selection.x && instancePosition.x < (selection.x + selection.width)
 					&& instancePosition.y >= selection.y
-					&& instancePosition.y < (selection.y + selection.height))
-				{
-				// Record the effect of removing an instance for the undo
-				UndoableEdit edit = new RemovePieceInstance(this,(Piece) currentRoom.instances.get(i),i);
-				compoundEdit.addEdit(edit);
-
-				currentRoom.instances.remove(i);
-				}
+					&& instancePosition.y < (selection.y + selection.height)) indices[count++] = i;
 			}
 
+		removePieces(currentRoom.instances,Arrays.copyOf(indices,count),compoundEdit);
 		}
 
 	// Delete all tiles for a given selection
@@ -2185,9 +2206,11 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 		Integer depth = (Integer) tileLayer.getSelectedItem();
 
 		Point tilePosition;
+		int[] indices = new int[currentRoom.tiles.size()];
+		int count = 0;
 
-		// Remove each tile with the selected layer
-		for (int i = currentRoom.tiles.size() - 1; i >= 0; i--)
+		// Find each tile in the selection
+		for (int i = 0; i < currentRoom.tiles.size(); i++)
 			{
 			tilePosition = currentRoom.tiles.get(i).getPosition();
 
@@ -2199,15 +2222,11 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 				if (!tEditOtherLayers.isSelected() && currentRoom.tiles.get(i).getDepth() != depth)
 					continue;
 
-				// Record the effect of removing a tile for the undo
-				UndoableEdit edit = new RemovePieceInstance(this,(Piece) currentRoom.tiles.get(i),i);
-				compoundEdit.addEdit(edit);
-
-				currentRoom.tiles.remove(i);
+				indices[count++] = i;
 				}
-
 			}
 
+		removePieces(currentRoom.tiles,Arrays.copyOf(indices,count),compoundEdit);
 		}
 
 	@Override
@@ -2300,48 +2319,52 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 
 			int numberOfColumns = editor.selection.width / cellDimension.width;
 			int numberOfRows = editor.selection.height / cellDimension.height;
+			int firstInstance = currentRoom.instances.size();
+			int firstTile = currentRoom.tiles.size();
 
 			// Browse each cell of the selected region
-			for (int i = 0; i < numberOfColumns; i++)
-				for (int j = 0; j < numberOfRows; j++)
-					{
-					// Position of the current piece
-					Point newPosition = new Point(selection.x + (cellDimension.width * i),selection.y
-							+ (cellDimension.height * j));
-
-					// If object's tab is selected, add a new object
-					if (objectsTabIsSelected)
+			// Update the editor and lists once for the whole region rather than once per piece
+			try (Room.Batch batch = currentRoom.batch())
+				{
+				for (int i = 0; i < numberOfColumns; i++)
+					for (int j = 0; j < numberOfRows; j++)
 						{
-						Instance newInstance = res.addInstance();
-						newInstance.properties.put(PInstance.OBJECT,oNew.getSelected());
-						newInstance.setPosition(newPosition);
-
-						// Record the effect of adding a new instance for the undo
-						UndoableEdit edit = new AddPieceInstance(this,newInstance,
-								currentRoom.instances.size() - 1);
-						compoundEdit.addEdit(edit);
-						}
+						// Position of the current piece
+						Point newPosition = new Point(selection.x + (cellDimension.width * i),selection.y
+								+ (cellDimension.height * j));
 
-					// If the tile's tab is selected, add a new tile
-					if (tilesTabIsSelected)
-						{
-						ResourceReference<Background> bkg = taSource.getSelected();
+						// If object's tab is selected, add a new object
+						if (objectsTabIsSelected)
+							{
+							Instance newInstance = res.addInstance();
+							newInstance.properties.put(PInstance.OBJECT,oNew.getSelected());
+							newInstance.setPosition(newPosition);
+							}
 
-						Tile newTile = new Tile(currentRoom,LGM.currentFile);
-						newTile.properties.put(PTile.BACKGROUND,bkg);
-						newTile.setBackgroundPosition(new Point(tSelect.tx,tSelect.ty));
-						newTile.setPosition(newPosition);
-						newTile.setSize(tileDimension);
-						newTile.setDepth((Integer) tileLayer.getSelectedItem());
+						// If the tile's tab is selected, add a new tile
+						if (tilesTabIsSelected)
+							{
+							ResourceReference<Background> bkg = taSource.getSelected();
 
-						currentRoom.tiles.add(newTile);
+							Tile newTile = new Tile(currentRoom,LGM.currentFile);
+							newTile.properties.put(PTile.BACKGROUND,bkg);
+							newTile.setBackgroundPosition(new Point(tSelect.tx,tSelect.ty));
+							newTile.setPosition(newPosition);
+							newTile.setSize(tileDimension);
+							newTile.setDepth((Integer) tileLayer.getSelectedItem());
+
+							currentRoom.tiles.add(newTile);
+							}
 
-						// Record the effect of adding a new tile for the undo
-						UndoableEdit edit = new AddPieceInstance(this,newTile,currentRoom.tiles.size() - 1);
-						compoundEdit.addEdit(edit);
 						}
+				}
 
-					}
+			// Record the effect of adding the new pieces for the undo
+			if (objectsTabIsSelected)
+				compoundEdit.addEdit(new AddPieceInstances<Instance>(this,currentRoom.instances,
+						firstInstance));
+			if (tilesTabIsSelected)
+				compoundEdit.addEdit(new AddPieceInstances<Tile>(this,currentRoom.tiles,firstTile));
 
 			// Save the action for the undo
 			compoundEdit.end();
@@ -2399,17 +2422,11 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 				CompoundEdit compoundEdit = new CompoundEdit();
 
 				// Remove each tile with the selected layer
-				for (int i = currentRoom.tiles.size() - 1; i >= 0; i--)
-					{
-					if (currentRoom.tiles.get(i).getDepth() == depth)
-						{
-						// Record the effect of removing a tile for the undo
-						UndoableEdit edit = new RemovePieceInstance(this,(Piece) currentRoom.tiles.get(i),i);
-						compoundEdit.addEdit(edit);
-
-						currentRoom.tiles.remove(i);
-						}
-					}
+				int[] indices = new int[currentRoom.tiles.size()];
+				int count = 0;
+				for (int i = 0; i < currentRoom.tiles.size(); i++)
+					if (currentRoom.tiles.get(i).getDepth() == depth) indices[count++] = i;
+				removePieces(currentRoom.tiles,Arrays.copyOf(indices,count),compoundEdit);
 
 				// Save the action for the undo
 				compoundEdit.end();
@@ -2449,12 +2466,15 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 				//CompoundEdit compoundEdit = new CompoundEdit();
 
 				// Update each tile with the selected layer
-				for (int i = currentRoom.tiles.size() - 1; i >= 0; i--)
+				try (Room.Batch batch = currentRoom.batch())
 					{
-					final Tile tile = currentRoom.tiles.get(i);
-					if (tile.getDepth() == depth)
+					for (int i = currentRoom.tiles.size() - 1; i >= 0; i--)
 						{
-						tile.setDepth(newDepth);
+						final Tile tile = currentRoom.tiles.get(i);
+						if (tile.getDepth() == depth)
+							{
+							tile.setDepth(newDepth);
+							}
 						}
 					}
 
@@ -2585,39 +2605,10 @@ public class RoomFrame extends InstantiableResourceFrame<Room,PRoom> implements
 				// If there is a selected piece, deselect it
 				if (selectedPiece != null) selectedPiece.setSelected(false);
 
-				// If the tiles tab is selected, shift the tiles
-				if (tilesTabIsSelected)
-					{
-
-					for (Tile tile : currentRoom.tiles)
-						{
-						// Select the instance in the list, otherwise it is sometimes not correctly selected
-						tList.setSelectedValue(tile,false);
-
-						Point newPosition = new Point(tile.getPosition().x + horizontalShift,
-								tile.getPosition().y + verticalShift);
-						tile.setPosition(newPosition);
-						}
-
-					}
-				else
-					// Shift the objects
-					{
-
-					for (Instance instance : currentRoom.instances)
-						{
-						// Select the instance in the list, otherwise it is sometimes not correctly selected
-						oList.setSelectedValue(instance,false);
-
-						Point newPosition = new Point(instance.getPosition().x + horizontalShift,
-								instance.getPosition().y + verticalShift);
-						instance.setPosition(newPosition);
-						}
-					}
-
-				// Record the effect of shifting instances for the undo
-				UndoableEdit edit = new ShiftPieceInstances(this,tilesTabIsSelected,horizontalShift,
-						verticalShift);
+				// Shift the tiles or the objects, and record it for the undo
+				ShiftPieceInstances edit = new ShiftPieceInstances(this,tilesTabIsSelected,
+						horizontalShift,verticalShift);
+				edit.apply();
 				// notify the listeners
 				undoSupport.postEdit(edit);
 
@@ -376,7 +376,14 @@ public class SoundFrame extends InstantiableResourceFrame<Sound,PSound>
 
 		soundPlayer = new JavaSoundPlayer();
 		updatePositionLabel();
-		data = res.data;
+		try
+			{
+			data = res.getData();
+			}
+		catch (IOException e)
+			{
+			LGM.showDefaultExceptionHandler(e); // << reportable I/O issue
+			}
 		loadSound();
 
 		pack();
@@ -707,7 +714,8 @@ public class SoundFrame extends InstantiableResourceFrame<Sound,PSound>
 	public void commitChanges()
 		{
 		res.setName(name.getText());
-		res.data = data;
+		// Unless replaced, the data is left where it is and may not even have been read
+		if (modified) res.setData(data);
 		}
 
 	public void updateResource(boolean commit)
@@ -869,10 +877,7 @@ public class SoundFrame extends InstantiableResourceFrame<Sound,PSound>
 		if (!fileName.isEmpty()) fileLabel.setToolTipText(fileName);
 
 		long length = 0;
-		if (res.data != null && res.data.length != 0)
-			length = res.data.length;
-		else if (data != null)
-			length = data.length;
+		if (data != null) length = data.length;
 
 		String sizeString = Util.formatDataSize(length);
 		memoryLabel.setText(Messages.format("SoundFrame.MEMORY",sizeString)); //$NON-NLS-1$
@@ -8,15 +8,22 @@
 
 package org.lateralgm.ui.swing.visuals;
 
+import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
 import org.lateralgm.util.BinPlane;
 import org.lateralgm.util.BinPlane.Candidate;
-import org.lateralgm.util.BinPlane.CandidateBin;
+import org.lateralgm.util.BinPlane.CandidateIterator;
 import org.lateralgm.util.BinPlane.Edge;
 
 public class BinVisual extends AbstractVisual implements VisualContainer,BoundedVisual
@@ -180,27 +187,44 @@ public class BinVisual extends AbstractVisual implements VisualContainer,Bounded
 		return new BinPlane.CandidateDepthDataIterator<V>(binPlane.intersect(r,true),v,depth);
 		}
 
+	/**
+	 * Paints each visual in the clip once, deepest first. The visuals share one graphics
+	 * context, which is moved and clipped to each in turn; its transform, clip, composite,
+	 * colour, paint mode and interpolation are put back before each, and any other state a
+	 * visual changes it must restore itself.
+	 */
 	public void paint(Graphics g)
 		{
 		Rectangle clip = g.getClipBounds();
-		Iterator<CandidateBin> cbi = clip == null ? binPlane.all(false)
-				: binPlane.intersect(clip,false);
+		Iterator<Candidate> ci = new CandidateIterator(clip == null ? binPlane.all(true)
+				: binPlane.intersect(clip,true));
+		ArrayList<Candidate> visible = new ArrayList<Candidate>();
+		while (ci.hasNext())
+			visible.add(ci.next());
+		if (visible.isEmpty()) return;
+		Collections.sort(visible);
+
+		Graphics2D g2 = (Graphics2D) g.create();
+		AffineTransform at = g2.getTransform();
+		Composite composite = g2.getComposite();
+		Color color = g2.getColor();
+		Object interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
 		Rectangle b = null;
-		while (cbi.hasNext())
+		for (Candidate c : visible)
 			{
-			CandidateBin cb = cbi.next();
-			g.clipRect(cb.x,cb.y,cb.w,cb.h);
-			while (cb.iterator.hasNext())
-				{
-				Candidate c = cb.iterator.next();
-				Visual v = (Visual) c.data;
-				b = c.getBounds(b);
-				Graphics g2 = g.create(b.x,b.y,b.width,b.height);
-				v.paint(g2);
-				g2.dispose();
-				}
-			g.setClip(clip);
+			b = c.getBounds(b);
+			g2.setTransform(at);
+			g2.setClip(clip);
+			g2.clipRect(b.x,b.y,b.width,b.height);
+			g2.translate(b.x,b.y);
+			g2.setComposite(composite);
+			g2.setPaintMode();
+			g2.setColor(color);
+			if (interpolation != null)
+				g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,interpolation);
+			((Visual) c.data).paint(g2);
 			}
+		g2.dispose();
 		}
 
 	public void updateBounds()
@@ -16,26 +16,24 @@ import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
-import java.awt.Toolkit;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.RGBImageFilter;
 import java.awt.image.RasterFormatException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.ImageIcon;
 import javax.swing.SwingUtilities;
@@ -74,6 +72,14 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			: new BufferedImage(EMPTY_SPRITE.getIconWidth(),EMPTY_SPRITE.getIconHeight(),
 					BufferedImage.TYPE_INT_ARGB);
 
+	/** The size of the bins pieces are kept in, which is also the size of the tile chunks. */
+	private static final int BIN_SHIFT = 7;
+	/** The most pixels of tile chunk images each room editor keeps. */
+	private static final int MAX_CHUNK_PIXELS = 1 << 23;
+	/** How large a tiled background is repeated to before it is drawn. */
+	private static final int BACKGROUND_BLOCK = 256;
+	private static final int MAX_BLOCK_PIXELS = 1 << 22;
+
 	private final BinVisual binVisual;
 	private final GridVisual gridVisual;
 	public final Room room;
@@ -86,6 +92,15 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 	private final BgDefPropertyListener bdpl = new BgDefPropertyListener();
 	private final ViewPropertyListener viewPropertyListener = new ViewPropertyListener();
 
+	/** The tile chunks by depth and bin. */
+	private final Map<Long,TileChunk> tileChunks = new HashMap<Long,TileChunk>();
+	/** The rendered images of tile chunks, least recently painted first. */
+	private final LinkedHashMap<TileChunk,BufferedImage> chunkImages = new LinkedHashMap<TileChunk,
+			BufferedImage>(16,0.75f,true);
+	private long chunkPixels;
+	private final Map<BackgroundDef,BackgroundBlock> backgroundBlocks = new IdentityHashMap<
+			BackgroundDef,BackgroundBlock>();
+
 	// Contains the region selected by the user
 	private Rectangle selection = null;
 	// The position of the mouse cursor
@@ -117,7 +132,8 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 		super(vc);
 		room = r;
 		show = EnumSet.copyOf(s);
-		binVisual = new BinVisual(vc,128,(Integer) r.get(PRoom.WIDTH),(Integer) r.get(PRoom.HEIGHT));
+		binVisual = new BinVisual(vc,1 << BIN_SHIFT,(Integer) r.get(PRoom.WIDTH),
+				(Integer) r.get(PRoom.HEIGHT));
 		gridVisual = new GridVisual((Boolean) r.get(PRoom.ISOMETRIC),(Integer) r.get(PRoom.SNAP_X),
 				(Integer) r.get(PRoom.SNAP_Y));
 		r.properties.updateSource.addListener(rpl);
@@ -244,21 +260,14 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 					g3.rotate(Math.toRadians(-rotation),newPosition.x + offsetx,newPosition.y + offsety);
 				g3.scale(scale.getX(),scale.getY());
 
-				Image newImage;
+				BufferedImage newImage;
 				Color selectedColor = instance.getAWTColor();
 
 				// If a color has been selected, apply color blending
 				if (!Color.WHITE.equals(selectedColor))
-					{
-					ImageFilter filter = new ColorFilter(selectedColor);
-					FilteredImageSource filteredSrc = new FilteredImageSource(instanceImage.getSource(),
-							filter);
-					newImage = Toolkit.getDefaultToolkit().createImage(filteredSrc);
-					}
+					newImage = TINTS.get(sprite,instanceImage,selectedColor);
 				else
-					{
 					newImage = instanceImage;
-					}
 
 				// If instance's alpha value is lower than the default one, apply alpha
 				if (alpha > 0 && alpha < ac.getAlpha() * 255)
@@ -621,7 +630,7 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 		return intersect(r,Piece.class);
 		}
 
-	private static void paintBackground(Graphics g, BackgroundDef bd, int width, int height)
+	private void paintBackground(Graphics g, BackgroundDef bd, int width, int height)
 		{
 		Rectangle c = g.getClipBounds();
 		ResourceReference<Background> rb = bd.properties.get(PBackgroundDef.BACKGROUND);
@@ -636,6 +645,13 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 		boolean tileVert = bd.properties.get(PBackgroundDef.TILE_VERT);
 		int x = bd.properties.get(PBackgroundDef.X);
 		int y = bd.properties.get(PBackgroundDef.Y);
+		BufferedImage block = getBackgroundBlock(bd,bi,w,h,tileHoriz,tileVert);
+		if (block != null)
+			{
+			bi = block;
+			w = block.getWidth();
+			h = block.getHeight();
+			}
 		if (tileHoriz || tileVert)
 			{
 			int ncol = 1;
@@ -658,6 +674,196 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			g.drawImage(bi,x,y,w,h,null);
 		}
 
+	/**
+	 * Returns the given background image drawn at the given size, and repeated in each direction
+	 * it is tiled in until it is at least {@link #BACKGROUND_BLOCK} across, so that a tiled
+	 * background takes a few large draws rather than many small ones. The block is kept until
+	 * any of these change. Returns null if the image can be drawn as it is, or if the block
+	 * would be too large to keep.
+	 */
+	private BufferedImage getBackgroundBlock(BackgroundDef bd, BufferedImage bi, int w, int h,
+			boolean tileHoriz, boolean tileVert)
+		{
+		BackgroundBlock b = backgroundBlocks.get(bd);
+		if (b != null && b.source == bi && b.width == w && b.height == h && b.tileHoriz == tileHoriz
+				&& b.tileVert == tileVert) return b.image;
+		backgroundBlocks.remove(bd);
+		if (w <= 0 || h <= 0) return null;
+		int nx = tileHoriz ? (BACKGROUND_BLOCK + w - 1) / w : 1;
+		int ny = tileVert ? (BACKGROUND_BLOCK + h - 1) / h : 1;
+		if (nx == 1 && ny == 1 && w == bi.getWidth() && h == bi.getHeight()) return null;
+		if ((long) w * nx * h * ny > MAX_BLOCK_PIXELS) return null;
+		BufferedImage image = new BufferedImage(w * nx,h * ny,BufferedImage.TYPE_INT_ARGB);
+		Graphics g = image.getGraphics();
+		for (int row = 0; row < ny; row++)
+			for (int col = 0; col < nx; col++)
+				g.drawImage(bi,w * col,h * row,w,h,null);
+		g.dispose();
+		backgroundBlocks.put(bd,new BackgroundBlock(bi,w,h,tileHoriz,tileVert,image));
+		return image;
+		}
+
+	private static final class BackgroundBlock
+		{
+		final BufferedImage source;
+		final int width, height;
+		final boolean tileHoriz, tileVert;
+		final BufferedImage image;
+
+		BackgroundBlock(BufferedImage source, int width, int height, boolean tileHoriz,
+				boolean tileVert, BufferedImage image)
+			{
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.tileHoriz = tileHoriz;
+			this.tileVert = tileVert;
+			this.image = image;
+			}
+		}
+
+	/** Returns the tiles drawn in the layer of the given depth that cover the given area. */
+	private List<TileVisual> getLayerTiles(int depth, Rectangle area)
+		{
+		List<TileVisual> l = new ArrayList<TileVisual>();
+		Iterator<TileVisual> it = binVisual.intersect(area,TileVisual.class,depth);
+		while (it.hasNext())
+			{
+			TileVisual t = it.next();
+			if (t.layerBounds != null) l.add(t);
+			}
+		return l;
+		}
+
+	/**
+	 * Brings the tile chunks of the given depth over the given area up to date with the tiles
+	 * under them, adding and removing chunks as needed and dropping their images.
+	 */
+	private void refreshLayer(int depth, Rectangle r)
+		{
+		if (r.isEmpty()) return;
+		int x0 = r.x >> BIN_SHIFT;
+		int x1 = r.x + r.width - 1 >> BIN_SHIFT;
+		int y0 = r.y >> BIN_SHIFT;
+		int y1 = r.y + r.height - 1 >> BIN_SHIFT;
+		for (int by = y0; by <= y1; by++)
+			for (int bx = x0; bx <= x1; bx++)
+				{
+				Rectangle area = new Rectangle(bx << BIN_SHIFT,by << BIN_SHIFT,1 << BIN_SHIFT,
+						1 << BIN_SHIFT);
+				Long key = (long) depth << 32 | (bx & 0xFFFF | by << 16) & 0xFFFFFFFFL;
+				Rectangle fit = null;
+				for (TileVisual t : getLayerTiles(depth,area))
+					{
+					Rectangle tb = t.layerBounds.intersection(area);
+					if (fit == null)
+						fit = tb;
+					else
+						fit.add(tb);
+					}
+				TileChunk c = tileChunks.get(key);
+				if (fit == null)
+					{
+					if (c == null) continue;
+					tileChunks.remove(key);
+					c.flush();
+					c.remove();
+					continue;
+					}
+				if (c == null)
+					{
+					c = new TileChunk(depth,area);
+					tileChunks.put(key,c);
+					}
+				c.fit(fit);
+				}
+		}
+
+	/**
+	 * The unselected tiles of one depth within one bin, drawn from a single image. The image is
+	 * rendered at the current zoom when the chunk is first painted and kept until one of its
+	 * tiles changes, so scrolling over tiles only copies these images.
+	 */
+	private class TileChunk extends VisualBox
+		{
+		private final int depth;
+		/** The bin this chunk covers. */
+		private final Rectangle area;
+		/** The part of the bin its tiles cover. */
+		private final Rectangle bounds = new Rectangle();
+		private double imageScale;
+
+		public TileChunk(int depth, Rectangle area)
+			{
+			super(binVisual);
+			this.depth = depth;
+			this.area = area;
+			binVisual.setDepth(this,depth);
+			}
+
+		void fit(Rectangle b)
+			{
+			flush();
+			bounds.setBounds(b);
+			setBounds(b);
+			}
+
+		void flush()
+			{
+			BufferedImage bi = chunkImages.remove(this);
+			if (bi != null) chunkPixels -= bi.getWidth() * bi.getHeight();
+			}
+
+		private BufferedImage render(double scale)
+			{
+			int w = Math.max(1,(int) Math.ceil(bounds.width * scale));
+			int h = Math.max(1,(int) Math.ceil(bounds.height * scale));
+			BufferedImage bi = new BufferedImage(w,h,BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			if (scale < 1)
+				{
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+						RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.scale((double) w / bounds.width,(double) h / bounds.height);
+				}
+			g.translate(-bounds.x,-bounds.y);
+			for (TileVisual t : getLayerTiles(depth,area))
+				{
+				Rectangle tb = t.layerBounds;
+				int tw = Math.min(tb.width,t.image.getWidth());
+				int th = Math.min(tb.height,t.image.getHeight());
+				g.drawImage(t.image,tb.x,tb.y,tb.x + tw,tb.y + th,0,0,tw,th,null);
+				}
+			g.dispose();
+			return bi;
+			}
+
+		public void paint(Graphics g)
+			{
+			if (!show.contains(Show.TILES)) return;
+			if (visibleLayer != null && depth != visibleLayer) return;
+			// Zooming in only needs the image made larger, as tiles themselves would be
+			double scale = Math.min(1.0,Math.abs(((Graphics2D) g).getTransform().getScaleX()));
+			BufferedImage bi = chunkImages.get(this);
+			if (bi == null || scale != imageScale)
+				{
+				flush();
+				bi = render(scale);
+				imageScale = scale;
+				chunkImages.put(this,bi);
+				chunkPixels += bi.getWidth() * bi.getHeight();
+				Iterator<BufferedImage> it = chunkImages.values().iterator();
+				while (chunkPixels > MAX_CHUNK_PIXELS && chunkImages.size() > 1)
+					{
+					BufferedImage old = it.next();
+					chunkPixels -= old.getWidth() * old.getHeight();
+					it.remove();
+					}
+				}
+			g.drawImage(bi,0,0,bounds.width,bounds.height,null);
+			}
+		}
+
 	private abstract class PieceVisual<P extends Piece> extends VisualBox
 		{
 		protected final ResourceUpdateListener rul = new ResourceUpdateListener();
@@ -706,43 +912,103 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			}
 		}
 
-	// Apply a color filter to an image
-	class ColorFilter extends RGBImageFilter
+	/**
+	 * Instance images blended with a colour, shared by every room editor so that each blend is
+	 * only worked out once rather than on every repaint. The least recently used are dropped
+	 * past {@link #MAX_PIXELS}, and all the blends of a sprite are dropped when it changes.
+	 */
+	private static final class TintCache implements UpdateListener
 		{
-		// The RGB components of the new color
-		byte newColorRed;
-		byte newColorGreen;
-		byte newColorBlue;
+		private static final int MAX_PIXELS = 1 << 24;
+
+		private final LinkedHashMap<TintKey,BufferedImage> tints;
+		private long pixels;
 
-		public ColorFilter(Color color)
+		TintCache()
 			{
-			newColorRed = (byte) color.getRed();
-			newColorGreen = (byte) color.getGreen();
-			newColorBlue = (byte) color.getBlue();
+			tints = new LinkedHashMap<TintKey,BufferedImage>(16,0.75f,true);
 			}
 
-		@Override
-		public int filterRGB(int x, int y, int rgb)
+		/**
+		 * Returns the given image of the given sprite with the colour applied: each
+		 * channel is masked with the colour's, keeping the alpha as it is.
+		 */
+		public synchronized BufferedImage get(ResourceReference<Sprite> sprite, BufferedImage image,
+				Color color)
+			{
+			TintKey k = new TintKey(sprite,image,color.getRGB());
+			BufferedImage tinted = tints.get(k);
+			if (tinted != null) return tinted;
+
+			int w = image.getWidth();
+			int h = image.getHeight();
+			int[] argb = image.getRGB(0,0,w,h,null,0,w);
+			int mask = color.getRGB() | 0xFF000000;
+			for (int i = 0; i < argb.length; i++)
+				argb[i] &= mask;
+			tinted = new BufferedImage(w,h,BufferedImage.TYPE_INT_ARGB);
+			tinted.setRGB(0,0,w,h,argb,0,w);
+
+			if (sprite != null) sprite.updateSource.addListener(this);
+			tints.put(k,tinted);
+			pixels += argb.length;
+			Iterator<Map.Entry<TintKey,BufferedImage>> it = tints.entrySet().iterator();
+			while (pixels > MAX_PIXELS && tints.size() > 1)
+				{
+				BufferedImage old = it.next().getValue();
+				pixels -= old.getWidth() * old.getHeight();
+				it.remove();
+				}
+			return tinted;
+			}
+
+		public synchronized void updated(UpdateEvent e)
 			{
-			int alpha = (rgb >> 24) & 0xff;
-			int red = (rgb >> 16) & 0xff;
-			int green = (rgb >> 8) & 0xff;
-			int blue = (rgb) & 0xff;
+			Iterator<Map.Entry<TintKey,BufferedImage>> it = tints.entrySet().iterator();
+			while (it.hasNext())
+				{
+				Map.Entry<TintKey,BufferedImage> en = it.next();
+				if (en.getKey().sprite != e.source.owner) continue;
+				pixels -= en.getValue().getWidth() * en.getValue().getHeight();
+				it.remove();
+				}
+			}
+		}
 
-			// Filter with the new color
-			red = red & newColorRed;
-			green = green & newColorGreen;
-			blue = blue & newColorBlue;
+	private static final class TintKey
+		{
+		final ResourceReference<Sprite> sprite;
+		final BufferedImage image;
+		final int rgb;
 
-			// Set the pixel with the new color
-			return (alpha << 24) | (red << 16) | (green << 8) | blue;
+		TintKey(ResourceReference<Sprite> sprite, BufferedImage image, int rgb)
+			{
+			this.sprite = sprite;
+			this.image = image;
+			this.rgb = rgb;
+			}
 
+		@Override
+		public int hashCode()
+			{
+			return System.identityHashCode(image) * 31 + rgb;
+			}
+
+		@Override
+		public boolean equals(Object o)
+			{
+			if (!(o instanceof TintKey)) return false;
+			TintKey k = (TintKey) o;
+			return k.image == image && k.rgb == rgb && k.sprite == sprite;
 			}
 		}
 
+	private static final TintCache TINTS = new TintCache();
+
 	private class InstanceVisual extends PieceVisual<Instance>
 		{
 		private BufferedImage image;
+		private ResourceReference<Sprite> sprite;
 		private final InstancePropertyListener ipl = new InstancePropertyListener();
 
 		// The instance's local transformation.
@@ -764,6 +1030,7 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			ResourceReference<Sprite> rs = null;
 			if (o != null) rs = o.get(PGmObject.SPRITE);
 			Sprite s = rs == null ? null : rs.get();
+			sprite = s == null ? null : s.reference;
 			image = s == null ? null : s.getDisplayImage();
 			if (image == null) image = EMPTY_IMAGE;
 
@@ -852,23 +1119,17 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 				// Apply cached local transformation.
 				if (at != null) g2.transform(at);
 
-				Image newImage;
+				BufferedImage newImage;
 
 				// Get instance's properties
 				Color selectedColor = piece.getAWTColor();
 				int alpha = piece.getAlpha();
 
 				// If a color has been selected, apply color blending
-				if (!Color.WHITE.equals(selectedColor))
-					{
-					ImageFilter filter = new ColorFilter(selectedColor);
-					FilteredImageSource filteredSrc = new FilteredImageSource(image.getSource(),filter);
-					newImage = Toolkit.getDefaultToolkit().createImage(filteredSrc);
-					}
+				if (!Color.WHITE.equals(selectedColor) && image != EMPTY_IMAGE && alpha != 0)
+					newImage = TINTS.get(sprite,image,selectedColor);
 				else
-					{
 					newImage = image;
-					}
 
 				// Original composite
 				Composite oc = null;
@@ -930,6 +1191,7 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			piece.updateSource.removeListener(rul);
 			piece.properties.updateSource.removeListener(ipl);
 			image = null;
+			sprite = null;
 			super.remove();
 			}
 
@@ -956,6 +1218,9 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 		{
 		private BufferedImage image;
 		private final TilePropertyListener tpl = new TilePropertyListener();
+		/** Where the tile is drawn in its layer's chunks, or null if it paints itself. */
+		private Rectangle layerBounds;
+		private int layerDepth;
 
 		public TileVisual(Tile t)
 			{
@@ -1003,6 +1268,13 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 				setBounds(r);
 				}
 
+			Rectangle ob = layerBounds;
+			int od = layerDepth;
+			layerBounds = piece.isSelected() ? null : new Rectangle(piece.getPosition(),
+					piece.getSize());
+			layerDepth = piece.getDepth();
+			if (ob != null) refreshLayer(od,ob);
+			if (layerBounds != null) refreshLayer(layerDepth,layerBounds);
 			}
 
 		public void paint(Graphics g)
@@ -1011,6 +1283,9 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 				{
 				Graphics2D g2 = (Graphics2D) g;
 
+				// Unselected tiles are drawn by the chunks of their layer
+				if (layerBounds != null) return;
+
 				// If we display only the visible layer, test if the current tile is in the visible layer
 				if (visibleLayer != null && piece.getDepth() != visibleLayer) return;
 
@@ -1055,6 +1330,8 @@ public class RoomVisual extends AbstractVisual implements BoundedVisual,UpdateLi
 			piece.properties.updateSource.removeListener(tpl);
 			image = null;
 			super.remove();
+			if (layerBounds != null) refreshLayer(layerDepth,layerBounds);
+			layerBounds = null;
 			}
 
 		class TilePropertyListener extends PropertyUpdateListener<PTile>
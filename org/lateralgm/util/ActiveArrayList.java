@@ -23,24 +23,80 @@ public class ActiveArrayList<E> extends ArrayList<E>
 	public final UpdateSource updateSource;
 	private final UpdateTrigger trigger;
 
+	/** How deep we are in nested batches, and what has changed in them so far. */
+	private int batchDepth;
+	private Type batchType;
+	private int batchFrom, batchTo;
+	/** The stamp of the last change to this list, or 0 if it hasn't changed since it was made. */
+	private long lastModified;
+
 	public ActiveArrayList()
 		{
 		trigger = new UpdateTrigger();
 		updateSource = new UpdateSource(this,trigger);
 		}
 
+	/**
+	 * Returns the stamp of the last time this list changed, as given by
+	 * {@link PropertyMap#nextModification()}. Changes to the elements themselves aren't counted.
+	 */
+	public long getLastModified()
+		{
+		return lastModified;
+		}
+
+	/**
+	 * Holds back update events until the matching {@link #endBatch()}, which fires a single
+	 * event covering everything that changed in between. Batches may be nested.
+	 */
+	public void beginBatch()
+		{
+		batchDepth++;
+		}
+
+	public void endBatch()
+		{
+		if (batchDepth == 0) throw new IllegalStateException();
+		if (--batchDepth > 0 || batchType == null) return;
+		ListUpdateEvent e = new ListUpdateEvent(updateSource,batchType,batchFrom,batchTo);
+		batchType = null;
+		trigger.fire(e);
+		}
+
+	private void fire(Type t, int from, int to)
+		{
+		lastModified = PropertyMap.nextModification();
+		if (batchDepth == 0)
+			trigger.fire(new ListUpdateEvent(updateSource,t,from,to));
+		else if (batchType == null)
+			{
+			batchType = t;
+			batchFrom = from;
+			batchTo = to;
+			}
+		// Appending is by far the most common bulk change, so keep that precise
+		else if (t == Type.ADDED && batchType == Type.ADDED && from == batchTo + 1)
+			batchTo = to;
+		else
+			{
+			batchType = Type.CHANGED;
+			batchFrom = 0;
+			batchTo = Integer.MAX_VALUE;
+			}
+		}
+
 	public boolean add(E e)
 		{
 		int i = size();
 		super.add(e);
-		trigger.fire(new ListUpdateEvent(updateSource,Type.ADDED,i,i));
+		fire(Type.ADDED,i,i);
 		return true;
 		}
 
 	public void add(int index, E element)
 		{
 		super.add(index,element);
-		trigger.fire(new ListUpdateEvent(updateSource,Type.ADDED,index,index));
+		fire(Type.ADDED,index,index);
 		}
 
 	@Override
@@ -49,7 +105,7 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		int s = size();
 		if (super.addAll(c))
 			{
-			trigger.fire(new ListUpdateEvent(updateSource,Type.ADDED,s,size() - 1));
+			fire(Type.ADDED,s,size() - 1);
 			return true;
 			}
 		return false;
@@ -61,7 +117,7 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		int s = size();
 		if (super.addAll(index,c))
 			{
-			trigger.fire(new ListUpdateEvent(updateSource,Type.ADDED,index,index + size() - s - 1));
+			fire(Type.ADDED,index,index + size() - s - 1);
 			return true;
 			}
 		return false;
@@ -72,14 +128,14 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		{
 		int s = size();
 		super.clear();
-		if (s > 0) trigger.fire(new ListUpdateEvent(updateSource,Type.REMOVED,0,s - 1));
+		if (s > 0) fire(Type.REMOVED,0,s - 1);
 		}
 
 	@Override
 	public E remove(int index)
 		{
 		E e = super.remove(index);
-		trigger.fire(new ListUpdateEvent(updateSource,Type.REMOVED,index,index));
+		fire(Type.REMOVED,index,index);
 		return e;
 		}
 
@@ -90,7 +146,7 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		if (i >= 0)
 			{
 			super.remove(i);
-			trigger.fire(new ListUpdateEvent(updateSource,Type.REMOVED,i,i));
+			fire(Type.REMOVED,i,i);
 			return true;
 			}
 		return false;
@@ -104,7 +160,7 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		if (s == 1) return remove(c.iterator().next());
 		if (super.removeAll(c))
 			{
-			trigger.fire(new ListUpdateEvent(updateSource,Type.CHANGED,0,Integer.MAX_VALUE));
+			fire(Type.CHANGED,0,Integer.MAX_VALUE);
 			return true;
 			}
 		return false;
@@ -115,16 +171,74 @@ public class ActiveArrayList<E> extends ArrayList<E>
 		{
 		if (super.retainAll(c))
 			{
-			trigger.fire(new ListUpdateEvent(updateSource,Type.CHANGED,0,Integer.MAX_VALUE));
+			fire(Type.CHANGED,0,Integer.MAX_VALUE);
 			return true;
 			}
 		return false;
 		}
 
+	@Override
+	public void removeRange(int fromIndex, int toIndex)
+		{
+		super.removeRange(fromIndex,toIndex);
+		if (toIndex > fromIndex) fire(Type.REMOVED,fromIndex,toIndex - 1);
+		}
+
+	/**
+	 * Removes the elements at the given indices, which must be ascending, in a single pass and
+	 * with a single update event.
+	 */
+	public void removeIndices(int[] indices)
+		{
+		int n = indices.length;
+		if (n == 0) return;
+		int from = indices[0];
+		int to = indices[n - 1];
+		if (to - from + 1 == n)
+			{
+			removeRange(from,to + 1);
+			return;
+			}
+		ArrayList<E> kept = new ArrayList<E>(size() - n);
+		for (int i = 0, k = 0; i < size(); i++)
+			if (k < n && indices[k] == i)
+				k++;
+			else
+				kept.add(get(i));
+		super.clear();
+		super.addAll(kept);
+		fire(Type.CHANGED,0,Integer.MAX_VALUE);
+		}
+
+	/**
+	 * Inserts the given elements so that each ends up at the matching index, which must be
+	 * ascending, in a single pass and with a single update event. This undoes
+	 * {@link #removeIndices(int[])}.
+	 */
+	public void insertIndices(int[] indices, List<? extends E> elements)
+		{
+		int n = indices.length;
+		if (n == 0) return;
+		int from = indices[0];
+		int to = indices[n - 1];
+		if (to - from + 1 == n)
+			{
+			addAll(from,elements);
+			return;
+			}
+		int size = size() + n;
+		ArrayList<E> merged = new ArrayList<E>(size);
+		for (int i = 0, j = 0, k = 0; i < size; i++)
+			merged.add(k < n && indices[k] == i ? elements.get(k++) : get(j++));
+		super.clear();
+		super.addAll(merged);
+		fire(Type.CHANGED,0,Integer.MAX_VALUE);
+		}
+
 	public E set(int index, E element)
 		{
 		E e = super.set(index,element);
-		trigger.fire(new ListUpdateEvent(updateSource,Type.CHANGED,index,index));
+		fire(Type.CHANGED,index,index);
 		return e;
 		}
 
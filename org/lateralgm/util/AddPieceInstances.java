@@ -0,0 +1,74 @@
+/**
+ * Record the effect of adding many pieces (objects/tiles) at the end of a room's list at once
+ * for the undo, such as when filling or pasting a region
+ *
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.util;
+
+import java.util.List;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+import org.lateralgm.resources.Room.Piece;
+import org.lateralgm.subframes.RoomFrame;
+
+public class AddPieceInstances<P extends Piece> extends AbstractUndoableEdit
+	{
+	private static final long serialVersionUID = 1L;
+
+	private final RoomFrame roomFrame;
+	private final ActiveArrayList<P> list;
+	private final int index;
+	private final int count;
+	/** The added pieces, while they are out of the room after an undo. */
+	private PackedPieces pieces;
+
+	/** Records the pieces of the given list from the given index to its end. */
+	public AddPieceInstances(RoomFrame roomFrame, ActiveArrayList<P> list, int index)
+		{
+		this.roomFrame = roomFrame;
+		this.list = list;
+		this.index = index;
+		count = list.size() - index;
+		}
+
+	public boolean isEmpty()
+		{
+		return count == 0;
+		}
+
+	public void undo() throws CannotUndoException
+		{
+		pieces = new PackedPieces(list.subList(index,index + count));
+		list.removeRange(index,index + count);
+		PackedPieces.fireUpdate(roomFrame,pieces.isTiles());
+		}
+
+	public void redo() throws CannotRedoException
+		{
+		List<P> restored = pieces.unpack(roomFrame.res);
+		boolean tiles = pieces.isTiles();
+		pieces = null;
+		list.addAll(index,restored);
+		PackedPieces.select(roomFrame,tiles,restored);
+		}
+
+	public boolean canUndo()
+		{
+		return true;
+		}
+
+	public boolean canRedo()
+		{
+		return true;
+		}
+
+	}
@@ -9,24 +9,149 @@
 package org.lateralgm.util;
 
 import java.awt.Rectangle;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class BinPlane
 	{
 	public final int binShift;
-	private final ConcurrentHashMap<Integer,WeakReference<Bin>> bins;
+	/**
+	 * The bins that hold candidates, keyed by index in an open addressing table with linear
+	 * probing. A bin is removed as soon as its last candidate leaves it.
+	 */
+	private int[] binKeys;
+	private Bin[] bins;
+	private int binCount;
+	/** How many candidates have been made, which orders candidates of the same depth. */
+	private int candidateCount;
+	/** How many bins each column and row has, so that the edge bins can be found directly. */
+	private final Occupancy columns = new Occupancy(), rows = new Occupancy();
 
 	public BinPlane(int s, int w, int h)
 		{
 		binShift = 32 - Integer.numberOfLeadingZeros(s - 1);
 		int c = (1 + (w - 1 >> binShift)) * (1 + (h - 1 >> binShift)) * 2;
-		bins = new ConcurrentHashMap<Integer,WeakReference<Bin>>(c,0.5f,2);
+		int n = Integer.highestOneBit(Math.max(c,8) - 1) << 1;
+		binKeys = new int[n];
+		bins = new Bin[n];
+		}
+
+	private static int slot(int idx, int mask)
+		{
+		int h = idx * 0x9E3779B9;
+		return (h ^ h >>> 16) & mask;
+		}
+
+	private Bin getBinAt(int idx)
+		{
+		int m = bins.length - 1;
+		for (int i = slot(idx,m);; i = i + 1 & m)
+			{
+			Bin b = bins[i];
+			if (b == null || binKeys[i] == idx) return b;
+			}
+		}
+
+	private void putBin(Bin b)
+		{
+		int m = bins.length - 1;
+		int i = slot(b.index,m);
+		while (bins[i] != null)
+			i = i + 1 & m;
+		binKeys[i] = b.index;
+		bins[i] = b;
+		}
+
+	private Bin addBin(int idx)
+		{
+		if (++binCount * 2 > bins.length)
+			{
+			Bin[] old = bins;
+			binKeys = new int[old.length * 2];
+			bins = new Bin[old.length * 2];
+			for (Bin b : old)
+				if (b != null) putBin(b);
+			}
+		Bin b = new Bin(idx);
+		putBin(b);
+		columns.add(idx << 16 >> 16);
+		rows.add(idx >> 16);
+		return b;
+		}
+
+	/** Takes the given candidate out of the given bin, removing the bin if it is left empty. */
+	private void leave(Bin b, Candidate c)
+		{
+		b.candidates.remove(c);
+		if (!b.candidates.isEmpty()) return;
+		int m = bins.length - 1;
+		int i = slot(b.index,m);
+		while (bins[i] != b)
+			i = i + 1 & m;
+		// Shift back any entry that would no longer be found past the gap
+		for (int j = i + 1 & m; bins[j] != null; j = j + 1 & m)
+			{
+			int h = slot(binKeys[j],m);
+			if (i <= j ? i < h && h <= j : i < h || h <= j) continue;
+			binKeys[i] = binKeys[j];
+			bins[i] = bins[j];
+			i = j;
+			}
+		bins[i] = null;
+		binCount--;
+		columns.remove(b.index << 16 >> 16);
+		rows.remove(b.index >> 16);
+		}
+
+	/** Counts of bins along one axis, which keep track of the lowest and highest that have any. */
+	private static final class Occupancy
+		{
+		private int[] counts = new int[0];
+		private int base, total, min, max;
+
+		void add(int v)
+			{
+			if (v < base || v - base >= counts.length) grow(v);
+			counts[v - base]++;
+			if (total++ == 0)
+				min = max = v;
+			else if (v < min)
+				min = v;
+			else if (v > max) max = v;
+			}
+
+		void remove(int v)
+			{
+			counts[v - base]--;
+			if (--total == 0) return;
+			while (counts[min - base] == 0)
+				min++;
+			while (counts[max - base] == 0)
+				max--;
+			}
+
+		private void grow(int v)
+			{
+			if (counts.length == 0)
+				{
+				counts = new int[16];
+				base = v - 8;
+				return;
+				}
+			int lo = Math.min(base,v);
+			int hi = Math.max(base + counts.length,v + 1);
+			int len = counts.length;
+			while (len < hi - lo)
+				len <<= 1;
+			// Leave the room to grow further on the side that is growing
+			int b = v < base ? hi - len : lo;
+			int[] c = new int[len];
+			System.arraycopy(counts,0,c,base - b,counts.length);
+			counts = c;
+			base = b;
+			}
 		}
 
 	public static enum Edge
@@ -82,40 +207,21 @@ public class BinPlane
 			}
 		}
 
+	/** Returns the bins in the outermost column or row with any bins on the given edge. */
 	public Bin[] getEdgeBins(Edge edge)
 		{
 		ArrayList<Bin> l = new ArrayList<Bin>();
-		int s = 0;
-		for (Entry<Integer,WeakReference<Bin>> e : bins.entrySet())
-			{
-			Bin b = e.getValue().get();
-			if (b == null || b.candidates.size() == 0) continue;
-			if (s == 0)
-				{
-				s = 1;
-				l.add(b);
-				continue;
-				}
-			switch (edge.compareBin(b.index,l.get(s - 1).index))
-				{
-				case 0:
-					if (l.size() > s++)
-						l.set(s - 1,b);
-					else
-						l.add(b);
-					break;
-				case 1:
-					s = 1;
-					if (l.size() > 0)
-						l.set(0,b);
-					else
-						l.add(b);
-					break;
-				default:
-					continue;
-				}
+		if (binCount == 0) return new Bin[0];
+		boolean vertical = edge == Edge.LEFT || edge == Edge.RIGHT;
+		Occupancy across = vertical ? columns : rows;
+		Occupancy along = vertical ? rows : columns;
+		int line = edge == Edge.LEFT || edge == Edge.TOP ? across.min : across.max;
+		for (int i = along.min; i <= along.max; i++)
+			{
+			Bin b = getBinAt(vertical ? binindex(line,i) : binindex(i,line));
+			if (b != null) l.add(b);
 			}
-		return l.subList(0,s).toArray(new Bin[s]);
+		return l.toArray(new Bin[l.size()]);
 		}
 
 	public Candidate getEdgeCandidate(Edge edge)
@@ -129,10 +235,7 @@ public class BinPlane
 
 	public Iterator<Candidate> getBin(final int bx, final int by)
 		{
-		int bi = binindex(bx,by);
-		WeakReference<Bin> r = bins.get(bi);
-		if (r == null) return null;
-		Bin b = r.get();
+		Bin b = getBinAt(binindex(bx,by));
 		if (b == null) return null;
 		return b.candidates.iterator();
 		}
@@ -260,7 +363,7 @@ public class BinPlane
 							}
 						bx = x0;
 						}
-					inside = (bx << binShift >= r.x && by << binShift >= r.y && bx < x1 - 1 && by < y1 - 1);
+					inside = bx << binShift > r.x && by << binShift > r.y && bx < x1 - 1 && by < y1 - 1;
 					b = inside ? (cut ? getBin(bx,by,true,true) : getBin(bx,by)) : intersect(bx,by,r,cut);
 					}
 
@@ -287,7 +390,10 @@ public class BinPlane
 
 	public Iterator<CandidateBin> all(final boolean cut)
 		{
-		final Iterator<Entry<Integer,WeakReference<Bin>>> es = bins.entrySet().iterator();
+		ArrayList<Bin> l = new ArrayList<Bin>(binCount);
+		for (Bin b : bins)
+			if (b != null) l.add(b);
+		final Iterator<Bin> es = l.iterator();
 		return new Iterator<CandidateBin>()
 			{
 				private CandidateBin cb = findNext();
@@ -308,12 +414,9 @@ public class BinPlane
 				private CandidateBin findNext()
 					{
 					if (!es.hasNext()) return null;
-					Entry<Integer,WeakReference<Bin>> e = es.next();
-					int i = e.getKey();
-					int bx = i << 16 >> 16;
-					int by = i >> 16;
-					Bin b = e.getValue().get();
-					if (b == null) return null;
+					Bin b = es.next();
+					int bx = b.index << 16 >> 16;
+					int by = b.index >> 16;
 					return new CandidateBin(bx << binShift,by << binShift,1 << binShift,1 << binShift,
 							cut ? getBin(bx,by,true,true) : b.iterator());
 					}
@@ -341,6 +444,7 @@ public class BinPlane
 		// If the candidate is selected, it should be always visible
 		private boolean isSelected = false;
 		private Bin[] cBins;
+		private final int serial = ++candidateCount;
 
 		public void setDepth(int d)
 			{
@@ -385,13 +489,13 @@ public class BinPlane
 					int xo = obx + x - binx;
 					if (xo < 0 || xo >= binw)
 						{
-						ob[i++].candidates.remove(this);
+						leave(ob[i++],this);
 						continue;
 						}
 					int yo = oby + y - biny;
 					if (yo < 0 || yo >= binh)
 						{
-						ob[i++].candidates.remove(this);
+						leave(ob[i++],this);
 						continue;
 						}
 					cBins[xo + binw * yo] = ob[i++];
@@ -403,12 +507,8 @@ public class BinPlane
 					if (cBins[i] == null)
 						{
 						int idx = binindex(binx + x,biny + y);
-						WeakReference<Bin> r = bins.get(idx);
-						Bin bin = r == null ? null : r.get();
-						if (bin == null)
-							{
-							bin = new Bin(idx);
-							}
+						Bin bin = getBinAt(idx);
+						if (bin == null) bin = addBin(idx);
 						cBins[i] = bin;
 						bin.candidates.add(this);
 						}
@@ -425,8 +525,8 @@ public class BinPlane
 
 		public void remove()
 			{
-			for (Bin b : cBins)
-				b.candidates.remove(this);
+			if (cBins != null) for (Bin b : cBins)
+				leave(b,this);
 			cBins = null;
 			bounds.setSize(-1,-1);
 			binw = 0;
@@ -437,10 +537,9 @@ public class BinPlane
 			{
 			if (this == c) return 0;
 			// If the candidate is selected, it should be always visible
-			if (isSelected) return 1;
+			if (isSelected != c.isSelected) return isSelected ? 1 : -1;
 
-			return c.depth > depth ? 1 : c.depth < depth ? -1
-					: Integer.valueOf(c.hashCode()).compareTo(hashCode());
+			return c.depth > depth ? 1 : c.depth < depth ? -1 : c.serial > serial ? 1 : -1;
 			}
 		}
 
@@ -619,26 +718,17 @@ public class BinPlane
 
 	public final class Bin
 		{
-		private TreeSet<Candidate> candidates = new TreeSet<Candidate>();
+		private final TreeSet<Candidate> candidates = new TreeSet<Candidate>();
 		public final int index;
-		public final WeakReference<Bin> reference;
 
-		public Bin(int idx)
+		private Bin(int idx)
 			{
 			index = idx;
-			reference = new WeakReference<Bin>(this);
-			bins.put(idx,reference);
 			}
 
 		public Iterator<Candidate> iterator()
 			{
 			return candidates.iterator();
 			}
-
-		@Override
-		protected void finalize()
-			{
-			bins.remove(index,reference);
-			}
 		}
 	}
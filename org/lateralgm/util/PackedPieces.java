@@ -0,0 +1,154 @@
+/**
+ * The property values of many pieces (objects/tiles) of a room, kept by property rather than
+ * as the pieces themselves, so that an undo history of bulk edits doesn't keep every piece
+ * alive along with its property map and listeners
+ *
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lateralgm.resources.Room;
+import org.lateralgm.resources.Room.Piece;
+import org.lateralgm.resources.sub.Instance;
+import org.lateralgm.resources.sub.Instance.PInstance;
+import org.lateralgm.resources.sub.Tile;
+import org.lateralgm.resources.sub.Tile.PTile;
+import org.lateralgm.subframes.RoomFrame;
+
+final class PackedPieces
+	{
+	private static final PInstance[] INSTANCE_KEYS = PInstance.values();
+	private static final PTile[] TILE_KEYS = PTile.values();
+
+	private final boolean tiles;
+	private final int size;
+	/**
+	 * A column of values per property. A column is an int[] when its values are all integers,
+	 * or else an Object[], which holds just one value when they are all the same.
+	 */
+	private final Object[] columns;
+	/**
+	 * The pieces themselves, for as long as something else such as an older edit holds on to
+	 * them. They are put back rather than new ones so that such edits still apply to the room.
+	 */
+	private final WeakReference<?>[] pieces;
+
+	PackedPieces(List<? extends Piece> list)
+		{
+		size = list.size();
+		tiles = size > 0 && list.get(0) instanceof Tile;
+		Object[][] values = new Object[tiles ? TILE_KEYS.length : INSTANCE_KEYS.length][size];
+		pieces = new WeakReference<?>[size];
+		for (int i = 0; i < size; i++)
+			{
+			Piece p = list.get(i);
+			pieces[i] = new WeakReference<Piece>(p);
+			if (tiles)
+				read(((Tile) p).properties,TILE_KEYS,values,i);
+			else
+				read(((Instance) p).properties,INSTANCE_KEYS,values,i);
+			}
+		columns = new Object[values.length];
+		for (int k = 0; k < values.length; k++)
+			columns[k] = pack(values[k]);
+		}
+
+	boolean isTiles()
+		{
+		return tiles;
+		}
+
+	private static <K extends Enum<K>>void read(PropertyMap<K> properties, K[] keys,
+			Object[][] values, int i)
+		{
+		for (K k : keys)
+			values[k.ordinal()][i] = properties.get(k);
+		}
+
+	private static Object pack(Object[] column)
+		{
+		boolean same = true, ints = true;
+		for (Object v : column)
+			{
+			if (same && (v == null ? column[0] != null : !v.equals(column[0]))) same = false;
+			if (ints && !(v instanceof Integer)) ints = false;
+			}
+		if (same) return new Object[] { column.length == 0 ? null : column[0] };
+		if (!ints) return column;
+		int[] packed = new int[column.length];
+		for (int i = 0; i < packed.length; i++)
+			packed[i] = (Integer) column[i];
+		return packed;
+		}
+
+	private Object get(int k, int i)
+		{
+		Object c = columns[k];
+		if (c instanceof int[]) return ((int[]) c)[i];
+		Object[] values = (Object[]) c;
+		return values.length == 1 ? values[0] : values[i];
+		}
+
+	/**
+	 * Returns the pieces of the given room, each being the original piece if it is still around
+	 * or otherwise a new one with the same property values.
+	 */
+	@SuppressWarnings("unchecked")
+	<P extends Piece>List<P> unpack(Room room)
+		{
+		List<P> list = new ArrayList<P>(size);
+		for (int i = 0; i < size; i++)
+			{
+			Piece p = (Piece) pieces[i].get();
+			if (p == null)
+				{
+				if (tiles)
+					{
+					Tile tile = new Tile(room);
+					write(tile.properties,TILE_KEYS,i);
+					p = tile;
+					}
+				else
+					{
+					Instance inst = new Instance(room);
+					write(inst.properties,INSTANCE_KEYS,i);
+					p = inst;
+					}
+				}
+			list.add((P) p);
+			}
+		return list;
+		}
+
+	private <K extends Enum<K>>void write(PropertyMap<K> properties, K[] keys, int i)
+		{
+		for (K k : keys)
+			properties.put(k,get(k.ordinal(),i));
+		}
+	
+	/** Updates the room frame's panel for the selected object or tile after pieces were removed. */
+	static void fireUpdate(RoomFrame roomFrame, boolean tiles)
+		{
+		if (tiles)
+			roomFrame.fireTileUpdate();
+		else
+			roomFrame.fireObjUpdate();
+		}
+
+	/** Selects the first of the given pieces put back in the room, as a single edit would. */
+	static void select(RoomFrame roomFrame, boolean tiles, List<? extends Piece> restored)
+		{
+		if (!restored.isEmpty())
+			(tiles ? roomFrame.tList : roomFrame.oList).setSelectedValue(restored.get(0),true);
+		fireUpdate(roomFrame,tiles);
+		}
+	}
@@ -13,6 +13,7 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.lateralgm.main.UpdateSource;
 import org.lateralgm.main.UpdateSource.UpdateEvent;
@@ -22,12 +23,15 @@ import org.lateralgm.main.UpdateSource.UpdateTrigger;
 public class PropertyMap<K extends Enum<K>> extends EnumMap<K,Object>
 	{
 	private static final long serialVersionUID = 1L;
+	private static final AtomicLong modifications = new AtomicLong();
 
 	private final UpdateTrigger updateTrigger = new UpdateTrigger();
 	public final UpdateSource updateSource = new UpdateSource(this,updateTrigger);
 	private EnumMap<K,TriggerSourcePair> updatePairs;
 	private final Class<K> keyType;
 	private final PropertyValidator<K> validator;
+	/** The stamp of the last time a value in this map actually changed, or 0 if none has. */
+	private long lastModified;
 
 	public PropertyMap(Class<K> type, PropertyValidator<K> v, EnumMap<K,Object> defaults)
 		{
@@ -36,6 +40,25 @@ public class PropertyMap<K extends Enum<K>> extends EnumMap<K,Object>
 		validator = v;
 		}
 
+	/**
+	 * Returns a modification stamp later than any returned before. Anything that notes the stamp
+	 * of its last change can then tell whether it has changed by comparing stamps, rather than
+	 * comparing its contents against a copy.
+	 */
+	public static long nextModification()
+		{
+		return modifications.incrementAndGet();
+		}
+
+	/**
+	 * Returns the stamp of the last time a value in this map changed. Putting a value equal to
+	 * the one already there fires an update, but doesn't count as a change.
+	 */
+	public long getLastModified()
+		{
+		return lastModified;
+		}
+
 	public UpdateSource getUpdateSource(K key)
 		{
 		TriggerSourcePair p = null;
@@ -80,7 +103,11 @@ public class PropertyMap<K extends Enum<K>> extends EnumMap<K,Object>
 		if (ck) if (super.get(key) == value) return value;
 		Object vv = validator == null ? value : validator.validate(key,value);
 		Object o = super.put(key,vv);
-		if (!ck || vv != value || o != value) fireUpdate(key);
+		if (!ck || vv != value || o != value)
+			{
+			if (!ck || (o == null ? vv != null : !o.equals(vv))) lastModified = nextModification();
+			fireUpdate(key);
+			}
 		return o;
 		}
 
@@ -110,7 +137,11 @@ public class PropertyMap<K extends Enum<K>> extends EnumMap<K,Object>
 		int s = size();
 		Object o = super.remove(key);
 		// We know that this cast to K is valid if o != null.
-		if (o != null || s != size()) fireUpdate((K) key);
+		if (o != null || s != size())
+			{
+			lastModified = nextModification();
+			fireUpdate((K) key);
+			}
 		return o;
 		}
 
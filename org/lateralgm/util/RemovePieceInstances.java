@@ -0,0 +1,79 @@
+/**
+ * Record the effect of removing many pieces (objects/tiles) at once for the undo
+ *
+ * The pieces are packed along with their indices, rather than kept as an edit each, and are
+ * removed and put back in a single pass over the room's list.
+ *
+ * Copyright (C) 2026 LateralGM contributors
+ *
+ * This file is part of LateralGM.
+ * LateralGM is free software and comes with ABSOLUTELY NO WARRANTY.
+ * See LICENSE for details.
+ */
+
+package org.lateralgm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+import org.lateralgm.resources.Room.Piece;
+import org.lateralgm.subframes.RoomFrame;
+
+public class RemovePieceInstances<P extends Piece> extends AbstractUndoableEdit
+	{
+	private static final long serialVersionUID = 1L;
+
+	private final RoomFrame roomFrame;
+	private final ActiveArrayList<P> list;
+	private final int[] indices;
+	/** The removed pieces, while they are out of the room. */
+	private PackedPieces pieces;
+
+	/** Records the pieces at the given indices of the given list, which must be ascending. */
+	public RemovePieceInstances(RoomFrame roomFrame, ActiveArrayList<P> list, int[] indices)
+		{
+		this.roomFrame = roomFrame;
+		this.list = list;
+		this.indices = indices;
+		}
+
+	/** Removes the recorded pieces from the list. */
+	public void apply()
+		{
+		List<P> removed = new ArrayList<P>(indices.length);
+		for (int i : indices)
+			removed.add(list.get(i));
+		pieces = new PackedPieces(removed);
+		list.removeIndices(indices);
+		PackedPieces.fireUpdate(roomFrame,pieces.isTiles());
+		}
+
+	public void undo() throws CannotUndoException
+		{
+		List<P> restored = pieces.unpack(roomFrame.res);
+		boolean tiles = pieces.isTiles();
+		pieces = null;
+		list.insertIndices(indices,restored);
+		PackedPieces.select(roomFrame,tiles,restored);
+		}
+
+	public void redo() throws CannotRedoException
+		{
+		apply();
+		}
+
+	public boolean canUndo()
+		{
+		return true;
+		}
+
+	public boolean canRedo()
+		{
+		return true;
+		}
+
+	}
@@ -22,10 +22,25 @@ public abstract class SetTraverser<E, P>
 	 *  The header node of the linked list. The first element node is header.next.
 	 */
 	private final Node header;
+	/*
+	 * Guards the set, so that elements may be added and removed by other threads while it is
+	 * being traversed. Elements are visited without holding it.
+	 */
+	private final Object lock;
 
 	public SetTraverser()
+		{
+		this(null);
+		}
+
+	/**
+	 * @param lock The object to synchronize on when changing or stepping through the set, or null
+	 *          to use the traverser itself.
+	 */
+	public SetTraverser(Object lock)
 		{
 		header = new Node();
+		this.lock = lock == null ? this : lock;
 		}
 
 	/**
@@ -39,9 +54,12 @@ public abstract class SetTraverser<E, P>
 	 */
 	public final boolean add(E e)
 		{
-		if (previous != null && previous.containsKey(e)) return false;
-		new ElementNode(header,e);
-		return true;
+		synchronized (lock)
+			{
+			if (previous != null && previous.containsKey(e)) return false;
+			new ElementNode(header,e);
+			return true;
+			}
 		}
 
 	/**
@@ -54,11 +72,14 @@ public abstract class SetTraverser<E, P>
 	 */
 	public final boolean remove(E e)
 		{
-		if (previous == null) return false;
-		Node p = previous.get(e);
-		if (p == null) return false;
-		p.removeNext();
-		return true;
+		synchronized (lock)
+			{
+			if (previous == null) return false;
+			Node p = previous.get(e);
+			if (p == null) return false;
+			p.removeNext();
+			return true;
+			}
 		}
 
 	/**
@@ -68,8 +89,19 @@ public abstract class SetTraverser<E, P>
 	 */
 	public final void traverse(P p)
 		{
-		for (ElementNode n = header.next; n != null; n = n.next)
+		ElementNode n;
+		synchronized (lock)
+			{
+			n = header.next;
+			}
+		while (n != null)
+			{
 			visit(n.element,p);
+			synchronized (lock)
+				{
+				n = n.next;
+				}
+			}
 		}
 
 	protected abstract void visit(E e, P p);
@@ -1,8 +1,6 @@
 /**
  * Record the effect of shifting piece (objects/tiles) instances for the undo
  *
- * I don't know why, but before moving a piece, the piece must be selected in the list.
- *
  * Copyright (C) 2014, egofree
  *
  * This file is part of LateralGM.
@@ -19,8 +17,7 @@ import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 
 import org.lateralgm.resources.Room;
-import org.lateralgm.resources.sub.Instance;
-import org.lateralgm.resources.sub.Tile;
+import org.lateralgm.resources.Room.Piece;
 import org.lateralgm.subframes.RoomFrame;
 
 public class ShiftPieceInstances extends AbstractUndoableEdit
@@ -41,76 +38,44 @@ public class ShiftPieceInstances extends AbstractUndoableEdit
 		this.tilesTabIsSelected = tilesTabIsSelected;
 		}
 
-	@Override
-	public void undo() throws CannotUndoException
+	/** Shifts the pieces by the recorded amount. */
+	public void apply()
+		{
+		shift(horizontalShift,verticalShift);
+		}
+
+	private void shift(int dx, int dy)
 		{
 		Room room = roomFrame.getRoomEditor().getRoom();
 
-		// If we are shifting tiles
+		// Deselect the piece in the list once, rather than selecting each piece as it is moved,
+		// so that its fields don't follow every piece
 		if (tilesTabIsSelected)
-			{
-
-			for (Tile tile : room.tiles)
-				{
-				// Select the tile in the list, otherwise it is sometimes not correctly selected
-				roomFrame.tList.setSelectedValue(tile,false);
-
-				Point newPosition = new Point(tile.getPosition().x - horizontalShift,tile.getPosition().y
-						- verticalShift);
-				tile.setPosition(newPosition);
-				}
-
-			}
+			roomFrame.tList.clearSelection();
 		else
-			// Shift the objects
-			{
+			roomFrame.oList.clearSelection();
 
-			for (Instance instance : room.instances)
+		// Update the editor once for all the pieces rather than once per piece
+		try (Room.Batch batch = room.batch())
+			{
+			for (Piece piece : tilesTabIsSelected ? room.tiles : room.instances)
 				{
-				// Select the instance in the list, otherwise it is sometimes not correctly selected
-				roomFrame.oList.setSelectedValue(instance,false);
-
-				Point newPosition = new Point(instance.getPosition().x - horizontalShift,
-						instance.getPosition().y - verticalShift);
-				instance.setPosition(newPosition);
+				Point position = piece.getPosition();
+				piece.setPosition(new Point(position.x + dx,position.y + dy));
 				}
 			}
 		}
 
 	@Override
-	public void redo() throws CannotRedoException
+	public void undo() throws CannotUndoException
 		{
-		Room room = roomFrame.getRoomEditor().getRoom();
-
-		// If we are shifting tiles
-		if (tilesTabIsSelected)
-			{
-
-			for (Tile tile : room.tiles)
-				{
-				// Select the tile in the list, otherwise it is sometimes not correctly selected
-				roomFrame.tList.setSelectedValue(tile,false);
-
-				Point newPosition = new Point(tile.getPosition().x + horizontalShift,tile.getPosition().y
-						+ verticalShift);
-				tile.setPosition(newPosition);
-				}
-
-			}
-		else
-			// Shift the objects
-			{
-
-			for (Instance instance : room.instances)
-				{
-				// Select the instance in the list, otherwise it is sometimes not correctly selected
-				roomFrame.oList.setSelectedValue(instance,false);
+		shift(-horizontalShift,-verticalShift);
+		}
 
-				Point newPosition = new Point(instance.getPosition().x + horizontalShift,
-						instance.getPosition().y + verticalShift);
-				instance.setPosition(newPosition);
-				}
-			}
+	@Override
+	public void redo() throws CannotRedoException
+		{
+		shift(horizontalShift,verticalShift);
 		}
 
 	@Override